@@ -7,6 +7,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -65,6 +66,26 @@ public final class FilesServlet extends HttpServlet {
         return r;
     }
     
+    // Rendering a chart is expensive and the result page requests its charts again whenever it is reloaded.
+    // The charts of a cached result never change, so the rendered images are kept, too, and clients can
+    // revalidate their copies with an ETag which only depends on the request parameters.
+
+    private static class ImageLRU extends LinkedHashMap<String, byte[]> {
+        private static final int CacheLimit = 600;
+        ImageLRU() {
+            super(16, 0.75f, true);
+        }
+        @Override protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+            return size() > CacheLimit;
+        }
+    }
+
+    /** Hash map that stores rendered PNG images keyed on their ETag. */
+    private static final Map<String, byte[]> cachedImage = Collections.synchronizedMap(new ImageLRU());
+
+    /** Time in seconds clients may use an image without revalidating it. */
+    private static final int ImageMaxAge = 3600;
+
     // === End of caching
 
     /**
@@ -87,9 +108,21 @@ public final class FilesServlet extends HttpServlet {
                     break;
 
                 case TypeImg:
-                    response.setContentType("image/png");
                     final PlottingDetails pd = toPlottingDetails(request);
-                    ChartUtilities.writeBufferedImageAsPNG(response.getOutputStream(), toImage(id, filename, chartIndex, pd));
+                    final String tag = toImageTag(id, filename, chartIndex, pd);
+                    // look up the result first, images of results which are not available anymore are not
+                    // served nor revalidated
+                    final ItcSpectroscopyResult results = result(id);
+                    response.setHeader("ETag", tag);
+                    response.setHeader("Cache-Control", "private, max-age=" + ImageMaxAge);
+                    if (matches(request.getHeader("If-None-Match"), tag)) {
+                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    } else {
+                        final byte[] png = toPng(tag, results, filename, chartIndex, pd);
+                        response.setContentType("image/png");
+                        response.setContentLength(png.length);
+                        response.getOutputStream().write(png);
+                    }
                     break;
 
                 default:
@@ -123,15 +156,40 @@ public final class FilesServlet extends HttpServlet {
         }
     }
 
-    private static BufferedImage toImage(final String id, final String filename, final int index, final PlottingDetails pd) {
-        final ItcSpectroscopyResult results = result(id);
-        final ITCChart chart;
+    private static SpcChartType toChartType(final String filename) {
         switch (filename) {
-            case "SignalChart":       chart = ITCChart.forSpcDataSet(results.chart(SignalChart.instance(),      index), pd); break;
-            case "S2NChart":          chart = ITCChart.forSpcDataSet(results.chart(S2NChart.instance(),         index), pd); break;
-            case "SignalPixelChart":  chart = ITCChart.forSpcDataSet(results.chart(SignalPixelChart.instance(), index), pd); break;
-            default:            throw new Error();
+            case "SignalChart":       return SignalChart.instance();
+            case "S2NChart":          return S2NChart.instance();
+            case "SignalPixelChart":  return SignalPixelChart.instance();
+            default:                  throw new Error();
         }
+    }
+
+    /** The ETag of an image, this also validates the id and the chart name. */
+    private static String toImageTag(final String id, final String filename, final int index, final PlottingDetails pd) {
+        final String limits = pd.getPlotLimits() == PlottingDetails.PlotLimits.AUTO ? "auto" : pd.getPlotWaveL() + "-" + pd.getPlotWaveU();
+        toChartType(filename);
+        return "\"" + UUID.fromString(id) + "-" + filename + "-" + index + "-" + limits + "\"";
+    }
+
+    /** Checks if an If-None-Match header matches the given ETag. */
+    private static boolean matches(final String ifNoneMatch, final String tag) {
+        return ifNoneMatch != null && Stream.of(ifNoneMatch.split(",")).map(String::trim).anyMatch(t -> t.equals(tag) || t.equals("*"));
+    }
+
+    private static byte[] toPng(final String tag, final ItcSpectroscopyResult results, final String filename, final int index, final PlottingDetails pd) throws IOException {
+        final byte[] cached = cachedImage.get(tag);
+        if (cached != null) return cached;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChartUtilities.writeBufferedImageAsPNG(out, toImage(results, filename, index, pd));
+        final byte[] png = out.toByteArray();
+        cachedImage.put(tag, png);
+        return png;
+    }
+
+    private static BufferedImage toImage(final ItcSpectroscopyResult results, final String filename, final int index, final PlottingDetails pd) {
+        final ITCChart chart = ITCChart.forSpcDataSet(results.chart(toChartType(filename), index), pd);
         return chart.getBufferedImage(800, 600);
     }
 
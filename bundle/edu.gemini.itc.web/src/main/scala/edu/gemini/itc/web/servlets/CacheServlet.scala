@@ -0,0 +1,35 @@
+package edu.gemini.itc.web.servlets
+
+import argonaut._, Argonaut._
+import edu.gemini.itc.service.{ ItcCache, ItcServiceImpl }
+import javax.servlet.http.{ HttpServlet, HttpServletRequest, HttpServletResponse }
+import javax.servlet.http.HttpServletResponse.SC_OK
+
+/**
+ * Servlet that responds to GET requests with the JSON-encoded metrics of the ITC results cache, which is
+ * shared by the JSON servlet and the ITC service used by the OT.
+ */
+class CacheServlet extends HttpServlet {
+
+  implicit val StatsEncode: EncodeJson[ItcCache.Stats] =
+    EncodeJson(s =>
+      ("hits"          := s.hits)          ->:
+      ("misses"        := s.misses)        ->:
+      ("joins"         := s.joins)         ->:
+      ("evictions"     := s.evictions)     ->:
+      ("size"          := s.size)          ->:
+      ("hitRate"       := s.hitRate)       ->:
+      ("meanComputeMs" := s.meanComputeMs) ->:
+      ("maxComputeMs"  := s.maxComputeMs)  ->:
+      jEmptyObject
+    )
+
+  override def doGet(req: HttpServletRequest, res: HttpServletResponse) = {
+    res.setStatus(SC_OK)
+    res.setContentType("text/json; charset=UTF-8")
+    val writer = res.getWriter
+    writer.write(ItcServiceImpl.Cache.stats.asJson.spaces2)
+    writer.close
+  }
+
+}
@@ -0,0 +1,111 @@
+package edu.gemini.itc.web.servlets
+
+import argonaut._, Argonaut._
+import edu.gemini.itc.shared.{ ItcParameters, ItcResult, ItcService }
+import edu.gemini.itc.web.json.{ ItcParametersCodec, ItcResultCodec }
+import java.util.concurrent.{ Callable, ExecutorCompletionService, Executors, ThreadFactory }
+import java.util.concurrent.atomic.AtomicInteger
+import javax.servlet.http.{ HttpServlet, HttpServletRequest, HttpServletResponse }
+import javax.servlet.http.HttpServletResponse.{ SC_BAD_REQUEST, SC_OK }
+import scala.io.Source
+import scala.util.control.NonFatal
+import scalaz._, Scalaz._
+
+/**
+ * Servlet that accepts a JSON-encoded array of `ItcParameters` as its POST payload and calculates them
+ * concurrently. The response is a JSON array which is written as the calculations complete, so its
+ * elements are in completion order; each element holds the index of the parameters in the request and
+ * either the JSON-encoded `ItcResult` or an error message:
+ *
+ * {{{
+ *   [ { "index": 1, "result": { ... } }, { "index": 0, "error": "..." }, ... ]
+ * }}}
+ *
+ * A failed calculation does not affect the others. Requests that can't be decoded or that contain more
+ * than `JsonBatchServlet.MaxBatchSize` parameters get `SC_BAD_REQUEST` with an error message.
+ */
+class JsonBatchServlet extends HttpServlet with ItcParametersCodec with ItcResultCodec {
+
+  import JsonBatchServlet._
+
+  override def doPost(req: HttpServletRequest, res: HttpServletResponse) = {
+
+    val itc: ItcService = JsonServlet.Itc
+
+    val enc  = Option(req.getCharacterEncoding).getOrElse("UTF-8")
+    val src  = Source.fromInputStream(req.getInputStream, enc)
+    val json = try src.mkString finally src.close
+
+    // Check the size of the batch before decoding any of its entries.
+    val params: Either[String, List[ItcParameters]] =
+      for {
+        j  <- Parse.parse(json)
+        es <- j.array.toRight("Expected a JSON array of parameters.")
+        _  <- Either.cond(es.size <= MaxBatchSize, (), s"Too many parameters, at most $MaxBatchSize are accepted per request.")
+        ps <- j.as[List[ItcParameters]].toEither.leftMap { case (msg, history) => s"$msg: ${history.shows}" }
+      } yield ps
+
+    params match {
+      case Left(err) => res.sendError(SC_BAD_REQUEST, err)
+      case Right(ps) =>
+        res.setStatus(SC_OK)
+        res.setContentType("text/json; charset=UTF-8")
+        val writer = res.getWriter // can only be called once :-\
+
+        // Identical parameters are calculated only once, they are joined by the results cache.
+        val service = new ExecutorCompletionService[Json](Pool)
+        ps.zipWithIndex.foreach { case (p, i) =>
+          service.submit(new Callable[Json] {
+            def call: Json = entry(i, itc, p)
+          })
+        }
+
+        writer.write("[")
+        (0 until ps.size).foreach { n =>
+          if (n > 0) writer.write(",")
+          writer.write("\n")
+          writer.write(service.take().get.nospaces)
+          writer.flush()
+        }
+        writer.write("\n]")
+        writer.close
+    }
+
+  }
+
+  private def entry(index: Int, itc: ItcService, p: ItcParameters): Json = {
+    val result: String \/ ItcResult =
+      try itc.calculate(p, true).leftMap(_.msg)
+      catch { case NonFatal(e) => Option(e.getMessage).getOrElse(e.toString).left }
+
+    result.fold(
+      err => ("index" := index) ->: ("error"  := err) ->: jEmptyObject,
+      r   => ("index" := index) ->: ("result" := r)   ->: jEmptyObject
+    )
+  }
+
+}
+
+object JsonBatchServlet {
+
+  /** The maximum number of parameters accepted in one request. */
+  val MaxBatchSize: Int = 1000
+
+  /**
+   * Number of threads that calculate batch entries, shared by all requests; can be overridden with system
+   * property `edu.gemini.itc.web.batchThreads`.
+   */
+  val Threads: Int = Integer.getInteger("edu.gemini.itc.web.batchThreads", Runtime.getRuntime.availableProcessors)
+
+  private val Pool = {
+    val count = new AtomicInteger()
+    Executors.newFixedThreadPool(Threads max 1, new ThreadFactory {
+      def newThread(r: Runnable): Thread = {
+        val t = new Thread(r, "ITC batch worker " + count.incrementAndGet())
+        t.setDaemon(true)
+        t
+      }
+    })
+  }
+
+}
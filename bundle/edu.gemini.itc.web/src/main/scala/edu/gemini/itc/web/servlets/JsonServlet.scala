@@ -18,8 +18,8 @@ class JsonServlet extends HttpServlet with ItcParametersCodec with ItcResultCode
 
   override def doPost(req: HttpServletRequest, res: HttpServletResponse) = {
 
-    // I don't know if this is threadsafe so we'll forge one per-request.
-    val itc: ItcService = new ItcServiceImpl
+    // The service is stateless (results are cached in a cache shared by all instances) so one will do.
+    val itc: ItcService = JsonServlet.Itc
 
     // Read the body, which with some luck is a JSON string
     val enc  = Option(req.getCharacterEncoding).getOrElse("UTF-8")
@@ -47,3 +47,9 @@ class JsonServlet extends HttpServlet with ItcParametersCodec with ItcResultCode
   }
 
 }
+
+object JsonServlet {
+
+  val Itc: ItcService = new ItcServiceImpl
+
+}
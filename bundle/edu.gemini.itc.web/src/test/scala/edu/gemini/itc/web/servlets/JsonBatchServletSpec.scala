@@ -0,0 +1,112 @@
+package edu.gemini.itc.web.servlets
+
+import argonaut._, Argonaut._
+import edu.gemini.itc.shared._
+import edu.gemini.itc.web.json.itcparameters._
+import edu.gemini.itc.web.json.itcresult._
+import edu.gemini.itc.web.arb
+import javax.servlet.http.HttpServletResponse
+import org.scalacheck.Arbitrary.arbitrary
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+import edu.gemini.spModel.gemini.gmos._
+import edu.gemini.spModel.core._
+
+object JsonBatchServletSpec extends Specification with ScalaCheck {
+
+  // Arbitraries
+  import arb.observingconditions._
+  import arb.telescopedetails._
+
+  val servlet = new JsonBatchServlet()
+
+  def params(conditions: ObservingConditions, telescope: TelescopeDetails, exposureTime: Double): ItcParameters =
+    ItcParameters(
+      source         = SourceDefinition(
+        profile      = PointSource,
+        distribution = LibraryStar.A0V,
+        norm         = 500.0,
+        units        = MagnitudeSystem.Vega,
+        normBand     = MagnitudeBand.V,
+        redshift     = Redshift.zero
+      ),
+      observation = ObservationDetails(
+        calculationMethod = SpectroscopyS2N(
+          exposures      = 10,
+          coadds         = None,
+          exposureTime   = exposureTime,
+          sourceFraction = 0.5,
+          offset         = 0.0
+        ),
+        analysisMethod = AutoAperture(
+          skyAperture  = 1.0
+        )
+      ),
+      conditions  = conditions,
+      telescope   = telescope,
+      instrument  = GmosParameters(
+        filter            = GmosNorthType.FilterNorth.g_G0301,
+        grating           = GmosNorthType.DisperserNorth.R831_G5302,
+        centralWavelength = Wavelength.fromNanometers(600),
+        fpMask            = GmosNorthType.FPUnitNorth.LONGSLIT_4,
+        ampGain           = GmosCommonType.AmpGain.HIGH,
+        ampReadMode       = GmosCommonType.AmpReadMode.FAST,
+        customSlitWidth   = None,
+        spatialBinning    = 1,
+        spectralBinning   = 1,
+        ccdType           = GmosCommonType.DetectorManufacturer.HAMAMATSU,
+        builtinROI        = GmosCommonType.BuiltinROI.FULL_FRAME,
+        site              = Site.GN
+      )
+    )
+
+  "JsonBatchServlet" should {
+
+    "return SC_BAD_REQUEST with an error message in the case of malformed Json" in {
+
+      val req = MockHttpServletRequest("blah")
+      val res = MockHttpServletResponse()
+
+      servlet.doPost(req, res)
+
+      res.getStatus()      mustEqual    HttpServletResponse.SC_BAD_REQUEST
+      res.body.length      mustNotEqual 0
+
+    }
+
+    "return SC_BAD_REQUEST with an error message if there are too many parameters" in {
+
+      val p   = params(arbitrary[ObservingConditions].sample.get, arbitrary[TelescopeDetails].sample.get, 1.0)
+      val req = MockHttpServletRequest(List.fill(JsonBatchServlet.MaxBatchSize + 1)(p).asJson.nospaces)
+      val res = MockHttpServletResponse()
+
+      servlet.doPost(req, res)
+
+      res.getStatus()      mustEqual    HttpServletResponse.SC_BAD_REQUEST
+      res.body             must contain("Too many parameters")
+
+    }
+
+    "return SC_OK with one result per parameters for a valid request" !
+      prop { (conditions: ObservingConditions, telescope: TelescopeDetails) =>
+
+        val ps  = List(1.0, 10.0, 1.0, 100.0).map(params(conditions, telescope, _))
+        val req = MockHttpServletRequest(ps.asJson.spaces2)
+        val res = MockHttpServletResponse()
+
+        req.setCharacterEncoding("UTF-8")
+        servlet.doPost(req, res)
+
+        res.getContentType() mustEqual    "text/json; charset=UTF-8"
+        res.getStatus()      mustEqual    HttpServletResponse.SC_OK
+
+        // Every index is answered once, with a result that can be decoded
+        val entries = Parse.parseOption(res.body).flatMap(_.array).getOrElse(Nil)
+        entries.flatMap(_.field("index").flatMap(_.as[Int].toOption)).sorted mustEqual ps.indices.toList
+        entries.forall(_.field("result").exists(_.as[ItcResult].toOption.isDefined)) mustEqual true
+
+      }
+
+  }
+
+}
@@ -46,7 +46,7 @@ public final class AcqCamRecipe implements ImagingRecipe {
     public ImagingResult calculateImaging() {
 
         // Get the summed source and sky
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope));
         final VisitableSampledSpectrum sed = calcSource.sed;
         final VisitableSampledSpectrum sky = calcSource.sky;
         final double sed_integral = sed.getIntegral();
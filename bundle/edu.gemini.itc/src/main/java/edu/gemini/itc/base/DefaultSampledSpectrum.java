@@ -50,7 +50,29 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         for (int i = 0; i <= numIntervals; ++i) {
             data[i] = sp.getY(i * xInterval + xStart);
         }
-        reset(data, xStart, xInterval);
+        replace(data, xStart, xInterval);
+    }
+
+    /**
+     * Construct a DefaultSampledSpectrum by sampling the spectrum with the
+     * given x and y values at specified interval.  Gives the same result
+     * as sampling a DefaultArraySpectrum with these values, without copying
+     * them first and in a single pass.
+     *
+     * @param x         x values of spectrum to sample, in increasing order
+     * @param y         y values of spectrum to sample
+     * @param xInterval Sampling interval (nm)
+     */
+    DefaultSampledSpectrum(double[] x, double[] y, double xInterval) {
+        double xStart = x[0];
+        double xEnd = x[x.length - 1];
+        int numIntervals = (int) ((xEnd - xStart) / xInterval);
+        double[] data = new double[numIntervals + 1];
+        LinearInterpolator sp = new LinearInterpolator(x, y, LinearInterpolator.isIncreasing(x));
+        for (int i = 0; i <= numIntervals; ++i) {
+            data[i] = sp.getY(i * xInterval + xStart);
+        }
+        replace(data, xStart, xInterval);
     }
 
     /**
@@ -80,16 +102,15 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         for (int i = 0; i <= numIntervals; ++i) {
            data[i] = sp.getY(xStart + i * xInterval);
         }
-        reset(data, xStart, xInterval);
+        replace(data, xStart, xInterval);
     }
 
     /**
      * Implements the Cloneable interface.
      */
     @Override public Object clone() {
-        double[] data = new double[getLength()];
-        System.arraycopy(getValues(), 0, data, 0, getLength());
-        return new DefaultSampledSpectrum(data, getStart(), getSampling());
+        // constructor copies the values
+        return new DefaultSampledSpectrum(_y, getStart(), getSampling());
     }
 
     @Override public void trim(double newStart, double newEnd) {
@@ -102,12 +123,10 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
         if (newEnd < getStart() || newStart > getEnd()) {
             return;
         }
-        double[] data = new double[new Double((newEnd - newStart) / _xInterval).intValue() + 4];
-        //System.out.println("os: " + getStart() + "ns: " + newStart + " oe: " + getEnd() + " ne: " + newEnd);
-        //System.out.println("startpos: " + new Double((newStart-getStart())/_xInterval).intValue() + "length: " + getLength() + " copylength: " + new Double((newEnd-newStart)/_xInterval).intValue());
-
-        System.arraycopy(getValues(), new Double((newStart - getStart()) / _xInterval).intValue(), data, 0, new Double((newEnd - newStart) / _xInterval).intValue());
-        reset(data, newStart, _xInterval);
+        final int length = (int) ((newEnd - newStart) / _xInterval);
+        double[] data = new double[length + 4];
+        System.arraycopy(getValues(), (int) ((newStart - getStart()) / _xInterval), data, 0, length);
+        replace(data, newStart, _xInterval);
     }
 
 
@@ -118,9 +137,17 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
      */
     @Override public void reset(double[] y, double xStart,
                       double xInterval) {
-        _y = new double[y.length];
         // need our own copy so client can't mess with it.
-        System.arraycopy(y, 0, _y, 0, y.length);
+        replace(y.clone(), xStart, xInterval);
+    }
+
+    /**
+     * Same as reset but takes ownership of the given array instead of
+     * copying it.
+     */
+    @Override public void replace(double[] y, double xStart,
+                        double xInterval) {
+        _y = y;
         _xStart = xStart;
         _xInterval = xInterval;
         _xEnd = _xStart + (_y.length - 1) * _xInterval;
@@ -259,7 +286,7 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
             x = (double) i * getSampling() + xStart;
             data[i] = getY(x / factor);
         }
-        reset(data, xStart, getSampling());
+        replace(data, xStart, getSampling());
     }
 
     /**
@@ -273,12 +300,8 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
     }
 
     @Override public void smoothY(int smoothing_element) {
-        double[] _y_temp;
-        _y_temp = new double[_y.length];
-
-        //System.out.println("Smoothing: " + smoothing_element);
         if (smoothing_element == 1.0) return;
-        //System.out.print("Start:");
+        final double[] _y_temp = new double[_y.length];
         for (int i = 0; i < getLength() - 1; ++i) {
             try {
                 if (i + smoothing_element / 2 >= getLength())
@@ -286,15 +309,14 @@ public class DefaultSampledSpectrum implements VisitableSampledSpectrum {
                 else if (i - smoothing_element / 2 > 0 && smoothing_element % 2 != 0) { //if odd
                     //System.out.println(" mod: " +smoothing_element%2);
                     //double temp = _y[i-2]+_y[i-1]+_y[i]+_y[i+1]+_y[i+2];
-                    _y_temp[i] = getAverage(i - (new Double((smoothing_element) / 2).intValue()), i + (new Double((smoothing_element) / 2).intValue()));
+                    _y_temp[i] = getAverage(i - smoothing_element / 2, i + smoothing_element / 2);
                     //_y[i]=temp/5;
                 } else if (i - smoothing_element / 2 > 0) //if even
-                    _y_temp[i] = getAverage(new Double(i - smoothing_element / 2).intValue() + 1, new Double(i + smoothing_element / 2).intValue());
+                    _y_temp[i] = getAverage(i - smoothing_element / 2 + 1, i + smoothing_element / 2);
             } catch (Exception e) {
                 System.out.println("Smooth: " + e.toString());
             }
         }
-        //System.out.println("End"+ new Double(smoothing_element/2).intValue()+ "  " + getSampling());
         _y = _y_temp;
     }
 
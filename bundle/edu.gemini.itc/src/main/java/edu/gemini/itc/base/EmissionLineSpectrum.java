@@ -83,6 +83,10 @@ public final class EmissionLineSpectrum implements VisitableSampledSpectrum {
         _spectrum.reset(s, v, r);
     }
 
+    @Override public void replace(final double[] s, final double v, final double r) {
+        _spectrum.replace(s, v, r);
+    }
+
     @Override public void accept(final SampledSpectrumVisitor v) {
         _spectrum.accept(v);
     }
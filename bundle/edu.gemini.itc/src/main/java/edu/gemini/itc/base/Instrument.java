@@ -84,13 +84,11 @@ public abstract class Instrument {
     }
 
     /**
-     * Method to iterate through the Components list and apply the
-     * accept method of each component to a sed.
+     * Method to apply the transmission of all the components in the
+     * Components list to a sed, in a single pass over the sed.
      */
     public void convolveComponents(VisitableSampledSpectrum sed) {
-        for (final TransmissionElement te : components) {
-            sed.accept(te);
-        }
+        TransmissionElement.visitAll(sed, components);
     }
 
     /**
@@ -0,0 +1,93 @@
+package edu.gemini.itc.base;
+
+/**
+ * Linear interpolation over the x and y arrays of a spectrum.  It gives
+ * exactly the values of {@link DefaultArraySpectrum#getY(double)} but,
+ * as long as it is asked for increasing x values, it continues the search
+ * for the lower index from where the previous one ended instead of doing a
+ * binary search over the whole array.  That makes a pass over a sampled
+ * spectrum linear, which is how spectra are sampled and convolved.
+ * <p/>
+ * The arrays are not copied and must not be modified while in use.  An
+ * interpolator keeps the position of the last search so it must not be
+ * shared between threads.
+ */
+final class LinearInterpolator {
+
+    private final double[] _x;
+    private final double[] _y;
+    private final boolean _increasing;
+
+    // Lower index and x value of the last search.
+    private int _low = 0;
+    private double _last = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param increasing whether the x values are known to be non-decreasing,
+     *                   see {@link #isIncreasing(double[])}; if not every
+     *                   search is a binary search
+     */
+    LinearInterpolator(final double[] x, final double[] y, final boolean increasing) {
+        _x = x;
+        _y = y;
+        _increasing = increasing;
+    }
+
+    /**
+     * Returns true if the given values are sorted in non-decreasing order.
+     */
+    static boolean isIncreasing(final double[] x) {
+        for (int i = 1; i < x.length; ++i) {
+            if (!(x[i - 1] <= x[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return y value at specified x using linear interpolation.
+     * Silently returns zero if x is out of spectrum range.
+     */
+    double getY(final double x) {
+        if (x < _x[0] || x > _x[_x.length - 1]) return 0;
+        final int low_index = getLowerIndex(x);
+        final int high_index = low_index + 1;
+        final double y1 = _y[low_index];
+        final double y2 = _y[high_index];
+        final double x1 = _x[low_index];
+        final double x2 = _x[high_index];
+        final double slope = (y2 - y1) / (x2 - x1);
+        return (slope * (x - x1) + y1);
+    }
+
+    /**
+     * Returns the index of the data point with largest x value less than x,
+     * or zero if there is none.
+     */
+    int getLowerIndex(final double x) {
+        if (_increasing && x >= _last) {
+            // All points up to the last lower index are less than x, so
+            // just walk forward.
+            while (_low + 1 < _x.length && _x[_low + 1] < x) ++_low;
+        } else {
+            _low = binarySearch(x);
+        }
+        _last = x;
+        return _low;
+    }
+
+    // Same search as DefaultArraySpectrum.getLowerIndex(double).
+    private int binarySearch(final double x) {
+        int low_index = 0;
+        int high_index = _x.length;
+        if (high_index - low_index <= 1) return low_index;
+        while (high_index - low_index > 1) {
+            final int index = (high_index + low_index) / 2;
+            if (_x[index] < x)
+                low_index = index;
+            else
+                high_index = index;
+        }
+        return low_index;
+    }
+
+}
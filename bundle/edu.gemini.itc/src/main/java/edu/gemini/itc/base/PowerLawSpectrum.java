@@ -31,7 +31,7 @@ public class PowerLawSpectrum extends DefaultSampledSpectrum {
             fluxArray[i] = _pLawFlux(lam, powerLawIndex);
         }
 
-        reset(fluxArray, _start, _sampling);
+        replace(fluxArray, _start, _sampling);
 
     }
 
@@ -0,0 +1,96 @@
+package edu.gemini.itc.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Runs independent parts of a recipe, e.g. the calculations for the
+ * different CCDs of a detector array, concurrently on a bounded pool of
+ * threads that is shared by all recipes.
+ * <p/>
+ * The calling thread takes part in the work: it runs every task that no
+ * pool thread has started yet, so tasks may use the executor themselves
+ * without any risk of starving the pool, and a full pool just means that
+ * the work is done by the caller.
+ */
+public final class RecipeExecutor {
+
+    /**
+     * Number of pool threads, can be overridden with system property
+     * <code>edu.gemini.itc.threads</code>; a value below 2 turns concurrent
+     * evaluation off.
+     */
+    public static final int THREADS = Integer.getInteger("edu.gemini.itc.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadPoolExecutor POOL = createPool();
+
+    private static ThreadPoolExecutor createPool() {
+        final int threads = Math.max(1, THREADS);
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory factory = r -> {
+            final Thread t = new Thread(r, "ITC recipe worker " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // Tasks that don't fit in the queue are dropped, they will be run by
+        // the calling thread instead.
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), factory, new ThreadPoolExecutor.DiscardPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private RecipeExecutor() {
+    }
+
+    /**
+     * Calculates <code>f(0)</code> to <code>f(n - 1)</code>, concurrently
+     * if possible.  The results are returned in index order.  If any of the
+     * calculations fail, the exception of the failed calculation with the
+     * lowest index is thrown, as if they had been done one after the other.
+     */
+    public static <T> List<T> map(final int n, final IntFunction<T> f) {
+        final List<T> results = new ArrayList<>(n);
+
+        if (n < 2 || THREADS < 2) {
+            for (int i = 0; i < n; i++) results.add(f.apply(i));
+            return results;
+        }
+
+        final List<FutureTask<T>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            tasks.add(new FutureTask<>(() -> f.apply(index)));
+        }
+
+        // Leave the first task to the calling thread.
+        for (int i = 1; i < n; i++) POOL.execute(tasks.get(i));
+
+        // Run everything that hasn't been started yet; running a task which
+        // is already running or done does nothing.
+        for (final FutureTask<T> task : tasks) task.run();
+
+        try {
+            for (final FutureTask<T> task : tasks) results.add(task.get());
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (final InterruptedException e) {
+            for (final FutureTask<T> task : tasks) task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
+}
@@ -21,6 +21,8 @@ import edu.gemini.spModel.core.UserDefinedSpectrum;
 import edu.gemini.spModel.core.Wavelength;
 import scala.Option;
 
+import java.util.Arrays;
+
 /**
  * This class encapsulates the process of creating a Spectral Energy
  * Distribution (SED).  (e.g. from a data file)
@@ -76,8 +78,9 @@ public final class SEDFactory {
      * </pre>
      */
     private static VisitableSampledSpectrum getSED(final String fileName, final double wavelengthInterval) {
-        final DefaultArraySpectrum as = new DefaultArraySpectrum(fileName);
-        return new DefaultSampledSpectrum(as, wavelengthInterval);
+        // sample the cached data file values directly, no need for a copy
+        final double[][] data = DatFile.arrays().apply(fileName);
+        return new DefaultSampledSpectrum(data[0], data[1], wavelengthInterval);
     }
 
 
@@ -252,23 +255,24 @@ public final class SEDFactory {
         // inputs: SED, AIRMASS, sky emmision file, mirror configuration,
         // output: SED and sky background as they arrive at instruments
 
-        final SampledSpectrumVisitor clouds = CloudTransmissionVisitor.create(odp.cc());
-        sed.accept(clouds);
+        final TransmissionElement clouds = CloudTransmissionVisitor.create(odp.cc());
 
-        final SampledSpectrumVisitor water = WaterTransmissionVisitor.create(
+        final TransmissionElement water = WaterTransmissionVisitor.create(
                 instrument,
                 odp.wv(),
                 odp.airmass(),
                 getWater(instrument));
-        sed.accept(water);
+
+        final TransmissionElement t = TelescopeTransmissionVisitor.create(tp);
+
+        // Apply clouds, water and telescope transmission to the sed in one pass
+        TransmissionElement.visitAll(sed, Arrays.asList(clouds, water, t));
 
         // Background spectrum is introduced here.
         final VisitableSampledSpectrum sky = SEDFactory.getSED(getSky(instrument, odp), instrument.getSampling());
         Option<VisitableSampledSpectrum> halo = Option.empty();
 
-        // Apply telescope transmission to both sed and sky
-        final SampledSpectrumVisitor t = TelescopeTransmissionVisitor.create(tp);
-        sed.accept(t);
+        // Apply telescope transmission to sky
         sky.accept(t);
 
         // Create and Add background for the telescope.
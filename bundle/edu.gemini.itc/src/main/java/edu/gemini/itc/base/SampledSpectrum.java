@@ -41,6 +41,13 @@ public interface SampledSpectrum extends ArraySpectrum {
     void reset(double[] flux, double wavelengthStart,
                                double wavelengthInterval);
 
+    /**
+     * Same as reset, but the spectrum takes ownership of the flux array
+     * instead of copying it.  The caller must not use the array afterwards.
+     */
+    void replace(double[] flux, double wavelengthStart,
+                 double wavelengthInterval);
+
     void trim(double wavelengthStart, double wavelengthEnd);
 
 }
@@ -1,5 +1,7 @@
 package edu.gemini.itc.base;
 
+import java.util.List;
+
 /**
  * A TransmissionElement has a transmission spectrum that can
  * be convolved with a spectrum.
@@ -11,34 +13,93 @@ package edu.gemini.itc.base;
  */
 public class TransmissionElement implements SampledSpectrumVisitor {
 
-    private final ArraySpectrum _trans;
+    // The transmission spectrum.  For elements read from a data file this
+    // is only created when asked for, the convolution works directly on the
+    // cached data file values.
+    private ArraySpectrum _trans;
+
+    // Transmission x and y values, or null if the transmission spectrum
+    // is not a DefaultArraySpectrum.  Never modified.
+    private final double[] _x;
+    private final double[] _y;
+    private final boolean _increasing;
 
     /**
      * Constructs a TransmissionElement
      */
     public TransmissionElement(final ArraySpectrum transmission) {
         _trans = (ArraySpectrum) transmission.clone();
+        if (_trans instanceof DefaultArraySpectrum) {
+            // returns a reference to the member data of our own copy
+            final double[][] data = _trans.getData();
+            _x = data[0];
+            _y = data[1];
+            _increasing = LinearInterpolator.isIncreasing(_x);
+        } else {
+            _x = null;
+            _y = null;
+            _increasing = false;
+        }
     }
 
     /**
      * Constructs a TransmissionElement using specified transmission data file
      */
     public TransmissionElement(final String resourceName) {
-        _trans = new DefaultArraySpectrum(resourceName);
+        final double[][] data = DatFile.arrays().apply(resourceName);
+        _x = data[0];
+        _y = data[1];
+        _increasing = LinearInterpolator.isIncreasing(_x);
+    }
+
+    // Transmission at increasing wavelengths, identical to _trans.getY(x).
+    private LinearInterpolator interpolator() {
+        return (_x == null) ? null : new LinearInterpolator(_x, _y, _increasing);
+    }
+
+    private double getTransmission(final LinearInterpolator i, final double x) {
+        return (i == null) ? _trans.getY(x) : i.getY(x);
     }
 
     /**
      * Apply the transmission convolution for this component.
      */
-    public void visit(final SampledSpectrum sed) {
+    public final void visit(final SampledSpectrum sed) {
+        final LinearInterpolator trans = interpolator();
         for (int i = 0; i < sed.getLength(); i++) {
             final double startval = sed.getX(i);
-            final double multiplier = _trans.getY(startval);
+            final double multiplier = getTransmission(trans, startval);
             sed.setY(i, sed.getY(i) * multiplier);
         }
     }
 
+    /**
+     * Applies the transmission convolution of all the given components in a
+     * single pass over the spectrum.  The result is identical to visiting
+     * the spectrum with each of the components in turn.
+     */
+    public static void visitAll(final SampledSpectrum sed, final List<? extends TransmissionElement> elements) {
+        final int n = elements.size();
+        final TransmissionElement[] tes = elements.toArray(new TransmissionElement[n]);
+        final LinearInterpolator[] trans = new LinearInterpolator[n];
+        for (int j = 0; j < n; j++) {
+            trans[j] = tes[j].interpolator();
+        }
+        for (int i = 0; i < sed.getLength(); i++) {
+            final double startval = sed.getX(i);
+            double y = sed.getY(i);
+            for (int j = 0; j < n; j++) {
+                y = y * tes[j].getTransmission(trans[j], startval);
+            }
+            sed.setY(i, y);
+        }
+    }
+
     public ArraySpectrum get_trans() {
+        if (_trans == null) {
+            // constructor copies the values
+            _trans = new DefaultArraySpectrum(new double[][] {_x, _y});
+        }
         return _trans;
     }
 }
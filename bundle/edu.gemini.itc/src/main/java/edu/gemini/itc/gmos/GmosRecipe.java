@@ -4,7 +4,9 @@ import edu.gemini.itc.base.GaussianMorphology;
 import edu.gemini.itc.base.ImagingArrayRecipe;
 import edu.gemini.itc.base.ImagingResult;
 import edu.gemini.itc.base.Recipe$;
+import edu.gemini.itc.base.RecipeExecutor;
 import edu.gemini.itc.base.SEDFactory;
+import edu.gemini.itc.base.SourceCache;
 import edu.gemini.itc.base.SpectroscopyArrayRecipe;
 import edu.gemini.itc.base.SpectroscopyResult;
 import edu.gemini.itc.base.USBMorphology;
@@ -106,22 +108,18 @@ public final class GmosRecipe implements ImagingArrayRecipe, SpectroscopyArrayRe
         return Recipe$.MODULE$.serviceGroupedResult(r, groups, headless);
     }
 
+    // The calculations for the different CCDs are independent of each other and done concurrently.
     public SpectroscopyResult[] calculateSpectroscopy() {
         final Gmos[] ccdArray = mainInstrument.getDetectorCcdInstruments();
-        final SpectroscopyResult[] results = new SpectroscopyResult[ccdArray.length];
-        for (int i = 0; i < ccdArray.length; i++) {
-            final Gmos instrument = ccdArray[i];
-            results[i] = calculateSpectroscopy(mainInstrument, instrument, ccdArray.length);
-        }
-        return results;
+        final List<SpectroscopyResult> results = RecipeExecutor.map(ccdArray.length, i ->
+                calculateSpectroscopy(mainInstrument, ccdArray[i], ccdArray.length));
+        return results.toArray(new SpectroscopyResult[results.size()]);
     }
 
     public ImagingResult[] calculateImaging() {
         final Gmos[] ccdArray = mainInstrument.getDetectorCcdInstruments();
-        final List<ImagingResult> results = new ArrayList<>();
-        for (final Gmos instrument : ccdArray) {
-            results.add(calculateImagingDo(instrument));
-        }
+        final List<ImagingResult> results = RecipeExecutor.map(ccdArray.length, i ->
+                calculateImagingDo(ccdArray[i]));
         return results.toArray(new ImagingResult[results.size()]);
     }
 
@@ -145,10 +143,10 @@ public final class GmosRecipe implements ImagingArrayRecipe, SpectroscopyArrayRe
         final int lastCcdIndex = tv.getDetectorCcdEndIndex(ccdIndex, detectorCount);
         final int numberOfSlits = instrument.isIfu2() ? 2 : 1;
 
+        // The source and background spectra are the same for both slits, but each slit needs its own copy.
         final SEDFactory.SourceResult[] src = new SEDFactory.SourceResult[numberOfSlits];
-
         for (int i = 0; i < numberOfSlits; i++) {
-            src[i] = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope);
+            src[i] = SourceCache.getOrCompute(p, ccdIndex, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope));
         }
 
         // Start of morphology section of ITC
@@ -197,7 +195,8 @@ public final class GmosRecipe implements ImagingArrayRecipe, SpectroscopyArrayRe
 
             specS2Narr = new SpecS2N[ifusToShow];
 
-            // process all IFU elements
+            // process all IFU elements; this must be done one after the other because
+            // each of them smooths and resamples the spectra of the slits in place
             double totalspsf = 0;
             if (instrument.isIfuUsed() &&  _obsDetailParameters.analysisMethod() instanceof IfuSum) {
                 for (Double aSf_list : sf_list) {
@@ -417,7 +416,7 @@ public final class GmosRecipe implements ImagingArrayRecipe, SpectroscopyArrayRe
         //
         // inputs: source morphology specification
 
-        final SEDFactory.SourceResult src = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope);
+        final SEDFactory.SourceResult src = SourceCache.getOrCompute(p, instrument.getDetectorCcdIndex(), () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope));
         final double sed_integral = src.sed.getIntegral();
         final double sky_integral = src.sky.getIntegral();
 
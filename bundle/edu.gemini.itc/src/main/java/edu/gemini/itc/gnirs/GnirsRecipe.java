@@ -98,7 +98,7 @@ public final class GnirsRecipe implements ImagingRecipe, SpectroscopyRecipe {
         }
 
         // Get the summed source and sky
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair));
         final VisitableSampledSpectrum sed = calcSource.sed;
         final VisitableSampledSpectrum sky = calcSource.sky;
         final Option<VisitableSampledSpectrum> halo = calcSource.halo;
@@ -332,7 +332,7 @@ public final class GnirsRecipe implements ImagingRecipe, SpectroscopyRecipe {
             altair = Option.<AOSystem>empty();
         }
 
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair));
 
         // End of the Spectral energy distribution portion of the ITC.
 
@@ -61,7 +61,7 @@ public final class GsaoiRecipe implements ImagingRecipe {
                 _obsConditionParameters.iq(),
                 _sdParameters);
 
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, new Some<>(gems));
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, new Some<>(gems)));
 
 
         // End of the Spectral energy distribution portion of the ITC.
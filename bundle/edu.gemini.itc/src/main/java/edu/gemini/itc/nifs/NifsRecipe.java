@@ -73,7 +73,7 @@ public final class NifsRecipe implements SpectroscopyRecipe {
             altair = Option.<AOSystem>empty();
         }
 
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair));
 
         // End of the Spectral energy distribution portion of the ITC.
 
@@ -85,7 +85,7 @@ public final class NiriRecipe implements ImagingRecipe, SpectroscopyRecipe {
             altair = Option.<AOSystem>empty();
         }
 
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair));
 
         // End of the Spectral energy distribution portion of the ITC.
 
@@ -152,7 +152,7 @@ public final class NiriRecipe implements ImagingRecipe, SpectroscopyRecipe {
             altair = Option.<AOSystem>empty();
         }
 
-        final SEDFactory.SourceResult calcSource = SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair);
+        final SEDFactory.SourceResult calcSource = SourceCache.getOrCompute(p, 0, () -> SEDFactory.calculate(instrument, _sdParameters, _obsConditionParameters, _telescope, altair));
 
         // End of the Spectral energy distribution portion of the ITC.
 
@@ -83,7 +83,7 @@ public class ResampleVisitor implements SampledSpectrumVisitor {
             }
         }
 
-        sed.reset(data, getStart(), getSampling());
+        sed.replace(data, getStart(), getSampling());
     }
 
     /**
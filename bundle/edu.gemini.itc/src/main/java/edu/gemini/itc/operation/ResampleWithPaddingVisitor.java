@@ -115,7 +115,7 @@ public class ResampleWithPaddingVisitor implements SampledSpectrumVisitor {
         }
 
 
-        sed.reset(data, getStart(), getSampling());
+        sed.replace(data, getStart(), getSampling());
     }
 
     /**
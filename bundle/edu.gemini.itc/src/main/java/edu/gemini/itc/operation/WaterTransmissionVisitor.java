@@ -2,7 +2,6 @@ package edu.gemini.itc.operation;
 
 import edu.gemini.itc.base.ITCConstants;
 import edu.gemini.itc.base.Instrument;
-import edu.gemini.itc.base.SampledSpectrumVisitor;
 import edu.gemini.itc.base.TransmissionElement;
 import edu.gemini.spModel.core.Site;
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality;
@@ -16,7 +15,7 @@ public final class WaterTransmissionVisitor {
     private WaterTransmissionVisitor() {
     }
 
-    public static SampledSpectrumVisitor create(final Instrument instrument, final SPSiteQuality.WaterVapor wv, final double airMass, final String file_name) {
+    public static TransmissionElement create(final Instrument instrument, final SPSiteQuality.WaterVapor wv, final double airMass, final String file_name) {
 
         final String name;
 
@@ -1,11 +1,14 @@
 package edu.gemini.itc.base
 
+import java.io.{BufferedInputStream, DataInputStream}
+import java.lang.ref.SoftReference
+import java.nio.ByteBuffer
 import java.util.Scanner
+import java.util.concurrent.ConcurrentHashMap
 import java.util.logging.Logger
 import java.util.regex.Pattern
 
 import scala.collection._
-import scalaz._
 
 /**
  * Set of tools to ingest dat files stored as resource files.
@@ -15,6 +18,10 @@ import scalaz._
  * know all the numbers are doubles. Using scan.next().toDouble is much more efficient than scan.nextDouble().
  * The contract regarding missing files and parsing errors is that this results in unchecked exceptions which
  * bubble all the way up to the servlet. This isn't better or worse than what we had originally.
+ *
+ * To avoid parsing altogether, the build compiles every dat file that only contains numbers into a binary
+ * image next to it (see `build.sbt`), which holds the same numbers as raw doubles. Spectra and filters are
+ * loaded from these images when available. Loaded files are only softly cached.
  */
 object DatFile {
   lazy val Log = Logger.getLogger(getClass.getName)
@@ -86,15 +93,21 @@ object DatFile {
 
   // ===== Cached data file loaders
 
-  val arrays = cache { s =>
-    scanArray(s)
+  val arrays = cache { f =>
+    compiled(f).fold(scanArray(scanFile(f)))(pairs(_, 0))
   }
 
-  val filters = cache { s =>
-    Filter(s.nextDouble(), scanArray(s))
+  val filters = cache { f =>
+    compiled(f).fold {
+      val s = scanFile(f)
+      Filter(s.nextDouble(), scanArray(s))
+    } { ds =>
+      Filter(ds(0), pairs(ds, 1))
+    }
   }
 
-  val gratings = cache { s =>
+  val gratings = cache { f =>
+    val s = scanFile(f)
     val l = mutable.MutableList[Grating]()
     while (s.hasNext) {
       val name           = s.next()
@@ -107,7 +120,8 @@ object DatFile {
     l.map(l => l.name -> l).toMap
   }
 
-  val instruments = cache { s =>
+  val instruments = cache { f =>
+    val s = scanFile(f)
     Instrument(s.next, s.nextInt, s.nextInt, s.nextDouble, s.next, s.nextDouble, s.nextDouble, s.nextDouble)
   }
 
@@ -123,11 +137,56 @@ object DatFile {
     data
   }
 
-  /** Loads a file and parses it using the given scanner unless it is already available in the cache. */
-  // Note: this could be changed to use a weak hash map in case we run into memory issues
-  private def cache[T](load: Scanner => T): String => T = Memo.immutableHashMapMemo[String, T] { f =>
-    Log.fine(s"Caching file $f")
-    load(scanFile(f))
+  // ===== Compiled data files
+
+  /** Suffix of the binary image of a dat file. */
+  val CompiledSuffix = ".bin"
+
+  /** Binary images start with this number ("ITCD") followed by the count of doubles and the doubles. */
+  val CompiledMagic = 0x49544344
+
+  /** Reads the numbers in the given data file from its binary image, if there is one. */
+  def compiled(f: String): Option[Array[Double]] =
+    Option(getClass.getResourceAsStream(f + CompiledSuffix)).map { is =>
+      val in = new DataInputStream(new BufferedInputStream(is))
+      try {
+        if (in.readInt() != CompiledMagic) throw new IllegalArgumentException(s"Invalid data file $f$CompiledSuffix")
+        val bytes = new Array[Byte](in.readInt() * 8)
+        in.readFully(bytes)
+        val ds    = new Array[Double](bytes.length / 8)
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(ds)
+        ds
+      } finally {
+        in.close()
+      }
+    }
+
+  // Same as scanArray for the numbers starting at the given index.
+  private def pairs(ds: Array[Double], from: Int): Data = {
+    val n = (ds.length - from) / 2
+    if (from + 2 * n != ds.length) throw new NoSuchElementException()
+    val data = Array(new Array[Double](n), new Array[Double](n))
+    var i = 0
+    while (i < n) {
+      data(0)(i) = ds(from + 2 * i)
+      data(1)(i) = ds(from + 2 * i + 1)
+      i += 1
+    }
+    data
+  }
+
+  /**
+   * Loads a file unless it is already available in the cache. Values are only softly referenced, so files
+   * which haven't been used for a while can be dropped when memory gets tight and will be loaded again.
+   */
+  private def cache[T <: AnyRef](load: String => T): String => T = {
+    val cached = new ConcurrentHashMap[String, SoftReference[T]]()
+    f => Option(cached.get(f)).flatMap(r => Option(r.get)).getOrElse {
+      Log.fine(s"Caching file $f")
+      val t = load(f)
+      cached.put(f, new SoftReference(t))
+      t
+    }
   }
 
 }
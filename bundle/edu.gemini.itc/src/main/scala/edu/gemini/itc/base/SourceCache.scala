@@ -0,0 +1,93 @@
+package edu.gemini.itc.base
+
+import java.util.concurrent.{Callable, ExecutionException, FutureTask}
+import java.util.function.Supplier
+
+import edu.gemini.itc.base.SEDFactory.SourceResult
+import edu.gemini.itc.shared._
+
+/**
+ * A bounded cache for the exposure independent stage of the recipes, i.e. the source, sky and halo spectra
+ * calculated by the SED factory. These spectra only depend on the source, the observing conditions, the
+ * telescope and the instrument configuration, so calculations that only differ in exposure time, number of
+ * exposures or coadds (e.g. the rows of a sequence or the steps of the exposure time solver) share them and
+ * only do the cheap exposure dependent part of the recipe.
+ *
+ * Recipes modify the spectra in place, therefore every caller gets its own copy of the cached spectra.
+ * Concurrent requests for the same spectra share a single calculation and failed calculations are not kept.
+ */
+object SourceCache {
+
+  /** Maximum number of cached spectra, can be overridden with system property `edu.gemini.itc.sourceCache.size`. */
+  val DefaultSize: Int = Integer.getInteger("edu.gemini.itc.sourceCache.size", 50)
+
+  private final case class Key(params: ItcParameters, part: Int)
+
+  // Access ordered, so that the eldest entry is the least recently used one.
+  private val entries = new java.util.LinkedHashMap[Key, FutureTask[SourceResult]](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[Key, FutureTask[SourceResult]]): Boolean =
+      size > DefaultSize
+  }
+
+  /**
+   * The parameters with all exposure dependent values of the calculation method reset. Two parameters which
+   * are equal after this only differ in the exposure dependent stage of the recipes.
+   */
+  def exposureIndependent(p: ItcParameters): ItcParameters = {
+    val m = p.observation.calculationMethod match {
+      case c: ImagingS2N      => c.copy(exposures = 0, coadds = None, exposureTime = 0)
+      case c: ImagingInt      => c.copy(sigma = 0, coadds = None, exposureTime = 0)
+      case c: SpectroscopyS2N => c.copy(exposures = 0, coadds = None, exposureTime = 0)
+    }
+    p.copy(observation = p.observation.copy(calculationMethod = m))
+  }
+
+  /**
+   * Gets a copy of the cached spectra for the given parameters or calculates them. The part distinguishes
+   * between different spectra calculated for the same parameters, e.g. for the different CCDs of GMOS.
+   */
+  def getOrCompute(p: ItcParameters, part: Int, calc: Supplier[SourceResult]): SourceResult = {
+    val key = Key(exposureIndependent(p), part)
+
+    val (task, owner) = entries.synchronized {
+      Option(entries.get(key)) match {
+        case Some(t) =>
+          (t, false)
+        case None    =>
+          val t = new FutureTask[SourceResult](new Callable[SourceResult] { def call(): SourceResult = calc.get })
+          entries.put(key, t)
+          (t, true)
+      }
+    }
+
+    if (owner) task.run()
+
+    val result = try {
+      task.get()
+    } catch {
+      case e: ExecutionException =>
+        entries.synchronized {
+          if (entries.get(key) eq task) entries.remove(key)
+        }
+        throw e.getCause
+    }
+    copy(result)
+  }
+
+  private def copy(r: SourceResult): SourceResult =
+    new SourceResult(
+      r.sed.clone().asInstanceOf[VisitableSampledSpectrum],
+      r.sky.clone().asInstanceOf[VisitableSampledSpectrum],
+      r.halo.map(_.clone().asInstanceOf[VisitableSampledSpectrum]))
+
+  /** Removes all cached spectra. */
+  def clear(): Unit = entries.synchronized {
+    entries.clear()
+  }
+
+  /** Number of cached spectra, including calculations in progress. */
+  def size: Int = entries.synchronized {
+    entries.size
+  }
+
+}
@@ -25,6 +25,10 @@ final class BlackBodySpectrum(spectrum: DefaultSampledSpectrum) extends Visitabl
     spectrum.reset(s, v, r)
   }
 
+  def replace(s: Array[Double], v: Double, r: Double) {
+    spectrum.replace(s, v, r)
+  }
+
   def applyWavelengthCorrection() {
     spectrum.applyWavelengthCorrection()
   }
@@ -0,0 +1,68 @@
+package edu.gemini.itc.service
+
+import edu.gemini.itc.shared._
+import edu.gemini.itc.shared.ItcService.Result
+
+import scala.annotation.tailrec
+import scalaz._
+import Scalaz._
+
+/**
+ * Finds the exposure time for which an S/N calculation reaches a given total S/N ratio. The total S/N grows
+ * with the exposure time t somewhere between t^0.5 (background limited) and t^1 (read noise limited), so a
+ * Newton iteration on log S/N over log t with the local exponent taken from the last two steps and clamped to
+ * that range converges in a few steps. Only the exposure time changes between the steps, so all of them
+ * share the exposure independent stage of the recipes, see [[edu.gemini.itc.base.SourceCache]].
+ */
+object ExposureTimeSolver {
+
+  /** Relative S/N tolerance. */
+  val Tolerance: Double = 1.0e-3
+
+  /** Maximum number of calculations. */
+  val MaxSteps: Int = 20
+
+  final case class Solution(exposureTime: Double, result: ItcResult)
+
+  /**
+   * Solves for the exposure time, starting with the exposure time of the given parameters.
+   * @param p     the parameters, the calculation method must be an S/N calculation
+   * @param s2n   the required total S/N ratio
+   * @param calc  the ITC calculation
+   */
+  def solve(p: ItcParameters, s2n: Double)(calc: ItcParameters => Result): ItcError \/ Solution = {
+
+    def withTime(t: Double): ItcError \/ ItcParameters = p.observation.calculationMethod match {
+      case m: ImagingS2N      => p.copy(observation = p.observation.copy(calculationMethod = m.copy(exposureTime = t))).right
+      case m: SpectroscopyS2N => p.copy(observation = p.observation.copy(calculationMethod = m.copy(exposureTime = t))).right
+      case _                  => ItcError("The exposure time can only be solved for S/N calculations.").left
+    }
+
+    def step(t: Double): ItcError \/ (Double, ItcResult) =
+      withTime(t).flatMap(calc).flatMap { r =>
+        val s = r.maxTotalSNRatio
+        if (s > 0 && !s.isInfinite) (s, r).right
+        else ItcError(f"Invalid S/N ratio $s%.3f for exposure time $t%.3f s.").left
+      }
+
+    @tailrec
+    def go(n: Int, t: Double, s: Double, r: ItcResult, exponent: Double): ItcError \/ Solution =
+      if (math.abs(s / s2n - 1) <= Tolerance) Solution(t, r).right
+      else if (n >= MaxSteps)                 ItcError(f"No exposure time found for S/N $s2n%.3f after $n%d steps.").left
+      else {
+        val t1 = t * math.pow(s2n / s, 1 / exponent)
+        step(t1) match {
+          case -\/(e)       => e.left
+          case \/-((s1, r1)) =>
+            val e = if (t1 == t || s1 == s) exponent else math.log(s1 / s) / math.log(t1 / t)
+            go(n + 1, t1, s1, r1, e max 0.5 min 1.0)
+        }
+      }
+
+    val t0 = p.observation.exposureTime
+    if (s2n <= 0)      ItcError("The required S/N ratio must be positive.").left
+    else if (t0 <= 0)  ItcError("The initial exposure time must be positive.").left
+    else step(t0).flatMap { case (s0, r0) => go(1, t0, s0, r0, 0.5) }
+  }
+
+}
@@ -0,0 +1,131 @@
+package edu.gemini.itc.service
+
+import java.util.concurrent.{Callable, ExecutionException, FutureTask}
+import java.util.concurrent.atomic.AtomicLong
+
+import edu.gemini.itc.service.ItcCache._
+import edu.gemini.itc.shared.ItcParameters
+import edu.gemini.itc.shared.ItcService.Result
+
+/**
+ * A bounded cache of ITC results keyed on the calculation parameters. The parameters are built from case
+ * classes (and a few value classes) with structural equality and hashing, so they are their own canonical key.
+ *
+ * Entries expire after a time to live and the least recently used entry is dropped once the cache is full.
+ * Concurrent requests for the same parameters share a single calculation. Only successful results are kept,
+ * errors are always recalculated.
+ */
+final class ItcCache(val maxSize: Int, val ttlMillis: Long) {
+
+  private final case class Key(params: ItcParameters, headless: Boolean)
+  private final class Entry(val task: FutureTask[Result], val created: Long)
+
+  private val hits         = new AtomicLong()
+  private val misses       = new AtomicLong()
+  private val joins        = new AtomicLong()
+  private val evictions    = new AtomicLong()
+  private val computeNanos = new AtomicLong()
+  private val maxNanos     = new AtomicLong()
+
+  // Access ordered, so that the eldest entry is the least recently used one.
+  private val entries = new java.util.LinkedHashMap[Key, Entry](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[Key, Entry]): Boolean = {
+      val evict = size > maxSize
+      if (evict) evictions.incrementAndGet()
+      evict
+    }
+  }
+
+  /**
+   * Gets the cached result for the given parameters or calculates it. If an identical calculation is
+   * already in progress this waits for its result instead of starting another one.
+   */
+  def getOrCompute(params: ItcParameters, headless: Boolean)(calc: => Result): Result = {
+    val key = Key(params, headless)
+    val now = System.currentTimeMillis
+
+    val (entry, owner) = entries.synchronized {
+      Option(entries.get(key)).filter(e => !e.task.isDone || (now - e.created < ttlMillis)) match {
+        case Some(e) =>
+          (e, false)
+        case None    =>
+          val e = new Entry(new FutureTask[Result](new Callable[Result] { def call(): Result = calc }), now)
+          entries.put(key, e)
+          (e, true)
+      }
+    }
+
+    if (owner) {
+      misses.incrementAndGet()
+      val start = System.nanoTime
+      entry.task.run()
+      record(System.nanoTime - start)
+    } else if (entry.task.isDone) {
+      hits.incrementAndGet()
+    } else {
+      joins.incrementAndGet()
+    }
+
+    val result = try {
+      entry.task.get()
+    } catch {
+      case e: ExecutionException =>
+        forget(key, entry)
+        throw e.getCause
+    }
+    if (result.isLeft) forget(key, entry)
+    result
+  }
+
+  private def record(nanos: Long): Unit = {
+    computeNanos.addAndGet(nanos)
+    var max = maxNanos.get
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get
+  }
+
+  private def forget(key: Key, entry: Entry): Unit = entries.synchronized {
+    if (entries.get(key) eq entry) entries.remove(key)
+  }
+
+  /** Removes all cached results. */
+  def clear(): Unit = entries.synchronized {
+    entries.clear()
+  }
+
+  /** Number of cached results, including calculations in progress. */
+  def size: Int = entries.synchronized {
+    entries.size
+  }
+
+  /** Gets the cache metrics collected since startup. */
+  def stats: Stats =
+    Stats(hits.get, misses.get, joins.get, evictions.get, size, computeNanos.get, maxNanos.get)
+
+}
+
+object ItcCache {
+
+  /**
+   * Cache metrics.
+   * @param hits          requests answered with a cached result
+   * @param misses        requests that required a calculation
+   * @param joins         requests that waited for an identical calculation already in progress
+   * @param evictions     results dropped because the cache was full
+   * @param size          current number of entries
+   * @param computeNanos  total time spent calculating
+   * @param maxNanos      longest single calculation
+   */
+  final case class Stats(hits: Long, misses: Long, joins: Long, evictions: Long, size: Int, computeNanos: Long, maxNanos: Long) {
+    def requests: Long        = hits + misses + joins
+    def hitRate: Double       = if (requests == 0) 0.0 else (hits + joins).toDouble / requests
+    def meanComputeMs: Double = if (misses == 0) 0.0 else computeNanos.toDouble / misses / 1000000.0
+    def maxComputeMs: Double  = maxNanos / 1000000.0
+  }
+
+  /** Default maximum number of cached results, can be overridden with system property `edu.gemini.itc.cache.size`. */
+  val DefaultSize: Int = Integer.getInteger("edu.gemini.itc.cache.size", 500)
+
+  /** Default time to live in seconds, can be overridden with system property `edu.gemini.itc.cache.ttl`. */
+  val DefaultTtl: Long = java.lang.Long.getLong("edu.gemini.itc.cache.ttl", 3600L)
+
+}
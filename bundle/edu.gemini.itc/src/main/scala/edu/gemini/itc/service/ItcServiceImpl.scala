@@ -19,47 +19,70 @@ import Scalaz._
  * The ITC service implementation.
  *
  * Note that all results are repacked in simplified Scala case classes in order not to leak out any of the
- * implementation details of the underlying ITC functionality.
+ * implementation details of the underlying ITC functionality. Results are cached in a cache that is shared
+ * by all instances of this service.
  */
 class ItcServiceImpl extends ItcService {
 
   import ItcService._
+  import ItcServiceImpl.Cache
 
   def calculate(p: ItcParameters, headless: Boolean): Result = try {
 
-    // update parameters sent from client with stuff that needs to be done on the server
-    val updatedParams: ItcParameters = {
+    val updatedParams = update(p)
 
-      // Get the SED data from an aux file. For now we can assume that the ITC service is running on the same
-      // machine as the database (localhost). In case this setup changes, we need to change this here, too.
-      def readAuxFile(id: String, name: String): SpectralDistribution = {
-        val programId     = SPProgramID.toProgramID(id)
-        val spectrumBytes = new AuxFileClient("localhost", 8443).fetchToMemory(programId, name)
-        val spectrum      = new String(spectrumBytes)
-        UserDefinedSpectrum(name, spectrum)
-      }
+    // execute ITC service call with updated parameters, unless the result is cached already
+    Cache.getOrCompute(updatedParams, headless) {
+      calculateUncached(updatedParams, headless)
+    }
 
-      // if a user defined source distribution is involved we need to read the aux file and update the parameters accordingly
-      def updatedSrc(s: SourceDefinition) = s.distribution match {
-        case AuxFileSpectrum.Undefined    => throw new RuntimeException("The user SED is undefined.")   // "User Defined", but no SED file was available
-        case AuxFileSpectrum(anId, aName) => s.copy(distribution = readAuxFile(anId, aName))            // "User Defined", we need to replace placeholder with aux file
-        case _                            => s                                                          // for all other cases we can use what's there
+  } catch {
+    case e: Throwable => ItcResult.forException(e)
+  }
+
+  /**
+   * Finds the exposure time for which the S/N calculation given by the parameters reaches the required total
+   * S/N ratio, starting from the exposure time in the parameters. The intermediate results are not cached.
+   */
+  def exposureTime(p: ItcParameters, s2n: Double): ItcError \/ ExposureTimeSolver.Solution = try {
+    ExposureTimeSolver.solve(update(p), s2n) { pt =>
+      try calculateUncached(pt, headless = true) catch {
+        case e: Throwable => ItcResult.forException(e)
       }
+    }
+  } catch {
+    case e: Throwable => ItcError(e.getMessage).left
+  }
 
-      // do any updates necessary
-      p.copy(source = updatedSrc(p.source))
+  // update parameters sent from client with stuff that needs to be done on the server
+  private def update(p: ItcParameters): ItcParameters = {
+
+    // Get the SED data from an aux file. For now we can assume that the ITC service is running on the same
+    // machine as the database (localhost). In case this setup changes, we need to change this here, too.
+    def readAuxFile(id: String, name: String): SpectralDistribution = {
+      val programId     = SPProgramID.toProgramID(id)
+      val spectrumBytes = new AuxFileClient("localhost", 8443).fetchToMemory(programId, name)
+      val spectrum      = new String(spectrumBytes)
+      UserDefinedSpectrum(name, spectrum)
     }
 
-    // execute ITC service call with updated parameters
-    updatedParams.observation.calculationMethod match {
-      case _: Imaging       => calculateImaging(updatedParams)
-      case _: Spectroscopy  => calculateSpectroscopy(updatedParams, headless)
+    // if a user defined source distribution is involved we need to read the aux file and update the parameters accordingly
+    def updatedSrc(s: SourceDefinition) = s.distribution match {
+      case AuxFileSpectrum.Undefined    => throw new RuntimeException("The user SED is undefined.")   // "User Defined", but no SED file was available
+      case AuxFileSpectrum(anId, aName) => s.copy(distribution = readAuxFile(anId, aName))            // "User Defined", we need to replace placeholder with aux file
+      case _                            => s                                                          // for all other cases we can use what's there
     }
 
-  } catch {
-    case e: Throwable => ItcResult.forException(e)
+    // do any updates necessary
+    p.copy(source = updatedSrc(p.source))
   }
 
+  private def calculateUncached(p: ItcParameters, headless: Boolean): Result =
+    p.observation.calculationMethod match {
+      case _: Imaging       => calculateImaging(p)
+      case _: Spectroscopy  => calculateSpectroscopy(p, headless)
+    }
+
   // === Imaging
 
   private def calculateImaging(p: ItcParameters): Result =
@@ -118,3 +141,10 @@ class ItcServiceImpl extends ItcService {
 
 
 }
+
+object ItcServiceImpl {
+
+  /** The results cache shared by all service instances. */
+  val Cache: ItcCache = new ItcCache(ItcCache.DefaultSize, ItcCache.DefaultTtl * 1000)
+
+}
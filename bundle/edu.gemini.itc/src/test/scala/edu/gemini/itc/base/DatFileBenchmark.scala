@@ -0,0 +1,57 @@
+package edu.gemini.itc.base
+
+import java.io.File
+
+import edu.gemini.itc.baseline.BaselineGmos
+import edu.gemini.itc.service.ItcServiceImpl
+import edu.gemini.itc.shared.ItcParameters
+
+/**
+ * Compares the time it takes to load the data files from the text files and from their binary images, and
+ * reports the latency of the first ITC calculation. Run it in a fresh JVM from the bundle directory with the
+ * compiled resources on the classpath; to get the numbers from before the data files were compiled, run it
+ * without them.
+ *
+ * {{{
+ *   DatFileBenchmark [resource directory]
+ * }}}
+ */
+object DatFileBenchmark {
+
+  private def files(dir: File): List[File] =
+    Option(dir.listFiles).toList.flatten.flatMap { f =>
+      if (f.isDirectory) files(f)
+      else if (f.getName.endsWith(".dat") || f.getName.endsWith(".nm")) List(f)
+      else Nil
+    }
+
+  private def millis[A](a: => A): (A, Double) = {
+    val t0 = System.nanoTime
+    val r  = a
+    (r, (System.nanoTime - t0) / 1000000.0)
+  }
+
+  def main(args: Array[String]): Unit = {
+    val dir = new File(if (args.length > 0) args(0) else "src/main/resources")
+
+    // first calculation, including loading all the data files it needs
+    val f = BaselineGmos.Fixtures.head
+    val (_, first) = millis(new ItcServiceImpl().calculate(ItcParameters(f.src, f.odp, f.ocp, f.tep, f.ins), headless = true))
+    println(f"first calculation   $first%10.0f ms")
+
+    val names    = files(dir).map(f => "/" + dir.toURI.relativize(f.toURI).getPath)
+    val compiled = names.filter(n => getClass.getResource(n + DatFile.CompiledSuffix) != null)
+
+    val (_, text) = millis(compiled.foreach { n =>
+      val s = DatFile.scanFile(n)
+      while (s.hasNext) s.next().toDouble
+      s.close()
+    })
+    val (_, binary) = millis(compiled.foreach(DatFile.compiled))
+
+    println(f"${compiled.size}%d of ${names.size}%d data files compiled")
+    println(f"load as text        $text%10.0f ms")
+    println(f"load binary images  $binary%10.0f ms")
+  }
+
+}
@@ -202,4 +202,20 @@ class DatFileTest {
     assert(data(1).size == 25)
   }
 
+  @Test
+  def compiledFiles(): Unit = {
+    // the build creates the binary images, they must hold exactly the numbers in the dat files
+    List("/acqcam/colfilt_B_G0152.dat", "/flamingos2/HK.dat", "/michelle/michelle_SI_1.dat", "/sed/stellar/a0v.nm").foreach { f =>
+      val compiled = DatFile.compiled(f)
+      assert(compiled.isDefined)
+      val s = DatFile.scanFile(f)
+      val scanned = Iterator.continually(s).takeWhile(_.hasNext).map(_.next().toDouble).toArray
+      s.close()
+      assert(compiled.get.sameElements(scanned))
+    }
+
+    // files with text can't be compiled
+    assert(DatFile.compiled("/gmos/gmos_n.dat").isEmpty)
+  }
+
 }
@@ -0,0 +1,42 @@
+package edu.gemini.itc.base
+
+import java.util.function.IntFunction
+
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.collection.JavaConverters._
+
+/**
+ * Tests for the concurrent evaluation of recipe parts.
+ */
+class RecipeExecutorTest {
+
+  private def map[T](n: Int)(f: Int => T): List[T] =
+    RecipeExecutor.map(n, new IntFunction[T] { def apply(i: Int): T = f(i) }).asScala.toList
+
+  @Test
+  def keepsIndexOrder(): Unit = {
+    val r = map(50) { i => Thread.sleep((50 - i) % 7); i * i }
+    assertEquals((0 until 50).map(i => i * i).toList, r)
+  }
+
+  @Test
+  def allowsNestedUse(): Unit = {
+    // more nested tasks than there are pool threads and queue slots
+    val r = map(RecipeExecutor.THREADS + 2) { i => map(RecipeExecutor.THREADS * 8) { j => Thread.sleep(1); i + j }.sum }
+    assertEquals(RecipeExecutor.THREADS + 2, r.size)
+    assertEquals((0 until RecipeExecutor.THREADS * 8).sum, r.head)
+  }
+
+  @Test
+  def throwsFirstFailure(): Unit = {
+    try {
+      map(10) { i => if (i >= 3) throw new IllegalArgumentException(s"failed $i") else i }
+      fail()
+    } catch {
+      case e: IllegalArgumentException => assertEquals("failed 3", e.getMessage)
+    }
+  }
+
+}
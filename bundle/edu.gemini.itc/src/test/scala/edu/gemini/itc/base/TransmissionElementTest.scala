@@ -0,0 +1,81 @@
+package edu.gemini.itc.base
+
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+/**
+ * Checks that the single pass sampling and convolution of spectra gives exactly the values of the
+ * straightforward calculations using binary searches.
+ */
+class TransmissionElementTest {
+
+  private val random = new Random(42)
+
+  // Random spectrum with increasing x values and some duplicates, or with unsorted x values.
+  private def spectrum(n: Int, increasing: Boolean): Array[Array[Double]] = {
+    val xs = Array.iterate(100 + random.nextDouble() * 50, n) { x =>
+      if (random.nextInt(30) == 0) x
+      else if (increasing) x + random.nextDouble() * 2
+      else x + random.nextDouble() * 2 - 0.3
+    }
+    Array(xs, Array.fill(n)(random.nextDouble()))
+  }
+
+  private def assertSame(expected: Array[Double], actual: Array[Double]): Unit = {
+    assertEquals(expected.length, actual.length)
+    expected.indices.foreach { i =>
+      assertEquals(java.lang.Double.doubleToRawLongBits(expected(i)), java.lang.Double.doubleToRawLongBits(actual(i)))
+    }
+  }
+
+  @Test
+  def interpolatesLikeArraySpectrum(): Unit = {
+    (1 to 200).foreach { t =>
+      val data = spectrum(2 + random.nextInt(300), t % 5 != 0)
+      val as   = new DefaultArraySpectrum(data)
+      val li   = new LinearInterpolator(data(0), data(1), LinearInterpolator.isIncreasing(data(0)))
+      val xs   = Array.fill(300)(as.getStart - 2 + random.nextDouble() * (as.getEnd - as.getStart + 4))
+
+      // increasing, then random order
+      assertSame(xs.sorted.map(as.getY), xs.sorted.map(li.getY))
+      assertSame(xs.map(as.getY), xs.map(li.getY))
+    }
+  }
+
+  @Test
+  def samplesLikeArraySpectrum(): Unit = {
+    (1 to 200).foreach { t =>
+      val data     = spectrum(2 + random.nextInt(300), t % 5 != 0)
+      val interval = 0.05 + random.nextDouble()
+      val expected = new DefaultSampledSpectrum(new DefaultArraySpectrum(data), interval)
+      val actual   = new DefaultSampledSpectrum(data(0), data(1), interval)
+      assertEquals(expected.getStart, actual.getStart, 0)
+      assertSame(expected.getValues, actual.getValues)
+    }
+  }
+
+  @Test
+  def visitAllIsSameAsVisitingInTurn(): Unit = {
+    (1 to 200).foreach { t =>
+      val sed      = new DefaultSampledSpectrum(Array.fill(500)(random.nextDouble()), 120, 0.5)
+      val elements = List.fill(1 + random.nextInt(4))(new TransmissionElement(new DefaultArraySpectrum(spectrum(2 + random.nextInt(300), t % 5 != 0))))
+
+      // reference: multiply in turn using the binary searching transmission spectrum
+      val expected = sed.getValues.clone()
+      elements.foreach { te =>
+        expected.indices.foreach { i => expected(i) = expected(i) * te.get_trans.getY(sed.getX(i)) }
+      }
+
+      val visited = sed.clone.asInstanceOf[DefaultSampledSpectrum]
+      elements.foreach(visited.accept)
+      assertSame(expected, visited.getValues)
+
+      TransmissionElement.visitAll(sed, elements.asJava)
+      assertSame(expected, sed.getValues)
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package edu.gemini.itc.baseline
+
+import java.lang.management.ManagementFactory
+
+import edu.gemini.itc.base.SourceCache
+import edu.gemini.itc.baseline.util.Fixture
+import edu.gemini.itc.service.ItcServiceImpl
+import edu.gemini.itc.shared.{InstrumentDetails, ItcParameters}
+
+/**
+ * Runs the ITC calculations for the baseline fixtures of each instrument and reports the mean time and
+ * the number of bytes allocated per calculation. The results and source spectra caches are cleared before
+ * each calculation so that every one of them is done in full. Only allocations by the calling thread are
+ * counted, to compare allocations run with `-Dedu.gemini.itc.threads=1`; to compare the throughput of the
+ * concurrent evaluation of CCDs run with and without it.
+ *
+ * {{{
+ *   BaselineBenchmark [fixtures per instrument] [rounds] [instrument,...]
+ * }}}
+ */
+object BaselineBenchmark {
+
+  private val Instruments: List[(String, List[Fixture[_ <: InstrumentDetails]])] = List(
+    "AcqCam"   -> BaselineAcqCam.Fixtures,
+    "F2"       -> BaselineF2.Fixtures,
+    "GMOS"     -> BaselineGmos.Fixtures,
+    "GNIRS"    -> BaselineGnirs.Fixtures,
+    "GSAOI"    -> BaselineGsaoi.Fixtures,
+    "Michelle" -> BaselineMichelle.Fixtures,
+    "NIFS"     -> BaselineNifs.Fixtures,
+    "NIRI"     -> BaselineNiri.Fixtures,
+    "TRecs"    -> BaselineTRecs.Fixtures
+  )
+
+  private def allocatedBytes: Long =
+    ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean].getThreadAllocatedBytes(Thread.currentThread.getId)
+
+  private def params(f: Fixture[_ <: InstrumentDetails]): ItcParameters =
+    ItcParameters(f.src, f.odp, f.ocp, f.tep, f.ins)
+
+  // Runs all calculations once, returns total nanos and allocated bytes.
+  private def run(ps: List[ItcParameters]): (Long, Long) = {
+    val service = new ItcServiceImpl
+    var nanos   = 0L
+    var bytes   = 0L
+    ps.foreach { p =>
+      ItcServiceImpl.Cache.clear()
+      SourceCache.clear()
+      val b0 = allocatedBytes
+      val t0 = System.nanoTime
+      service.calculate(p, headless = true)
+      nanos += System.nanoTime - t0
+      bytes += allocatedBytes - b0
+    }
+    (nanos, bytes)
+  }
+
+  def main(args: Array[String]): Unit = {
+    val count  = if (args.length > 0) args(0).toInt else 20
+    val rounds = if (args.length > 1) args(1).toInt else 5
+    val only   = if (args.length > 2) args(2).split(",").toSet else Instruments.map(_._1).toSet
+
+    println(f"${""}%-10s ${"calcs"}%8s ${"ms/calc"}%10s ${"KB/calc"}%12s")
+    Instruments.filter(i => only(i._1)).foreach { case (name, fixtures) =>
+      val ps = fixtures.take(count).map(params)
+      run(ps) // warm up
+
+      val results = (1 to rounds).map(_ => run(ps))
+      val n       = (ps.size * rounds).toDouble
+      val ms      = results.map(_._1).sum / n / 1000000.0
+      val kb      = results.map(_._2).sum / n / 1024.0
+      println(f"$name%-10s ${ps.size}%8d $ms%10.2f $kb%12.0f")
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+package edu.gemini.itc.service
+
+import edu.gemini.itc.base.SourceCache
+import edu.gemini.itc.baseline.BaselineGmos
+import edu.gemini.itc.shared.TelescopeDetails.Coating
+import edu.gemini.itc.shared._
+import edu.gemini.spModel.core.{LibraryStar, MagnitudeBand, MagnitudeSystem, PointSource, Redshift}
+import edu.gemini.spModel.gemini.gmos.GmosCommonType.DetectorManufacturer
+import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.{CloudCover, ImageQuality, SkyBackground, WaterVapor}
+import edu.gemini.spModel.guide.GuideProbe
+import edu.gemini.spModel.telescope.IssPort
+import org.junit.Assert._
+import org.junit.{Before, Test}
+
+import scalaz._
+import Scalaz._
+
+/**
+ * Tests for the exposure time solver and the sharing of the exposure independent recipe stage.
+ */
+class ExposureTimeSolverTest {
+
+  // the caches are global, start from a clean slate
+  @Before
+  def clearCaches(): Unit = {
+    ItcServiceImpl.Cache.clear()
+    SourceCache.clear()
+  }
+
+  private def params(method: CalculationMethod) = ItcParameters(
+    source      = SourceDefinition(PointSource, LibraryStar.A0V, 20.0, MagnitudeSystem.Vega, MagnitudeBand.R, Redshift.zero),
+    observation = ObservationDetails(method, AutoAperture(5.0)),
+    conditions  = ObservingConditions(ImageQuality.PERCENT_70, CloudCover.PERCENT_50, WaterVapor.ANY, SkyBackground.PERCENT_50, 1.5),
+    telescope   = new TelescopeDetails(Coating.SILVER, IssPort.SIDE_LOOKING, GuideProbe.Type.PWFS),
+    instrument  = GhostParameters()
+  )
+
+  // S/N of a source with the given count rate over a background and read noise, and the number of calculations
+  private def model(source: Double, background: Double, readNoise: Double): (ItcParameters => ItcService.Result, () => Int) = {
+    var calls = 0
+    val calc  = (p: ItcParameters) => {
+      calls += 1
+      val t = p.observation.exposureTime
+      val s = source * t / math.sqrt(source * t + background * t + readNoise * readNoise)
+      ItcResult.forResult(ItcImagingResult(List(ItcCcd(s, s, 0.0, 1.0, 1.0, Nil))))
+    }
+    (calc, () => calls)
+  }
+
+  @Test
+  def solvesBetweenBackgroundAndReadNoiseLimits(): Unit = {
+    for {
+      (source, background, readNoise) <- List((100.0, 1.0, 1.0), (1.0, 1000.0, 5.0), (10.0, 0.01, 100.0), (5.0, 5.0, 20.0))
+      s2n                             <- List(1.0, 10.0, 100.0)
+      t0                              <- List(0.1, 60.0, 3600.0)
+    } {
+      val (calc, calls) = model(source, background, readNoise)
+      val r = ExposureTimeSolver.solve(params(ImagingS2N(1, None, t0, 1.0, 0.0)), s2n)(calc)
+      assertTrue(r.isRight)
+      assertEquals(s2n, r.toOption.get.result.maxTotalSNRatio, s2n * ExposureTimeSolver.Tolerance)
+      assertTrue(calls() <= 8)
+    }
+  }
+
+  @Test
+  def rejectsIntegrationTimeCalculations(): Unit = {
+    val (calc, calls) = model(100.0, 1.0, 1.0)
+    assertTrue(ExposureTimeSolver.solve(params(ImagingInt(10.0, 60.0, None, 1.0, 0.0)), 10.0)(calc).isLeft)
+    assertEquals(0, calls())
+  }
+
+  @Test
+  def passesErrorsOn(): Unit = {
+    val r = ExposureTimeSolver.solve(params(ImagingS2N(1, None, 60.0, 1.0, 0.0)), 10.0)(_ => ItcResult.forMessage("failed"))
+    assertEquals(ItcError("failed").left, r)
+  }
+
+  @Test
+  def sharesExposureIndependentStage(): Unit = {
+    val service = new ItcServiceImpl
+    // GMOS with the Hamamatsu CCDs calculates the spectra for each of its three CCDs
+    val f       = BaselineGmos.Fixtures.find { f =>
+      f.ins.ccdType == DetectorManufacturer.HAMAMATSU && f.odp.calculationMethod.isInstanceOf[ImagingS2N]
+    }.get
+    val p       = ItcParameters(f.src, f.odp, f.ocp, f.tep, f.ins)
+    def withTime(t: Double) = p.observation.calculationMethod match {
+      case m: ImagingS2N => p.copy(observation = p.observation.copy(calculationMethod = m.copy(exposureTime = t)))
+      case m             => fail(s"unexpected calculation method $m"); p
+    }
+
+    // calculate without the shared source stage
+    val expected = List(1.0, 10.0, 100.0).map { t =>
+      ItcServiceImpl.Cache.clear()
+      SourceCache.clear()
+      service.calculate(withTime(t), headless = true)
+    }
+    assertEquals(3, SourceCache.size) // one per CCD
+
+    val actual = List(1.0, 10.0, 100.0).map { t =>
+      ItcServiceImpl.Cache.clear()
+      service.calculate(withTime(t), headless = true)
+    }
+    assertEquals(3, SourceCache.size)
+    assertEquals(expected, actual)
+  }
+
+}
@@ -0,0 +1,119 @@
+package edu.gemini.itc.service
+
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import edu.gemini.itc.shared.TelescopeDetails.Coating
+import edu.gemini.itc.shared._
+import edu.gemini.spModel.core.{LibraryStar, MagnitudeBand, MagnitudeSystem, PointSource, Redshift}
+import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.{CloudCover, ImageQuality, SkyBackground, WaterVapor}
+import edu.gemini.spModel.guide.GuideProbe
+import edu.gemini.spModel.telescope.IssPort
+import org.junit.Assert._
+import org.junit.Test
+
+/**
+ * Tests for the ITC results cache.
+ */
+class ItcCacheTest {
+
+  private def params(airmass: Double) = ItcParameters(
+    source      = SourceDefinition(PointSource, LibraryStar.A0V, 20.0, MagnitudeSystem.Vega, MagnitudeBand.R, Redshift.zero),
+    observation = ObservationDetails(ImagingS2N(10, None, 60.0, 1.0, 0.0), AutoAperture(5.0)),
+    conditions  = ObservingConditions(ImageQuality.PERCENT_70, CloudCover.PERCENT_50, WaterVapor.ANY, SkyBackground.PERCENT_50, airmass),
+    telescope   = new TelescopeDetails(Coating.SILVER, IssPort.SIDE_LOOKING, GuideProbe.Type.PWFS),
+    instrument  = GhostParameters()
+  )
+
+  private val result = ItcResult.forResult(ItcImagingResult(List(ItcCcd(1.0, 2.0, 3.0, 4.0, 5.0, Nil))))
+
+  @Test
+  def cachesEqualParameters(): Unit = {
+    val cache = new ItcCache(10, 60000)
+    val calls = new AtomicInteger()
+
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); result }
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); result }
+    assertEquals(1, calls.get)
+    assertEquals(1, cache.stats.hits)
+
+    // different parameters or headless flag are calculated separately
+    cache.getOrCompute(params(2.0), headless = true)  { calls.incrementAndGet(); result }
+    cache.getOrCompute(params(1.5), headless = false) { calls.incrementAndGet(); result }
+    assertEquals(3, calls.get)
+    assertEquals(3, cache.stats.misses)
+  }
+
+  @Test
+  def doesNotCacheErrors(): Unit = {
+    val cache = new ItcCache(10, 60000)
+    val calls = new AtomicInteger()
+
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); ItcResult.forMessage("error") }
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); ItcResult.forMessage("error") }
+    assertEquals(2, calls.get)
+    assertEquals(0, cache.size)
+  }
+
+  @Test
+  def evictsLeastRecentlyUsed(): Unit = {
+    val cache = new ItcCache(2, 60000)
+    val calls = new AtomicInteger()
+    def get(airmass: Double) = cache.getOrCompute(params(airmass), headless = true) { calls.incrementAndGet(); result }
+
+    get(1.0); get(1.5); get(1.0); get(2.0)    // 1.5 is the least recently used one
+    assertEquals(1, cache.stats.evictions)
+    get(1.0)
+    assertEquals(3, calls.get)
+    get(1.5)
+    assertEquals(4, calls.get)
+  }
+
+  @Test
+  def expires(): Unit = {
+    val cache = new ItcCache(10, 0)
+    val calls = new AtomicInteger()
+
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); result }
+    Thread.sleep(5)
+    cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); result }
+    assertEquals(2, calls.get)
+  }
+
+  @Test
+  def sharesConcurrentCalculations(): Unit = {
+    val cache   = new ItcCache(10, 60000)
+    val calls   = new AtomicInteger()
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    val pool    = Executors.newFixedThreadPool(4)
+
+    try {
+      val first = pool.submit(new java.util.concurrent.Callable[ItcService.Result] {
+        def call() = cache.getOrCompute(params(1.5), headless = true) {
+          calls.incrementAndGet()
+          started.countDown()
+          release.await()
+          result
+        }
+      })
+      started.await()
+
+      val others = (1 to 3).map { _ =>
+        pool.submit(new java.util.concurrent.Callable[ItcService.Result] {
+          def call() = cache.getOrCompute(params(1.5), headless = true) { calls.incrementAndGet(); result }
+        })
+      }
+
+      // wait until all of them are waiting for the calculation in progress
+      while (cache.stats.joins < 3) Thread.sleep(1)
+      release.countDown()
+
+      (first +: others).foreach(f => assertEquals(result, f.get(10, TimeUnit.SECONDS)))
+      assertEquals(1, calls.get)
+    } finally {
+      pool.shutdownNow()
+    }
+  }
+
+}
@@ -223,9 +223,9 @@ public class ObservationElements implements Serializable {
         ISPNode parent = node.getParent();
 
         if (parent == null) { //no parent, this might be the Program
-            Object o = node.getDataObject();
+            Object o = node.getDataObjectSnapshot();
             if (o instanceof SPProgram && node instanceof ISPProgram) {
-                _program = (SPProgram)node.getDataObject();
+                _program = (SPProgram)o;
                 _programNode = (ISPProgram)node;
             }
             return;
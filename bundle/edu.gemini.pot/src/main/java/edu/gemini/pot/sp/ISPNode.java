@@ -181,6 +181,19 @@ public interface ISPNode {
      */
     ISPDataObject getDataObject();
 
+    /**
+     * Returns the data object for this node without copying it or taking the
+     * program lock.  The object is shared with every other caller and must
+     * be treated as read-only.  Since updates replace the data object rather
+     * than modify it, the object returned is a consistent snapshot that is
+     * unaffected by later changes to the node.  Use
+     * <code>{@link #getDataObject}</code> instead to obtain a copy that may
+     * be modified and stored.
+     *
+     * @return the shared data object for the node
+     */
+    ISPDataObject getDataObjectSnapshot();
+
     /**
      * Replaces the data object for this node.  This is a convenience method
      * that allows direct access to the "DataObject" client data.  It is
@@ -1,26 +1,25 @@
 package edu.gemini.pot.sp;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Provides a low-level API for getting read/write locks associated with
- * SPNodeKeys.  Locks are created on demand but never removed.
+ * SPNodeKeys.  Locks are created on demand and kept in a concurrent map, so
+ * looking up the lock for a key that has been seen before takes no lock of
+ * its own.  Locks are discarded with <code>{@link #remove}</code> when the
+ * program they protect is deleted.
  */
 public enum SPNodeKeyLocks {
     instance;
 
-    private Map<SPNodeKey, ReentrantReadWriteLock> locks = new HashMap<SPNodeKey, ReentrantReadWriteLock>();
+    private final ConcurrentMap<SPNodeKey, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
 
-    private synchronized ReentrantReadWriteLock getLock(SPNodeKey key) {
-        ReentrantReadWriteLock l = locks.get(key);
-        if (l == null) {
-            l = new ReentrantReadWriteLock();
-            locks.put(key, l);
-        }
-        return l;
+    private ReentrantReadWriteLock getLock(SPNodeKey key) {
+        final ReentrantReadWriteLock l = locks.get(key);
+        return (l == null) ? locks.computeIfAbsent(key, k -> new ReentrantReadWriteLock()) : l;
     }
 
     private Lock getReadLock(SPNodeKey key)  { return getLock(key).readLock();  }
@@ -37,6 +36,29 @@ public enum SPNodeKeyLocks {
      * indicated program key.
      */
     public boolean isWriteLockHeld(SPNodeKey key) {
-        return getLock(key).isWriteLockedByCurrentThread();
+        final ReentrantReadWriteLock l = locks.get(key);
+        return (l != null) && l.isWriteLockedByCurrentThread();
+    }
+
+    /**
+     * Discards the lock associated with the given key, unless it is currently
+     * held or waited upon.  This should only be called once the program with
+     * this key has been deleted, since a thread that has just looked up the
+     * lock but not yet acquired it would otherwise be using a different lock
+     * than subsequent callers.
+     *
+     * @return <code>true</code> if there is no longer a lock for the key
+     */
+    public boolean remove(SPNodeKey key) {
+        final ReentrantReadWriteLock res = locks.computeIfPresent(key, (k, l) ->
+                (l.isWriteLocked() || (l.getReadLockCount() > 0) || l.hasQueuedThreads()) ? l : null);
+        return res == null;
+    }
+
+    /**
+     * Gets the number of keys for which a lock is being kept.
+     */
+    public int size() {
+        return locks.size();
     }
 }
@@ -35,6 +35,10 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
     // Holds the client data.
     private final Map<String, Object> _clientData = new HashMap<>(4);
 
+    // The data object in _clientData, published to readers that don't copy
+    // it.  Writes always store a fresh copy, so it is never modified in place.
+    private transient volatile ISPDataObject _dataObjectSnapshot;
+
     // Holds the transient client data.
     private transient PropertyChangeSupport _transSupport;
     private transient Map<String, Object> _transClientData;
@@ -353,18 +357,17 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
 
     @Override
     public boolean hasStaffOnlyFields() {
-        getProgramReadLock();
-        try {
-            return _clientData.get(DATA_OBJECT_KEY) instanceof ISPStaffOnlyFieldProtected;
-        } finally {
-            returnProgramReadLock();
-        }
+        return _dataObjectSnapshot instanceof ISPStaffOnlyFieldProtected;
     }
 
     public ISPDataObject getDataObject() {
         return (ISPDataObject) getClientData(DATA_OBJECT_KEY);
     }
 
+    public ISPDataObject getDataObjectSnapshot() {
+        return _dataObjectSnapshot;
+    }
+
     public PropagationId setDataObject(ISPDataObject newValue) {
         return setDataObject(newValue, false);
     }
@@ -497,6 +500,7 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
             }
 
             _clientData.put(name, newValue);
+            if (DATA_OBJECT_KEY.equals(name)) _dataObjectSnapshot = (ISPDataObject) newValue;
 
             final String propName = SPUtil.getClientDataPropertyName(name);
             final Object evtValue;
@@ -519,6 +523,7 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
         try {
             if (_clientData.containsKey(name)) {
                 Object val = _clientData.remove(name);
+                if (DATA_OBJECT_KEY.equals(name)) _dataObjectSnapshot = null;
                 markModified();
                 String propName = SPUtil.getClientDataPropertyName(name);
                 firePropertyChange(propName, val, null);
@@ -584,6 +589,7 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
     private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
         ois.defaultReadObject();
         _init();
+        _dataObjectSnapshot = (ISPDataObject) _clientData.get(DATA_OBJECT_KEY);
     }
 
     /**
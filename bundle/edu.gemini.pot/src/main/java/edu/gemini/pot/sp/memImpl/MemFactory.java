@@ -8,6 +8,7 @@
 package edu.gemini.pot.sp.memImpl;
 
 import edu.gemini.pot.sp.*;
+import edu.gemini.pot.sp.version.LifespanId;
 import edu.gemini.spModel.core.SPProgramID;
 import edu.gemini.spModel.data.ISPDataObject;
 import edu.gemini.spModel.gemini.init.NodeInitializers;
@@ -29,9 +30,23 @@ public final class MemFactory extends SPAbstractFactory {
 
     private final UUID uuid;
 
+    // Lifespan id to assign to new programs and plans, or null for a fresh
+    // random one each time.
+    private final LifespanId lifespanId;
+
     public MemFactory(UUID uuid)  {
+        this(uuid, null);
+    }
+
+    /**
+     * Creates a factory whose new root nodes all share the given lifespan id.
+     * This is only useful when restoring stored programs, which must keep the
+     * lifespan id they were created with.
+     */
+    public MemFactory(UUID uuid, LifespanId lifespanId)  {
         if (uuid == null) throw new IllegalArgumentException("uuid is null");
-        this.uuid = uuid;
+        this.uuid       = uuid;
+        this.lifespanId = lifespanId;
     }
 
     /**
@@ -44,7 +59,8 @@ public final class MemFactory extends SPAbstractFactory {
     }
 
     protected ISPProgram doCreateProgram(SPNodeKey key, SPProgramID progID) {
-        return MemProgram.create(key, progID, uuid);
+        return (lifespanId == null) ? MemProgram.create(key, progID, uuid) :
+                                      MemProgram.create(key, progID, uuid, lifespanId);
     }
 
 
@@ -66,7 +82,8 @@ public final class MemFactory extends SPAbstractFactory {
     }
 
     protected ISPNightlyRecord doCreateNightlyPlan(SPNodeKey key, SPProgramID planID) {
-        return MemNightlyRecord.create(key, planID, uuid);
+        return (lifespanId == null) ? MemNightlyRecord.create(key, planID, uuid) :
+                                      MemNightlyRecord.create(key, planID, uuid, lifespanId);
     }
 
     /**
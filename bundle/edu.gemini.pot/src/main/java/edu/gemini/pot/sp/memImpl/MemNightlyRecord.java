@@ -16,8 +16,12 @@ import java.util.*;
 public final class MemNightlyRecord extends MemAbstractBase implements ISPNightlyRecord {
 
     public static MemNightlyRecord create(SPNodeKey key, SPProgramID progId, UUID databaseId) {
+        return create(key, progId, databaseId, LifespanId.random());
+    }
+
+    public static MemNightlyRecord create(SPNodeKey key, SPProgramID progId, UUID databaseId, LifespanId lifespanId) {
         if (key == null) key = new SPNodeKey();
-        return new MemNightlyRecord(new NightlyRecordData(key, progId, databaseId, LifespanId.random()));
+        return new MemNightlyRecord(new NightlyRecordData(key, progId, databaseId, lifespanId));
     }
 
     public static MemNightlyRecord rename(ISPNightlyRecord that, SPNodeKey key, SPProgramID progId, UUID databaseId) {
@@ -19,8 +19,16 @@ public final class MemProgram extends MemAbstractContainer implements ISPProgram
      * Creates a new empty program with the given key and program id.
      */
     public static MemProgram create(SPNodeKey key, SPProgramID progId, UUID databaseId) {
+        return create(key, progId, databaseId, LifespanId.random());
+    }
+
+    /**
+     * Creates a new empty program with the given key, program id and lifespan
+     * id.  Used when restoring a stored program.
+     */
+    public static MemProgram create(SPNodeKey key, SPProgramID progId, UUID databaseId, LifespanId lifespanId) {
         if (key == null) key = new SPNodeKey();
-        return new MemProgram(new ProgramData(key, progId, databaseId, LifespanId.random()));
+        return new MemProgram(new ProgramData(key, progId, databaseId, lifespanId));
     }
 
     /**
@@ -88,6 +88,14 @@ public class DBAdmin implements IDBAdmin {
         _dataMan.shutdown();
     }
 
+    public boolean isLoaded() {
+        return _dataMan.isLoaded();
+    }
+
+    public void awaitLoaded() throws InterruptedException {
+        _dataMan.awaitLoaded();
+    }
+
     /**
      * Get Status information for the database
      *
@@ -104,4 +112,18 @@ public class DBAdmin implements IDBAdmin {
         return _dataMan.getTotalStorage();
     }
 
+    /**
+     * Returns the counters describing how programs have been written to disk.
+     */
+    public DBStorageStats getStorageStats() {
+        return _dataMan.getStorageStats();
+    }
+
+    /**
+     * Returns the queue depth and latency of the program writers.
+     */
+    public DBFlushStats getFlushStats() {
+        return _dataMan.getFlushStats();
+    }
+
 }
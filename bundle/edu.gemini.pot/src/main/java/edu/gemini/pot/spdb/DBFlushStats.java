@@ -0,0 +1,80 @@
+package edu.gemini.pot.spdb;
+
+import java.io.Serializable;
+
+/**
+ * Counters describing how modified programs are being written out.  A
+ * program becomes due for storage one storage interval after it is first
+ * modified, and is then handed to a bounded pool of writer threads.
+ */
+public final class DBFlushStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int waiting;
+    private final int writing;
+    private final long flushes;
+    private final long failures;
+    private final long totalLatencyMillis;
+    private final long maxLatencyMillis;
+    private final long stalls;
+
+    public DBFlushStats(int waiting, int writing, long flushes, long failures,
+                        long totalLatencyMillis, long maxLatencyMillis, long stalls) {
+        this.waiting            = waiting;
+        this.writing            = writing;
+        this.flushes            = flushes;
+        this.failures           = failures;
+        this.totalLatencyMillis = totalLatencyMillis;
+        this.maxLatencyMillis   = maxLatencyMillis;
+        this.stalls             = stalls;
+    }
+
+    /** Modified programs that are not yet due to be written. */
+    public int getWaiting() { return waiting; }
+
+    /** Programs handed to the writers but not yet written. */
+    public int getWriting() { return writing; }
+
+    /** Total queue depth, waiting plus writing. */
+    public int getQueueDepth() { return waiting + writing; }
+
+    /** Number of programs written. */
+    public long getFlushes() { return flushes; }
+
+    /** Number of writes that failed. */
+    public long getFailures() { return failures; }
+
+    /**
+     * Average time in milliseconds from a program first being modified until
+     * it was written.
+     */
+    public double getAverageLatencyMillis() {
+        return (flushes == 0) ? 0.0 : ((double) totalLatencyMillis) / flushes;
+    }
+
+    /** Longest time in milliseconds from modification to write. */
+    public long getMaxLatencyMillis() { return maxLatencyMillis; }
+
+    /**
+     * Number of times a due program had to wait because the writers were
+     * falling behind.
+     */
+    public long getStalls() { return stalls; }
+
+    /** Combines the counters of two independent flushers. */
+    public DBFlushStats plus(DBFlushStats that) {
+        return new DBFlushStats(
+                waiting + that.waiting,
+                writing + that.writing,
+                flushes + that.flushes,
+                failures + that.failures,
+                totalLatencyMillis + that.totalLatencyMillis,
+                Math.max(maxLatencyMillis, that.maxLatencyMillis),
+                stalls + that.stalls);
+    }
+
+    @Override public String toString() {
+        return String.format("queue depth=%d (%d waiting, %d writing), flushes=%d, failures=%d, latency avg=%.1f ms max=%d ms, stalls=%d",
+                getQueueDepth(), waiting, writing, flushes, failures, getAverageLatencyMillis(), maxLatencyMillis, stalls);
+    }
+}
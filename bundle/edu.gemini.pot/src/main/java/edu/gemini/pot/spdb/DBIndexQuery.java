@@ -0,0 +1,83 @@
+package edu.gemini.pot.spdb;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A query against the observation indexes maintained by the database.  A
+ * query is a conjunction of clauses, each of which names an index and the
+ * values that are acceptable for it.  An observation matches if, for every
+ * clause, it is indexed under at least one of the clause's values.  For
+ * example
+ *
+ * <pre>
+ *   DBIndexQuery.where("instrument", gmos, gmosSouth).and("status", ready)
+ * </pre>
+ *
+ * <p>Instances are immutable.
+ */
+public final class DBIndexQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Index name -> acceptable values
+    private final Map<String, Set<Object>> _clauses;
+
+    private DBIndexQuery(Map<String, Set<Object>> clauses) {
+        _clauses = clauses;
+    }
+
+    /**
+     * Creates a query matching observations indexed under any of the given
+     * values of the named index.
+     */
+    public static DBIndexQuery where(String index, Object... values) {
+        return new DBIndexQuery(Collections.<String, Set<Object>>emptyMap()).and(index, values);
+    }
+
+    /**
+     * Creates a query that, in addition to the clauses of this query, matches
+     * only observations indexed under any of the given values of the named
+     * index.  If this query already has a clause for the index, the values
+     * acceptable to both are kept.
+     */
+    public DBIndexQuery and(String index, Object... values) {
+        if (index == null) throw new IllegalArgumentException("index name is null");
+
+        final Set<Object> vals = new HashSet<>(Arrays.asList(values));
+        final Set<Object> prev = _clauses.get(index);
+        if (prev != null) vals.retainAll(prev);
+
+        final Map<String, Set<Object>> clauses = new LinkedHashMap<>(_clauses);
+        clauses.put(index, Collections.unmodifiableSet(vals));
+        return new DBIndexQuery(Collections.unmodifiableMap(clauses));
+    }
+
+    /**
+     * Gets the names of the indexes referred to by this query.
+     */
+    public Set<String> getIndexNames() {
+        return _clauses.keySet();
+    }
+
+    /**
+     * Gets the values acceptable for the named index, or <code>null</code>
+     * if the query places no restriction on it.
+     */
+    public Set<Object> getValues(String index) {
+        return _clauses.get(index);
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DBIndexQuery)) return false;
+        return _clauses.equals(((DBIndexQuery) o)._clauses);
+    }
+
+    @Override public int hashCode() {
+        return _clauses.hashCode();
+    }
+
+    @Override public String toString() {
+        return "DBIndexQuery" + _clauses;
+    }
+}
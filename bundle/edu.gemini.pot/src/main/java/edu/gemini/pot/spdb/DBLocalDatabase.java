@@ -33,9 +33,17 @@ public final class DBLocalDatabase implements IDBDatabaseService {
     private static final Logger LOG = Logger.getLogger(DBLocalDatabase.class.getName());
 
     public static IDBDatabaseService create(final File dbRootDir) throws IOException {
+        return create(dbRootDir, DBSerializationCodec.instance);
+    }
+
+    /**
+     * Creates a database that stores its programs with the given codec.
+     */
+    public static IDBDatabaseService create(final File dbRootDir, final IDBProgramCodec codec) throws IOException {
         final File dbDir = getVersionedDatabaseDir(dbRootDir);
         initDbDir(dbDir);
-        return new DBLocalDatabase(loadUuid(dbRootDir), new FileManager(dbDir));
+        final UUID uuid  = loadUuid(dbRootDir);
+        return new DBLocalDatabase(uuid, new FileManager(dbDir, uuid, codec, FileManager.DEFAULT_LOADER_THREADS));
     }
 
     public static IDBDatabaseService createTransient() {
@@ -60,9 +68,11 @@ public final class DBLocalDatabase implements IDBDatabaseService {
         }
     }
 
-    private static UUID loadUuid(File dbRootDir) {
-        // Set the UUID, creating it the first time and storing it into the
-        // database directory.
+    /**
+     * Gets the UUID of the database rooted at the given directory, creating
+     * it the first time and storing it into the database directory.
+     */
+    public static UUID loadUuid(File dbRootDir) {
         final UuidIo io = new UuidIo(dbRootDir);
         if (io.exists()) {
             return io.load();
@@ -87,6 +97,9 @@ public final class DBLocalDatabase implements IDBDatabaseService {
 
         // Handle trigger registrations.
         _triggerRegistrar = new TriggerRegistrar(_dataMan.getProgramManager());
+
+        // Everybody is listening, start reading the programs.
+        _dataMan.startLoading();
     }
 
     private static final class UuidIo {
@@ -336,6 +349,14 @@ public final class DBLocalDatabase implements IDBDatabaseService {
         _triggerRegistrar.unregister(condition, action);
     }
 
+    public void registerIndex(IDBIndexer indexer) {
+        _dataMan.getObservationIndex().register(indexer);
+    }
+
+    public void unregisterIndex(IDBIndexer indexer) {
+        _dataMan.getObservationIndex().unregister(indexer);
+    }
+
 }
 
 
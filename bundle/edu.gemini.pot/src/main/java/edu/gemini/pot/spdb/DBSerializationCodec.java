@@ -0,0 +1,67 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.memImpl.MemSerializer;
+import edu.gemini.spModel.data.ISPDataObject;
+
+import java.io.*;
+import java.util.UUID;
+
+/**
+ * The original program codec, which simply serializes the node tree with
+ * <code>{@link MemSerializer}</code>.  Journaled data objects are serialized
+ * in the same way.
+ */
+public enum DBSerializationCodec implements IDBProgramCodec {
+    instance;
+
+    public static final String NAME = "serialization";
+
+    private final MemSerializer _ser = new MemSerializer();
+
+    // Resolves classes with this bundle's class loader where possible, as
+    // MemSerializer does when reading the program file itself.
+    private static final class DataObjectInputStream extends ObjectInputStream {
+        DataObjectInputStream(InputStream is) throws IOException {
+            super(is);
+        }
+
+        @Override protected Class<?> resolveClass(ObjectStreamClass osc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(osc.getName(), false, DBSerializationCodec.class.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                return super.resolveClass(osc);
+            }
+        }
+    }
+
+    @Override public String getName() {
+        return NAME;
+    }
+
+    @Override public ISPRootNode load(File file, UUID databaseId) throws IOException {
+        return (ISPRootNode) _ser.load(file);
+    }
+
+    // MemSerializer holds the program read lock while it writes the node.
+    @Override public void store(ISPRootNode node, File file) throws IOException {
+        _ser.store(node, file);
+    }
+
+    @Override public byte[] encodeDataObject(ISPNode node, ISPDataObject dataObject) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(dataObject);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override public ISPDataObject decodeDataObject(ISPNode node, byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new DataObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (ISPDataObject) ois.readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Could not read the data object of " + node.getNodeKey(), ex);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.gemini.pot.spdb;
+
+import java.io.Serializable;
+
+/**
+ * Counters describing how the database has written programs to disk since it
+ * was started.  Modified programs are normally stored by appending the
+ * changed data objects to a per-program journal, and only occasionally
+ * rewritten in full, either because their structure changed or to compact
+ * the journal.
+ */
+public final class DBStorageStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final DBStorageStats EMPTY = new DBStorageStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long snapshotWrites;
+    private final long snapshotBytes;
+    private final long journalAppends;
+    private final long journalBytes;
+    private final long changedBytes;
+    private final long compactions;
+    private final long compactionMillis;
+    private final long journalSize;
+
+    public DBStorageStats(long snapshotWrites, long snapshotBytes,
+                          long journalAppends, long journalBytes,
+                          long changedBytes,
+                          long compactions, long compactionMillis,
+                          long journalSize) {
+        this.snapshotWrites   = snapshotWrites;
+        this.snapshotBytes    = snapshotBytes;
+        this.journalAppends   = journalAppends;
+        this.journalBytes     = journalBytes;
+        this.changedBytes     = changedBytes;
+        this.compactions      = compactions;
+        this.compactionMillis = compactionMillis;
+        this.journalSize      = journalSize;
+    }
+
+    /** Number of times a complete program file was written. */
+    public long getSnapshotWrites() { return snapshotWrites; }
+
+    /** Total bytes written to complete program files. */
+    public long getSnapshotBytes() { return snapshotBytes; }
+
+    /** Number of records appended to program journals. */
+    public long getJournalAppends() { return journalAppends; }
+
+    /** Total bytes appended to program journals. */
+    public long getJournalBytes() { return journalBytes; }
+
+    /**
+     * Bytes that had to be written to record the changes themselves: the
+     * journal records plus complete files written because a program was
+     * added or its structure changed.  Compactions are not included.
+     */
+    public long getChangedBytes() { return changedBytes; }
+
+    /** Number of times a journal was folded back into its program file. */
+    public long getCompactions() { return compactions; }
+
+    /** Total time spent compacting journals, in milliseconds. */
+    public long getCompactionMillis() { return compactionMillis; }
+
+    /** Current size on disk of all the journals, in bytes. */
+    public long getJournalSize() { return journalSize; }
+
+    /** Total bytes written to disk. */
+    public long getBytesWritten() { return snapshotBytes + journalBytes; }
+
+    /**
+     * Ratio of the bytes written to disk to the bytes needed to record the
+     * changes, or 0 if nothing has been written.
+     */
+    public double getWriteAmplification() {
+        return (changedBytes == 0) ? 0.0 : ((double) getBytesWritten()) / changedBytes;
+    }
+
+    @Override public String toString() {
+        return String.format("snapshots=%d (%d bytes), journal appends=%d (%d bytes), compactions=%d (%d ms), journal size=%d bytes, write amplification=%.2f",
+                snapshotWrites, snapshotBytes, journalAppends, journalBytes, compactions, compactionMillis, journalSize, getWriteAmplification());
+    }
+}
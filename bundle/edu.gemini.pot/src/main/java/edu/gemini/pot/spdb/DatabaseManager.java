@@ -12,6 +12,8 @@ import edu.gemini.pot.util.POTUtil;
 
 import java.io.IOException;
 import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -20,11 +22,14 @@ import java.util.UUID;
  * as the file, program, and storage managers.
  */
 final class DatabaseManager {
+    private static final Logger LOG = Logger.getLogger(DatabaseManager.class.getName());
+
     private final IDBPersister _persister;
     private final ProgramManager<ISPProgram> _progMan;
     private final ProgramManager<ISPNightlyRecord> _planMan;
     private final StorageManager<ISPProgram> _progStoreMan;
     private final StorageManager<ISPNightlyRecord> _planStoreMan;
+    private final ObservationIndex _obsIndex;
 
     //private DBAdmin _admin;
     private final ISPFactory _fact;
@@ -40,22 +45,67 @@ final class DatabaseManager {
     DatabaseManager(IDBPersister persister, UUID uuid) throws IOException {
         this.functorLogger = new FunctorLogger();
 
-        // Create the file manager and load the programs in the database.
         _persister = persister;
 
-        // Give the programs to the program manager.  It will keep track of
-        // them and provide access to them.
-        _progMan = new ProgramManager<ISPProgram>(_persister.reloadPrograms());
-        _planMan = new ProgramManager<ISPNightlyRecord>(_persister.reloadPlans());
+        // The program managers keep track of the programs and provide access
+        // to them.  They are filled in as the programs are loaded.
+        _progMan = new ProgramManager<ISPProgram>();
+        _planMan = new ProgramManager<ISPNightlyRecord>();
 
         // Create the storage manager to keep the program files up-to-date
         // as they change and to store/remove programs as necessary.
         _progStoreMan = new StorageManager<ISPProgram>(_progMan, _persister);
         _planStoreMan = new StorageManager<ISPNightlyRecord>(_planMan, _persister);
 
+        // Maintain the observation indexes as programs are loaded and edited.
+        _obsIndex = new ObservationIndex(_progMan);
+
         _fact = POTUtil.createFactory(uuid);
     }
 
+    /**
+     * Starts loading the programs in the database on a background thread.
+     * Programs become available through the program managers as they are
+     * read; callers that need the full set wait for the load to finish.
+     */
+    void startLoading() {
+        final Thread t = new Thread(() -> {
+            _load("programs", _progMan, _persister::reloadPrograms);
+            _load("plans",    _planMan, _persister::reloadPlans);
+        }, "ODB Loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private interface Loader<N extends ISPRootNode> {
+        void load(IDBPersister.Sink<N> sink) throws IOException;
+    }
+
+    private static <N extends ISPRootNode> void _load(String name, ProgramManager<N> pm, Loader<N> loader) {
+        try {
+            loader.load(pm);
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "Problem loading " + name + ", only partially loaded", ex);
+        } finally {
+            pm.loadComplete();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> when all programs and plans have been loaded.
+     */
+    boolean isLoaded() {
+        return _progMan.isLoaded() && _planMan.isLoaded();
+    }
+
+    /**
+     * Waits for all programs and plans to be loaded.
+     */
+    void awaitLoaded() throws InterruptedException {
+        _progMan.awaitLoaded();
+        _planMan.awaitLoaded();
+    }
+
     /**
      * Gets the factory used to create new program nodes.
      */
@@ -99,10 +149,30 @@ final class DatabaseManager {
         return _planStoreMan;
     }
 
+    /**
+     * Obtains a reference to the <code>ObservationIndex</code>.
+     */
+    ObservationIndex getObservationIndex() {
+        return _obsIndex;
+    }
+
     /**
      * Shuts down the database, storing any outstanding modifications.
      */
     void shutdown() {
+        // Let any startup load finish so that we don't lose track of programs
+        // that are being read.
+        boolean interrupted = false;
+        while (!isLoaded()) {
+            try {
+                awaitLoaded();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        _obsIndex.shutdown();
         _progStoreMan.shutdown();
         _planStoreMan.shutdown();
         _progMan.shutdown();
@@ -116,4 +186,19 @@ final class DatabaseManager {
     long getTotalStorage() {
         return _persister.getTotalStorage();
     }
+
+    /**
+     * Returns the counters describing how programs have been written to disk.
+     */
+    DBStorageStats getStorageStats() {
+        return _persister.getStorageStats();
+    }
+
+    /**
+     * Returns the combined queue depth and latency counters of the program
+     * and plan writers.
+     */
+    DBFlushStats getFlushStats() {
+        return _progStoreMan.getFlushStats().plus(_planStoreMan.getFlushStats());
+    }
 }
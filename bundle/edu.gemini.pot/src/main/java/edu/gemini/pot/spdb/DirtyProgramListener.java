@@ -21,44 +21,112 @@ import java.util.*;
  * program in the database.  Whenever there is a property change on any
  * program, this listener is notified and it marks the program as "dirty".
  * This class is used in the implementation of the
- * <code>{@link StorageManager}</code>.  It contains a thread that
- * periodically checks for "dirty" programs (via the
- * <code>getDirtyPrograms()</code> method of this class) and saves.
+ * <code>{@link StorageManager}</code>, which is told as soon as a program
+ * becomes dirty and later collects its changes (via the
+ * <code>takeChanges</code> methods of this class) to save them.
+ *
+ * <p>Along with each dirty program it remembers which nodes had their data
+ * objects updated, so long as nothing else about the program changed.  This
+ * allows the program to be saved by recording just those data objects.
  */
 @SuppressWarnings("unchecked")
 final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChangeListener {
-    private final Set<N> _progSet;
 
     /**
-     * Default constructor declared because superclass default constructor
-     * throws <code>RemoteException</code>.
+     * The modifications made to a single program.
      */
-    DirtyProgramListener()  {
-        _progSet = new HashSet<N>();
+    static final class Changes<N extends ISPRootNode> {
+        final N root;
+
+        /**
+         * Nodes whose data objects were updated, or <code>null</code> if the
+         * program was modified in any other way.
+         */
+        final Set<ISPNode> nodes;
+
+        Changes(N root, Set<ISPNode> nodes) {
+            this.root  = root;
+            this.nodes = nodes;
+        }
+
+        boolean isStructural() {
+            return nodes == null;
+        }
+    }
+
+    /**
+     * Notified when a program that was clean is first modified.  Called
+     * without holding any lock of this listener but from the thread making
+     * the modification, so implementations must not block.
+     */
+    interface Observer<N extends ISPRootNode> {
+        void programDirty(N root);
+    }
+
+    private static final String DATA_OBJECT_PROP = SPUtil.getDataObjectPropertyName();
+
+    // Maps each dirty program to its updated nodes, or to null if it must be
+    // stored in its entirety.
+    private final Map<N, Set<ISPNode>> _progMap;
+    private final Observer<N> _observer;
+
+    DirtyProgramListener(Observer<N> observer)  {
+        _progMap  = new HashMap<N, Set<ISPNode>>();
+        _observer = observer;
     }
 
     @Override public void propertyChange(PropertyChangeEvent pce) {
-        if (SPUtil.isTransientClientDataPropertyName(pce.getPropertyName())) return;
+        final String propName = pce.getPropertyName();
+        if (SPUtil.isTransientClientDataPropertyName(propName)) return;
 
         final Object src = pce.getSource();
         if (!(src instanceof ISPNode)) return;
 
-        ISPRootNode root = ((ISPNode) src).getRootAncestor();
-        if (root != null) {
-            synchronized (this) { _progSet.add((N)root); }
+        final ISPNode node = (ISPNode) src;
+        final ISPRootNode root = node.getRootAncestor();
+        if (root == null) return;
+
+        final boolean seen;
+        synchronized (this) {
+            seen = _progMap.containsKey(root);
+            final Set<ISPNode> nodes = _progMap.get(root);
+            if (!DATA_OBJECT_PROP.equals(propName)) {
+                _progMap.put((N) root, null);
+            } else if (!seen) {
+                _progMap.put((N) root, new HashSet<ISPNode>(Collections.singleton(node)));
+            } else if (nodes != null) {
+                nodes.add(node);
+            }
         }
+        if (!seen) _observer.programDirty((N) root);
+    }
+
+    /**
+     * Gets the modifications made to the given program and clears the record
+     * of its being dirty.
+     *
+     * @return the changes, or <code>null</code> if the program isn't dirty
+     */
+    synchronized Changes<N> takeChanges(N root) {
+        if (!_progMap.containsKey(root)) return null;
+        return new Changes<N>(root, _progMap.remove(root));
     }
 
     /**
-     * Gets the modified, "dirty", programs and clears the record of their
-     * being dirty.  In other words, immediately after this method is called
-     * no programs are marked dirty.
+     * Gets the modifications made to each "dirty" program and clears the
+     * record of their being dirty.  In other words, immediately after this
+     * method is called no programs are marked dirty.
      *
-     * @return the modified programs, or <code>null</code> if there are none
+     * @return the changes, which will be empty if there are none
      */
-    synchronized List<N> getDirtyPrograms() {
-        final List<N> lst = _progSet.isEmpty() ? Collections.<N>emptyList() : new ArrayList<N>(_progSet);
-        _progSet.clear();
+    synchronized List<Changes<N>> takeChanges() {
+        if (_progMap.isEmpty()) return Collections.emptyList();
+
+        final List<Changes<N>> lst = new ArrayList<Changes<N>>(_progMap.size());
+        for (Map.Entry<N, Set<ISPNode>> me : _progMap.entrySet()) {
+            lst.add(new Changes<N>(me.getKey(), me.getValue()));
+        }
+        _progMap.clear();
         return lst;
     }
 
@@ -67,7 +135,7 @@ final class DirtyProgramListener<N extends ISPRootNode> implements PropertyChang
      * programs.  If the program isn't in the collection, then nothing is done.
      */
     synchronized void removeProgram(N prog) {
-        if (_progSet.size() == 0) return;
-        _progSet.remove(prog);
+        if (_progMap.size() == 0) return;
+        _progMap.remove(prog);
     }
 }
@@ -1,11 +1,12 @@
 package edu.gemini.pot.spdb;
 
 import edu.gemini.pot.sp.ISPNightlyRecord;
+import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.sp.ISPProgram;
 import edu.gemini.pot.sp.ISPRootNode;
 import edu.gemini.pot.sp.SPNodeKey;
-import java.util.Collections;
-import java.util.List;
+
+import java.util.Collection;
 
 /**
  * A persister implemenation that returns nothing and does nothing.  Useful for
@@ -19,18 +20,22 @@ public final class DoNothingPersister implements IDBPersister {
     private DoNothingPersister() {
     }
 
-    @Override public List<ISPProgram> reloadPrograms() {
-        return Collections.emptyList();
+    @Override public void reloadPrograms(Sink<ISPProgram> sink) {
+        // Nothing to load.
     }
 
-    @Override public List<ISPNightlyRecord> reloadPlans() {
-        return Collections.emptyList();
+    @Override public void reloadPlans(Sink<ISPNightlyRecord> sink) {
+        // Nothing to load.
     }
 
     @Override public void store(ISPRootNode node) {
         // Do nothing.
     }
 
+    @Override public void storeChanges(ISPRootNode root, Collection<ISPNode> nodes) {
+        // Do nothing.
+    }
+
     @Override public void remove(SPNodeKey key) {
         // Do nothing.
     }
@@ -42,4 +47,8 @@ public final class DoNothingPersister implements IDBPersister {
     @Override public long getTotalStorage() {
         return 0L;
     }
+
+    @Override public DBStorageStats getStorageStats() {
+        return DBStorageStats.EMPTY;
+    }
 }
@@ -1,22 +1,38 @@
 package edu.gemini.pot.spdb;
 
 import edu.gemini.pot.sp.*;
-import edu.gemini.pot.sp.memImpl.MemSerializer;
 import edu.gemini.shared.util.GeminiRuntimeException;
 import edu.gemini.spModel.core.SPProgramID;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
  * Handles file I/O for the database.  Currently, the locking is not very
- * sophisticated.  Only one thread at a time is permitted to execute any
- * of the public methods.  That is sufficient for now because after startup
- * only the <code>{@link StorageManager}</code> uses the
- * <code>FileManager</code>.
+ * sophisticated.  Access to the file map is synchronized, which is sufficient
+ * because after startup only the <code>{@link StorageManager}</code> uses the
+ * <code>FileManager</code>.  At startup files are decoded in parallel on a
+ * bounded pool of loader threads.
+ *
+ * <p>Programs whose data objects alone have changed are saved by appending
+ * to a <code>{@link ProgramJournal}</code> next to the program file.  Once
+ * the journal grows past a fraction of the program file size, the program is
+ * rewritten in full and the journal discarded.  All the writes to the files
+ * of a given program, journal appends and full rewrites alike, are made
+ * while holding that program's write lock so that they cannot interleave.
  */
 final class FileManager implements IDBPersister {
+    private static final Logger LOG = Logger.getLogger(FileManager.class.getName());
+
+    /**
+     * Default number of threads used to decode files on startup.
+     */
+    public static final int DEFAULT_LOADER_THREADS = Runtime.getRuntime().availableProcessors();
 
     /** The file suffix that is appended to programs in the database. */
     public static final String PROGRAM_SUFFIX = ".sp";
@@ -24,6 +40,18 @@ final class FileManager implements IDBPersister {
     /** The file suffix which is appended to nightly plans in the database. */
     public static final String PLAN_SUFFIX    = ".pl";
 
+    /**
+     * A journal is compacted when it grows beyond this fraction of the size
+     * of its program file ...
+     */
+    public static final double COMPACTION_RATIO = 0.5;
+
+    /** ... or this many bytes, whichever is larger. */
+    public static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    /** Number of locks shared by the programs for their writes. */
+    private static final int WRITE_LOCK_STRIPES = 64;
+
     /**
      * A file filter that separates out potential Science Program files
      * or Nightly Plan files in the database directory based upon whether they
@@ -47,10 +75,22 @@ final class FileManager implements IDBPersister {
 
     private static final ISPFileFilter _progFilter = new ISPFileFilter(PROGRAM_SUFFIX);
     private static final ISPFileFilter _planFilter = new ISPFileFilter(PLAN_SUFFIX);
+    private static final ISPFileFilter _journalFilter = new ISPFileFilter(ProgramJournal.SUFFIX);
 
     private final File _dbDir;
-    private final MemSerializer _ser;
+    private final UUID _dbUuid;
+    private final IDBProgramCodec _codec;
+    private final int _loaderThreads;
     private final Map<SPNodeKey, File> _fileMap = new HashMap<SPNodeKey, File>();
+    private final Object[] _writeLocks = new Object[WRITE_LOCK_STRIPES];
+
+    private final AtomicLong _snapshotWrites   = new AtomicLong();
+    private final AtomicLong _snapshotBytes    = new AtomicLong();
+    private final AtomicLong _journalAppends   = new AtomicLong();
+    private final AtomicLong _journalBytes     = new AtomicLong();
+    private final AtomicLong _changedBytes     = new AtomicLong();
+    private final AtomicLong _compactions      = new AtomicLong();
+    private final AtomicLong _compactionMillis = new AtomicLong();
 
     /**
      * Constructs the <code>FileManager</code> with the database directory
@@ -59,10 +99,25 @@ final class FileManager implements IDBPersister {
      *
      * @throws IOException if <code>dbDir</code> is not valid
      */
-    FileManager(final File dbDir) throws IOException {
+    FileManager(final File dbDir, final UUID dbUuid) throws IOException {
+        this(dbDir, dbUuid, DBSerializationCodec.instance, DEFAULT_LOADER_THREADS);
+    }
+
+    /**
+     * Constructs the <code>FileManager</code> with the database directory,
+     * the codec used to read and write program files and the maximum number
+     * of threads to use when loading them.
+     *
+     * @throws IOException if <code>dbDir</code> is not valid
+     */
+    FileManager(final File dbDir, final UUID dbUuid, final IDBProgramCodec codec, final int loaderThreads) throws IOException {
+        if (loaderThreads < 1) throw new IllegalArgumentException("loaderThreads must be > 0");
         _setupDbDirectory(dbDir);
-        _dbDir = dbDir;
-        _ser   = new MemSerializer();
+        _dbDir         = dbDir;
+        _dbUuid        = dbUuid;
+        _codec         = codec;
+        _loaderThreads = loaderThreads;
+        for (int i = 0; i < _writeLocks.length; ++i) _writeLocks[i] = new Object();
     }
 
     /**
@@ -129,64 +184,200 @@ final class FileManager implements IDBPersister {
         return new File(_dbDir, filePrefix + fileSuffix);
     }
 
-    public List<ISPProgram> reloadPrograms() throws IOException {
-        return reload("program", _progFilter);
+    public void reloadPrograms(Sink<ISPProgram> sink) throws IOException {
+        reload("program", _progFilter, sink);
+    }
+
+    public void reloadPlans(Sink<ISPNightlyRecord> sink) throws IOException {
+        reload("plan", _planFilter, sink);
     }
 
-    public List<ISPNightlyRecord> reloadPlans() throws IOException {
-        return reload("plan", _planFilter);
+    /**
+     * The result of decoding a single file on one of the loader threads.
+     */
+    private static final class Loaded<T extends ISPRootNode> {
+        final File file;
+        final T node;       // null if the file could not be read
+        final long millis;
+
+        Loaded(File file, T node, long millis) {
+            this.file   = file;
+            this.node   = node;
+            this.millis = millis;
+        }
     }
 
-    private <T extends ISPRootNode> List<T> reload(final String name, final FileFilter filter) throws IOException {
-        System.out.println(String.format("Loading the %s database ...", name));
+    /**
+     * Reads a single file, returning a <code>Loaded</code> with a
+     * <code>null</code> node if there is a problem.  Runs on a loader thread.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends ISPRootNode> Loaded<T> _load(File progFile) {
+        final long start = System.currentTimeMillis();
+        T prog = null;
+        try {
+            final T node = (T) _codec.load(progFile, _dbUuid);
+            if (node != null) {
+                // Loading the program without its journaled updates would
+                // silently lose them, so a journal that cannot be replayed
+                // fails the load.  The files are left as they are.
+                final File journal = ProgramJournal.journalFile(progFile);
+                try {
+                    final int applied = ProgramJournal.replay(journal, node, _codec);
+                    if (applied > 0) LOG.fine(String.format("Replayed %d journaled updates to %s", applied, _getPath(progFile)));
+                } catch (Exception ex) {
+                    throw new IOException("Could not replay journal `" + _getPath(journal) + "'", ex);
+                }
+            }
+            prog = node;
+        } catch (Exception ex) {
+            String path = _getPath(progFile);
+            if (ex.getCause() instanceof InvalidClassException) {
+                System.err.println("Warning: incompatible file: '" + path + "'. Please delete and reimport from XML");
+            } else {
+                System.err.println("Problem reading program file `" + path + "': " + ex);
+            }
+        }
+        return new Loaded<>(progFile, prog, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Loads all the files matching the filter, decoding them in parallel on
+     * at most <code>_loaderThreads</code> threads.  Decoded nodes are handed
+     * to the <code>sink</code> as soon as each is available, always from the
+     * calling thread.
+     */
+    private <T extends ISPRootNode> void reload(final String name, final FileFilter filter, final Sink<T> sink) throws IOException {
+        System.out.println(String.format("Loading the %s database (%s) ...", name, _codec.getName()));
 
         final long time1      = System.currentTimeMillis();
         final File[] fileA    = _dbDir.listFiles(filter);
-        final List<T> retList = new ArrayList<T>(fileA.length);
+        if (fileA == null) throw new IOException("Could not list the database directory: " + _getPath(_dbDir));
+
+        final int threads = Math.max(1, Math.min(_loaderThreads, fileA.length));
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+            @Override public synchronized Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, String.format("ODB %s loader %d", name, count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
 
-        // Try to load each file.
-        for (final File progFile : fileA) {
+        int  loaded = 0;
+        long bytes  = 0;
+        long decode = 0;
+        Loaded<T> slowest = null;
+        try {
+            final CompletionService<Loaded<T>> cs = new ExecutorCompletionService<>(pool);
+            for (final File progFile : fileA) cs.submit(() -> this.<T>_load(progFile));
+
+            for (int i = 0; i < fileA.length; ++i) {
+                final Loaded<T> res;
+                try {
+                    res = cs.take().get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("Interrupted loading the %s database", name));
+                } catch (ExecutionException ex) {
+                    // _load catches everything, so this is unexpected
+                    LOG.log(Level.SEVERE, "Problem loading " + name, ex.getCause());
+                    continue;
+                }
 
-            // Load the program file.
-            final T prog;
-            try {
-                prog = (T) _ser.load(progFile);
-                if (prog == null) continue;
-            } catch (Exception ex) {
-                String path = _getPath(progFile);
-                if (ex.getCause() instanceof InvalidClassException) {
-                    System.err.println("Warning: incompatible file: '" + path + "'. Please delete and reimport from XML");
-                } else {
-                    System.err.println("Problem reading program file `" + path + "': " + ex);
+                if (res.node == null) continue;
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine(String.format("Loaded %s in %d ms (%d bytes)", _getPath(res.file), res.millis, res.file.length()));
                 }
-                continue;
-            }
 
-            // If there are two program files with the same program (i.e.,
-            // with the same key), just skip the next one read.
-            final SPNodeKey key = prog.getNodeKey();
-            if (_fileMap.get(key) != null) {
-                System.out.println("Already loaded: " + key);
-                continue; // already loaded
-            }
-            _fileMap.put(key, progFile);
+                // If there are two program files with the same program (i.e.,
+                // with the same key), just skip the next one read.
+                final SPNodeKey key = res.node.getNodeKey();
+                synchronized (this) {
+                    if (_fileMap.get(key) != null) {
+                        System.out.println("Already loaded: " + key);
+                        continue; // already loaded
+                    }
+                    _fileMap.put(key, res.file);
+                }
 
-            retList.add(prog);
+                ++loaded;
+                bytes  += res.file.length();
+                decode += res.millis;
+                if ((slowest == null) || (res.millis > slowest.millis)) slowest = res;
+
+                sink.programLoaded(res.node);
+            }
+        } finally {
+            pool.shutdownNow();
         }
 
-        final long time2 = System.currentTimeMillis();
+        final long time2   = System.currentTimeMillis();
+        final double secs  = Math.max(time2 - time1, 1) / 1000.0;
 
-        final String msg = String.format("Finished loading: %d ms, %d %ss", time2-time1, fileA.length, name);
+        final String msg = String.format("Finished loading: %d ms, %d %ss (%d loaded) on %d threads, %.1f files/s, %.1f MB/s",
+                time2-time1, fileA.length, name, loaded, threads, loaded / secs, bytes / (1024.0 * 1024.0) / secs);
         System.out.println(msg);
-        return retList;
+        if (slowest != null) {
+            LOG.info(String.format("Total %s decode time %d ms, slowest %s at %d ms", name, decode, _getPath(slowest.file), slowest.millis));
+        }
+    }
+
+    private static String _getSuffix(ISPRootNode node) {
+        return (node instanceof ISPNightlyRecord) ? PLAN_SUFFIX : PROGRAM_SUFFIX;
+    }
 
+    // The lock held while writing any of the files of the given program.  The
+    // locks are striped over a fixed number of objects rather than created
+    // per program, so that there is nothing to clean up when a program is
+    // removed and a writer still holding the lock of a removed program
+    // excludes one storing it again under the same key.
+    private Object _writeLock(SPNodeKey key) {
+        return _writeLocks[Math.floorMod(key.hashCode(), _writeLocks.length)];
     }
 
     public void store(ISPRootNode mab) throws IOException {
-        if (mab instanceof ISPNightlyRecord) {
-            _storeProgram(mab, PLAN_SUFFIX);
-        } else {
-            _storeProgram(mab, PROGRAM_SUFFIX);
+        synchronized (_writeLock(mab.getNodeKey())) {
+            final File f = _storeProgram(mab, _getSuffix(mab));
+            _changedBytes.addAndGet(f.length());
+        }
+    }
+
+    /**
+     * Appends the current data objects of the given nodes to the program's
+     * journal, compacting it if it has grown too large.  Falls back to storing
+     * the whole program if it has not been stored under its current name.
+     */
+    public void storeChanges(ISPRootNode root, Collection<ISPNode> nodes) throws IOException {
+        final SPNodeKey key = root.getNodeKey();
+        synchronized (_writeLock(key)) {
+            final File progFile = _getDocumentFile(root, _getSuffix(root));
+            synchronized (this) {
+                if (!progFile.equals(_fileMap.get(key))) {
+                    store(root);
+                    return;
+                }
+            }
+
+            final File journal = ProgramJournal.journalFile(progFile);
+            SPNodeKeyLocks.instance.readLock(key);
+            try {
+                final long bytes = ProgramJournal.append(journal, ProgramJournal.entries(root, nodes, _codec));
+                _journalAppends.incrementAndGet();
+                _journalBytes.addAndGet(bytes);
+                _changedBytes.addAndGet(bytes);
+            } finally {
+                SPNodeKeyLocks.instance.readUnlock(key);
+            }
+
+            if (journal.length() > Math.max(MIN_COMPACTION_BYTES, (long) (progFile.length() * COMPACTION_RATIO))) {
+                final long start = System.currentTimeMillis();
+                _storeProgram(root, _getSuffix(root));
+                final long millis = System.currentTimeMillis() - start;
+                _compactions.incrementAndGet();
+                _compactionMillis.addAndGet(millis);
+                LOG.fine(String.format("Compacted journal for %s in %d ms", _getPath(progFile), millis));
+            }
         }
     }
 
@@ -202,6 +393,7 @@ final class FileManager implements IDBPersister {
             if ((oldFile != null) && !newFile.equals(oldFile) && oldFile.exists()) {
                 // Cleanup the old file
                 oldFile.delete();
+                ProgramJournal.journalFile(oldFile).delete();
             }
             _fileMap.put(key, newFile);
         }
@@ -220,11 +412,17 @@ final class FileManager implements IDBPersister {
         SPNodeKeyLocks.instance.readLock(key);
         try {
             // Write the object to the temp file.
-            _ser.store(node, tmpFile);
+            _codec.store(node, tmpFile);
 
             // Rename the temp file to the destination file.
             file.delete(); // under win2k, rename fails if file exists
             if (!tmpFile.renameTo(file)) throw new IOException("Couldn't store the program.");
+
+            // The file now contains everything in the journal.
+            ProgramJournal.journalFile(file).delete();
+
+            _snapshotWrites.incrementAndGet();
+            _snapshotBytes.addAndGet(file.length());
         } finally {
             SPNodeKeyLocks.instance.readUnlock(key);
         }
@@ -238,9 +436,17 @@ final class FileManager implements IDBPersister {
     /**
      * Removes the given program, erasing the file associated with it.
      */
-    public synchronized void remove(SPNodeKey key) {
-        final File progFile = _fileMap.remove(key);
-        if (progFile != null) progFile.delete();
+    public void remove(SPNodeKey key) {
+        synchronized (_writeLock(key)) {
+            final File progFile;
+            synchronized (this) {
+                progFile = _fileMap.remove(key);
+            }
+            if (progFile != null) {
+                progFile.delete();
+                ProgramJournal.journalFile(progFile).delete();
+            }
+        }
     }
 
     /**
@@ -266,7 +472,17 @@ final class FileManager implements IDBPersister {
 
     @Override
     public long getTotalStorage() {
-        return getTotalStorage(_planFilter) + getTotalStorage(_progFilter);
+        return getTotalStorage(_planFilter) + getTotalStorage(_progFilter) + getTotalStorage(_journalFilter);
+    }
+
+    @Override
+    public DBStorageStats getStorageStats() {
+        return new DBStorageStats(
+                _snapshotWrites.get(), _snapshotBytes.get(),
+                _journalAppends.get(), _journalBytes.get(),
+                _changedBytes.get(),
+                _compactions.get(), _compactionMillis.get(),
+                getTotalStorage(_journalFilter));
     }
 
     private long getTotalStorage(ISPFileFilter filter) {
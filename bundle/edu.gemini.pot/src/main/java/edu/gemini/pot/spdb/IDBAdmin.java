@@ -19,8 +19,8 @@ package edu.gemini.pot.spdb;
 public interface IDBAdmin {
 
     /**
-     * Gets the storage interval (in ms), which determines how often
-     * modified programs are saved to disk.
+     * Gets the storage interval (in ms), which determines how long after
+     * being modified a program is saved to disk.
      */
     long getStorageInterval() ;
 
@@ -46,6 +46,18 @@ public interface IDBAdmin {
     void shutdown() ;
 
     void stopDb() ;
+
+    /**
+     * Returns <code>true</code> once all the programs stored on disk have
+     * been loaded.  Programs are available for lookup as they are loaded,
+     * but queries over the whole database wait for loading to finish.
+     */
+    boolean isLoaded();
+
+    /**
+     * Waits until all the programs stored on disk have been loaded.
+     */
+    void awaitLoaded() throws InterruptedException;
     
     /**
      * This method returns a DBStatus object containing all the information related
@@ -62,4 +74,17 @@ public interface IDBAdmin {
      */
     long getTotalStorage();
 
+    /**
+     * Returns counters describing how programs have been written to disk,
+     * including the journal size, write amplification and time spent
+     * compacting journals.
+     */
+    DBStorageStats getStorageStats();
+
+    /**
+     * Returns counters describing the queue of modified programs waiting to
+     * be written and how long they take to reach the disk.
+     */
+    DBFlushStats getFlushStats();
+
 }
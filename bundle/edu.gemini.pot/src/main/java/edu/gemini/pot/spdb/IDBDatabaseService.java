@@ -191,6 +191,17 @@ public interface IDBDatabaseService {
 
     void unregisterTrigger(IDBTriggerCondition condition, IDBTriggerAction action);
 
+    /**
+     * Registers an observation index, replacing any index of the same name.
+     * Once registered, the index may be used in queries made with a
+     * {@link DBIndexQuery}.
+     *
+     * @param indexer extracts the indexed attribute values from observations
+     */
+    void registerIndex(IDBIndexer indexer);
+
+    void unregisterIndex(IDBIndexer indexer);
+
     /**
      * Finds the program node key associated with the given program id, if any.
      * @return the program key that identifies the program with the given
@@ -0,0 +1,35 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPObservation;
+
+import java.util.Collection;
+
+/**
+ * An IDBIndexer extracts the values of some attribute of an observation
+ * (its instrument or status for example) so that the database can maintain
+ * an index of observations by that attribute.  Indexers are registered with
+ * the database via <code>{@link IDBDatabaseService#registerIndex}</code> and
+ * the resulting index is consulted by the <code>{@link IDBQueryRunner}</code>
+ * methods that accept a <code>{@link DBIndexQuery}</code>.
+ *
+ * <p>The values are recomputed whenever anything in the observation, or in
+ * the program outside of any observation, changes.  They must have
+ * meaningful <code>equals</code> and <code>hashCode</code> implementations
+ * and should be serializable so that they may be used in remote queries.
+ */
+public interface IDBIndexer {
+
+    /**
+     * Gets the name of the index, which is used to refer to it in a
+     * <code>{@link DBIndexQuery}</code>.
+     */
+    String getName();
+
+    /**
+     * Computes the values of the indexed attribute for the given observation.
+     *
+     * @return values under which the observation should be indexed, which
+     * may be empty if the attribute is not defined for this observation
+     */
+    Collection<?> getValues(ISPObservation obs);
+}
@@ -3,15 +3,31 @@ package edu.gemini.pot.spdb;
 import edu.gemini.pot.sp.*;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.Collection;
 
 // A lame interface that closely matches the existing FileManager so as to
 // easily allow one to choice between it and a truly transient database.
 
 interface IDBPersister {
-    List<ISPProgram> reloadPrograms() throws IOException;
-    List<ISPNightlyRecord> reloadPlans() throws IOException;
+
+    /**
+     * Receives root nodes as they are read from storage.  Nodes are passed
+     * one at a time, from a single thread, in no particular order.
+     */
+    interface Sink<N extends ISPRootNode> {
+        void programLoaded(N node);
+    }
+
+    void reloadPrograms(Sink<ISPProgram> sink) throws IOException;
+    void reloadPlans(Sink<ISPNightlyRecord> sink) throws IOException;
     void store(ISPRootNode node) throws IOException;
+
+    /**
+     * Stores updates to the data objects of the given nodes of
+     * <code>root</code>, whose structure is otherwise unchanged since it was
+     * last stored.  Implementations may simply store the whole node.
+     */
+    void storeChanges(ISPRootNode root, Collection<ISPNode> nodes) throws IOException;
     void remove(SPNodeKey key);
 
     /** Gets the size of the program file on disk, or -1 if not known. */
@@ -19,4 +35,7 @@ interface IDBPersister {
 
     /** Returns the total storage size, on disk, or zero for transient databases. */
     long getTotalStorage();
+
+    /** Gets the counters describing what has been written so far. */
+    DBStorageStats getStorageStats();
 }
@@ -0,0 +1,55 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.spModel.data.ISPDataObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Reads and writes the files in which the database keeps its programs and
+ * nightly records.  The default implementation,
+ * <code>{@link DBSerializationCodec}</code>, uses Java serialization.
+ * Codecs are expected to be stateless and safe to call from several threads
+ * at once.
+ */
+public interface IDBProgramCodec {
+
+    /**
+     * A short name identifying the codec, for configuration and logging.
+     */
+    String getName();
+
+    /**
+     * Loads the program or nightly record stored in the given file.
+     *
+     * @param databaseId id of the database into which the node is being
+     * loaded
+     *
+     * @return the node read, or <code>null</code> if the file is empty
+     */
+    ISPRootNode load(File file, UUID databaseId) throws IOException;
+
+    /**
+     * Stores the given program or nightly record in the given file.
+     * Implementations take the program read lock themselves for as long as
+     * they read the node, so that the stored tree is consistent.
+     */
+    void store(ISPRootNode node, File file) throws IOException;
+
+    /**
+     * Encodes the data object of a single node, for a record of the
+     * <code>{@link ProgramJournal}</code> kept next to the program file.
+     */
+    byte[] encodeDataObject(ISPNode node, ISPDataObject dataObject) throws IOException;
+
+    /**
+     * Decodes a data object written by
+     * <code>{@link #encodeDataObject}</code> for the given node.
+     *
+     * @return a new data object that may be set on the node
+     */
+    ISPDataObject decodeDataObject(ISPNode node, byte[] bytes) throws IOException;
+}
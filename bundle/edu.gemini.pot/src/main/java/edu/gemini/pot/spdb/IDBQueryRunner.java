@@ -27,6 +27,22 @@ public interface IDBQueryRunner {
      */
     <T extends IDBQueryFunctor> T queryObservations(T functor) ;
 
+    /**
+     * Queries the observations that match the given index query, applying
+     * the given <code>functor</code> on each.  Programs without any matching
+     * observation are skipped entirely.  The indexes reflect all changes
+     * made before the query starts, but an observation may be modified
+     * after it is selected so functors should not assume that it still
+     * matches.
+     *
+     * @return the query functor itself; if called remotely the return
+     * value will (of course) be a distinct copy of the method argument
+     *
+     * @throws IllegalArgumentException if the query refers to an index that
+     * has not been registered with the database
+     */
+    <T extends IDBQueryFunctor> T queryObservations(T functor, DBIndexQuery query) ;
+
     /**
      * Queries the available programs, applying the given
      * <code>functor</code> on each.
@@ -36,6 +52,18 @@ public interface IDBQueryRunner {
      */
     <T extends IDBQueryFunctor> T queryPrograms(T functor) ;
 
+    /**
+     * Queries the programs that contain at least one observation matching the
+     * given index query, applying the given <code>functor</code> on each.
+     *
+     * @return the query functor itself; if called remotely the return
+     * value will (of course) be a distinct copy of the method argument
+     *
+     * @throws IllegalArgumentException if the query refers to an index that
+     * has not been registered with the database
+     */
+    <T extends IDBQueryFunctor> T queryPrograms(T functor, DBIndexQuery query) ;
+
     /**
      * Queries the available nightly plans, applying the given
      * <code>functor</code> on each.
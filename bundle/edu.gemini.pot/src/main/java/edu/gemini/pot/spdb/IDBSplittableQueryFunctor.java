@@ -0,0 +1,33 @@
+package edu.gemini.pot.spdb;
+
+/**
+ * A query functor that explicitly allows the <code>{@link IDBQueryRunner}</code>
+ * to execute it in parallel.  The programs (or plans) are split into
+ * contiguous partitions and a part created with <code>{@link #newPart}</code>
+ * is run over each one on a separate thread, with the usual
+ * <code>init</code>, <code>isDone</code>, <code>execute</code> and
+ * <code>finished</code> calls.  The original functor is initialized before
+ * the parts are created, the executed parts are then passed to its
+ * <code>{@link #merge}</code> method in the order of the programs they
+ * visited, and finally it is finished.  It is not executed on any node
+ * itself.
+ *
+ * <p>Parts must not share mutable state with each other.  If any part
+ * reports that it <code>isDone</code>, the other parts stop early.
+ * Functors that do not implement this interface are always run serially.
+ *
+ * @param <F> the concrete functor type
+ */
+public interface IDBSplittableQueryFunctor<F extends IDBSplittableQueryFunctor<F>> extends IDBQueryFunctor {
+
+    /**
+     * Creates a new functor to run over one partition of the programs.
+     * Called on the original functor, after it has been initialized.
+     */
+    F newPart();
+
+    /**
+     * Merges the results of an executed part into this functor.
+     */
+    void merge(F part);
+}
@@ -0,0 +1,395 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPUtil;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Maintains indexes of the observations in the database, one for each
+ * registered <code>{@link IDBIndexer}</code>, mapping attribute values to
+ * the observations that have them.
+ *
+ * <p>The index is kept up-to-date incrementally.  A change to a program only
+ * marks the observation in which it was made as stale, or the whole program
+ * if the change was made outside of any observation.  Stale observations are
+ * reindexed at the start of the next lookup, so editing a program costs no
+ * more than before and each lookup reflects every change made before it
+ * began.
+ */
+final class ObservationIndex implements PropertyChangeListener, ProgramEventListener<ISPProgram>, ProgramManager.LoadListener<ISPProgram> {
+    private static final Logger LOG = Logger.getLogger(ObservationIndex.class.getName());
+
+    /**
+     * The indexed attribute values of a single observation.  The stamp orders
+     * computations, so that values computed earlier never replace those
+     * computed later.
+     */
+    private static final class Entry {
+        final ISPObservation obs;
+        final SPNodeKey progKey;
+        final int position;  // index of the observation in its program
+        final long stamp;
+        final Map<String, Set<Object>> values;
+
+        Entry(ISPObservation obs, SPNodeKey progKey, int position, long stamp, Map<String, Set<Object>> values) {
+            this.obs      = obs;
+            this.progKey  = progKey;
+            this.position = position;
+            this.stamp    = stamp;
+            this.values   = values;
+        }
+    }
+
+    /**
+     * The entries for the observations of a single program.
+     */
+    private static final class ProgEntry {
+        final ISPProgram prog;
+        long stamp;
+        Map<SPNodeKey, Entry> entries = new HashMap<>();
+
+        ProgEntry(ISPProgram prog) {
+            this.prog = prog;
+        }
+    }
+
+    private final ProgramManager<ISPProgram> _progMan;
+    private final AtomicLong _stamp = new AtomicLong();
+
+    // Marked by the thread making a change while it holds the program write
+    // lock, so these are deliberately not guarded by the index monitor.
+    private final Set<ISPProgram> _staleProgs = ConcurrentHashMap.newKeySet();
+    private final Set<ISPObservation> _staleObs = ConcurrentHashMap.newKeySet();
+
+    // Programs and observations currently being reindexed by some lookup.
+    private final ConcurrentMap<ISPNode, CompletableFuture<Void>> _inFlight = new ConcurrentHashMap<>();
+
+    // Guarded by this.
+    private final Map<String, IDBIndexer> _indexers = new LinkedHashMap<>();
+    private final Map<SPNodeKey, ProgEntry> _progs = new HashMap<>();
+    private final Map<SPNodeKey, Entry> _obs = new HashMap<>();
+    private final Map<String, Map<Object, Set<SPNodeKey>>> _postings = new HashMap<>();
+
+    /**
+     * Constructs with the program manager, following all the programs that
+     * it contains or will contain.
+     */
+    ObservationIndex(ProgramManager<ISPProgram> progMan) {
+        _progMan = progMan;
+        progMan.addLoadListener(this);
+        progMan.addListener(this);
+    }
+
+    /**
+     * Adds an index, replacing any existing index of the same name.  The
+     * index is built at the next lookup.
+     */
+    synchronized void register(IDBIndexer indexer) {
+        final String name = indexer.getName();
+        LOG.log(Level.INFO, "Registering observation index: " + name);
+        if (_indexers.containsKey(name)) _removeIndex(name);
+        _indexers.put(name, indexer);
+        for (ProgEntry pe : _progs.values()) _staleProgs.add(pe.prog);
+    }
+
+    /**
+     * Removes an index, if it is registered.
+     */
+    synchronized void unregister(IDBIndexer indexer) {
+        final String name = indexer.getName();
+        if (_indexers.get(name) != indexer) return;
+        LOG.log(Level.INFO, "Unregistering observation index: " + name);
+        _indexers.remove(name);
+        _removeIndex(name);
+    }
+
+    private void _removeIndex(String name) {
+        _postings.remove(name);
+        for (Entry e : _obs.values()) e.values.remove(name);
+    }
+
+    /**
+     * Finds the observations that match the query, grouped by program key.
+     * The observations of each program are listed in program order.
+     *
+     * @throws IllegalArgumentException if the query refers to an index that
+     * has not been registered
+     */
+    Map<SPNodeKey, List<ISPObservation>> lookup(DBIndexQuery query) {
+        _refresh();
+
+        synchronized (this) {
+            for (String name : query.getIndexNames()) {
+                if (!_indexers.containsKey(name)) {
+                    throw new IllegalArgumentException("No observation index named '" + name + "'");
+                }
+            }
+
+            Set<SPNodeKey> matches = null;
+            for (String name : query.getIndexNames()) {
+                final Map<Object, Set<SPNodeKey>> posting = _postings.get(name);
+                final Set<SPNodeKey> keys = new HashSet<>();
+                if (posting != null) {
+                    for (Object val : query.getValues(name)) {
+                        final Set<SPNodeKey> s = posting.get(val);
+                        if (s != null) keys.addAll(s);
+                    }
+                }
+                if (matches == null) {
+                    matches = keys;
+                } else {
+                    matches.retainAll(keys);
+                }
+                if (matches.isEmpty()) break;
+            }
+            if (matches == null) matches = _obs.keySet();
+
+            final Map<SPNodeKey, List<Entry>> grouped = new HashMap<>();
+            for (SPNodeKey key : matches) {
+                final Entry e = _obs.get(key);
+                grouped.computeIfAbsent(e.progKey, k -> new ArrayList<>()).add(e);
+            }
+
+            final Map<SPNodeKey, List<ISPObservation>> res = new HashMap<>();
+            for (Map.Entry<SPNodeKey, List<Entry>> me : grouped.entrySet()) {
+                final List<Entry> lst = me.getValue();
+                lst.sort(Comparator.comparingInt(e -> e.position));
+                final List<ISPObservation> obsList = new ArrayList<>(lst.size());
+                for (Entry e : lst) obsList.add(e.obs);
+                res.put(me.getKey(), obsList);
+            }
+            return res;
+        }
+    }
+
+    // Reindexes everything that has been marked stale.  Attribute values are
+    // computed without holding the index monitor, since that requires taking
+    // program locks.  Programs and observations that another lookup is still
+    // reindexing are waited for, so that the results reflect them too.
+    private void _refresh() {
+        if (_staleProgs.isEmpty() && _staleObs.isEmpty() && _inFlight.isEmpty()) return;
+
+        final List<IDBIndexer> indexers;
+        synchronized (this) {
+            indexers = new ArrayList<>(_indexers.values());
+        }
+
+        _reindex(_staleProgs, prog -> {
+            final long stamp = _stamp.incrementAndGet();
+            final SPNodeKey progKey = prog.getProgramKey();
+
+            final List<Entry> entries = new ArrayList<>();
+            prog.getProgramReadLock();
+            try {
+                int pos = 0;
+                for (ISPObservation obs : prog.getAllObservations()) {
+                    entries.add(new Entry(obs, progKey, pos++, stamp, _compute(indexers, obs)));
+                }
+            } finally {
+                prog.returnProgramReadLock();
+            }
+            _applyProgram(prog, stamp, entries);
+        });
+
+        _reindex(_staleObs, obs -> {
+            final long stamp = _stamp.incrementAndGet();
+            final SPNodeKey progKey = obs.getProgramKey();
+
+            final Map<String, Set<Object>> values;
+            obs.getProgramReadLock();
+            try {
+                values = _compute(indexers, obs);
+            } finally {
+                obs.returnProgramReadLock();
+            }
+            _applyObservation(obs, progKey, stamp, values);
+        });
+
+        // Anything claimed before we looked at the stale sets.
+        for (CompletableFuture<Void> f : new ArrayList<>(_inFlight.values())) f.join();
+    }
+
+    // Claims and reindexes each stale node.  A node is registered as in
+    // flight before it is removed from the stale set, so that a lookup which
+    // no longer finds it stale can wait for it.
+    private <T extends ISPNode> void _reindex(Set<T> stale, Consumer<T> work) {
+        for (T node : new ArrayList<>(stale)) {
+            while (stale.contains(node)) {
+                final CompletableFuture<Void> f = new CompletableFuture<>();
+                final CompletableFuture<Void> other = _inFlight.putIfAbsent(node, f);
+                if (other != null) {
+                    other.join();  // then check whether it was marked again
+                    continue;
+                }
+                try {
+                    if (stale.remove(node)) work.accept(node);
+                } finally {
+                    _inFlight.remove(node, f);
+                    f.complete(null);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Set<Object>> _compute(List<IDBIndexer> indexers, ISPObservation obs) {
+        final Map<String, Set<Object>> res = new HashMap<>();
+        for (IDBIndexer indexer : indexers) {
+            Set<Object> vals;
+            try {
+                final Collection<?> c = indexer.getValues(obs);
+                vals = (c == null) ? Collections.emptySet() : new HashSet<>(c);
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Problem computing index '" + indexer.getName() + "' for observation " + obs.getNodeKey(), ex);
+                vals = Collections.emptySet();
+            }
+            res.put(indexer.getName(), vals);
+        }
+        return res;
+    }
+
+    private synchronized void _applyProgram(ISPProgram prog, long stamp, List<Entry> entries) {
+        final ProgEntry pe = _progs.get(prog.getProgramKey());
+        if ((pe == null) || (pe.prog != prog) || (pe.stamp > stamp)) return;
+        pe.stamp = stamp;
+
+        final Map<SPNodeKey, Entry> old = pe.entries;
+        for (Entry e : old.values()) _unpost(e);
+
+        pe.entries = new HashMap<>();
+        for (Entry e : entries) {
+            final SPNodeKey key = e.obs.getNodeKey();
+
+            // Keep any values computed more recently for just this
+            // observation, but at its new position.
+            final Entry prev = old.get(key);
+            final Entry cur  = ((prev != null) && (prev.obs == e.obs) && (prev.stamp > stamp)) ?
+                    new Entry(prev.obs, prev.progKey, e.position, prev.stamp, prev.values) : e;
+            pe.entries.put(key, cur);
+            _post(cur);
+        }
+    }
+
+    private synchronized void _applyObservation(ISPObservation obs, SPNodeKey progKey, long stamp, Map<String, Set<Object>> values) {
+        final ProgEntry pe = _progs.get(progKey);
+        if (pe == null) return;
+
+        // Observations that aren't known yet are added when the program that
+        // now contains them is reindexed.
+        final SPNodeKey key = obs.getNodeKey();
+        final Entry prev = pe.entries.get(key);
+        if ((prev == null) || (prev.obs != obs) || (prev.stamp > stamp)) return;
+
+        _unpost(prev);
+        final Entry cur = new Entry(obs, progKey, prev.position, stamp, values);
+        pe.entries.put(key, cur);
+        _post(cur);
+    }
+
+    private void _post(Entry e) {
+        final SPNodeKey key = e.obs.getNodeKey();
+        _obs.put(key, e);
+        for (Map.Entry<String, Set<Object>> me : e.values.entrySet()) {
+            if (!_indexers.containsKey(me.getKey())) continue;  // since removed
+            final Map<Object, Set<SPNodeKey>> posting = _postings.computeIfAbsent(me.getKey(), k -> new HashMap<>());
+            for (Object val : me.getValue()) {
+                posting.computeIfAbsent(val, k -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    private void _unpost(Entry e) {
+        final SPNodeKey key = e.obs.getNodeKey();
+        if (_obs.get(key) == e) _obs.remove(key);
+        for (Map.Entry<String, Set<Object>> me : e.values.entrySet()) {
+            final Map<Object, Set<SPNodeKey>> posting = _postings.get(me.getKey());
+            if (posting == null) continue;
+            for (Object val : me.getValue()) {
+                final Set<SPNodeKey> keys = posting.get(val);
+                if (keys == null) continue;
+                keys.remove(key);
+                if (keys.isEmpty()) posting.remove(val);
+            }
+        }
+    }
+
+    @Override public void propertyChange(PropertyChangeEvent pce) {
+        if (SPUtil.isTransientClientDataPropertyName(pce.getPropertyName())) return;
+
+        final Object src = pce.getSource();
+        if (!(src instanceof ISPNode)) return;
+
+        final ISPNode node = (ISPNode) src;
+        final ISPObservation obs = node.getContextObservation();
+        if (obs != null) {
+            _staleObs.add(obs);
+        } else {
+            final ISPRootNode root = node.getRootAncestor();
+            if (root instanceof ISPProgram) _staleProgs.add((ISPProgram) root);
+        }
+    }
+
+    private void _addProgram(ISPProgram prog) {
+        synchronized (this) {
+            _progs.put(prog.getProgramKey(), new ProgEntry(prog));
+        }
+        _staleProgs.add(prog);
+        prog.addCompositeChangeListener(this);
+    }
+
+    private void _removeProgram(ISPProgram prog) {
+        prog.removeCompositeChangeListener(this);
+        _staleProgs.remove(prog);
+
+        synchronized (this) {
+            final ProgEntry pe = _progs.get(prog.getProgramKey());
+            if ((pe == null) || (pe.prog != prog)) return;
+            _progs.remove(prog.getProgramKey());
+            for (Entry e : pe.entries.values()) {
+                _staleObs.remove(e.obs);
+                _unpost(e);
+            }
+        }
+    }
+
+    public void programLoaded(ISPProgram prog) {
+        _addProgram(prog);
+    }
+
+    public void programAdded(ProgramEvent<ISPProgram> pme) {
+        _addProgram(pme.getNewProgram());
+    }
+
+    public void programReplaced(ProgramEvent<ISPProgram> pme) {
+        programRemoved(pme);
+        programAdded(pme);
+    }
+
+    public void programRemoved(ProgramEvent<ISPProgram> pme) {
+        _removeProgram(pme.getOldProgram());
+    }
+
+    /**
+     * Stops following changes to the programs in the database.
+     */
+    void shutdown() {
+        _progMan.removeListener(this);
+        _progMan.removeLoadListener(this);
+
+        for (ISPProgram prog : _progMan.getPrograms()) prog.removeCompositeChangeListener(this);
+    }
+}
@@ -0,0 +1,198 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPContainerNode;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.version.LifespanId;
+import edu.gemini.shared.util.VersionComparison;
+import edu.gemini.shared.util.VersionVector;
+import edu.gemini.spModel.data.ISPDataObject;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import scala.collection.JavaConversions;
+
+/**
+ * An append-only log of data object updates kept next to a program file.
+ * Each record holds the new data object and version of every node that was
+ * modified since the last record, so a program whose structure has not
+ * changed can be saved without rewriting the whole file.  When the program
+ * is read back, the records are replayed on top of it.
+ *
+ * <p>Records are framed with their length and a checksum.  A record cut
+ * short by a crash is detected and ignored, along with anything after it.
+ * Inside a record, node keys and versions are written directly and data
+ * objects are encoded by the database's <code>{@link IDBProgramCodec}</code>,
+ * the same codec that writes the program file.  Updates are only applied if
+ * they are newer than the node's version, so a journal left behind after the
+ * program file was rewritten does no harm.
+ *
+ * <p>Only the <code>{@link FileManager}</code> writes journals.  Tools that
+ * rewrite program files offline must fold the journal into the program with
+ * <code>{@link #replay}</code> first.
+ */
+public final class ProgramJournal {
+    private static final Logger LOG = Logger.getLogger(ProgramJournal.class.getName());
+
+    /** Suffix added to the program file name to form the journal file name. */
+    static final String SUFFIX = ".jnl";
+
+    private ProgramJournal() {
+    }
+
+    /**
+     * The new state of a single node, with the data object as encoded by the
+     * codec.
+     */
+    static final class Entry {
+        final SPNodeKey key;
+        final VersionVector<LifespanId, Integer> version;
+        final byte[] dataObject;
+
+        Entry(SPNodeKey key, VersionVector<LifespanId, Integer> version, byte[] dataObject) {
+            this.key        = key;
+            this.version    = version;
+            this.dataObject = dataObject;
+        }
+
+        void write(DataOutputStream dos) throws IOException {
+            dos.writeUTF(key.toString());
+
+            final Map<LifespanId, Integer> clocks = JavaConversions.mapAsJavaMap(version.clocks());
+            dos.writeInt(clocks.size());
+            for (Map.Entry<LifespanId, Integer> e : clocks.entrySet()) {
+                dos.writeUTF(e.getKey().toString());
+                dos.writeInt(e.getValue());
+            }
+
+            dos.writeInt(dataObject.length);
+            dos.write(dataObject);
+        }
+
+        static Entry read(DataInputStream dis) throws IOException {
+            final SPNodeKey key = new SPNodeKey(dis.readUTF());
+
+            final int size = dis.readInt();
+            final Map<LifespanId, Integer> clocks = new LinkedHashMap<>();
+            for (int i = 0; i < size; ++i) clocks.put(LifespanId.fromString(dis.readUTF()), dis.readInt());
+
+            final byte[] dataObject = new byte[dis.readInt()];
+            dis.readFully(dataObject);
+            return new Entry(key, VersionVector.javaInt(clocks), dataObject);
+        }
+    }
+
+    public static File journalFile(File programFile) {
+        return new File(programFile.getParentFile(), programFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Captures the current data object and version of each of the given
+     * nodes of <code>root</code>.
+     */
+    static List<Entry> entries(ISPRootNode root, Collection<ISPNode> nodes, IDBProgramCodec codec) throws IOException {
+        final List<Entry> res = new ArrayList<>(nodes.size());
+        root.getProgramReadLock();
+        try {
+            for (ISPNode n : nodes) {
+                final ISPDataObject dobj = n.getDataObjectSnapshot();
+                if (dobj != null) res.add(new Entry(n.getNodeKey(), n.getVersion(), codec.encodeDataObject(n, dobj)));
+            }
+        } finally {
+            root.returnProgramReadLock();
+        }
+        return res;
+    }
+
+    /**
+     * Appends a record with the given entries to the journal.  Callers must
+     * not append to the same journal concurrently.
+     *
+     * @return number of bytes written
+     */
+    static long append(File journal, List<Entry> entries) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(entries.size());
+            for (Entry e : entries) e.write(dos);
+        }
+        final byte[] bytes = baos.toByteArray();
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true)))) {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+            dos.writeLong(crc.getValue());
+        }
+        return 4 + bytes.length + 8;
+    }
+
+    private static void index(ISPNode n, Map<SPNodeKey, ISPNode> m) {
+        m.put(n.getNodeKey(), n);
+        if (n instanceof ISPContainerNode) {
+            for (ISPNode c : ((ISPContainerNode) n).getChildren()) index(c, m);
+        }
+    }
+
+    /**
+     * Applies the journal, if any, to the given freshly loaded program.  A
+     * complete record that cannot be decoded is an error, since skipping it
+     * would silently drop the updates it holds.
+     *
+     * @return number of node updates applied
+     */
+    public static int replay(File journal, ISPRootNode root, IDBProgramCodec codec) throws IOException {
+        if (!journal.exists()) return 0;
+
+        final Map<SPNodeKey, ISPNode> nodes = new HashMap<>();
+        index(root, nodes);
+
+        int applied = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            while (true) {
+                final byte[] bytes;
+                try {
+                    final int len = dis.readInt();
+                    if ((len < 0) || (len > journal.length())) throw new EOFException();
+                    bytes = new byte[len];
+                    dis.readFully(bytes);
+
+                    final CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    if (crc.getValue() != dis.readLong()) throw new EOFException();
+                } catch (EOFException ex) {
+                    // End of the journal, or a record that was not completely
+                    // written.
+                    break;
+                }
+
+                final List<Entry> entries = new ArrayList<>();
+                try (DataInputStream rec = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                    final int size = rec.readInt();
+                    for (int i = 0; i < size; ++i) entries.add(Entry.read(rec));
+                } catch (IOException ex) {
+                    throw new IOException("Could not read journal " + journal, ex);
+                }
+
+                for (Entry e : entries) {
+                    final ISPNode n = nodes.get(e.key);
+                    if (n == null) {
+                        // Removed since, so the program file is newer anyway.
+                        LOG.log(Level.FINE, "Journal " + journal + " refers to missing node " + e.key);
+                    } else if (e.version.compare(n.getVersion()) == VersionComparison.Newer$.MODULE$) {
+                        n.setDataObjectAndVersion(codec.decodeDataObject(n, e.dataObject), e.version);
+                        ++applied;
+                    }
+                }
+            }
+        }
+        return applied;
+    }
+}
@@ -2,10 +2,12 @@ package edu.gemini.pot.spdb;
 
 import edu.gemini.pot.sp.ISPRootNode;
 import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
 import edu.gemini.spModel.core.SPProgramID;
 
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,27 +17,103 @@ import java.util.logging.Logger;
  * to all the programs in the database are kept.  It provides access to those
  * programs and support for listening to changes when programs are added or
  * removed.
+ *
+ * <p>Programs stored on disk are handed to the manager one at a time as they
+ * are read (see <code>{@link #programLoaded}</code>) and are visible to
+ * lookups immediately.  Operations that need the complete set of programs
+ * (listing, adding, removing) wait until <code>{@link #loadComplete}</code>
+ * has been called.
  */
-final class ProgramManager<N extends ISPRootNode> {
+final class ProgramManager<N extends ISPRootNode> implements IDBPersister.Sink<N> {
     private static final Logger LOG = Logger.getLogger(ProgramManager.class.getName());
 
+    /**
+     * Internal listener informed of programs read from storage at startup.
+     * Unlike <code>{@link ProgramEventListener}</code>s, these are not
+     * considered additions to the database.
+     */
+    interface LoadListener<N extends ISPRootNode> {
+        void programLoaded(N prog);
+    }
+
     private final List<ProgramEventListener<N>> _listeners;  // Can't use EventSupport with non-public inf.
+    private final List<LoadListener<N>> _loadListeners;
     private final Map<SPNodeKey, N>   _progKeyMap;
     private final Map<SPProgramID, N> _progIdMap;
+    private final CountDownLatch _loaded;
 
     /**
-     * Constructs with the initial collection of programs.
+     * Constructs an empty program manager.  Programs are supplied as they
+     * are read from storage via <code>{@link #programLoaded}</code>, which
+     * must be followed by a call to <code>{@link #loadComplete}</code>.
      */
-    ProgramManager(Collection<N> progCollection) {
-        _listeners  = new ArrayList<>();
-        _progKeyMap = new TreeMap<>();
-        _progIdMap  = new TreeMap<>();
+    ProgramManager() {
+        _listeners     = new ArrayList<>();
+        _loadListeners = new ArrayList<>();
+        _progKeyMap    = new TreeMap<>();
+        _progIdMap     = new TreeMap<>();
+        _loaded        = new CountDownLatch(1);
+    }
 
-        for (N prog : progCollection) {
-            _progKeyMap.put(prog.getProgramKey(), prog);
-            final SPProgramID progId = prog.getProgramID();
-            if (progId != null) _progIdMap.put(progId, prog);
+    /**
+     * Adds a program read from storage, without firing a program event.
+     */
+    @Override public synchronized void programLoaded(N prog) {
+        _progKeyMap.put(prog.getProgramKey(), prog);
+        final SPProgramID progId = prog.getProgramID();
+        if (progId != null) _progIdMap.put(progId, prog);
+
+        for (LoadListener<N> l : _loadListeners) l.programLoaded(prog);
+    }
+
+    /**
+     * Marks the initial load as finished, releasing any callers waiting for
+     * the complete set of programs.
+     */
+    void loadComplete() {
+        _loaded.countDown();
+    }
+
+    /**
+     * Returns <code>true</code> if all the programs in storage have been
+     * loaded.
+     */
+    boolean isLoaded() {
+        return _loaded.getCount() == 0;
+    }
+
+    /**
+     * Waits for the initial load to finish.
+     */
+    void awaitLoaded() throws InterruptedException {
+        _loaded.await();
+    }
+
+    // Waits for the initial load, deferring any interrupt until it is done.
+    private void _awaitLoadedUninterruptibly() {
+        boolean interrupted = false;
+        while (!isLoaded()) {
+            try {
+                awaitLoaded();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
         }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Adds a load listener, immediately informing it of any programs that
+     * have already been loaded.  Programs loaded afterwards are passed to the
+     * listener as they arrive.
+     */
+    synchronized void addLoadListener(LoadListener<N> ll) {
+        _loadListeners.add(ll);
+        for (N prog : _progKeyMap.values()) ll.programLoaded(prog);
+    }
+
+    synchronized void removeLoadListener(LoadListener<N> ll) {
+        _loadListeners.remove(ll);
     }
 
     /**
@@ -104,22 +182,41 @@ final class ProgramManager<N extends ISPRootNode> {
 
     /**
      * Fetches the named program if the <code>ProgramManager</code>
-     * knows of it; returns <code>null</code> otherwise.
+     * knows of it; returns <code>null</code> otherwise.  If the program has
+     * not been seen yet and loading is still in progress, waits for the
+     * load to finish before giving up.
      */
-    synchronized N lookupProgram(SPNodeKey progKey) {
+    N lookupProgram(SPNodeKey progKey) {
+        final N prog = _lookupProgram(progKey);
+        if ((prog != null) || isLoaded()) return prog;
+        _awaitLoadedUninterruptibly();
+        return _lookupProgram(progKey);
+    }
+
+    private synchronized N _lookupProgram(SPNodeKey progKey) {
         return _progKeyMap.get(progKey);
     }
 
-    synchronized SPNodeKey lookupProgramKey(SPProgramID progID) {
+    SPNodeKey lookupProgramKey(SPProgramID progID) {
         final N prog = lookupProgramByID(progID);
         return (prog == null) ? null : prog.getProgramKey();
     }
 
     /**
-     * Fetches the named program if found; returns <code>null</code> otherwise
+     * Fetches the named program if found; returns <code>null</code> otherwise.
+     * As with <code>{@link #lookupProgram}</code>, a miss during loading
+     * waits for the load to finish.
      */
-    synchronized N lookupProgramByID(SPProgramID progID) {
-        return (progID == null) ? null : _progIdMap.get(progID);
+    N lookupProgramByID(SPProgramID progID) {
+        if (progID == null) return null;
+        final N prog = _lookupProgramByID(progID);
+        if ((prog != null) || isLoaded()) return prog;
+        _awaitLoadedUninterruptibly();
+        return _lookupProgramByID(progID);
+    }
+
+    private synchronized N _lookupProgramByID(SPProgramID progID) {
+        return _progIdMap.get(progID);
     }
 
     /**
@@ -127,6 +224,8 @@ final class ProgramManager<N extends ISPRootNode> {
      * program has already been added, nothing is done.
      */
     N putProgram(N newProg) throws DBIDClashException {
+        _awaitLoadedUninterruptibly();
+
         final SPNodeKey  key = newProg.getProgramKey();
         final SPProgramID id = newProg.getProgramID();
         final N oldProg;
@@ -164,6 +263,8 @@ final class ProgramManager<N extends ISPRootNode> {
      * as a result of this call
      */
     boolean removeProgram(SPNodeKey key) {
+        _awaitLoadedUninterruptibly();
+
         final N prog;
         synchronized (this) {
             prog = _progKeyMap.remove(key);
@@ -173,14 +274,27 @@ final class ProgramManager<N extends ISPRootNode> {
         }
 
         _fireProgramEvent(prog, null);
+
+        // The program is gone, so there is no need to keep its lock.
+        SPNodeKeyLocks.instance.remove(key);
         return true;
     }
 
     /**
      * Fetches a <code>List</code> of the available programs.  The list may
-     * be freely modified by the caller.
+     * be freely modified by the caller.  Waits for the initial load to
+     * finish so that the list is always complete.
+     */
+    List<N> getPrograms() {
+        _awaitLoadedUninterruptibly();
+        return getLoadedPrograms();
+    }
+
+    /**
+     * Fetches a <code>List</code> of the programs available so far, without
+     * waiting for the initial load to finish.
      */
-    synchronized List<N> getPrograms() {
+    synchronized List<N> getLoadedPrograms() {
         return new ArrayList<>(_progKeyMap.values());
     }
 
@@ -3,10 +3,14 @@ package edu.gemini.pot.spdb;
 import edu.gemini.pot.sp.*;
 
 import java.security.Principal;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,10 +18,28 @@ import java.util.logging.Logger;
 /**
  * The query runner implementation.  See
  * <code>{@link IDBQueryRunner}</code> for more details.
+ *
+ * <p>Query functors that opt in by implementing
+ * <code>{@link IDBSplittableQueryFunctor}</code> are run in parallel.  The
+ * programs are split into contiguous partitions, a part of the functor is run
+ * over each one on a shared pool, and the executed parts are then merged into
+ * the original functor.
  */
 final class QueryRunner implements IDBQueryRunner {
     private static final Logger LOG = Logger.getLogger(QueryRunner.class.getName());
 
+    /**
+     * Number of threads used to run parallel queries.
+     */
+    static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Shared by all parallel queries.  The worker threads are daemons.
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("ODB Query Worker " + t.getPoolIndex());
+        return t;
+    }, null, false);
+
     private DBLocalDatabase _database;
     private DatabaseManager _dataMan;
     private Set<Principal> _principals;
@@ -35,19 +57,65 @@ final class QueryRunner implements IDBQueryRunner {
      * Runs a query on the available observations.
      */
     public <T extends IDBQueryFunctor> T queryObservations(T queryFunctor) {
-        List<ISPObservation> lst = new LinkedList<>();
-        for (ISPProgram prog : _dataMan.getProgramManager().getPrograms()) {
+        final List<ISPProgram> progs = _dataMan.getProgramManager().getPrograms();
+        if (_isParallel(queryFunctor, progs)) {
+            return _doParallelQuery(progs, n -> ((ISPProgram) n).getAllObservations(), queryFunctor);
+        }
+
+        List<ISPObservation> lst = new ArrayList<>();
+        for (ISPProgram prog : progs) {
             lst.addAll(prog.getAllObservations());
         }
         return _doQuery(lst, queryFunctor);
     }
 
+    /**
+     * Runs a query on the observations matching the index query.
+     */
+    public <T extends IDBQueryFunctor> T queryObservations(T queryFunctor, DBIndexQuery query) {
+        final List<ISPProgram> progs = _dataMan.getProgramManager().getPrograms();
+        final Map<SPNodeKey, List<ISPObservation>> matches = _dataMan.getObservationIndex().lookup(query);
+        final List<ISPProgram> lst = _matchingPrograms(progs, matches);
+        if (_isParallel(queryFunctor, lst)) {
+            return _doParallelQuery(lst, n -> matches.get(n.getProgramKey()), queryFunctor);
+        }
+
+        final List<ISPObservation> obsList = new ArrayList<>();
+        for (ISPProgram prog : lst) {
+            obsList.addAll(matches.get(prog.getProgramKey()));
+        }
+        return _doQuery(obsList, queryFunctor);
+    }
+
     /**
      * Runs a query on the available programs.
      */
     public <T extends IDBQueryFunctor> T queryPrograms(T queryFunctor) {
         List<ISPProgram> lst = _dataMan.getProgramManager().getPrograms();
-        return _doQuery(lst, queryFunctor);
+        return _isParallel(queryFunctor, lst) ?
+                _doParallelQuery(lst, Collections::singletonList, queryFunctor) :
+                _doQuery(lst, queryFunctor);
+    }
+
+    /**
+     * Runs a query on the programs containing observations that match the
+     * index query.
+     */
+    public <T extends IDBQueryFunctor> T queryPrograms(T queryFunctor, DBIndexQuery query) {
+        final List<ISPProgram> progs = _dataMan.getProgramManager().getPrograms();
+        final List<ISPProgram> lst = _matchingPrograms(progs, _dataMan.getObservationIndex().lookup(query));
+        return _isParallel(queryFunctor, lst) ?
+                _doParallelQuery(lst, Collections::singletonList, queryFunctor) :
+                _doQuery(lst, queryFunctor);
+    }
+
+    // Keeps the programs with matching observations, in their usual order.
+    private static List<ISPProgram> _matchingPrograms(List<ISPProgram> progs, Map<SPNodeKey, List<ISPObservation>> matches) {
+        final List<ISPProgram> res = new ArrayList<>(matches.size());
+        for (ISPProgram prog : progs) {
+            if (matches.containsKey(prog.getProgramKey())) res.add(prog);
+        }
+        return res;
     }
 
     /**
@@ -55,7 +123,9 @@ final class QueryRunner implements IDBQueryRunner {
      */
     public <T extends IDBQueryFunctor> T queryNightlyPlans(T queryFunctor) {
         List<ISPNightlyRecord> lst = _dataMan.getNightlyPlanManager().getPrograms();
-        return _doQuery(lst, queryFunctor);
+        return _isParallel(queryFunctor, lst) ?
+                _doParallelQuery(lst, Collections::singletonList, queryFunctor) :
+                _doQuery(lst, queryFunctor);
     }
 
     public <T extends IDBFunctor> T execute(T functor, ISPNode node) throws SPNodeNotLocalException {
@@ -85,4 +155,74 @@ final class QueryRunner implements IDBQueryRunner {
         return queryFunctor;
     }
 
+    private static boolean _isParallel(IDBQueryFunctor queryFunctor, List<?> roots) {
+        return (queryFunctor instanceof IDBSplittableQueryFunctor) && (PARALLELISM > 1) && (roots.size() > 1);
+    }
+
+    /**
+     * Runs the query in parallel.  The roots are split into contiguous
+     * partitions, each of which is expanded into the nodes to visit and
+     * given to its own part of the functor.  Once any part reports that it is
+     * done, the others stop at the next node.  Finally the parts, in root
+     * order, are merged into the original functor.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    <T extends IDBQueryFunctor> T _doParallelQuery(final List<? extends ISPNode> roots,
+                                                   final Function<ISPNode, List<? extends ISPNode>> expand,
+                                                   final T queryFunctor) {
+        final FunctorLogger.Handback hb = _dataMan.functorLogger.logQueryStart(queryFunctor);
+        try {
+            _runParts((IDBSplittableQueryFunctor) queryFunctor, roots, expand);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            LOG.log(Level.WARNING, "Problem running functor: " + queryFunctor, cause);
+            queryFunctor.setException((cause instanceof Exception) ? (Exception) cause : ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            queryFunctor.setException(ex);
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Problem running functor: " + queryFunctor, ex);
+            queryFunctor.setException(ex);
+        }
+        _dataMan.functorLogger.logQueryEnd(queryFunctor, hb);
+        return queryFunctor;
+    }
+
+    private <F extends IDBSplittableQueryFunctor<F>> void _runParts(final F functor,
+                                                                   final List<? extends ISPNode> roots,
+                                                                   final Function<ISPNode, List<? extends ISPNode>> expand)
+            throws InterruptedException, ExecutionException {
+        functor.init();
+
+        final int partitions = Math.min(PARALLELISM, roots.size());
+        final AtomicBoolean done = new AtomicBoolean(functor.isDone());
+
+        final List<Callable<F>> tasks = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; ++i) {
+            final List<? extends ISPNode> part = roots.subList(i * roots.size() / partitions, (i + 1) * roots.size() / partitions);
+            final F f = functor.newPart();
+            tasks.add(() -> {
+                WithPriority.exec(f.getPriority(), () -> {
+                    f.init();
+                    visit:
+                    for (ISPNode root : part) {
+                        for (ISPNode node : expand.apply(root)) {
+                            if (done.get()) break visit;
+                            if (f.isDone()) {
+                                done.set(true);
+                                break visit;
+                            }
+                            f.execute(_database, node, _principals);
+                        }
+                    }
+                    f.finished();
+                });
+                return f;
+            });
+        }
+
+        for (Future<F> result : POOL.invokeAll(tasks)) functor.merge(result.get());
+        functor.finished();
+    }
+
 }
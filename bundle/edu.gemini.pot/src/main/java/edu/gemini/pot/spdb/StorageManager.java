@@ -10,99 +10,242 @@ package edu.gemini.pot.spdb;
 import edu.gemini.pot.sp.ISPRootNode;
 import edu.gemini.spModel.core.SPProgramID;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The <code>StorageManager</code>
  */
-final class StorageManager<N extends ISPRootNode> implements ProgramEventListener<N> {
+final class StorageManager<N extends ISPRootNode> implements ProgramEventListener<N>, ProgramManager.LoadListener<N> {
     private static final Logger LOG = Logger.getLogger(StorageManager.class.getName());
 
     /**
-     * The default storage interval, which controls how often dirty programs
-     * are saved to the database.  By default the value is 10 seconds.
+     * The default storage interval, which controls how long after it is first
+     * modified a program is saved to the database.  By default the value is
+     * 10 seconds.
      */
     public static final long DEFAULT_STORAGE_INTERVAL = 1000 * 10;
 
 
     /**
-     * The StorageWorker is a helper class that contains a thread that
-     * periodically wakes up and stores any modified programs.
+     * Default number of threads used to write out modified programs.
      */
-    private class StorageWorker {
-        private long _storageInterval = DEFAULT_STORAGE_INTERVAL;
-        private Thread _storageThread;
-        private StorageRunnable _storageRunnable;
+    public static final int DEFAULT_WRITER_THREADS = 2;
 
-        //
-        // Runnable that does the storage work.
-        //
-        private class StorageRunnable implements Runnable {
-            volatile boolean done = false;
+    /**
+     * Default maximum number of programs that may be queued for writing at
+     * once.  When the writers fall behind, due programs wait and continue to
+     * accumulate modifications until there is room.
+     */
+    public static final int DEFAULT_MAX_WRITES = 16;
 
-            public void run() {
-                while (!done) {
-                    _storeDirtyPrograms();
-                    try {
-                        Thread.sleep(_storageInterval);
-                    } catch (InterruptedException ex) {
-                        LOG.log(Level.FINE, "ODB StorageRunnable interrupted.");
+    /**
+     * A modified program waiting for its storage interval to elapse.
+     */
+    private final class Pending implements Delayed {
+        final N root;
+        final long dirtyTime;
+        final long dueNanos;
+
+        Pending(N root, long dirtyTime, long delayMs) {
+            this.root      = root;
+            this.dirtyTime = dirtyTime;
+            this.dueNanos  = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        }
+
+        @Override public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override public int compareTo(Delayed that) {
+            return Long.compare(dueNanos, ((Pending) that).dueNanos);
+        }
+    }
+
+    /**
+     * The Flusher is a helper class that writes out each modified program
+     * one storage interval after it is first modified.  Any further
+     * modifications made in the meantime are stored along with the first.
+     * A dispatcher thread sleeps until the next program is due and hands it
+     * to one of a fixed set of writer threads.  A given program is always
+     * written by the same writer, so its writes are never reordered.
+     * Checkpoints are run on the program's writer too, so they are ordered
+     * with the writes of the flusher.
+     */
+    private final class Flusher implements DirtyProgramListener.Observer<N> {
+        private volatile long _storageInterval = DEFAULT_STORAGE_INTERVAL;
+
+        private final DelayQueue<Pending> _pending = new DelayQueue<Pending>();
+        private final Semaphore _permits;
+        private final ExecutorService[] _writers;
+        private final Thread _dispatcher;
+        private volatile boolean _done = false;
+
+        private final AtomicInteger _writing      = new AtomicInteger();
+        private final AtomicLong    _flushes      = new AtomicLong();
+        private final AtomicLong    _failures     = new AtomicLong();
+        private final AtomicLong    _totalLatency = new AtomicLong();
+        private final AtomicLong    _maxLatency   = new AtomicLong();
+        private final AtomicLong    _stalls       = new AtomicLong();
+
+        Flusher(int writerThreads, int maxWrites) {
+            if (writerThreads < 1) throw new IllegalArgumentException("writerThreads must be > 0");
+            if (maxWrites < 1) throw new IllegalArgumentException("maxWrites must be > 0");
+
+            _permits = new Semaphore(maxWrites);
+            _writers = new ExecutorService[writerThreads];
+            for (int i = 0; i < writerThreads; ++i) {
+                final String name = "ODB Storage Writer " + i;
+                _writers[i] = Executors.newSingleThreadExecutor(r -> {
+                    final Thread t = new Thread(r, name);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+            }
+
+            _dispatcher = new Thread(this::dispatch, "ODB Storage Dispatcher");
+            _dispatcher.setPriority(Thread.NORM_PRIORITY - 1);
+        }
+
+        void start() {
+            _dispatcher.start();
+        }
+
+        @Override public void programDirty(N root) {
+            _pending.add(new Pending(root, System.currentTimeMillis(), _storageInterval));
+        }
+
+        private void dispatch() {
+            while (!_done) {
+                try {
+                    final Pending p = _pending.take();
+                    if (!_permits.tryAcquire()) {
+                        // The writers are behind, so wait for room.  The
+                        // program keeps collecting changes in the meantime.
+                        _stalls.incrementAndGet();
+                        _permits.acquire();
                     }
+                    submit(p);
+                } catch (InterruptedException ex) {
+                    LOG.log(Level.FINE, "ODB storage dispatcher interrupted.");
                 }
             }
         }
 
-        /**
-         * Start the storage worker, if it isn't already running.
-         */
-        public synchronized void start() {
-            if (_storageThread != null) {
+        private void submit(Pending p) {
+            final DirtyProgramListener.Changes<N> c = _dirty.takeChanges(p.root);
+            if (c == null) {
+                // Already stored by a checkpoint or removed.
+                _permits.release();
                 return;
             }
-            _storageRunnable = new StorageRunnable();
-            _storageThread = new Thread(_storageRunnable, "ODB StorageRunnable");
-            _storageThread.setPriority(Thread.NORM_PRIORITY - 1);
-            _storageThread.start();
+
+            _writing.incrementAndGet();
+            try {
+                writerFor(p.root).execute(() -> {
+                    try {
+                        if (_store(c)) {
+                            final long latency = System.currentTimeMillis() - p.dirtyTime;
+                            _flushes.incrementAndGet();
+                            _totalLatency.addAndGet(latency);
+                            _maxLatency.accumulateAndGet(latency, Math::max);
+                        } else {
+                            _failures.incrementAndGet();
+                        }
+                    } finally {
+                        _writing.decrementAndGet();
+                        _permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Shutting down, so the changes will be written directly.
+                _writing.decrementAndGet();
+                _permits.release();
+                _store(c);
+            }
         }
 
+        private ExecutorService writerFor(ISPRootNode root) {
+            return _writers[(root.getNodeKey().hashCode() & Integer.MAX_VALUE) % _writers.length];
+        }
 
         /**
-         * Stop the storage worker, if it is running.
+         * Runs the given write of a program on the program's writer and waits
+         * for it to finish.  Once the writers have been stopped, it runs on
+         * the calling thread.
          */
-        public synchronized void stop() {
-            if (_storageThread == null) {
+        void write(ISPRootNode root, Runnable write) {
+            final Future<?> f;
+            try {
+                f = writerFor(root).submit(write);
+            } catch (RejectedExecutionException ex) {
+                write.run();
                 return;
             }
 
-            _storageRunnable.done = true;
-            _storageThread.interrupt();
-            _storageThread = null;
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                log(root, ex);
+            }
+        }
+
+        /**
+         * Stops the dispatcher and waits for the writers to finish what they
+         * have been given.  Programs that are still waiting are left to the
+         * caller.
+         */
+        void stop() {
+            _done = true;
+            _dispatcher.interrupt();
+            try {
+                _dispatcher.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (ExecutorService w : _writers) w.shutdown();
+            for (ExecutorService w : _writers) {
+                try {
+                    w.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _pending.clear();
         }
 
         /**
-         * Gets the time period (in milliseconds) that the storage worker
-         * will sleep between periods of writing dirty programs (if any).
+         * Gets the time period (in milliseconds) that a modified program
+         * waits before being written.
          */
-        public synchronized long getStorageInterval() {
+        long getStorageInterval() {
             return _storageInterval;
         }
 
         /**
-         * Sets the time period (in milliseconds) that the storage worker
-         * will sleep between periods of writing dirty programs.
+         * Sets the time period (in milliseconds) that a modified program
+         * waits before being written.  Applies to programs modified from now
+         * on.
          *
          * @throws IllegalArgumentException if interval is 0 or less
          */
-        public synchronized void setStorageInterval(long interval) throws IllegalArgumentException {
-            if (_storageInterval < 1) {
+        void setStorageInterval(long interval) throws IllegalArgumentException {
+            if (interval < 1) {
                 throw new IllegalArgumentException("storage interval must be > 0");
             }
-
             _storageInterval = interval;
-            if (_storageThread != null) {
-                _storageThread.interrupt();
-            }
+        }
+
+        DBFlushStats getStats() {
+            return new DBFlushStats(_pending.size(), _writing.get(),
+                    _flushes.get(), _failures.get(),
+                    _totalLatency.get(), _maxLatency.get(), _stalls.get());
         }
     }
 
@@ -110,7 +253,7 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
     private final ProgramManager<N> _progMan;
     private final IDBPersister _persister;
     private final DirtyProgramListener<N> _dirty;
-    private final StorageWorker _storeWorker;
+    private final Flusher _flusher;
 
 
     /**
@@ -118,18 +261,28 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * used to store modified/added programs.
      */
     StorageManager(ProgramManager<N> pm, IDBPersister persister)  {
+        this(pm, persister, DEFAULT_WRITER_THREADS, DEFAULT_MAX_WRITES);
+    }
+
+    /**
+     * Creates the <code>StorageManager</code> with the number of threads used
+     * to write modified programs and the maximum number of programs that may
+     * be queued for writing before the writers are considered to be behind.
+     */
+    StorageManager(ProgramManager<N> pm, IDBPersister persister, int writerThreads, int maxWrites)  {
         _progMan   = pm;
         _persister = persister;
-        _dirty     = new DirtyProgramListener<N>();
+        _flusher   = new Flusher(writerThreads, maxWrites);
+        _dirty     = new DirtyProgramListener<N>(_flusher);
 
         pm.addListener(this);
 
-        // Add the dirty listener to all the existing programs.
-        for (N prog : pm.getPrograms()) prog.addCompositeChangeListener(_dirty);
+        // Add the dirty listener to all the existing programs, and to those
+        // that are loaded later.
+        pm.addLoadListener(this);
 
-        // Start the thread that periodically looks for modifications.
-        _storeWorker = new StorageWorker();
-        _storeWorker.start();
+        // Start the thread that writes out modified programs.
+        _flusher.start();
     }
 
     /**
@@ -137,11 +290,12 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * The storage manager will no longer function after a call to shutdown.
      */
     void shutdown() {
-        // Stop the storage thread.
-        _storeWorker.stop();
+        // Stop the storage threads, letting any writes in progress finish.
+        _flusher.stop();
 
         // Do some cleanup, removing listeners.
         _progMan.removeListener(this);
+        _progMan.removeLoadListener(this);
 
         for (N prog : _progMan.getPrograms()) prog.removeCompositeChangeListener(_dirty);
 
@@ -154,7 +308,7 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * programs are saved to disk.
      */
     long getStorageInterval() {
-        return _storeWorker.getStorageInterval();
+        return _flusher.getStorageInterval();
     }
 
     /**
@@ -162,7 +316,23 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * programs are saved to disk.
      */
     void setStorageInterval(long periodMS) throws IllegalArgumentException {
-        _storeWorker.setStorageInterval(periodMS);
+        _flusher.setStorageInterval(periodMS);
+    }
+
+    /**
+     * Gets the queue depth and latency counters of the program writers.
+     */
+    DBFlushStats getFlushStats() {
+        return _flusher.getStats();
+    }
+
+    /**
+     * Starts monitoring a program read from storage for changes.  Implements
+     * the <code>{@link ProgramManager.LoadListener#programLoaded}</code>
+     * method.
+     */
+    public void programLoaded(N prog) {
+        prog.addCompositeChangeListener(_dirty);
     }
 
     /**
@@ -198,15 +368,31 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
     }
 
     /**
-     * Stores all the modified programs, if any.
+     * Stores the changes made to a program.  Programs in which only data
+     * objects were updated are saved incrementally.
+     *
+     * @return <code>true</code> if successful
      */
-    private void _storeDirtyPrograms() {
-        for (N n : _dirty.getDirtyPrograms()) {
-            try {
-                _persister.store(n);
-            } catch (Exception ex) {
-                log(n, ex);
+    private boolean _store(DirtyProgramListener.Changes<N> c) {
+        try {
+            if (c.isStructural()) {
+                _persister.store(c.root);
+            } else {
+                _persister.storeChanges(c.root, c.nodes);
             }
+            return true;
+        } catch (Exception ex) {
+            log(c.root, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Stores all the modified programs, if any, each on its writer.
+     */
+    private void _storeDirtyPrograms() {
+        for (DirtyProgramListener.Changes<N> c : _dirty.takeChanges()) {
+            _flusher.write(c.root, () -> _store(c));
         }
     }
 
@@ -217,11 +403,13 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
     void checkpoint(N prog) {
         _dirty.removeProgram(prog);
 
-        try {
-            _persister.store(prog);
-        } catch (Exception ex) {
-            log(prog, ex);
-        }
+        _flusher.write(prog, () -> {
+            try {
+                _persister.store(prog);
+            } catch (Exception ex) {
+                log(prog, ex);
+            }
+        });
     }
 
     private static void log(ISPRootNode prog, Exception ex) {
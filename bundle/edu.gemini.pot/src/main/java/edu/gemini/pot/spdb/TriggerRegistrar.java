@@ -17,7 +17,7 @@ import java.util.concurrent.Executors;
 /**
  * Handles trigger registration (and execution).
  */
-final class TriggerRegistrar implements PropertyChangeListener, ProgramEventListener<ISPProgram> {
+final class TriggerRegistrar implements PropertyChangeListener, ProgramEventListener<ISPProgram>, ProgramManager.LoadListener<ISPProgram> {
     private static final Logger LOG = Logger.getLogger(TriggerRegistrar.class.getName());
 
     private final ProgramManager<ISPProgram> _progMan;
@@ -31,11 +31,8 @@ final class TriggerRegistrar implements PropertyChangeListener, ProgramEventList
         _progMan = programMan;
         _pool = Executors.newCachedThreadPool();
 
-        // Listen to all the programs.
-        List<ISPProgram> progs = programMan.getPrograms();
-        for (ISPProgram prog : progs) {
-            prog.addCompositeChangeListener(this);
-        }
+        // Listen to all the programs, including those still being loaded.
+        programMan.addLoadListener(this);
 
         // Listen to the program manager to make sure we see any new programs.
         programMan.addListener(this);
@@ -174,6 +171,10 @@ final class TriggerRegistrar implements PropertyChangeListener, ProgramEventList
         programAdded(pme);
     }
 
+    public void programLoaded(ISPProgram prog) {
+        prog.addCompositeChangeListener(this);
+    }
+
     public void programRemoved(ProgramEvent<ISPProgram> pme) {
         pme.getOldProgram().removeCompositeChangeListener(TriggerRegistrar.this);
     }
@@ -184,6 +185,7 @@ final class TriggerRegistrar implements PropertyChangeListener, ProgramEventList
     void shutdown() {
         _pool.shutdownNow();
         _progMan.removeListener(this);
+        _progMan.removeLoadListener(this);
 
         for (ISPProgram o : _progMan.getPrograms())
             o.removeCompositeChangeListener(this);
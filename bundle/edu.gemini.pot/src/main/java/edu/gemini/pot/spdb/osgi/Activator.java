@@ -1,11 +1,15 @@
 package edu.gemini.pot.spdb.osgi;
 
 import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBSerializationCodec;
 import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBProgramCodec;
 import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.spModel.obs.ObsIndexer;
 import edu.gemini.util.BundleProperties;
 import edu.gemini.util.osgi.*;
 import org.osgi.framework.*;
+import org.osgi.util.tracker.ServiceTracker;
 
 import java.io.File;
 import java.io.IOException;
@@ -34,6 +38,20 @@ public class Activator implements BundleActivator {
      */
     public static final String BUNDLE_PROP_DIR = "edu.gemini.spdb.dir";
 
+    /**
+     * Bundle property that names the codec used to store programs on disk.
+     * The default, "serialization", uses Java serialization.  Any other value
+     * is matched against the "name" property of registered
+     * {@link IDBProgramCodec} services.
+     */
+    public static final String BUNDLE_PROP_CODEC = "edu.gemini.spdb.codec";
+
+    /** Service property holding the name of an {@link IDBProgramCodec}. */
+    public static final String CODEC_NAME_PROP = "name";
+
+    // How long to wait for a configured codec service to show up.
+    private static final long CODEC_TIMEOUT_MS = 60 * 1000;
+
     // Mutable state
     private DatabaseLoader loader;
 
@@ -52,7 +70,8 @@ public class Activator implements BundleActivator {
             } else {
                 dbDir = ExternalStorage$.MODULE$.getExternalDataFile(context, "spdb");
             }
-            loader = new DatabaseLoader(context, dbDir);
+            final String codec = props.getString(BUNDLE_PROP_CODEC, DBSerializationCodec.NAME);
+            loader = new DatabaseLoader(context, dbDir, codec);
         }
 
     }
@@ -72,16 +91,18 @@ public class Activator implements BundleActivator {
 
         private final BundleContext ctx;
         private final File dbDir;
+        private final String codecName;
 
         private State state;
         private IDBDatabaseService db;
         private ServiceRegistration<IDBDatabaseService> dbReg;
         private ServiceRegistration<SecureServiceFactory<IDBQueryRunner>> qrReg;
 
-        DatabaseLoader(BundleContext ctx, File dir) {
-            this.ctx   = ctx;
-            this.dbDir = dir;
-            this.state = State.loading;
+        DatabaseLoader(BundleContext ctx, File dir, String codecName) {
+            this.ctx       = ctx;
+            this.dbDir     = dir;
+            this.codecName = codecName;
+            this.state     = State.loading;
 
             Thread t = new Thread(this, "DatabaseLoader");
             t.setDaemon(true);
@@ -94,6 +115,9 @@ public class Activator implements BundleActivator {
 
             this.db = db;
 
+            // Index the observation attributes that queries commonly select on.
+            for (ObsIndexer indexer : ObsIndexer.values()) db.registerIndex(indexer);
+
             LOGGER.info("Exporting database to OSGi.");
             final Dictionary<String, Object> properties1 = new Hashtable<>();
             dbReg = ctx.registerService(IDBDatabaseService.class, db, properties1);
@@ -138,10 +162,33 @@ public class Activator implements BundleActivator {
             }
         }
 
+        // Finds the configured codec, waiting for it to be registered if
+        // necessary.
+        private IDBProgramCodec lookupCodec() throws IOException {
+            if (DBSerializationCodec.NAME.equals(codecName)) return DBSerializationCodec.instance;
+
+            final String filter = String.format("(&(%s=%s)(%s=%s))",
+                    Constants.OBJECTCLASS, IDBProgramCodec.class.getName(), CODEC_NAME_PROP, codecName);
+            try {
+                final ServiceTracker<IDBProgramCodec, IDBProgramCodec> tracker =
+                        new ServiceTracker<>(ctx, ctx.createFilter(filter), null);
+                tracker.open();
+                try {
+                    final IDBProgramCodec codec = tracker.waitForService(CODEC_TIMEOUT_MS);
+                    if (codec == null) throw new IOException("Program codec not available: " + codecName);
+                    return codec;
+                } finally {
+                    tracker.close();
+                }
+            } catch (InvalidSyntaxException | InterruptedException ex) {
+                throw new IOException("Could not find program codec: " + codecName, ex);
+            }
+        }
+
         public void run() {
             LOGGER.info("Starting local database on " + dbDir.getAbsolutePath());
             try {
-                setReady(DBLocalDatabase.create(dbDir));
+                setReady(DBLocalDatabase.create(dbDir, lookupCodec()));
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, "Could not start ODB on " + dbDir, ex);
                 try {
@@ -44,7 +44,11 @@ public final class ConfigBridge {
     }
 
     public static ConfigSequence extractSequence(ISPObservation obs, Map<String, Object> options, ConfigValMap map, boolean filterMeta) {
-       return mapSequence(calculateSequence(obs, options, filterMeta), map);
+        // The calculated sequence is cached and mapped afterwards, so that
+        // each mapping is derived from the same cached sequence.
+        final ConfigSequence seq = ConfigSequenceCache.get(obs, options, filterMeta,
+                (opts, filter) -> calculateSequence(obs, opts, filter));
+        return mapSequence(seq, map);
     }
 
     private static ConfigSequence mapSequence(ConfigSequence sequence, ConfigValMap map) {
@@ -113,7 +117,7 @@ public final class ConfigBridge {
 
         // Post-process the configuration if necessary.
         for (ISPObsComponent obsComp : obs.getObsComponents()) {
-            Object dobj = obsComp.getDataObject();
+            Object dobj = obsComp.getDataObjectSnapshot();
             if (dobj instanceof ConfigPostProcessor) {
                 configSeq = ((ConfigPostProcessor) dobj).postProcessSequence(configSeq);
             }
@@ -0,0 +1,184 @@
+package edu.gemini.spModel.config;
+
+import edu.gemini.pot.sp.ISPContainerNode;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.spModel.config2.ConfigSequence;
+import edu.gemini.spModel.obs.SPObsCache;
+
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Remembers the sequences calculated for a single observation, one for each
+ * distinct set of sequence options.  The cache is kept in the observation's
+ * {@link SPObsCache} and is tied to the version of every node in the
+ * observation's subtree, so any change to the observation, including those
+ * made while events are turned off, causes the sequences to be recalculated.
+ *
+ * <p>The sequences are only softly referenced so that the memory they use
+ * may be reclaimed when needed.
+ */
+public final class ConfigSequenceCache {
+
+    /**
+     * Counts of sequence lookups, for all observations.
+     */
+    public static final class Stats implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long _hits;
+        private final long _misses;
+        private final long _stale;
+
+        public Stats(long hits, long misses, long stale) {
+            _hits   = hits;
+            _misses = misses;
+            _stale  = stale;
+        }
+
+        /** Lookups satisfied from the cache. */
+        public long getHits() { return _hits; }
+
+        /** Lookups that required the sequence to be calculated. */
+        public long getMisses() { return _misses; }
+
+        /**
+         * Misses caused by a change to the observation since its sequences
+         * were cached.
+         */
+        public long getStale() { return _stale; }
+
+        /** The fraction of lookups satisfied from the cache. */
+        public double getHitRate() {
+            final long total = _hits + _misses;
+            return (total == 0) ? 0.0 : ((double) _hits) / total;
+        }
+
+        @Override public String toString() {
+            return String.format("ConfigSequenceCache.Stats{hits=%d, misses=%d, stale=%d, hitRate=%.3f}",
+                    _hits, _misses, _stale, getHitRate());
+        }
+    }
+
+    private static final AtomicLong HITS   = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong STALE  = new AtomicLong();
+
+    /**
+     * Gets the lookup counts accumulated since startup.
+     */
+    public static Stats getStats() {
+        return new Stats(HITS.get(), MISSES.get(), STALE.get());
+    }
+
+    private static final class Key {
+        final Map<String, Object> options;
+        final boolean filterMeta;
+
+        Key(Map<String, Object> options, boolean filterMeta) {
+            this.options    = options;
+            this.filterMeta = filterMeta;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key that = (Key) o;
+            return (filterMeta == that.filterMeta) && options.equals(that.options);
+        }
+
+        @Override public int hashCode() {
+            return 31 * options.hashCode() + (filterMeta ? 1 : 0);
+        }
+    }
+
+    // The program id, key and version of each node in the observation's
+    // subtree at the time the sequences were cached.
+    private List<Object> _version = Collections.emptyList();
+    private SoftReference<Map<Key, ConfigSequence>> _seqs = new SoftReference<>(null);
+
+    private ConfigSequenceCache() {
+    }
+
+    private static void _addVersions(ISPNode node, List<Object> res) {
+        res.add(node.getNodeKey());
+        res.add(node.getVersion());
+        if (node instanceof ISPContainerNode) {
+            for (ISPNode child : ((ISPContainerNode) node).getChildren()) _addVersions(child, res);
+        }
+    }
+
+    private static List<Object> _versionOf(ISPObservation obs) {
+        final List<Object> res = new ArrayList<>();
+        obs.getProgramReadLock();
+        try {
+            res.add(obs.getProgramID());
+            _addVersions(obs, res);
+        } finally {
+            obs.returnProgramReadLock();
+        }
+        return res;
+    }
+
+    private synchronized ConfigSequence _lookup(List<Object> version, Key key) {
+        final Map<Key, ConfigSequence> seqs = _seqs.get();
+        if (!version.equals(_version)) {
+            if (seqs != null && !seqs.isEmpty()) STALE.incrementAndGet();
+            return null;
+        }
+        return (seqs == null) ? null : seqs.get(key);
+    }
+
+    private synchronized void _store(List<Object> version, Key key, ConfigSequence seq) {
+        Map<Key, ConfigSequence> seqs = _seqs.get();
+        if ((seqs == null) || !version.equals(_version)) {
+            seqs = new HashMap<>();
+            _seqs = new SoftReference<>(seqs);
+            _version = version;
+        }
+        seqs.put(key, seq);
+    }
+
+    private static ConfigSequenceCache _cacheFor(ISPObservation obs) {
+        ConfigSequenceCache c = SPObsCache.getConfigSequenceCache(obs);
+        if (c == null) {
+            c = new ConfigSequenceCache();
+            SPObsCache.setConfigSequenceCache(obs, c);
+        }
+        return c;
+    }
+
+    /**
+     * Gets the sequence for the observation and options, using the cached
+     * sequence if the observation hasn't changed since it was calculated.
+     *
+     * @param calc calculates the sequence given the complete options and
+     * whether to filter metadata
+     *
+     * @return a copy of the sequence, which the caller may modify
+     */
+    static ConfigSequence get(ISPObservation obs, Map<String, Object> options, boolean filterMeta,
+                              BiFunction<Map<String, Object>, Boolean, ConfigSequence> calc) {
+        final Map<String, Object> opts = ObservationCB.getDefaultSequenceOptions(options);
+        final Key key = new Key(new HashMap<>(opts), filterMeta);
+
+        // Take the version first so that any change made while calculating
+        // the sequence invalidates it.
+        final List<Object> version = _versionOf(obs);
+        final ConfigSequenceCache cache = _cacheFor(obs);
+
+        final ConfigSequence cached = cache._lookup(version, key);
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return new ConfigSequence(cached);
+        }
+
+        MISSES.incrementAndGet();
+        final ConfigSequence seq = calc.apply(opts, filterMeta);
+        cache._store(version, key, new ConfigSequence(seq));
+        return seq;
+    }
+}
@@ -1,8 +1,11 @@
 package edu.gemini.spModel.config2;
 
 import java.util.*;
-import java.io.Serializable;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
 
 /**
  * The ConfigSequence is an ordered collection of {@link Config} instances.
@@ -30,35 +33,177 @@ import java.io.IOException;
  * successive steps is available via the {@link #getCompactView()} and
  * {@link #compactIterator()} methods.
  *
+ * <p>Internally the sequence is stored by column rather than by step.  Each
+ * item key has its own column holding the steps at which the item is given a
+ * value.  Once the sequence is compacted (for instance when it is serialized)
+ * each column is a run-length encoding of the item's values, so an item that
+ * keeps the same value over hundreds of steps costs a single entry.  The
+ * serialized form is unchanged: the compact list of Configs described above.
+ *
  * <p><b>Note that this class is not mt-safe</b> If multiple threads access a
  * ConfigSequence concurrently, and at least one of the threads modifies the
  * sequence structurally, it <em>must</em> be synchronized externally.
  */
 public class ConfigSequence implements Serializable {
 
+    // Matches the original, step by step implementation.
+    private static final long serialVersionUID = -940889628006001314L;
+
+    // The serialized form is that of the original implementation: the
+    // compact list of Configs and a flag that is always true.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_configs",   List.class),
+        new ObjectStreamField("_isCompact", boolean.class),
+    };
+
     public interface Predicate {
         boolean matches(Config config);
     }
 
-    private List<Config> _configs = new ArrayList<>();
-    private boolean _isCompact = true;
+    //
+    // The values of a single item.  Each entry records a step at which the
+    // item is given a value, which it keeps until the next entry.  When the
+    // sequence is compact, successive entries always hold different values so
+    // the column is a run-length encoding of the item's value at each step.
+    //
+    private static final class Column {
+        private int[] _steps;
+        private Object[] _values;
+        private int _size;
+
+        Column() {
+            _steps  = new int[2];
+            _values = new Object[2];
+        }
 
-    private transient List<Config> _completeConfigs;
+        Column(Column copy) {
+            _steps  = Arrays.copyOf(copy._steps,  copy._size);
+            _values = Arrays.copyOf(copy._values, copy._size);
+            _size   = copy._size;
+        }
 
-    // Iterator class used to make copies of the Config object it generates.
-    private class CopyIterator implements Iterator<Config> {
-        private Iterator<Config> _srcIter;
+        boolean isEmpty() {
+            return _size == 0;
+        }
 
-        CopyIterator(Iterator<Config> srcIter) {
-            _srcIter = srcIter;
+        // Index of the last entry at or before the given step, -1 if none.
+        int indexAt(int step) {
+            int lo = 0;
+            int hi = _size - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (_steps[mid] <= step) lo = mid + 1;
+                else hi = mid - 1;
+            }
+            return hi;
+        }
+
+        Object valueAt(int step) {
+            final int i = indexAt(step);
+            return (i < 0) ? null : _values[i];
+        }
+
+        void put(int step, Object value) {
+            final int i = indexAt(step);
+            if ((i >= 0) && (_steps[i] == step)) {
+                _values[i] = value;
+                return;
+            }
+
+            if (_size == _steps.length) {
+                final int cap = Math.max(2, _size * 2);
+                _steps  = Arrays.copyOf(_steps,  cap);
+                _values = Arrays.copyOf(_values, cap);
+            }
+            final int pos = i + 1;
+            System.arraycopy(_steps,  pos, _steps,  pos + 1, _size - pos);
+            System.arraycopy(_values, pos, _values, pos + 1, _size - pos);
+            _steps[pos]  = step;
+            _values[pos] = value;
+            ++_size;
+        }
+
+        void remove(int step) {
+            final int i = indexAt(step);
+            if ((i < 0) || (_steps[i] != step)) return;
+            System.arraycopy(_steps,  i + 1, _steps,  i, _size - i - 1);
+            System.arraycopy(_values, i + 1, _values, i, _size - i - 1);
+            _values[--_size] = null;
+        }
+
+        // Moves the entries at or after step <code>from</code> by
+        // <code>delta</code> steps.
+        void shift(int from, int delta) {
+            for (int i = indexAt(from - 1) + 1; i < _size; ++i) _steps[i] += delta;
+        }
+
+        // Drops entries that repeat the value of the previous entry.
+        void compact() {
+            int j = 0;
+            for (int i = 0; i < _size; ++i) {
+                if ((j > 0) && Objects.equals(_values[i], _values[j - 1])) continue;
+                _steps[j]  = _steps[i];
+                _values[j] = _values[i];
+                ++j;
+            }
+            Arrays.fill(_values, j, _size, null);
+            _size = j;
+        }
+    }
+
+    // Iterates over the steps in [from, to), producing either the Config
+    // with every item in effect at each step or just the items given values
+    // at that step.
+    private final class StepIterator implements Iterator<Config> {
+        private final ItemKey[] _keys;
+        private final Column[] _cols;
+        private final int[] _next;  // next entry to apply in each column
+        private final boolean _complete;
+        private final int _to;
+        private final Config _cur = new DefaultConfig();
+        private int _step;
+
+        StepIterator(int from, int to, boolean complete) {
+            final int n = _columns.size();
+            _keys = new ItemKey[n];
+            _cols = new Column[n];
+            _next = new int[n];
+
+            int j = 0;
+            for (Map.Entry<ItemKey, Column> me : _columns.entrySet()) {
+                _keys[j] = me.getKey();
+                _cols[j] = me.getValue();
+
+                // Start with the values in effect before the first step.
+                final int i = _cols[j].indexAt(from - 1);
+                if (complete && (i >= 0)) _cur.putItem(_keys[j], _cols[j]._values[i]);
+                _next[j] = i + 1;
+                ++j;
+            }
+
+            _complete = complete;
+            _step     = from;
+            _to       = to;
         }
 
         public boolean hasNext() {
-            return _srcIter.hasNext();
+            return _step < _to;
         }
 
         public Config next() {
-            return new DefaultConfig(_srcIter.next());
+            if (!hasNext()) throw new NoSuchElementException();
+            if (!_complete) _cur.clear();
+
+            for (int j = 0; j < _cols.length; ++j) {
+                final Column col = _cols[j];
+                final int i = _next[j];
+                if ((i < col._size) && (col._steps[i] == _step)) {
+                    _cur.putItem(_keys[j], col._values[i]);
+                    _next[j] = i + 1;
+                }
+            }
+            ++_step;
+            return new DefaultConfig(_cur);
         }
 
         public void remove() {
@@ -66,6 +211,10 @@ public class ConfigSequence implements Serializable {
         }
     }
 
+    private transient Map<ItemKey, Column> _columns = new HashMap<>();
+    private transient int _size;
+    private transient boolean _isCompact = true;
+
     public static final ConfigSequence EMPTY = new ConfigSequence();
 
     /**
@@ -83,7 +232,7 @@ public class ConfigSequence implements Serializable {
     public ConfigSequence(Config[] configs) {
         if (configs.length > 1) _isCompact = false;
         for (Config config : configs) {
-            _configs.add(new DefaultConfig(config));
+            _putAll(_size++, config);
         }
     }
 
@@ -91,57 +240,55 @@ public class ConfigSequence implements Serializable {
      * Creates a ConfigSequence that is a copy of the given sequence.
      */
     public ConfigSequence(ConfigSequence copy) {
-        _configs = new ArrayList<>(copy._configs);
-
-        for (ListIterator<Config> lit=_configs.listIterator(); lit.hasNext(); ) {
-            lit.set(new DefaultConfig(lit.next()));
+        for (Map.Entry<ItemKey, Column> me : copy._columns.entrySet()) {
+            _columns.put(me.getKey(), new Column(me.getValue()));
         }
+        _size      = copy._size;
         _isCompact = copy._isCompact;
     }
 
+    //
+    // Adds the items in the config at the given step.
+    //
+    private void _putAll(int step, Config config) {
+        for (ItemEntry ie : config.itemEntries()) {
+            Column col = _columns.get(ie.getKey());
+            if (col == null) {
+                col = new Column();
+                _columns.put(ie.getKey(), col);
+            }
+            col.put(step, ie.getItemValue());
+        }
+    }
+
     //
     // Compacts the representation of the sequence such that each step only
     // contains items that are different from the previous step.  For example,
     // if step 0 has instrument:filter J and step 1 also has instrument:filter
-    // J, then instrument:filter is removed from step 1 in the _configs list.
+    // J, then the instrument:filter entry for step 1 is dropped.
     //
     private void _compact() {
         if (_isCompact) return;
-        if (_configs.size() <= 1) {
-            _isCompact = true;
-            return;
-        }
-
-        List<Config> res = new ArrayList<>();
-        Config curConfig = new DefaultConfig();
-        for (Config next : _configs) {
-
-            Config tmp = new DefaultConfig(next);
-            tmp.removeAll(curConfig);
-            res.add(tmp);
-
-            curConfig.putAll(next);
-        }
-        _configs   = res;
+        for (Column col : _columns.values()) col.compact();
         _isCompact = true;
     }
 
-    //
-    // Fills in the transient _completeConfigs list with Config instances in
-    // which every successive Config contains all items that are in effect at
-    // that step.
-    //
-    private void _complete() {
-        if (_completeConfigs != null) return;
-
-        _completeConfigs = new ArrayList<>();
-        if (_configs.size() == 0) return;
+    private void _checkStep(int step) {
+        if ((step < 0) || (step >= _size)) {
+            throw new IndexOutOfBoundsException("Step: " + step + ", Size: " + _size);
+        }
+    }
 
-        Config curConfig = new DefaultConfig();
-        for (Config config : _configs) {
-            curConfig.putAll(config);
-            _completeConfigs.add(new DefaultConfig(curConfig));
+    private Config[] _steps(int from, int to, boolean complete) {
+        if ((from < 0) || (to > _size) || (from > to)) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + _size);
         }
+        final Config[] res = new Config[to - from];
+        final Iterator<Config> it = new StepIterator(from, to, complete);
+        for (int i=0; i<res.length; ++i) {
+            res[i] = it.next();
+        }
+        return res;
     }
 
     /**
@@ -155,13 +302,7 @@ public class ConfigSequence implements Serializable {
      * @return all the {@link Config} objects in this sequence
      */
     public Config[] getAllSteps() {
-        _complete();
-
-        Config[] res = _completeConfigs.toArray(DefaultConfig.EMPTY_ARRAY);
-        for (int i=0; i<res.length; ++i) {
-            res[i] = new DefaultConfig(res[i]);
-        }
-        return res;
+        return _steps(0, _size, true);
     }
 
     /**
@@ -174,9 +315,9 @@ public class ConfigSequence implements Serializable {
      * predicate
      */
     public ConfigSequence filter(Predicate p) {
-        _complete();
-        List<Config> res = new ArrayList<>(_completeConfigs.size());
-        for (Config c : _completeConfigs) {
+        List<Config> res = new ArrayList<>(_size);
+        for (Iterator<Config> it = new StepIterator(0, _size, true); it.hasNext(); ) {
+            Config c = it.next();
             if (p.matches(c)) res.add(c);
         }
         return new ConfigSequence(res.toArray(new Config[res.size()]));
@@ -195,11 +336,7 @@ public class ConfigSequence implements Serializable {
      */
     public Config[] getCompactView() {
         _compact();
-        Config[] res = _configs.toArray(DefaultConfig.EMPTY_ARRAY);
-        for (int i=0; i<res.length; ++i) {
-            res[i] = new DefaultConfig(res[i]);
-        }
-        return res;
+        return _steps(0, _size, false);
     }
 
     /**
@@ -210,8 +347,13 @@ public class ConfigSequence implements Serializable {
      * @return Config at the given <code>step</code>
      */
     public Config getStep(int step) {
-        _complete();
-        return new DefaultConfig(_completeConfigs.get(step));
+        _checkStep(step);
+        Config res = new DefaultConfig();
+        for (Map.Entry<ItemKey, Column> me : _columns.entrySet()) {
+            Object val = me.getValue().valueAt(step);
+            if (val != null) res.putItem(me.getKey(), val);
+        }
+        return res;
     }
 
     /**
@@ -225,8 +367,9 @@ public class ConfigSequence implements Serializable {
      * <code
      */
     public Object getItemValue(int step, ItemKey key) {
-        Config conf = getStep(step);
-        return conf.getItemValue(key);
+        _checkStep(step);
+        Column col = _columns.get(key);
+        return (col == null) ? null : col.valueAt(step);
     }
 
     /**
@@ -241,11 +384,13 @@ public class ConfigSequence implements Serializable {
      * associated with <code>key</code>
      */
     public Object[] getItemValueAtEachStep(ItemKey key) {
-        _complete();
-        Object[] res = new Object[_completeConfigs.size()];
-        int i = 0;
-        for (Config completeConfig : _completeConfigs) {
-            res[i++] = completeConfig.getItemValue(key);
+        Object[] res = new Object[_size];
+        Column col = _columns.get(key);
+        if (col == null) return res;
+
+        for (int i=0; i<col._size; ++i) {
+            int end = (i + 1 < col._size) ? col._steps[i + 1] : _size;
+            Arrays.fill(res, col._steps[i], end, col._values[i]);
         }
         return res;
     }
@@ -262,10 +407,11 @@ public class ConfigSequence implements Serializable {
      * <code>key</code> obtains over the lifetime of the ConfigSequence
      */
     public Object[] getDistinctItemValues(ItemKey key) {
-        _complete();
         Set<Object> s = new HashSet<>();
-        for (Config completeConfig : _completeConfigs) {
-            s.add(completeConfig.getItemValue(key));
+        Column col = _columns.get(key);
+        if ((_size > 0) && ((col == null) || (col._steps[0] > 0))) s.add(null);
+        if (col != null) {
+            s.addAll(Arrays.asList(col._values).subList(0, col._size));
         }
         return s.toArray(new Object[s.size()]);
     }
@@ -280,22 +426,11 @@ public class ConfigSequence implements Serializable {
      * of the sequence (in no particular order)
      */
     public ItemKey[] getIteratedKeys() {
-        if (_configs.size() <= 1) return ItemKey.EMPTY_ARRAY;
-
-        Config startConfig = _configs.get(0);
+        if (_size <= 1) return ItemKey.EMPTY_ARRAY;
 
         Set<ItemKey> res = new HashSet<>();
-        for (int i=1; i<_configs.size(); ++i) {
-            Config conf = _configs.get(i);
-            ItemEntry[] itemEntryArray = conf.itemEntries();
-            for (ItemEntry ie : itemEntryArray) {
-                ItemKey key = ie.getKey();
-                Object  val = ie.getItemValue();
-
-                if (!val.equals(startConfig.getItemValue(key))) {
-                    res.add(key);
-                }
-            }
+        for (Map.Entry<ItemKey, Column> me : _columns.entrySet()) {
+            if (_changes(me.getValue())) res.add(me.getKey());
         }
         return res.toArray(ItemKey.EMPTY_ARRAY);
     }
@@ -309,26 +444,24 @@ public class ConfigSequence implements Serializable {
      * course of the sequence (in no particular order)
      */
     public ItemKey[] getStaticKeys() {
-        if (_configs.size() <= 0) return ItemKey.EMPTY_ARRAY;
+        if (_size <= 0) return ItemKey.EMPTY_ARRAY;
 
-        Config startConfig = _configs.get(0);
         Set<ItemKey> res = new HashSet<>();
-        Collections.addAll(res, startConfig.getKeys());
-
-        for (int i=1; i<_configs.size(); ++i) {
-            Config conf = _configs.get(i);
-            ItemEntry[] itemEntryArray = conf.itemEntries();
-            for (ItemEntry ie : itemEntryArray) {
-                ItemKey key = ie.getKey();
-                Object  val = ie.getItemValue();
-
-                if (!val.equals(startConfig.getItemValue(key))) {
-                    res.remove(key);
-                }
-            }
+        for (Map.Entry<ItemKey, Column> me : _columns.entrySet()) {
+            Column col = me.getValue();
+            if ((col._steps[0] == 0) && !_changes(col)) res.add(me.getKey());
         }
         return res.toArray(ItemKey.EMPTY_ARRAY);
+    }
 
+    // Whether any value after the first step differs from the value in the
+    // first step.
+    private static boolean _changes(Column col) {
+        Object start = (col._steps[0] == 0) ? col._values[0] : null;
+        for (int i=0; i<col._size; ++i) {
+            if ((col._steps[i] > 0) && !col._values[i].equals(start)) return true;
+        }
+        return false;
     }
 
     /**
@@ -353,11 +486,19 @@ public class ConfigSequence implements Serializable {
      * any; -1 otherwise
      */
     private int indexMatching(Config template) {
-       _complete();
-        int i=0;
-        for (Config conf : _completeConfigs) {
-            if (conf.matches(template)) return i;
-            ++i;
+        ItemEntry[] entries = template.itemEntries();
+        Column[] cols = new Column[entries.length];
+        for (int j=0; j<entries.length; ++j) {
+            cols[j] = _columns.get(entries[j].getKey());
+            if (cols[j] == null) return -1;
+        }
+
+        step:
+        for (int i=0; i<_size; ++i) {
+            for (int j=0; j<entries.length; ++j) {
+                if (!entries[j].getItemValue().equals(cols[j].valueAt(i))) continue step;
+            }
+            return i;
         }
         return -1;
     }
@@ -378,21 +519,10 @@ public class ConfigSequence implements Serializable {
      * @param conf the changes that should be added to the end of this sequence
      */
     public void addStep(Config conf) {
-        Config nextConfig = new DefaultConfig(conf);
-
-        if (_isCompact && (_completeConfigs != null)) {
-            Config lastConfig = _completeConfigs.get(_completeConfigs.size() - 1);
-            nextConfig.removeAll(lastConfig);
-            _configs.add(nextConfig);
-
-            lastConfig = new DefaultConfig(lastConfig);
-            lastConfig.putAll(nextConfig);
-            _completeConfigs.add(lastConfig);
-        } else {
-            _isCompact = false;
-            _completeConfigs = null;
-            _configs.add(nextConfig);
-        }
+        // Items are kept even if unchanged, so that they aren't affected by
+        // later changes to the steps before this one.
+        if (_size > 0) _isCompact = false;
+        _putAll(_size++, conf);
     }
 
     /**
@@ -409,12 +539,14 @@ public class ConfigSequence implements Serializable {
      *
      */
     public void addStep(int step, Config conf) {
-        if (step == _configs.size()) {
+        if (step == _size) {
             addStep(conf);
         } else {
+            _checkStep(step);
             _isCompact = false;
-            _completeConfigs = null;
-            _configs.add(step, new DefaultConfig(conf));
+            for (Column col : _columns.values()) col.shift(step, 1);
+            ++_size;
+            _putAll(step, conf);
         }
     }
 
@@ -422,8 +554,8 @@ public class ConfigSequence implements Serializable {
      * Clears sequence of Configs, leaving the sequence empty.
      */
     public void clear() {
-        _configs.clear();
-        if (_completeConfigs != null) _completeConfigs.clear();
+        _columns.clear();
+        _size      = 0;
         _isCompact = true;
     }
 
@@ -432,8 +564,7 @@ public class ConfigSequence implements Serializable {
      * {@link #compactIterator()}.
      */
     public Iterator<Config> iterator() {
-        _complete();
-        return new CopyIterator(_completeConfigs.iterator());
+        return new StepIterator(0, _size, true);
     }
 
     /**
@@ -445,7 +576,7 @@ public class ConfigSequence implements Serializable {
      */
     public Iterator<Config> compactIterator() {
         _compact();
-        return new CopyIterator(_configs.iterator());
+        return new StepIterator(0, _size, false);
     }
 
     /**
@@ -453,24 +584,25 @@ public class ConfigSequence implements Serializable {
      * <code>false</code> otherwise.
      */
     public boolean isEmpty() {
-        return _configs.isEmpty();
+        return _size == 0;
     }
 
-//    public boolean remove(Config config) {
-//        return _configs.remove(config);
-//    }
-
     /**
      * Removes the {@link Config} at the given <code>step</code>.  Any
      * subsequent steps that inherited item values from this step may be
      * effected by this.
      */
     public void removeStep(int step) {
-        if (step != (_configs.size() - 1)) {
-            _isCompact = false;
-            _completeConfigs = null;
+        _checkStep(step);
+        if (step != (_size - 1)) _isCompact = false;
+
+        for (Iterator<Column> it = _columns.values().iterator(); it.hasNext(); ) {
+            Column col = it.next();
+            col.remove(step);
+            col.shift(step + 1, -1);
+            if (col.isEmpty()) it.remove();
         }
-        _configs.remove(step);
+        --_size;
     }
 
     /**
@@ -491,16 +623,22 @@ public class ConfigSequence implements Serializable {
      * ConfigSequence.
      */
     public void setStep(int step, Config conf) {
+        _checkStep(step);
         _isCompact = false;
-        _completeConfigs = null;
-        _configs.set(step, new DefaultConfig(conf));
+
+        for (Iterator<Column> it = _columns.values().iterator(); it.hasNext(); ) {
+            Column col = it.next();
+            col.remove(step);
+            if (col.isEmpty()) it.remove();
+        }
+        _putAll(step, conf);
     }
 
     /**
      * Retrieves the number of {@link Config} steps in the sequence.
      */
     public int size() {
-        return _configs.size();
+        return _size;
     }
 
     /**
@@ -520,20 +658,31 @@ public class ConfigSequence implements Serializable {
      * <code>to</code> index.
      */
     public ConfigSequence subSequence(int from, int to) {
-        _complete();
-        Config[] subconfigs = new Config[to - from];
-        for (int i=from; i<to; ++i) {
-            subconfigs[i-from] = _completeConfigs.get(i);
-        }
-        return new ConfigSequence(subconfigs);
+        return new ConfigSequence(_steps(from, to, true));
     }
 
     //
-    // Converts to to the most compact representation before serializing.
+    // Writes the compact list of Configs, as the original implementation did.
     //
-    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+    private void writeObject(ObjectOutputStream out) throws IOException {
         _compact();
-        out.defaultWriteObject();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_configs", new ArrayList<>(Arrays.asList(_steps(0, _size, false))));
+        fields.put("_isCompact", true);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        List<Config> configs = (List<Config>) fields.get("_configs", null);
+
+        _columns   = new HashMap<>();
+        _size      = 0;
+        _isCompact = fields.get("_isCompact", false);
+        if (configs != null) {
+            for (Config config : configs) _putAll(_size++, config);
+        }
     }
 
 }
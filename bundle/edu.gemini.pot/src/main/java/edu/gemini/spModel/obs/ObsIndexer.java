@@ -0,0 +1,91 @@
+package edu.gemini.spModel.obs;
+
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.spdb.DBIndexQuery;
+import edu.gemini.pot.spdb.IDBIndexer;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.spModel.core.ProgramId;
+import edu.gemini.spModel.core.ProgramId$;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import edu.gemini.spModel.obsclass.ObsClass;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Indexes for the observation attributes most commonly used to select
+ * observations in database queries.  For example, to visit the ready GMOS-S
+ * observations of active programs:
+ *
+ * <pre>
+ *   DBIndexQuery.where(ObsIndexer.INSTRUMENT.getName(), Instrument.GmosSouth)
+ *               .and(ObsIndexer.STATUS.getName(), ObservationStatus.READY)
+ *               .and(ObsIndexer.ACTIVE.getName(), true)
+ * </pre>
+ */
+public enum ObsIndexer implements IDBIndexer {
+
+    /** The {@link edu.gemini.spModel.core.Semester} of the program, if any. */
+    SEMESTER("semester") {
+        public Collection<?> getValues(ISPObservation obs) {
+            final SPProgramID progId = obs.getProgramID();
+            if (progId == null) return Collections.emptySet();
+            final ProgramId pid = ProgramId$.MODULE$.parse(progId.stringValue());
+            return pid.semester().isDefined() ? Collections.singleton(pid.semester().get()) : Collections.emptySet();
+        }
+    },
+
+    /** The {@link edu.gemini.pot.sp.Instrument} used, if any. */
+    INSTRUMENT("instrument") {
+        public Collection<?> getValues(ISPObservation obs) {
+            final Option<?> inst = InstrumentService.lookupInstrument(obs);
+            return inst.isDefined() ? Collections.singleton(inst.getValue()) : Collections.emptySet();
+        }
+    },
+
+    /** The {@link ObservationStatus}. */
+    STATUS("status") {
+        public Collection<?> getValues(ISPObservation obs) {
+            return Collections.singleton(ObservationStatus.computeFor(obs));
+        }
+    },
+
+    /** The {@link ObsClass}, if any. */
+    OBS_CLASS("obsClass") {
+        public Collection<?> getValues(ISPObservation obs) {
+            final ObsClass oc = ObsClassService.lookupObsClass(obs);
+            return (oc == null) ? Collections.emptySet() : Collections.singleton(oc);
+        }
+    },
+
+    /** Whether the program is active, as a <code>Boolean</code>. */
+    ACTIVE("active") {
+        public Collection<?> getValues(ISPObservation obs) {
+            final ISPProgram prog = obs.getProgram();
+            final Object dobj = (prog == null) ? null : prog.getDataObjectSnapshot();
+            return (dobj instanceof SPProgram) ?
+                    Collections.singleton(((SPProgram) dobj).isActive()) : Collections.emptySet();
+        }
+    },
+    ;
+
+    private final String _name;
+
+    ObsIndexer(String name) {
+        _name = name;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Creates a query matching observations indexed under any of the given
+     * values of this index.
+     */
+    public DBIndexQuery query(Object... values) {
+        return DBIndexQuery.where(_name, values);
+    }
+}
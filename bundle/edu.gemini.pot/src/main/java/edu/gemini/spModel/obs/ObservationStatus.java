@@ -97,7 +97,7 @@ public enum ObservationStatus implements DisplayableSpType, DescribableSpType {
             obs.getProgramReadLock();
             final ISPObsExecLog log = obs.getObsExecLog();
             if (log == null) return ObsExecStatus.PENDING;
-            final ObsExecLog obj = (ObsExecLog) log.getDataObject();
+            final ObsExecLog obj = (ObsExecLog) log.getDataObjectSnapshot();
 
             Integer stepCount = SPObsCache.getStepCount(obs);
             if (stepCount == null) {
@@ -113,7 +113,7 @@ public enum ObservationStatus implements DisplayableSpType, DescribableSpType {
     public static ObservationStatus computeFor(ISPObservation obs) {
         try {
             obs.getProgramReadLock();
-            final SPObservation   obj = (SPObservation) obs.getDataObject();
+            final SPObservation   obj = (SPObservation) obs.getDataObjectSnapshot();
             final ObsPhase2Status p2 = obj.getPhase2Status();
 
             if (p2 == ObsPhase2Status.PHASE_2_COMPLETE) {
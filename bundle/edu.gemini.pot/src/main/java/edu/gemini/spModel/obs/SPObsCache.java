@@ -9,6 +9,7 @@ import edu.gemini.shared.util.GeminiRuntimeException;
 import edu.gemini.shared.util.immutable.ImOption;
 import edu.gemini.shared.util.immutable.None;
 import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.spModel.config.ConfigSequenceCache;
 import edu.gemini.spModel.dataset.DataflowStatus;
 import edu.gemini.spModel.dataset.DatasetQaStateSums;
 import edu.gemini.spModel.obs.plannedtime.PlannedStepSummary;
@@ -165,21 +166,21 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         setObsCache(obs, cache);
     }
 
-    // seems a bit bold to cache the entire config sequence, especially given
-    // that it will remain in memory forever in the odb once cached
+    // The sequences themselves are only softly referenced by the
+    // ConfigSequenceCache, so they needn't remain in memory forever.
 
-//    public static ConfigSequence getConfigSequence(ISPObservation obs) {
-//        final SPObsCache cache = getObsCache(obs);
-//        if (cache == null) return null;
-//        return cache.getConfigSequence();
-//    }
-//
-//    public static void setConfigSequence(ISPObservation obs, ConfigSequence configSequence) {
-//        SPObsCache cache = getObsCache(obs);
-//        if (cache == null) cache = new SPObsCache();
-//        cache.setConfigSequence(configSequence);
-//        setObsCache(obs, cache);
-//    }
+    public static ConfigSequenceCache getConfigSequenceCache(ISPObservation obs) {
+        final SPObsCache cache = getObsCache(obs);
+        if (cache == null) return null;
+        return cache.getConfigSequenceCache();
+    }
+
+    public static void setConfigSequenceCache(ISPObservation obs, ConfigSequenceCache seqCache) {
+        SPObsCache cache = getObsCache(obs);
+        if (cache == null) cache = new SPObsCache();
+        cache.setConfigSequenceCache(seqCache);
+        setObsCache(obs, cache);
+    }
 
     // The target calculator.
     private Option<TargetCalculator> _targetCalculator;
@@ -213,6 +214,9 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
     // Count of steps in the execution sequence.
     private Integer _stepCount;
 
+    // Sequences calculated for the observation.
+    private transient ConfigSequenceCache _configSequenceCache;
+
     public Object clone() {
         SPObsCache that;
         try {
@@ -221,7 +225,8 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
             throw new GeminiRuntimeException("clone bug");
         }
 
-        // everything is immutable
+        // everything else is immutable
+        that._configSequenceCache = null;
         return that;
     }
 
@@ -307,13 +312,13 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         _qaSums = sums;
     }
 
-//    public ConfigSequence getConfigSequence() {
-//        return _configSequence;
-//    }
-//
-//    public void setConfigSequence(ConfigSequence configSequence) {
-//        _configSequence = configSequence;
-//    }
+    public ConfigSequenceCache getConfigSequenceCache() {
+        return _configSequenceCache;
+    }
+
+    public void setConfigSequenceCache(ConfigSequenceCache configSequenceCache) {
+        _configSequenceCache = configSequenceCache;
+    }
 
     public Integer getStepCount() {
         return _stepCount;
@@ -331,7 +336,7 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         _plannedSteps		= null;
         _datasetDisposition = null;
         _qaSums             = null;
-//        _configSequence     = null;
+        _configSequenceCache = null;
         _stepCount          = null;
         _targetCalculator   = null;
         _instrument         = ImOption.empty();
@@ -45,7 +45,7 @@ public final class ObsContext {
         // We first try to get the site directly from the instrument.
         final ISPObsComponent obsComponent = SPTreeUtil.findInstrument(observation);
         if (obsComponent != null) {
-            final SPInstObsComp instObsComp = (SPInstObsComp) obsComponent.getDataObject();
+            final SPInstObsComp instObsComp = (SPInstObsComp) obsComponent.getDataObjectSnapshot();
             final Option<Site> instrumentSite = getSiteFromInstrument(instObsComp);
 
             if (!instrumentSite.isEmpty())
@@ -166,7 +166,7 @@ public final class ObsContext {
 
         final Set<Offset> offsets = OffsetUtil.getSciencePositions(posListA);
 
-        final SPObservation spObs = (SPObservation) obs.getDataObject();
+        final SPObservation spObs = (SPObservation) obs.getDataObjectSnapshot();
         return new Some<>(ObsContext.create(spObs.getAgsStrategyOverride(), env, inst, site, conds,
                 offsets, aoCompOpt.getOrNull(), spObs.getSchedulingBlock()));
     }
@@ -194,11 +194,11 @@ public final class ObsContext {
             for (ISPObsComponent obsComp : obs.getObsComponents()) {
                 SPComponentBroadType type = obsComp.getType().broadType;
                 if (type.equals(TargetObsComp.SP_TYPE.broadType)) {
-                    target = (TargetObsComp) obsComp.getDataObject();
+                    target = (TargetObsComp) obsComp.getDataObjectSnapshot();
                 } else if (type.equals(SPComponentBroadType.INSTRUMENT)) {
-                    inst = (SPInstObsComp) obsComp.getDataObject();
+                    inst = (SPInstObsComp) obsComp.getDataObjectSnapshot();
                 } else if (type.equals(SPSiteQuality.SP_TYPE.broadType)) {
-                    conds = ((SPSiteQuality) obsComp.getDataObject()).conditions();
+                    conds = ((SPSiteQuality) obsComp.getDataObjectSnapshot()).conditions();
                 } else if (type.equals(InstAltair.SP_TYPE.broadType)) {
                     aoComp = (AbstractDataObject) obsComp.getDataObject();
                 }
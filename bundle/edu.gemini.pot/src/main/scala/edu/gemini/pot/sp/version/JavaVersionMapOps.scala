@@ -21,4 +21,6 @@ object JavaVersionMapOps {
       l <- local.get(k)
       r <- remote.get(k)
     } yield l.tryCompareTo(r).forall(_ > 0)).getOrElse(false)
+
+  def checksum(m: VersionMap): Long = vmChecksum(m)
 }
@@ -0,0 +1,94 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.ISPContainerNode;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.Instrument;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.shared.util.immutable.ImOption;
+import edu.gemini.spModel.core.SPProgramID;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compares reading every data object in a program through
+ * <code>getDataObject</code>, which copies, with
+ * <code>getDataObjectSnapshot</code>, which doesn't.  The program has an
+ * observation for each instrument, with the default target, conditions and
+ * instrument components, repeated to the requested number of observations.
+ * Reports reads per second and bytes allocated per read.
+ *
+ * <pre>
+ *   DataObjectReadBenchmark [observations] [seconds per run]
+ * </pre>
+ */
+final class DataObjectReadBenchmark {
+
+    private static void collect(ISPNode node, List<ISPNode> res) {
+        res.add(node);
+        if (node instanceof ISPContainerNode) {
+            for (ISPNode child : ((ISPContainerNode) node).getChildren()) collect(child, res);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String run(String name, List<ISPNode> nodes, Function<ISPNode, Object> read, long millis) {
+        final long end = System.currentTimeMillis() + millis;
+        final long start = System.nanoTime();
+        final long alloc0 = allocatedBytes();
+
+        long reads = 0;
+        int hash = 0;
+        while (System.currentTimeMillis() < end) {
+            for (ISPNode n : nodes) {
+                final Object o = read.apply(n);
+                if (o != null) hash += o.getClass().hashCode();
+            }
+            reads += nodes.size();
+        }
+
+        final long alloc = allocatedBytes() - alloc0;
+        final double secs = (System.nanoTime() - start) / 1e9;
+        return String.format("%-10s %14.0f %14.1f %12d", name, reads / secs, (double) alloc / reads, hash & 0xff);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int  obsCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        final long millis   = (args.length > 1) ? Long.parseLong(args[1]) * 1000 : 3000;
+
+        final IDBDatabaseService db = DBLocalDatabase.createTransient();
+        try {
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID("GS-2016A-Q-1"));
+            db.put(prog);
+
+            final Instrument[] insts = Instrument.values();
+            for (int i = 0; i < obsCount; ++i) {
+                final ISPObservation obs = db.getFactory().createObservation(prog, ImOption.apply(insts[i % insts.length]), null);
+                prog.addObservation(obs);
+            }
+
+            final List<ISPNode> nodes = new ArrayList<>();
+            collect(prog, nodes);
+
+            // Warm up.
+            run("copy", nodes, ISPNode::getDataObject, millis);
+            run("snapshot", nodes, ISPNode::getDataObjectSnapshot, millis);
+
+            System.out.println(String.format("%d observations, %d nodes", obsCount, nodes.size()));
+            System.out.println(String.format("%-10s %14s %14s %12s", "read", "reads/s", "bytes/read", "(check)"));
+            System.out.println(run("copy", nodes, ISPNode::getDataObject, millis));
+            System.out.println(run("snapshot", nodes, ISPNode::getDataObjectSnapshot, millis));
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.Instrument;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.obs.SPObservation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that data object snapshots are shared, and are unaffected by
+ * updates to the node or by changes to copies obtained for editing.
+ */
+public final class DataObjectSnapshotTest {
+    private IDBDatabaseService db;
+    private ISPObservation obs;
+
+    @Before
+    public void setUp() throws Exception {
+        db = DBLocalDatabase.createTransient();
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), null);
+        db.put(prog);
+        obs = db.getFactory().createObservation(prog, Instrument.none, null);
+        prog.addObservation(obs);
+        setTitle("Original");
+    }
+
+    @After
+    public void tearDown() {
+        db.getDBAdmin().shutdown();
+    }
+
+    private void setTitle(String title) {
+        final SPObservation dobj = (SPObservation) obs.getDataObject();
+        dobj.setTitle(title);
+        obs.setDataObject(dobj);
+    }
+
+    @Test
+    public void testShared() {
+        assertSame(obs.getDataObjectSnapshot(), obs.getDataObjectSnapshot());
+        assertNotSame(obs.getDataObject(), obs.getDataObjectSnapshot());
+        assertEquals("Original", obs.getDataObjectSnapshot().getTitle());
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        final SPObservation snap = (SPObservation) obs.getDataObjectSnapshot();
+        final SPObservation copy = (SPObservation) obs.getDataObject();
+        copy.setTitle("Edited");
+        assertEquals("Original", snap.getTitle());
+        assertEquals("Original", obs.getDataObjectSnapshot().getTitle());
+    }
+
+    @Test
+    public void testUpdateReplacesSnapshot() {
+        final SPObservation before = (SPObservation) obs.getDataObjectSnapshot();
+        setTitle("Updated");
+        assertEquals("Original", before.getTitle());
+        assertNotSame(before, obs.getDataObjectSnapshot());
+        assertEquals("Updated", obs.getDataObjectSnapshot().getTitle());
+    }
+}
@@ -0,0 +1,109 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measures read lock throughput through <code>{@link SPNodeKeyLocks}</code>
+ * with 1 to 64 threads, each repeatedly taking and releasing the read lock of
+ * a random program, which is what every data object access does.  For
+ * comparison the same is done with a single synchronized map of locks.
+ *
+ * <pre>
+ *   SPNodeKeyLocksBenchmark [programs] [seconds per run]
+ * </pre>
+ */
+final class SPNodeKeyLocksBenchmark {
+
+    private interface Locks {
+        void readLock(SPNodeKey key);
+        void readUnlock(SPNodeKey key);
+    }
+
+    private static final Locks CURRENT = new Locks() {
+        @Override public void readLock(SPNodeKey key)   { SPNodeKeyLocks.instance.readLock(key);   }
+        @Override public void readUnlock(SPNodeKey key) { SPNodeKeyLocks.instance.readUnlock(key); }
+    };
+
+    // A single monitor guarding a plain map.
+    private static final Locks SYNCHRONIZED = new Locks() {
+        private final Map<SPNodeKey, ReentrantReadWriteLock> locks = new HashMap<>();
+
+        private synchronized ReentrantReadWriteLock getLock(SPNodeKey key) {
+            ReentrantReadWriteLock l = locks.get(key);
+            if (l == null) {
+                l = new ReentrantReadWriteLock();
+                locks.put(key, l);
+            }
+            return l;
+        }
+
+        @Override public void readLock(SPNodeKey key)   { getLock(key).readLock().lock();   }
+        @Override public void readUnlock(SPNodeKey key) { getLock(key).readLock().unlock(); }
+    };
+
+    private static double run(final Locks locks, final SPNodeKey[] keys, int threads, long millis) throws InterruptedException {
+        final AtomicBoolean done  = new AtomicBoolean(false);
+        final LongAdder     ops   = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] ts = new Thread[threads];
+
+        for (int i = 0; i < threads; ++i) {
+            final int seed = i;
+            ts[i] = new Thread(() -> {
+                int x = seed * 7919 + 1;
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                while (!done.get()) {
+                    // xorshift to pick a program without sharing a Random
+                    x ^= x << 13; x ^= x >>> 17; x ^= x << 5;
+                    final SPNodeKey k = keys[(x & Integer.MAX_VALUE) % keys.length];
+                    locks.readLock(k);
+                    locks.readUnlock(k);
+                    ++count;
+                }
+                ops.add(count);
+            });
+            ts[i].start();
+        }
+
+        start.countDown();
+        Thread.sleep(millis);
+        done.set(true);
+        for (Thread t : ts) t.join();
+        return ops.sum() * 1000.0 / millis;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int  programs = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        final long millis   = (args.length > 1) ? Long.parseLong(args[1]) * 1000 : 2000;
+
+        final SPNodeKey[] keys = new SPNodeKey[programs];
+        for (int i = 0; i < programs; ++i) keys[i] = new SPNodeKey();
+
+        // Warm up.
+        run(CURRENT, keys, 4, millis);
+        run(SYNCHRONIZED, keys, 4, millis);
+
+        System.out.println(String.format("%d programs, %d cores", programs, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format("%7s %18s %18s %8s", "threads", "synchronized op/s", "concurrent op/s", "speedup"));
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            final double sync = run(SYNCHRONIZED, keys, threads, millis);
+            final double conc = run(CURRENT, keys, threads, millis);
+            System.out.println(String.format("%7d %18.0f %18.0f %7.1fx", threads, sync, conc, conc / sync));
+        }
+
+        for (SPNodeKey k : keys) SPNodeKeyLocks.instance.remove(k);
+    }
+}
@@ -0,0 +1,45 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.SPNodeKeyLocks;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that locks are discarded when removed, but only when not in use.
+ */
+public final class SPNodeKeyLocksTest {
+    private static final SPNodeKeyLocks locks = SPNodeKeyLocks.instance;
+
+    @Test
+    public void testRemoveUnused() {
+        final SPNodeKey key = new SPNodeKey();
+        locks.readLock(key);
+        locks.readUnlock(key);
+        assertTrue(locks.remove(key));
+        assertFalse(locks.isWriteLockHeld(key));
+    }
+
+    @Test
+    public void testRemoveHeld() {
+        final SPNodeKey key = new SPNodeKey();
+
+        locks.writeLock(key);
+        try {
+            assertFalse(locks.remove(key));
+            assertTrue(locks.isWriteLockHeld(key));
+        } finally {
+            locks.writeUnlock(key);
+        }
+
+        locks.readLock(key);
+        try {
+            assertFalse(locks.remove(key));
+        } finally {
+            locks.readUnlock(key);
+        }
+
+        assertTrue(locks.remove(key));
+    }
+}
@@ -0,0 +1,94 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBFlushStats;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that modified programs are written out once the storage interval
+ * has elapsed, with a burst of edits coalesced into a single write, and that
+ * checkpoints taken while the flusher is writing lose nothing.
+ */
+public final class FlushTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void setTitle(ISPProgram prog, String title) {
+        final SPProgram dobj = (SPProgram) prog.getDataObject();
+        dobj.setTitle(title);
+        prog.setDataObject(dobj);
+    }
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        final IDBDatabaseService db = DBLocalDatabase.create(folder.newFolder("spdb"));
+        try {
+            db.getDBAdmin().setStorageInterval(200);
+
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID("GS-2016A-Q-1"));
+            prog.setDataObject(new SPProgram());
+            db.put(prog);
+
+            for (int i = 0; i < 10; ++i) setTitle(prog, "Title " + i);
+
+            final long timeout = System.currentTimeMillis() + 10000;
+            DBFlushStats stats = db.getDBAdmin().getFlushStats();
+            while (((stats.getFlushes() == 0) || (stats.getQueueDepth() > 0)) && (System.currentTimeMillis() < timeout)) {
+                Thread.sleep(50);
+                stats = db.getDBAdmin().getFlushStats();
+            }
+
+            assertEquals(1, stats.getFlushes());
+            assertEquals(0, stats.getFailures());
+            assertEquals(0, stats.getQueueDepth());
+            assertTrue(stats.getMaxLatencyMillis() >= 200);
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+
+    @Test
+    public void testCheckpointsWhileFlushing() throws Exception {
+        final SPProgramID pid = SPProgramID.toProgramID("GS-2016A-Q-1");
+        final File dir = folder.newFolder("spdb");
+
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        final int edits = 500;
+        try {
+            db.getDBAdmin().setStorageInterval(1);
+
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), pid);
+            prog.setDataObject(new SPProgram());
+            db.put(prog);
+
+            final Thread checkpoints = new Thread(() -> {
+                for (int i = 0; i < edits / 5; ++i) db.checkpoint();
+            });
+            checkpoints.start();
+            for (int i = 0; i < edits; ++i) setTitle(prog, "Title " + i);
+            checkpoints.join();
+
+            assertEquals(0, db.getDBAdmin().getFlushStats().getFailures());
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+
+        final IDBDatabaseService db2 = DBLocalDatabase.create(dir);
+        try {
+            assertEquals("Title " + (edits - 1), db2.lookupProgramByID(pid).getDataObject().getTitle());
+        } finally {
+            db2.getDBAdmin().shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBStorageStats;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that data object updates are journaled rather than rewriting the
+ * program, that the journal is replayed when the program is reloaded and
+ * that a journal which cannot be replayed fails the load.
+ */
+public final class JournalTest {
+    private static final SPProgramID PID = SPProgramID.toProgramID("GS-2016A-Q-1");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static SPProgram dataObject(String title) {
+        final SPProgram dobj = new SPProgram();
+        dobj.setTitle(title);
+        return dobj;
+    }
+
+    private static ISPProgram createProgram(IDBDatabaseService db) throws Exception {
+        final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), PID);
+        prog.setDataObject(dataObject("original"));
+        db.put(prog);
+        return prog;
+    }
+
+    private static String reloadTitle(File dir) throws Exception {
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        try {
+            return db.lookupProgramByID(PID).getDataObject().getTitle();
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+
+    @Test
+    public void testDataObjectUpdateIsJournaled() throws Exception {
+        final File dir = folder.newFolder("spdb");
+
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        final ISPProgram prog = createProgram(db);
+        prog.setDataObject(dataObject("updated"));
+        db.getDBAdmin().shutdown();
+
+        final DBStorageStats stats = db.getDBAdmin().getStorageStats();
+        assertEquals(1, stats.getSnapshotWrites());
+        assertEquals(1, stats.getJournalAppends());
+        assertTrue(stats.getJournalSize() > 0);
+
+        assertEquals("updated", reloadTitle(dir));
+    }
+
+    @Test
+    public void testStructuralChangeRewritesProgram() throws Exception {
+        final File dir = folder.newFolder("spdb");
+
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        final ISPProgram prog = createProgram(db);
+        prog.setDataObject(dataObject("updated"));
+        prog.putClientData("JournalTest", "value");
+        db.getDBAdmin().shutdown();
+
+        final DBStorageStats stats = db.getDBAdmin().getStorageStats();
+        assertEquals(2, stats.getSnapshotWrites());
+        assertEquals(0, stats.getJournalAppends());
+        assertEquals(0, stats.getJournalSize());
+
+        assertEquals("updated", reloadTitle(dir));
+    }
+
+    @Test
+    public void testUnreadableJournalFailsLoad() throws Exception {
+        final File dir = folder.newFolder("spdb");
+
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        createProgram(db);
+        db.getDBAdmin().shutdown();
+
+        // A complete, correctly framed record that does not decode.
+        final File[] progs = dir.listFiles((d, n) -> n.endsWith(".sp"));
+        assertNotNull(progs);
+        assertEquals(1, progs.length);
+        final byte[] bytes = { 0, 0, 0, 1, 42, 42, 42 };
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(new File(dir, progs[0].getName() + ".jnl")))) {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+            dos.writeLong(crc.getValue());
+        }
+
+        final IDBDatabaseService db2 = DBLocalDatabase.create(dir);
+        try {
+            assertNull(db2.lookupProgramByID(PID));
+        } finally {
+            db2.getDBAdmin().shutdown();
+        }
+        assertTrue(progs[0].exists());
+    }
+}
@@ -0,0 +1,226 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.Instrument;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBIndexQuery;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBIndexer;
+import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import edu.gemini.spModel.obs.ObsIndexer;
+import edu.gemini.spModel.obs.SPObservation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that indexed queries visit exactly the observations that a full scan
+ * selects, as programs are edited, added and removed.
+ */
+public final class ObservationIndexTest {
+    private static final int PROGRAMS = 6;
+    private static final int OBSERVATIONS = 5;
+
+    private static final IDBIndexer TITLE = new IDBIndexer() {
+        public String getName() { return "title"; }
+
+        public Collection<?> getValues(ISPObservation obs) {
+            return Collections.singleton(obs.getDataObject().getTitle());
+        }
+    };
+
+    // Collects the keys of the observations it visits.
+    private static final class KeyFunctor extends DBAbstractQueryFunctor {
+        final List<SPNodeKey> keys = new ArrayList<>();
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            keys.add(node.getNodeKey());
+        }
+    }
+
+    // Collects the keys of the visited observations with the given title in
+    // active programs, the hard way.
+    private static final class ScanFunctor extends DBAbstractQueryFunctor {
+        final String title;
+        final List<SPNodeKey> keys = new ArrayList<>();
+
+        ScanFunctor(String title) {
+            this.title = title;
+        }
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            final ISPObservation obs = (ISPObservation) node;
+            final SPProgram prog = (SPProgram) obs.getProgram().getDataObject();
+            if (prog.isActive() && title.equals(obs.getDataObject().getTitle())) keys.add(obs.getNodeKey());
+        }
+    }
+
+    private IDBDatabaseService db;
+    private IDBQueryRunner qr;
+    private final List<ISPProgram> progs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        db = DBLocalDatabase.createTransient();
+        db.registerIndex(TITLE);
+        db.registerIndex(ObsIndexer.ACTIVE);
+        qr = db.getQueryRunner(Collections.<Principal>emptySet());
+
+        for (int i = 0; i < PROGRAMS; ++i) {
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID("GS-2016A-Q-" + (i + 1)));
+            final SPProgram dobj = new SPProgram();
+            dobj.setActive((i % 2 == 0) ? SPProgram.Active.YES : SPProgram.Active.NO);
+            prog.setDataObject(dobj);
+            for (int j = 0; j < OBSERVATIONS; ++j) addObservation(prog, (j % 2 == 0) ? "A" : "B");
+            db.put(prog);
+            progs.add(prog);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.getDBAdmin().shutdown();
+    }
+
+    private ISPObservation addObservation(ISPProgram prog, String title) throws Exception {
+        final ISPObservation obs = db.getFactory().createObservation(prog, Instrument.none, null);
+        setTitle(obs, title);
+        prog.addObservation(obs);
+        return obs;
+    }
+
+    private static void setTitle(ISPObservation obs, String title) {
+        final SPObservation dobj = (SPObservation) obs.getDataObject();
+        dobj.setTitle(title);
+        obs.setDataObject(dobj);
+    }
+
+    private static void setActive(ISPProgram prog, boolean active) {
+        final SPProgram dobj = (SPProgram) prog.getDataObject();
+        dobj.setActive(active ? SPProgram.Active.YES : SPProgram.Active.NO);
+        prog.setDataObject(dobj);
+    }
+
+    private void assertConsistent(String title) {
+        final List<SPNodeKey> expected = qr.queryObservations(new ScanFunctor(title)).keys;
+        final DBIndexQuery q = DBIndexQuery.where(TITLE.getName(), title).and(ObsIndexer.ACTIVE.getName(), true);
+        assertEquals(expected, qr.queryObservations(new KeyFunctor(), q).keys);
+    }
+
+    private void assertConsistent() {
+        assertConsistent("A");
+        assertConsistent("B");
+    }
+
+    @Test
+    public void testInitial() {
+        assertConsistent();
+        assertEquals(PROGRAMS / 2, qr.queryPrograms(new KeyFunctor(), ObsIndexer.ACTIVE.query(true)).keys.size());
+    }
+
+    @Test
+    public void testEditObservation() {
+        assertConsistent();
+        final ISPObservation obs = progs.get(0).getAllObservations().get(0);
+        setTitle(obs, "B");
+        assertConsistent();
+        setTitle(obs, "C");
+        assertConsistent("C");
+        assertConsistent();
+    }
+
+    @Test
+    public void testEditProgram() {
+        assertConsistent();
+        setActive(progs.get(0), false);
+        setActive(progs.get(1), true);
+        assertConsistent();
+    }
+
+    @Test
+    public void testStructureChange() throws Exception {
+        assertConsistent();
+        final ISPProgram prog = progs.get(2);
+        prog.removeObservation(prog.getAllObservations().get(1));
+        addObservation(prog, "B");
+        assertConsistent();
+    }
+
+    @Test
+    public void testRemoveProgram() {
+        assertConsistent();
+        db.remove(progs.get(0));
+        assertConsistent();
+    }
+
+    // A lookup must not answer while another is still reindexing a change
+    // made before it began.
+    @Test
+    public void testWaitsForInFlightReindex() throws Exception {
+        assertConsistent();
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final IDBIndexer slow = new IDBIndexer() {
+            public String getName() { return "slow"; }
+
+            public Collection<?> getValues(ISPObservation obs) {
+                final String title = obs.getDataObject().getTitle();
+                if ("C".equals(title)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return Collections.singleton(title);
+            }
+        };
+        db.registerIndex(slow);
+        assertConsistent();
+
+        final ISPObservation obs = progs.get(0).getAllObservations().get(0);
+        setTitle(obs, "C");
+
+        final ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            final Callable<List<SPNodeKey>> lookup = () -> qr.queryObservations(new KeyFunctor(), DBIndexQuery.where("slow", "C")).keys;
+            final Future<List<SPNodeKey>> first = exec.submit(lookup);
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            final Future<List<SPNodeKey>> second = exec.submit(lookup);
+            Thread.sleep(200);
+            assertFalse(second.isDone());
+
+            release.countDown();
+            assertEquals(Collections.singletonList(obs.getNodeKey()), first.get(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(obs.getNodeKey()), second.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            exec.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownIndex() {
+        qr.queryObservations(new KeyFunctor(), DBIndexQuery.where("nonesuch", 1));
+    }
+}
@@ -0,0 +1,131 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBProgramKeyAndId;
+import edu.gemini.pot.spdb.DBSlaveSegregatedListFunctor;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBSplittableQueryFunctor;
+import edu.gemini.spModel.core.SPProgramID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a splittable query functor sees every program exactly once,
+ * with the parts merged in program order, and that functors which do not
+ * opt in are still run serially.
+ */
+public final class ParallelQueryTest {
+    private static final int PROGRAMS = 25;
+
+    private static final class SerialProgramListFunctor extends DBAbstractQueryFunctor {
+        final List<SPNodeKey> keys = new ArrayList<>();
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            keys.add(((ISPProgram) node).getProgramKey());
+        }
+    }
+
+    private static final class SplittableProgramListFunctor extends DBAbstractQueryFunctor
+            implements IDBSplittableQueryFunctor<SplittableProgramListFunctor> {
+        final List<SPNodeKey> keys = new ArrayList<>();
+        final int limit; // done once this many programs have been visited
+        int inits, parts, merges, finishes;
+
+        SplittableProgramListFunctor() { this(Integer.MAX_VALUE); }
+        SplittableProgramListFunctor(int limit) { this.limit = limit; }
+
+        @Override public void init() { ++inits; }
+        @Override public void finished() { ++finishes; }
+        @Override public boolean isDone() { return keys.size() >= limit; }
+
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            keys.add(((ISPProgram) node).getProgramKey());
+        }
+
+        @Override public SplittableProgramListFunctor newPart() {
+            assertEquals(1, inits);
+            ++parts;
+            return new SplittableProgramListFunctor(limit);
+        }
+
+        @Override public void merge(SplittableProgramListFunctor part) {
+            assertEquals(1, part.inits);
+            assertEquals(1, part.finishes);
+            ++merges;
+            keys.addAll(part.keys);
+        }
+    }
+
+    private IDBDatabaseService db;
+    private final Set<Principal> user = new HashSet<>();
+
+    @Before
+    public void setUp() throws Exception {
+        db = DBLocalDatabase.createTransient();
+        for (int i = 0; i < PROGRAMS; ++i) {
+            final ISPProgram prog = db.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID("GS-2016A-Q-" + (i + 1)));
+            db.put(prog);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.getDBAdmin().shutdown();
+    }
+
+    @Test
+    public void testAllProgramsVisited() {
+        final List<SPNodeKey> expected = db.getQueryRunner(user).queryPrograms(new SerialProgramListFunctor()).keys;
+        assertEquals(PROGRAMS, expected.size());
+
+        final SplittableProgramListFunctor f = db.getQueryRunner(user).queryPrograms(new SplittableProgramListFunctor());
+        assertNull(f.getException());
+        assertEquals(expected, f.keys);
+        assertEquals(f.parts, f.merges);
+        assertEquals(1, f.inits);
+        assertEquals(1, f.finishes);
+    }
+
+    @Test
+    public void testDoneFunctorVisitsNothing() {
+        final SplittableProgramListFunctor f = db.getQueryRunner(user).queryPrograms(new SplittableProgramListFunctor(0));
+        assertNull(f.getException());
+        assertTrue(f.keys.isEmpty());
+        assertEquals(1, f.finishes);
+    }
+
+    @Test
+    public void testDoneStopsTheQuery() {
+        final List<SPNodeKey> all = db.getQueryRunner(user).queryPrograms(new SerialProgramListFunctor()).keys;
+
+        // Every part, or the functor itself when it runs serially, stops
+        // after its first program.
+        final SplittableProgramListFunctor f = db.getQueryRunner(user).queryPrograms(new SplittableProgramListFunctor(1));
+        assertNull(f.getException());
+        assertFalse(f.keys.isEmpty());
+        assertTrue(f.keys.size() <= Math.max(1, f.parts));
+        assertTrue(all.containsAll(f.keys));
+        assertEquals(f.parts, f.merges);
+    }
+
+    @Test
+    public void testOtherFunctorsRunSerially() {
+        final Collection<Collection<DBProgramKeyAndId>> lists = DBSlaveSegregatedListFunctor.getProgramList(db, user);
+        assertEquals(1, lists.size());
+        assertEquals(PROGRAMS, lists.iterator().next().size());
+    }
+}
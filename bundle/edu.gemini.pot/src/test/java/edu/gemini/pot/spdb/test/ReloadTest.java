@@ -0,0 +1,66 @@
+package edu.gemini.pot.spdb.test;
+
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBProgramListFunctor;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.spModel.core.SPProgramID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that programs stored on disk are all loaded again when the database
+ * is restarted.
+ */
+public final class ReloadTest {
+    private static final int PROGRAM_COUNT = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Set<SPNodeKey> store(File dir) throws Exception {
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        final Set<SPNodeKey> keys = new HashSet<>();
+        for (int i = 0; i < PROGRAM_COUNT; ++i) {
+            final SPProgramID pid = SPProgramID.toProgramID("GS-2016A-Q-" + (i + 1));
+            final ISPProgram p = db.getFactory().createProgram(new SPNodeKey(), pid);
+            db.put(p);
+            keys.add(p.getProgramKey());
+        }
+        db.getDBAdmin().shutdown();
+        return keys;
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        final File dir = folder.newFolder("spdb");
+        final Set<SPNodeKey> keys = store(dir);
+
+        final IDBDatabaseService db = DBLocalDatabase.create(dir);
+        try {
+            // Lookups work whether or not the load has finished.
+            final SPProgramID pid = SPProgramID.toProgramID("GS-2016A-Q-" + PROGRAM_COUNT);
+            assertNotNull(db.lookupProgramByID(pid));
+
+            db.getDBAdmin().awaitLoaded();
+            assertTrue(db.getDBAdmin().isLoaded());
+
+            final IDBQueryRunner qr = db.getQueryRunner(Collections.<Principal>emptySet());
+            final DBProgramListFunctor f = qr.queryPrograms(new DBProgramListFunctor());
+            assertEquals(keys, new HashSet<>(f.getKeyList()));
+        } finally {
+            db.getDBAdmin().shutdown();
+        }
+    }
+}
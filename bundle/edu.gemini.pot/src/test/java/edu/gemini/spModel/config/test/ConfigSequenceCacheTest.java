@@ -0,0 +1,56 @@
+package edu.gemini.spModel.config.test;
+
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.spModel.config.ConfigBridge;
+import edu.gemini.spModel.config.ConfigSequenceCache;
+import edu.gemini.spModel.config.map.ConfigValMapInstances;
+import edu.gemini.spModel.config2.ConfigSequence;
+import edu.gemini.spModel.obs.SPObservation;
+import edu.gemini.spModel.test.SpModelTestBase;
+
+/**
+ * Checks that sequences are served from the cache until the observation is
+ * edited, and that callers can't modify the cached sequences.
+ */
+public final class ConfigSequenceCacheTest extends SpModelTestBase {
+
+    private ConfigSequence extract() {
+        return ConfigBridge.extractSequence(getObs(), null, ConfigValMapInstances.IDENTITY_MAP);
+    }
+
+    public void testHit() throws Exception {
+        final ConfigSequence seq0 = extract();
+        final ConfigSequenceCache.Stats s0 = ConfigSequenceCache.getStats();
+
+        final ConfigSequence seq1 = extract();
+        final ConfigSequenceCache.Stats s1 = ConfigSequenceCache.getStats();
+
+        assertEquals(s0.getHits() + 1, s1.getHits());
+        assertEquals(s0.getMisses(), s1.getMisses());
+        assertNotSame(seq0, seq1);
+        assertEquals(seq0.size(), seq1.size());
+    }
+
+    public void testEditInvalidates() throws Exception {
+        extract();
+
+        final ISPObservation obs = getObs();
+        final SPObservation dobj = (SPObservation) obs.getDataObject();
+        dobj.setTitle("Edited");
+        obs.setDataObject(dobj);
+
+        final ConfigSequenceCache.Stats s0 = ConfigSequenceCache.getStats();
+        extract();
+        final ConfigSequenceCache.Stats s1 = ConfigSequenceCache.getStats();
+
+        assertEquals(s0.getHits(), s1.getHits());
+        assertEquals(s0.getMisses() + 1, s1.getMisses());
+    }
+
+    public void testCopies() throws Exception {
+        final ConfigSequence seq0 = extract();
+        final int size = seq0.size();
+        seq0.clear();
+        assertEquals(size, extract().size());
+    }
+}
@@ -0,0 +1,112 @@
+package edu.gemini.spModel.config2.test;
+
+import edu.gemini.spModel.config2.Config;
+import edu.gemini.spModel.config2.ConfigSequence;
+import edu.gemini.spModel.config2.DefaultConfig;
+import edu.gemini.spModel.config2.ItemKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the memory used by, and item lookups in, a ConfigSequence with an
+ * array of fully expanded step Configs (what {@link ConfigSequence#getAllSteps}
+ * returns and what the sequence used to keep internally).  The sequence
+ * resembles a long dithered imaging sequence: most items never change, the
+ * offsets cycle, the filter changes every 50 steps and the data label changes
+ * at every step.
+ *
+ * <pre>
+ *   ConfigSequenceBenchmark [steps] [static items] [copies]
+ * </pre>
+ */
+final class ConfigSequenceBenchmark {
+
+    private static ConfigSequence sequence(int steps, int staticItems) {
+        final ItemKey[] statics = new ItemKey[staticItems];
+        for (int i = 0; i < staticItems; ++i) statics[i] = new ItemKey("instrument:item" + i);
+        final ItemKey p      = new ItemKey("telescope:p");
+        final ItemKey q      = new ItemKey("telescope:q");
+        final ItemKey filter = new ItemKey("instrument:filter");
+        final ItemKey label  = new ItemKey("observe:dataLabel");
+
+        final ConfigSequence seq = new ConfigSequence();
+        for (int s = 0; s < steps; ++s) {
+            final Config c = new DefaultConfig();
+            for (int i = 0; i < staticItems; ++i) c.putItem(statics[i], "value" + i);
+            c.putItem(p, (double) ((s % 4) * 10));
+            c.putItem(q, (double) (((s / 2) % 2) * 10));
+            c.putItem(filter, "filter" + (s / 50));
+            c.putItem(label, "GS-2016A-Q-1-1-" + s);
+            seq.addStep(c);
+        }
+        seq.compactIterator();  // compact, as when received from the database
+        return seq;
+    }
+
+    private static long usedHeap() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long lookups(ConfigSequence seq, ItemKey[] keys, long millis) {
+        final long end = System.currentTimeMillis() + millis;
+        long count = 0;
+        int hash = 0;
+        while (System.currentTimeMillis() < end) {
+            for (int s = 0; s < seq.size(); ++s) {
+                for (ItemKey k : keys) hash += seq.getItemValue(s, k).hashCode();
+            }
+            count += seq.size() * keys.length;
+        }
+        return (hash == 42) ? count + 1 : count;
+    }
+
+    private static long lookups(Config[] steps, ItemKey[] keys, long millis) {
+        final long end = System.currentTimeMillis() + millis;
+        long count = 0;
+        int hash = 0;
+        while (System.currentTimeMillis() < end) {
+            for (Config c : steps) {
+                for (ItemKey k : keys) hash += c.getItemValue(k).hashCode();
+            }
+            count += steps.length * keys.length;
+        }
+        return (hash == 42) ? count + 1 : count;
+    }
+
+    public static void main(String[] args) {
+        final int steps       = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        final int staticItems = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+        final int copies      = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        final long millis     = 3000;
+
+        final ConfigSequence seq = sequence(steps, staticItems);
+        final ItemKey[] keys = seq.getStep(0).getKeys();
+
+        // Memory: hold many copies of each representation.
+        final List<Object> held = new ArrayList<>();
+        long before = usedHeap();
+        for (int i = 0; i < copies; ++i) held.add(new ConfigSequence(seq));
+        final long columnar = (usedHeap() - before) / copies;
+        held.clear();
+
+        before = usedHeap();
+        for (int i = 0; i < copies; ++i) held.add(seq.getAllSteps());
+        final long expanded = (usedHeap() - before) / copies;
+        held.clear();
+
+        // Lookups: warm up, then time every item at every step.
+        final Config[] all = seq.getAllSteps();
+        lookups(seq, keys, millis);
+        lookups(all, keys, millis);
+        final double seqRate = lookups(seq, keys, millis) / (millis / 1000.0);
+        final double allRate = lookups(all, keys, millis) / (millis / 1000.0);
+
+        System.out.println(String.format("%d steps, %d items per step", steps, keys.length));
+        System.out.println(String.format("%-10s %14s %14s", "", "bytes", "lookups/s"));
+        System.out.println(String.format("%-10s %14d %14.0f", "columnar", columnar, seqRate));
+        System.out.println(String.format("%-10s %14d %14.0f", "expanded", expanded, allRate));
+    }
+}
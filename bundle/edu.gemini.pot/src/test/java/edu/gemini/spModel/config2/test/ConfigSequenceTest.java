@@ -6,6 +6,10 @@ import edu.gemini.spModel.config2.Config;
 import edu.gemini.spModel.config2.ItemKey;
 import edu.gemini.spModel.config2.DefaultConfig;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Iterator;
 
 public class ConfigSequenceTest extends TestCase {
@@ -620,4 +624,34 @@ public class ConfigSequenceTest extends TestCase {
         seq = _seq.subSequence(0, _seq.size());
         assertEquals(3, seq.size());
     }
+
+    public void testRemoveLastStep() {
+        _seq.getAllSteps();
+        _seq.removeStep(2);
+        assertEquals(2, _seq.getAllSteps().length);
+        assertNull(_seq.getItemValue(1, _newKey2));
+    }
+
+    public void testSerialization() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(_seq);
+        oos.close();
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        ConfigSequence seq = (ConfigSequence) ois.readObject();
+        ois.close();
+
+        assertEquals(_seq.size(), seq.size());
+        Config[] expected = _seq.getAllSteps();
+        Config[] actual   = seq.getAllSteps();
+        for (int i=0; i<expected.length; ++i) {
+            assertEquals(expected[i], actual[i]);
+        }
+
+        // Still usable after being read.
+        seq.addStep(_config0);
+        assertEquals("change0", seq.getItemValue(3, _changeKey));
+        assertEquals("new2", seq.getItemValue(3, _newKey2));
+    }
 }
@@ -14,7 +14,7 @@ import jsky.coords.WorldCoords;
 import edu.gemini.qpt.core.Marker.Severity;
 import edu.gemini.qpt.shared.sp.*;
 import edu.gemini.qpt.core.util.Commentable;
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.qpt.core.util.Interval;
 import edu.gemini.qpt.shared.util.*;
 import edu.gemini.qpt.core.util.TimingWindowSolver;
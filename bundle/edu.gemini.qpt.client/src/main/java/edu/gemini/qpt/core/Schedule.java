@@ -85,6 +85,11 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
     private Map<WorldCoordinates, Union<Interval>> intervalCache = new HashMap<>();
     private MiniModel miniModel;
     private Option<IctdSummary> ictdSummary;
+    private final ScheduleEvaluator evaluator = new ScheduleEvaluator(this);
+
+    // Incremented whenever the shared caches that the variants calculate their flags from are invalidated,
+    // so that each variant can tell whether its flags are older than the caches, see Variant.updateObsFlags().
+    private int blocksVersion, facilitiesVersion;
 
     /**
      * Constructs an empty Schedule.
@@ -221,10 +226,12 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         // ok, now the data should be up to date and ready to be processed
         this.ictdSummary = ImOption.apply(params.getParamSet(PROP_ICTD)).map(Ictd::decode);
         this.blocks = getBlockUnion(params);
+        final int gen = evaluator.defer(); // before the variants calculate their flags
         this.variants = new VariantList(this, params.getParamSet(PROP_VARIANTS));
         this.extraSemesters = getExtraSemesters(params);
         this.comment = Pio.getValue(params, PROP_COMMENT);
         init(false, ImOption.empty());
+        evaluator.evaluate(gen);
     }
 
     // An alloc is considered in range if it starts before the end of the block
@@ -333,6 +340,27 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
     /// MINI-MODEL
     ///
 
+    public ScheduleEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    @Override
+    public void invalidateAllCaches() {
+        blocksVersion++;
+        facilitiesVersion++;
+        super.invalidateAllCaches();
+    }
+
+    // The version of the caches that depend on the blocks.
+    int getBlocksVersion() {
+        return blocksVersion;
+    }
+
+    // The version of the caches that depend on the facilities.
+    int getFacilitiesVersion() {
+        return facilitiesVersion;
+    }
+
     public MiniModel getMiniModel() {
         return miniModel;
     }
@@ -346,6 +374,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         invalidateAllCaches();
 
         this.miniModel = miniModel;
+        evaluator.evaluate();
         for (Variant v: variants)
             v.miniModelChanged(miniModel);
 
@@ -361,12 +390,15 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
     public void setIctdSummary(Option<IctdSummary> ictd) {
         invalidateAllCaches();
 
+        evaluator.evaluate();
+
         this.ictdSummary = ictd;
         doPublicFacilitiesUpdate(() -> ictd.foreach(i -> matchFacilitiesToIctd(i.featureAvailabilityJava())));
 
         // REL-3696: always fire the ICTD update property regardless of whether
         // anything changed (previous is `null`) so that listeners respond to
         // the update and reset to ICTD values.
+        facilitiesVersion++;
         firePropertyChange(PROP_ICTD, null, ictd);
     }
 
@@ -392,6 +424,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
 
         } finally {
             invalidateAllCaches();
+            evaluator.evaluate();
             for (Variant v : getVariants()) {
                 v.invalidateAllCaches();
                 v.setFlagUpdatesEnabled(true);
@@ -460,6 +493,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
     private void doPublicFacilitiesUpdate(Runnable action) {
         Set<Enum> prev = getFacilities();
         action.run();
+        facilitiesVersion++;
         firePropertyChange(PROP_FACILITIES, prev, getFacilities());
         setDirty(true);
         for (Variant v: variants)
@@ -624,7 +658,9 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         synchronized (intervalCache) {
             intervalCache.clear();
         }
+        blocksVersion++;
         firePropertyChange(PROP_BLOCKS, prev, getBlocks());
+        evaluator.evaluate();
         setDirty(true);
     }
 
@@ -634,7 +670,9 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         synchronized (intervalCache) {
             intervalCache.clear();
         }
+        blocksVersion++;
         firePropertyChange(PROP_BLOCKS, prev, getBlocks());
+        evaluator.evaluate();
         setDirty(true);
     }
 
@@ -0,0 +1,279 @@
+package edu.gemini.qpt.core;
+
+import edu.gemini.qpt.core.Variant.Flag;
+import edu.gemini.qpt.core.util.ElevationConstraintSolver;
+import edu.gemini.qpt.core.util.Interval;
+import edu.gemini.qpt.core.util.SkyBackgroundSolver;
+import edu.gemini.qpt.core.util.TimingWindowSolver;
+import edu.gemini.qpt.core.util.Union;
+import edu.gemini.qpt.shared.sp.Obs;
+import edu.gemini.qpt.ui.util.ProgressModel;
+import edu.gemini.spModel.core.Site;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Calculates the expensive parts of the observation flags and the candidate scores of all variants of a
+ * schedule in parallel on a fork-join pool. The sky background, elevation and timing window unions of the
+ * observations only depend on the schedule and are shared by all variants. They are calculated in the
+ * background when a schedule is read, its model or ICTD summary is refreshed or its blocks change; until
+ * they are published the variants leave the flags that depend on them alone. Scores are recalculated in the
+ * background whenever the flags of a variant change.
+ * <p>
+ * Background results are published on the event dispatch thread in one step and only if the schedule has
+ * not been edited in the meantime; work that has been overtaken by an edit is cancelled.
+ */
+public final class ScheduleEvaluator {
+
+    private static final Logger LOGGER = Logger.getLogger(ScheduleEvaluator.class.getName());
+
+    // How often awaitEvaluation() reports the progress of the union calculation.
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final Schedule schedule;
+
+    // Incremented for every change of the schedule that makes running union calculations stale.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // The generation of the background union calculation whose result has not been published yet, or -1.
+    private final AtomicInteger pending = new AtomicInteger(-1);
+
+    // The progress of the current union calculation.
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile int total;
+
+    // The unions calculated for one observation.
+    private static final class Unions {
+        final Obs obs;
+        final Union<Interval> dark, visible, timing;
+        Unions(Obs obs, Union<Interval> dark, Union<Interval> visible, Union<Interval> timing) {
+            this.obs = obs;
+            this.dark = dark;
+            this.visible = visible;
+            this.timing = timing;
+        }
+    }
+
+    ScheduleEvaluator(Schedule schedule) {
+        this.schedule = schedule;
+    }
+
+    ///
+    /// UNIONS
+    ///
+
+    // These are the shared caches of the variants, see Variant.initCaches().
+    private Map<Obs, Union<Interval>> darkUnionCache() {
+        return schedule.getCache(Variant.DARK_UNION_CACHE, Schedule.PROP_BLOCKS);
+    }
+
+    private Map<Obs, Union<Interval>> visibleUnionCache() {
+        return schedule.getCache(Variant.VISIBLE_UNION_CACHE, Schedule.PROP_BLOCKS);
+    }
+
+    private Map<Obs, Union<Interval>> timingUnionCache() {
+        return schedule.getCache(Variant.TIMING_UNION_CACHE);
+    }
+
+    // Find the dark time for the target. If the union is empty, the observation
+    // can not be scheduled at all tonight.
+    static Union<Interval> darkUnion(Site site, Obs obs, long start, long end) {
+        final double brightest = obs.getConditions().getBrightestMagnitude();
+        return new SkyBackgroundSolver(site, obs::getCoords, brightest).solve(start, end);
+    }
+
+    // Find the time that the target meets its elevation constraints.
+    static Union<Interval> visibleUnion(Site site, Obs obs, long start, long end) {
+        return ElevationConstraintSolver.forObs(site, obs).solve(start, end);
+    }
+
+    // Timing windows
+    static Union<Interval> timingUnion(Obs obs, long start, long end) {
+        return new TimingWindowSolver(obs).solve(start, end);
+    }
+
+    // The observations of the model that are missing in any of the union caches.
+    private List<Obs> missingUnions() {
+        final List<Obs> ret = new ArrayList<>();
+        final Map<Obs, Union<Interval>> dark = darkUnionCache(), visible = visibleUnionCache(), timing = timingUnionCache();
+        synchronized (dark) {
+            synchronized (visible) {
+                synchronized (timing) {
+                    for (Obs obs: schedule.getMiniModel().getAllObservations())
+                        if (!dark.containsKey(obs) || !visible.containsKey(obs) || !timing.containsKey(obs))
+                            ret.add(obs);
+                }
+            }
+        }
+        return ret;
+    }
+
+    // Calculates the unions of the given observations in parallel, this must be called in the pool. Gives up
+    // as soon as the generation changes.
+    private List<Unions> calculate(List<Obs> obs, Site site, long start, long end, int gen) {
+        return obs.parallelStream().map(o -> {
+            if (generation.get() != gen) throw new CancellationException();
+            final Unions u = new Unions(o, darkUnion(site, o, start, end), visibleUnion(site, o, start, end), timingUnion(o, start, end));
+            done.incrementAndGet();
+            return u;
+        }).collect(Collectors.toList());
+    }
+
+    // Stores the calculated unions, values that have been calculated in the meantime are kept.
+    private void store(List<Unions> unions) {
+        final Map<Obs, Union<Interval>> dark = darkUnionCache(), visible = visibleUnionCache(), timing = timingUnionCache();
+        synchronized (dark) {
+            synchronized (visible) {
+                synchronized (timing) {
+                    for (Unions u: unions) {
+                        dark.putIfAbsent(u.obs, u.dark);
+                        visible.putIfAbsent(u.obs, u.visible);
+                        timing.putIfAbsent(u.obs, u.timing);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Recalculates the missing unions of all observations in the background, e.g. after a change of the
+     * blocks. When they are done they are stored and the variants update their flags in one step on the
+     * event dispatch thread, unless the schedule has changed again in the meantime.
+     */
+    void evaluate() {
+        evaluate(defer());
+    }
+
+    /**
+     * Cancels the running background calculation of the unions and marks a new one as pending, so that the
+     * variants leave the flags that depend on the unions alone until its result is published. This lets the
+     * schedule create its variants before the calculation is started with {@link #evaluate(int)}.
+     *
+     * @return the generation of the new calculation
+     */
+    int defer() {
+        final int gen = generation.incrementAndGet();
+        pending.set(gen);
+        return gen;
+    }
+
+    /**
+     * Starts the background calculation of the unions that has been marked as pending by {@link #defer()},
+     * unless it has been overtaken in the meantime.
+     */
+    void evaluate(int gen) {
+        if (generation.get() != gen) return;
+        if (schedule.isEmpty()) {
+            pending.compareAndSet(gen, -1);
+            return;
+        }
+
+        final List<Obs> obs = missingUnions();
+        final Site site = schedule.getSite();
+        final long start = schedule.getStart(), end = schedule.getEnd();
+        final long t0 = System.nanoTime();
+
+        total = obs.size();
+        done.set(0);
+        POOL.execute(() -> {
+            try {
+                final List<Unions> unions = calculate(obs, site, start, end, gen);
+                LOGGER.fine(String.format("Calculated unions of %d observations in %.2f ms", obs.size(), (System.nanoTime() - t0) / 1e6));
+                SwingUtilities.invokeLater(() -> publish(gen, unions));
+            } catch (CancellationException ce) {
+                LOGGER.fine("Union calculation cancelled.");
+            } catch (RuntimeException re) {
+                // The variants will calculate what is missing.
+                LOGGER.log(Level.WARNING, "Could not calculate unions.", re);
+                SwingUtilities.invokeLater(() -> publish(gen, Collections.emptyList()));
+            }
+        });
+    }
+
+    /**
+     * True while the result of a background union calculation has not been published yet.
+     */
+    boolean isPending() {
+        return pending.get() != -1;
+    }
+
+    /**
+     * Waits until the result of the background union calculation has been published and reports its
+     * progress in the given model. This is used by the actions that open or refresh a schedule; it must not
+     * be called on the event dispatch thread. If the user cancels, the calculation goes on in the background.
+     */
+    public void awaitEvaluation(ProgressModel pm) {
+        pm.setIndeterminate(false);
+        try {
+            while (isPending() && !pm.isCancelled()) {
+                pm.setMax(total);
+                pm.setValue(done.get());
+                Thread.sleep(PROGRESS_INTERVAL_MS);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pm.setIndeterminate(true);
+        }
+    }
+
+    // Publishes the unions on the event dispatch thread.
+    private void publish(int gen, List<Unions> unions) {
+        if (generation.get() != gen) return; // overtaken by an edit
+        pending.set(-1);
+        store(unions);
+        for (Variant v: schedule.getVariants())
+            v.constraintsChanged();
+    }
+
+    /**
+     * Cancels the running background calculation of the unions without publishing anything. The variants
+     * calculate the unions they are missing themselves the next time they update their flags.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+        pending.set(-1);
+    }
+
+    ///
+    /// SCORES
+    ///
+
+    /**
+     * Recalculates the scores of the variant in the background after its flags have changed. The scores
+     * are calculated from a copy of the flags and published on the event dispatch thread if the flags of
+     * the variant have not changed again in the meantime.
+     */
+    void flagsChanged(Variant variant) {
+        final int version = variant.getFlagsVersion();
+        final Map<Obs, Set<Flag>> flags = variant.getFlagsSnapshot();
+
+        POOL.execute(() -> {
+            try {
+                final Map<Obs, Double> scores = flags.keySet().parallelStream().collect(Collectors.toMap(o -> o, o -> {
+                    if (variant.getFlagsVersion() != version) throw new CancellationException();
+                    return Variant.getScore(o, flags);
+                }));
+                SwingUtilities.invokeLater(() -> variant.putScores(version, scores));
+            } catch (CancellationException ce) {
+                // stale, there is a newer calculation
+            } catch (RuntimeException re) {
+                LOGGER.log(Level.WARNING, "Could not calculate scores.", re);
+            }
+        });
+    }
+
+}
@@ -21,11 +21,9 @@ import edu.gemini.spModel.pio.ParamSet;
 import edu.gemini.spModel.pio.Pio;
 import edu.gemini.spModel.pio.PioFactory;
 import edu.gemini.spModel.too.TooType;
-import jsky.coords.WorldCoords;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.function.Function;
 import java.util.logging.Logger;
 
 
@@ -69,6 +67,15 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
     private Map<Obs, Union<Interval>> darkUnionCache;
     private Map<Obs, Union<Interval>> constrainedUnionCache;
     private Map<Obs, Union<Interval>> timingUnionCache;
+    private Map<Obs, Double> scoreCache;
+
+    // Incremented whenever the flags change, scores calculated in the background for older flags are dropped.
+    private volatile int flagsVersion;
+
+    // The versions of the schedule's caches the flags have been calculated from. The caches are shared, so
+    // the variant that updates first after a change refills them and they can't tell the others that their
+    // flags are stale.
+    private int blocksVersion = -1, facilitiesVersion = -1;
 
     // Cache names
     public static final String CONDS_FLAG_CACHE        = "condsFlagCache";
@@ -80,6 +87,8 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
     public static final String TIMING_UNION_CACHE      = "timingUnionCache";
     public static final String VISIBLE_UNION_CACHE     = "visibleUnionCache";
 
+    public static final String SCORE_CACHE             = "scoreCache";
+
     // The list of all groups encountered in the plan, by first appearance.
     private List<Group> groups = new ArrayList<>();
     private boolean flagUpdatesEnabled = true;
@@ -169,6 +178,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
 
         // Private variant-level caches.
         condsFlagCache = getCache(CONDS_FLAG_CACHE, Variant.PROP_SITE_CONDITIONS);
+        scoreCache = getCache(SCORE_CACHE, Variant.PROP_FLAGS);
 
     }
 
@@ -196,7 +206,12 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
     }
 
     void facilitiesChanged() {
-        updateObsFlags();
+        updateObsFlags(FlagInput.FACILITIES);
+    }
+
+    // Called by the schedule evaluator after it has calculated the unions for new blocks.
+    void constraintsChanged() {
+        updateObsFlags(FlagInput.BLOCKS);
     }
 
     ///
@@ -234,7 +249,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             allocs.add(alloc);
             firePropertyChange(PROP_ALLOCS, prev, getAllocs());
             setDirty(true);
-            updateObsFlags();
+            updateAllocFlags(alloc);
             return alloc;
         }
     }
@@ -261,7 +276,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             allocs.remove(alloc);
         }
         firePropertyChange(PROP_ALLOCS, prev, getAllocs());
-        updateObsFlags();
+        updateAllocFlags(alloc);
         setDirty(true);
     }
 
@@ -275,7 +290,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             allocs.add(alloc);
             firePropertyChange(PROP_ALLOCS, prev, getAllocs());
             setDirty(true);
-            updateObsFlags();
+            updateAllocFlags(a, alloc);
             return alloc;
         }
     }
@@ -390,7 +405,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         Conds prev = this.conditions;
         this.conditions = conditions;
         firePropertyChange(PROP_SITE_CONDITIONS, prev, conditions);
-        updateObsFlags(); // must do tis after prop change
+        updateObsFlags(FlagInput.CONDITIONS); // must do tis after prop change
         setDirty(true);
     }
 
@@ -402,7 +417,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         ApproximateAngle prev = this.windConstraint;
         this.windConstraint = windConstraint;
         firePropertyChange(PROP_WIND_CONSTRAINT, prev, windConstraint);
-        updateObsFlags(); // must do tis after prop change
+        updateObsFlags(EnumSet.noneOf(FlagInput.class), null, null); // no flag depends on it, but listeners expect a flags update
         setDirty(true);
     }
 
@@ -415,7 +430,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         this.lgsConstraint = lgsConstraint;
         firePropertyChange(PROP_LGS_CONSTRAINT, prev, lgsConstraint);
         invalidateAllCaches(); //without this you need to update the variant twice for the candidate observations list to be updated, no idea why...
-        updateObsFlags(); // must do this after prop change
+        updateObsFlags(FlagInput.LGS); // must do this after prop change
         setDirty(true);
     }
 
@@ -584,8 +599,90 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         return check;
     }
 
-    @SuppressWarnings("unchecked")
+    ///
+    /// FLAGS
+    ///
+
+    /**
+     * The inputs the observation flags are calculated from. Note that none of the flags depends on
+     * the wind constraint.
+     */
+    private enum FlagInput { MODEL, ALLOCS, CONDITIONS, LGS, FACILITIES, BLOCKS }
+
+    /**
+     * The flags grouped by the inputs they depend on. When an input changes only the families that
+     * depend on it are recalculated, and for alloc changes only for the observations that are
+     * affected by the change. The families are calculated in this order, SCHEDULING uses the
+     * results of CONSTRAINTS.
+     */
+    private enum FlagFamily {
+        INTRINSIC(EnumSet.of(Flag.INACTIVE, Flag.IN_PROGRESS, Flag.OVER_ALLOCATED, Flag.SCHED_GROUP, Flag.TIME_CONSTRAINED),
+                EnumSet.of(FlagInput.MODEL)),
+        FACILITIES(EnumSet.of(Flag.INSTRUMENT_UNAVAILABLE, Flag.CONFIG_UNAVAILABLE, Flag.MASK_IN_CABINET, Flag.MASK_UNAVAILABLE),
+                EnumSet.of(FlagInput.MODEL, FlagInput.FACILITIES)),
+        CONDITIONS(EnumSet.of(Flag.CC_UQUAL, Flag.WV_UQUAL, Flag.IQ_UQUAL, Flag.OVER_QUALIFIED, Flag.LGS_UNAVAILABLE),
+                EnumSet.of(FlagInput.MODEL, FlagInput.CONDITIONS, FlagInput.LGS)),
+        CONSTRAINTS(EnumSet.of(Flag.BACKGROUND_CNS, Flag.ELEVATION_CNS, Flag.SETS_EARLY, Flag.TIMING_CNS),
+                EnumSet.of(FlagInput.MODEL, FlagInput.BLOCKS)),
+        SCHEDULING(EnumSet.of(Flag.SCHEDULED, Flag.MULTI_CNS, Flag.BLOCKED, Flag.SETUP_BLOCKED, Flag.PARTIALLY_BLOCKED),
+                EnumSet.of(FlagInput.MODEL, FlagInput.BLOCKS, FlagInput.ALLOCS));
+
+        final EnumSet<Flag> flags;
+        final EnumSet<FlagInput> inputs;
+
+        FlagFamily(EnumSet<Flag> flags, EnumSet<FlagInput> inputs) {
+            this.flags = flags;
+            this.inputs = inputs;
+        }
+
+        static EnumSet<FlagFamily> dependingOn(EnumSet<FlagInput> changed) {
+            EnumSet<FlagFamily> ret = EnumSet.noneOf(FlagFamily.class);
+            for (FlagFamily f: values())
+                if (!Collections.disjoint(f.inputs, changed)) ret.add(f);
+            return ret;
+        }
+    }
+
+    // Flags that keep an observation from being scheduled regardless of the other allocs.
+    private static final EnumSet<Flag> NOT_SCHEDULABLE_FLAGS = EnumSet.of(
+            Flag.SCHEDULED,
+            Flag.BACKGROUND_CNS,
+            Flag.ELEVATION_CNS,
+            Flag.TIMING_CNS
+        );
+
+    // Flag families calculated from the unions of the schedule evaluator.
+    private static final EnumSet<FlagFamily> UNION_FAMILIES = EnumSet.of(FlagFamily.CONSTRAINTS, FlagFamily.SCHEDULING);
+
     private void updateObsFlags() {
+        updateObsFlags(EnumSet.allOf(FlagInput.class), null, null);
+    }
+
+    private void updateObsFlags(FlagInput input) {
+        updateObsFlags(EnumSet.of(input), null, null);
+    }
+
+    // Updates the flags after the given allocs have been added or removed.
+    private void updateAllocFlags(Alloc... changed) {
+        Set<Obs> changedObs = new HashSet<>();
+        List<Interval> changedIntervals = new ArrayList<>();
+        for (Alloc a: changed) {
+            changedObs.add(a.getObs());
+            changedIntervals.add(a.getInterval());
+        }
+        updateObsFlags(EnumSet.of(FlagInput.ALLOCS), changedObs, changedIntervals);
+    }
+
+    /**
+     * Recalculates the flag families that depend on the changed inputs. For alloc changes the
+     * changed observations and intervals are given and only the observations that are affected
+     * by them are recalculated, otherwise they are null. Independently of the changed inputs,
+     * families whose cached values have been invalidated since this variant last updated its
+     * flags (e.g. by a change of the blocks) are recalculated, too. While the schedule evaluator
+     * calculates the unions in the background the families that depend on them are left alone;
+     * they are recalculated for all observations when it publishes them, see constraintsChanged().
+     */
+    private void updateObsFlags(EnumSet<FlagInput> changed, Set<Obs> changedObs, Collection<Interval> changedIntervals) {
 
         if (!flagUpdatesEnabled) return;
 
@@ -593,14 +690,31 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         // new schedules.
         if (owner.isEmpty()) return;
 
+        final long t0 = System.nanoTime();
+        final EnumSet<FlagFamily> families = FlagFamily.dependingOn(changed);
+        final boolean deferred = owner.getEvaluator().isPending();
+
+        // Families calculated from shared caches that have been invalidated since the last update of the flags.
+        final int blocks = owner.getBlocksVersion(), facilities = owner.getFacilitiesVersion();
+        if (facilities != facilitiesVersion)
+            families.add(FlagFamily.FACILITIES);
+        if (deferred) {
+            families.removeAll(UNION_FAMILIES);
+        } else if (blocks != blocksVersion) {
+            families.addAll(UNION_FAMILIES);
+            changedObs = null; // all observations are affected
+            changedIntervals = null;
+        }
+
         // Before we get started with flags, let's accumulate a list of all groups
         // referenced in the plan. We will use this later to color-code the group
         // associations for allocs such that all allocs in the same group get the
         // same color. Groups are considered significant only if they appear more
         // than once.
+        final SortedSet<Alloc> allAllocs = getAllocs();
         Set<Group> seenOnce = new HashSet<Group>();
         Set<Group> seenMore = new HashSet<Group>();
-        for (Alloc a: getAllocs()) {
+        for (Alloc a: allAllocs) {
             Group g = a.getObs().getGroup();
             if (g != null && g.getType() == GroupType.TYPE_SCHEDULING && !seenOnce.add(g))
                 seenMore.add(g);
@@ -608,16 +722,17 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         groups.clear();
         groups.addAll(seenMore);
 
-        // Clear our last flag map.
-        obsFlags.clear();
-
-        // We need the site for a few things
-        Site site = owner.getSite();
-
-        // It's easier to create the SCHEDULED flag by iterating the
-        // allocs, so we'll do that before iterating the model.
-        for (Alloc a: getAllocs()) {
-            getMutableFlags(a.getObs()).add(Flag.SCHEDULED);
+        // If the model changed, start over with an empty flag map.
+        if (changed.contains(FlagInput.MODEL))
+            obsFlags.clear();
+
+        // It's easier to create the SCHEDULED flag from the allocs, so we'll
+        // collect the scheduled observations before iterating the model.
+        final Set<Obs> scheduled = new HashSet<>();
+        final SortedSet<Interval> allocIntervals = new TreeSet<>();
+        for (Alloc a: allAllocs) {
+            scheduled.add(a.getObs());
+            allocIntervals.add(a.getInterval());
         }
 
         // Now look at each Obs in the model. For each we want to associate
@@ -626,310 +741,394 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         // in order to keep up with it. The caches are created during variant
         // construction and are invalidated automatically based on property
         // changes. Some caches are shared among all variants.
-        for (Obs obs: owner.getMiniModel().getAllObservations()) {
+        final Collection<Obs> all = owner.getMiniModel().getAllObservations();
+        int updated = 0;
+        for (Obs obs: all) {
+
+            final EnumSet<Flag> flags = getMutableFlags(obs);
+            final EnumSet<FlagFamily> stale = staleFamilies(obs, flags, families, changedObs, changedIntervals, deferred);
+            if (stale.isEmpty()) continue;
+            updated++;
+
+            for (FlagFamily f: stale)
+                flags.removeAll(f.flags);
+
+            if (stale.contains(FlagFamily.INTRINSIC))
+                flags.addAll(getIntrinsicFlags(obs));
+            if (stale.contains(FlagFamily.FACILITIES))
+                flags.addAll(getFacilitiesFlags(obs));
+            if (stale.contains(FlagFamily.CONDITIONS))
+                flags.addAll(getCondsFlags(obs));
+            if (stale.contains(FlagFamily.CONSTRAINTS))
+                addConstraintFlags(obs, flags);
+            if (stale.contains(FlagFamily.SCHEDULING) && !addSchedulingFlags(obs, flags, scheduled, allocIntervals))
+                LOGGER.warning(obs + ": skipped the scheduling flags, the steps are inconsistent.");
 
-            EnumSet<Flag> flags = getMutableFlags(obs);
+        }
+
+        if (!deferred) blocksVersion = blocks;
+        facilitiesVersion = facilities;
+
+        LOGGER.fine(String.format("Updated flags (%s) of %d/%d observations in %.2f ms", changed, updated, all.size(), (System.nanoTime() - t0) / 1e6));
+
+        flagsVersion++;
+        firePropertyChange(PROP_FLAGS, null, Collections.unmodifiableMap(obsFlags));
+        owner.getEvaluator().flagsChanged(this);
 
-            // INACTIVE, IN_PROGRESS, OVER_ALLOCATED, TIME_CONSTRAINED
-            // These flags are intrinsic properties of the Obs.
-            EnumSet<Flag> intrinsicFlags = intrinsicFlagCache.get(obs);
-            if (intrinsicFlags == null) {
-                intrinsicFlags = EnumSet.noneOf(Flag.class);
+    }
 
-                // Inactive programs
-                if (!obs.getProg().isActive())
-                    intrinsicFlags.add(Flag.INACTIVE);
+    // Determines the flag families of the given observation that need to be recalculated.
+    private EnumSet<FlagFamily> staleFamilies(Obs obs, EnumSet<Flag> flags, EnumSet<FlagFamily> families, Set<Obs> changedObs, Collection<Interval> changedIntervals, boolean deferred) {
+
+        final EnumSet<FlagFamily> ret = EnumSet.copyOf(families);
+        if (changedObs != null && ret.contains(FlagFamily.SCHEDULING) && !isAffected(obs, flags, changedObs, changedIntervals))
+            ret.remove(FlagFamily.SCHEDULING);
+
+        // Families whose cached values have been invalidated.
+        if (!intrinsicFlagCache.containsKey(obs))
+            ret.add(FlagFamily.INTRINSIC);
+        if (!facilitiesFlagCache.containsKey(obs))
+            ret.add(FlagFamily.FACILITIES);
+        if (!condsFlagCache.containsKey(obs))
+            ret.add(FlagFamily.CONDITIONS);
+        if (!deferred && (!darkUnionCache.containsKey(obs) || !visibleUnionCache.containsKey(obs) || !timingUnionCache.containsKey(obs)))
+            ret.addAll(UNION_FAMILIES);
+        return ret;
 
-                // In-progress observations
-                if (obs.isInProgress())
-                    intrinsicFlags.add(Flag.IN_PROGRESS);
+    }
 
-                // Over-allocated observations.
-                // HACK: don't check for ENG and CAL
-                if (!obs.getProg().isEngOrCal() && obs.getProg().getRemainingProgramTime() <= 0)
-                    intrinsicFlags.add(Flag.OVER_ALLOCATED);
+    // Determines whether the scheduling flags of the observation can change with the given alloc
+    // changes. This is the case if the observation itself has been (un)scheduled or if any of the
+    // changed intervals touch the time in which it could be scheduled, including its setup time.
+    private boolean isAffected(Obs obs, EnumSet<Flag> flags, Set<Obs> changedObs, Collection<Interval> changedIntervals) {
 
-                // Observations in scheduling groups
-                Group g = obs.getGroup();
-                if (g != null && g.getType() == GroupType.TYPE_SCHEDULING)
-                    intrinsicFlags.add(Flag.SCHED_GROUP);
+        if (changedObs.contains(obs)) return true;
+        if (containsAny(flags, NOT_SCHEDULABLE_FLAGS)) return false;
 
-                // Observations with time constraints
-                if (obs.getTooPriority() != TooType.none || obs.getTimingWindows().size() > 0)
-                    intrinsicFlags.add(Flag.TIME_CONSTRAINED);
+        final Union<Interval> constrainedUnion = constrainedUnionCache.get(obs);
+        if (constrainedUnion == null) return true;
 
-                intrinsicFlagCache.put(obs, intrinsicFlags);
+        final long setupTime = obs.getSteps().getSetupTime().toDuration().toMillis();
+        for (Interval c: constrainedUnion) {
+            for (Interval i: changedIntervals) {
+                if (c.getStart() - setupTime <= i.getEnd() && i.getStart() <= c.getEnd())
+                    return true;
             }
-            flags.addAll(intrinsicFlags);
+        }
+        return false;
 
+    }
 
-            // INSTRUMENT_UNAVAILABLE, CONFIG_UNAVAILABLE
-            // These flags depend on the current set of facilities.
-            EnumSet<Flag> facilitiesFlags = facilitiesFlagCache.get(obs);
-            if (facilitiesFlags == null) {
-                facilitiesFlags = EnumSet.noneOf(Flag.class);
+    // INACTIVE, IN_PROGRESS, OVER_ALLOCATED, SCHED_GROUP, TIME_CONSTRAINED
+    // These flags are intrinsic properties of the Obs.
+    private EnumSet<Flag> getIntrinsicFlags(Obs obs) {
+        EnumSet<Flag> intrinsicFlags = intrinsicFlagCache.get(obs);
+        if (intrinsicFlags == null) {
+            intrinsicFlags = EnumSet.noneOf(Flag.class);
 
-                // Insufficient facilities (instrument)
-                for (Inst inst: obs.getInstruments()) {
-                    if (!owner.hasFacility(inst)) {
-                        facilitiesFlags.add(Flag.INSTRUMENT_UNAVAILABLE);
-                        break;
-                    }
-                }
+            // Inactive programs
+            if (!obs.getProg().isActive())
+                intrinsicFlags.add(Flag.INACTIVE);
 
-                // Insufficient facilities (option - grating, filter, etc)
-                for (Enum<?> option: obs.getOptions()) {
-                    if (!owner.hasFacility(option)) {
-                        facilitiesFlags.add(Flag.CONFIG_UNAVAILABLE);
-                        break;
-                    }
-                }
+            // In-progress observations
+            if (obs.isInProgress())
+                intrinsicFlags.add(Flag.IN_PROGRESS);
 
-                // If the custom mask flag is set and the observation has a
-                // custom mask, check its availability.
-                final EnumSet<Flag> maskFlags = EnumSet.noneOf(Flag.class);
-                ImOption.apply(obs.getCustomMask()).filter(m -> !m.trim().isEmpty() && shouldCheckMaskAvailability(obs)).foreach(m -> {
-
-                    // We parse the custom mask name into a CustomMaskKey if
-                    // possible and use it to lookup the Availability.
-                    final Availability a =
-                        ImOption.fromScalaOpt(CustomMaskKey.parse(m))
-                            .map(k -> owner.maskAvailability(k))
-                            .getOrElse(Availability.Missing);
-
-                    if (a == Availability.SummitCabinet) {
-                        maskFlags.add(Flag.MASK_IN_CABINET);
-                    } else if (a != Availability.Installed) {
-                        maskFlags.add(Flag.MASK_UNAVAILABLE);
-                    }
+            // Over-allocated observations.
+            // HACK: don't check for ENG and CAL
+            if (!obs.getProg().isEngOrCal() && obs.getProg().getRemainingProgramTime() <= 0)
+                intrinsicFlags.add(Flag.OVER_ALLOCATED);
 
-                });
-                facilitiesFlags.addAll(maskFlags);
+            // Observations in scheduling groups
+            Group g = obs.getGroup();
+            if (g != null && g.getType() == GroupType.TYPE_SCHEDULING)
+                intrinsicFlags.add(Flag.SCHED_GROUP);
 
-                facilitiesFlagCache.put(obs, facilitiesFlags);
+            // Observations with time constraints
+            if (obs.getTooPriority() != TooType.none || obs.getTimingWindows().size() > 0)
+                intrinsicFlags.add(Flag.TIME_CONSTRAINED);
+
+            intrinsicFlagCache.put(obs, intrinsicFlags);
+        }
+        return intrinsicFlags;
+    }
+
+    // INSTRUMENT_UNAVAILABLE, CONFIG_UNAVAILABLE, MASK_IN_CABINET, MASK_UNAVAILABLE
+    // These flags depend on the current set of facilities.
+    @SuppressWarnings("unchecked")
+    private EnumSet<Flag> getFacilitiesFlags(Obs obs) {
+        EnumSet<Flag> facilitiesFlags = facilitiesFlagCache.get(obs);
+        if (facilitiesFlags == null) {
+            facilitiesFlags = EnumSet.noneOf(Flag.class);
+
+            // Insufficient facilities (instrument)
+            for (Inst inst: obs.getInstruments()) {
+                if (!owner.hasFacility(inst)) {
+                    facilitiesFlags.add(Flag.INSTRUMENT_UNAVAILABLE);
+                    break;
+                }
             }
-            flags.addAll(facilitiesFlags);
-
-
-            // UNDER_QUALIFIED, OVER_QUALIFIED
-            // These flags depend on this variant's conditions set.
-            EnumSet<Flag> condsFlags = condsFlagCache.get(obs);
-            if (condsFlags == null) {
-                condsFlags = EnumSet.noneOf(Flag.class);
-
-                // Underqualified Conditions
-                if (!obs.getConditions().meetsCCConstraint(conditions))
-                    condsFlags.add(Flag.CC_UQUAL);
-                if (!obs.getConditions().meetsWVConstraint(conditions))
-                    condsFlags.add(Flag.WV_UQUAL);
-                if (!obs.getConditions().meetsIQConstraint(conditions))
-                    condsFlags.add(Flag.IQ_UQUAL);
-
-                // Overqualified Observations
-                if (obs.getConditions().meetsConstraintsEasily(conditions)) {
-                    condsFlags.add(Flag.OVER_QUALIFIED);
+
+            // Insufficient facilities (option - grating, filter, etc)
+            for (Enum<?> option: obs.getOptions()) {
+                if (!owner.hasFacility(option)) {
+                    facilitiesFlags.add(Flag.CONFIG_UNAVAILABLE);
+                    break;
                 }
+            }
 
-                // LGS osbervations on non-LGS variant
-                if(!lgsConstraint && obs.getLGS()){
-                    condsFlags.add(Flag.LGS_UNAVAILABLE);
+            // If the custom mask flag is set and the observation has a
+            // custom mask, check its availability.
+            final EnumSet<Flag> maskFlags = EnumSet.noneOf(Flag.class);
+            ImOption.apply(obs.getCustomMask()).filter(m -> !m.trim().isEmpty() && shouldCheckMaskAvailability(obs)).foreach(m -> {
+
+                // We parse the custom mask name into a CustomMaskKey if
+                // possible and use it to lookup the Availability.
+                final Availability a =
+                    ImOption.fromScalaOpt(CustomMaskKey.parse(m))
+                        .map(k -> owner.maskAvailability(k))
+                        .getOrElse(Availability.Missing);
+
+                if (a == Availability.SummitCabinet) {
+                    maskFlags.add(Flag.MASK_IN_CABINET);
+                } else if (a != Availability.Installed) {
+                    maskFlags.add(Flag.MASK_UNAVAILABLE);
                 }
 
-                condsFlagCache.put(obs, condsFlags);
-            }
-            flags.addAll(condsFlags);
-
-
-            // We dont want to do the blocking calculation if the obs can't be
-            // scheduled even if the variant is totally empty. So keep track
-            // of whether we have come up with a reason or not.
-            boolean theoreticallySchedulable = !flags.contains(Flag.SCHEDULED);
-
-
-            // BACKGROUND_CNS
-            // This flag depends on the schedule's blocks.
-            // Find the dark time for the target. If the union is empty, the observation
-            // can not be scheduled at all tonight.
-            Union<Interval> darkUnion = darkUnionCache.get(obs);
-            if (darkUnion == null) {
-                Function<Long, WorldCoords> coords = obs::getCoords;
-                final double brightest = obs.getConditions().getBrightestMagnitude();
-                SkyBackgroundSolver sbs = new SkyBackgroundSolver(site, coords, brightest);
-                darkUnion = sbs.solve(owner.getStart(), owner.getEnd());
-                darkUnionCache.put(obs, darkUnion);
-            }
-            if (darkUnion.isEmpty()) {
-                flags.add(Flag.BACKGROUND_CNS);
-                theoreticallySchedulable = false;
-            }
+            });
+            facilitiesFlags.addAll(maskFlags);
 
+            facilitiesFlagCache.put(obs, facilitiesFlags);
+        }
+        return facilitiesFlags;
+    }
 
-            // ELEVATION_CNS, SETS_EARLY
-            // This flag depends on the schedule's blocks.
-            // Find the time that the target meets its elevation constraints. For now
-            // this just means <= airmass 2.
-            Union<Interval> visibleUnion = visibleUnionCache.get(obs);
-            if (visibleUnion == null) {
-                ElevationConstraintSolver as = ElevationConstraintSolver.forObs(site, obs);
-                visibleUnion = as.solve(owner.getStart(), owner.getEnd());
-                visibleUnionCache.put(obs, visibleUnion);
-            }
-            if (visibleUnion.isEmpty()) {
-                flags.add(Flag.ELEVATION_CNS);
-                theoreticallySchedulable = false;
-            } else {
-                long set = visibleUnion.getIntervals().last().getEnd();
-                if (set - owner.getStart() < 3 * TimeUtils.MS_PER_HOUR)
-                    flags.add(Flag.SETS_EARLY);
+    // CC_UQUAL, WV_UQUAL, IQ_UQUAL, OVER_QUALIFIED, LGS_UNAVAILABLE
+    // These flags depend on this variant's conditions set and LGS constraint.
+    private EnumSet<Flag> getCondsFlags(Obs obs) {
+        EnumSet<Flag> condsFlags = condsFlagCache.get(obs);
+        if (condsFlags == null) {
+            condsFlags = EnumSet.noneOf(Flag.class);
+
+            // Underqualified Conditions
+            if (!obs.getConditions().meetsCCConstraint(conditions))
+                condsFlags.add(Flag.CC_UQUAL);
+            if (!obs.getConditions().meetsWVConstraint(conditions))
+                condsFlags.add(Flag.WV_UQUAL);
+            if (!obs.getConditions().meetsIQConstraint(conditions))
+                condsFlags.add(Flag.IQ_UQUAL);
+
+            // Overqualified Observations
+            if (obs.getConditions().meetsConstraintsEasily(conditions)) {
+                condsFlags.add(Flag.OVER_QUALIFIED);
             }
 
-            // Timing windows
-            Union<Interval> timingUnion = timingUnionCache.get(obs);
-            if (timingUnion == null) {
-                TimingWindowSolver as = new TimingWindowSolver(obs);
-                timingUnion = as.solve(owner.getStart(), owner.getEnd());
-                timingUnionCache.put(obs, timingUnion);
-            }
-            if (timingUnion.isEmpty()) {
-                flags.add(Flag.TIMING_CNS);
-                theoreticallySchedulable = false;
+            // LGS osbervations on non-LGS variant
+            if(!lgsConstraint && obs.getLGS()){
+                condsFlags.add(Flag.LGS_UNAVAILABLE);
             }
 
-            // UNSCHEDULABLE, BLOCKED
-            // If the Obs is still theoretically schedulable, we now need to
-            // intersect all the availability unions and see if there's enough
-            // room to schedule at least one step.
-            if (theoreticallySchedulable) {
-
-                // What's the minimum amount of time we need?
-                PlannedStepSummary steps = obs.getSteps();
-                final long firstUnexStep;
-                try {
-                    firstUnexStep = steps.getStepTime(obs.getFirstUnexecutedStep());
-                } catch (ArrayIndexOutOfBoundsException aioobe) {
-                    LOGGER.severe(obs + ": TOTAL STEPS == " + steps.size() + ", FIRST UNEX IS " + obs.getFirstUnexecutedStep());
-                    return;
-                }
-                // setupTime will depend on the setup type selected in the obs.
-                final long setupTime = steps.getSetupTime().toDuration().toMillis();
-                final long firstUnexStepPlusSetup = firstUnexStep + setupTime;
-
-
-                // First find the intersection of all constraint-based unions
-                // without regard to the state of the variant itself. This will tell
-                // us whether the Obs is in fact schedulable in theory.
-                Union<Interval> constrainedUnion = constrainedUnionCache.get(obs);
-                if (constrainedUnion == null) {
-                    constrainedUnion = new Union<>(owner.getBlockIntervals());
-                    constrainedUnion.intersect(visibleUnion);
-                    constrainedUnion.intersect(darkUnion);
-                    constrainedUnion.intersect(timingUnion);
-                    constrainedUnionCache.put(obs, new Union<Interval>(constrainedUnion)); // put a copy, since we change it after retrieving
-
-                    // Now, also extend each interval back in time for a length
-                    // equal to the setup time. This is the actual constrained
-                    // union, since setup time is unconstrained.
-                    for (Interval i: new ArrayList<Interval>(constrainedUnion.getIntervals())) {
-                        constrainedUnion.add(new Interval(i.getStart() - setupTime, i.getStart()));
-                    }
+            condsFlagCache.put(obs, condsFlags);
+        }
+        return condsFlags;
+    }
 
-                } else {
-                    constrainedUnion = new Union<Interval>(constrainedUnion); // copy
-                }
+    // Find the dark time for the target. If the union is empty, the observation
+    // can not be scheduled at all tonight.
+    private Union<Interval> getDarkUnion(Obs obs) {
+        Union<Interval> darkUnion = darkUnionCache.get(obs);
+        if (darkUnion == null) {
+            darkUnion = ScheduleEvaluator.darkUnion(owner.getSite(), obs, owner.getStart(), owner.getEnd());
+            darkUnionCache.put(obs, darkUnion);
+        }
+        return darkUnion;
+    }
 
-                // Look for a slot large enough to run the first unexecuted step
-                // plus setup.
-                boolean existsSlotForFirstUnexStepPlusSetup = false;
-                for (Interval i: constrainedUnion) {
-                    if (i.getLength() >= firstUnexStepPlusSetup) {
-                        existsSlotForFirstUnexStepPlusSetup = true;
-                        break;
-                    }
-                }
+    // Find the time that the target meets its elevation constraints. For now
+    // this just means <= airmass 2.
+    private Union<Interval> getVisibleUnion(Obs obs) {
+        Union<Interval> visibleUnion = visibleUnionCache.get(obs);
+        if (visibleUnion == null) {
+            visibleUnion = ScheduleEvaluator.visibleUnion(owner.getSite(), obs, owner.getStart(), owner.getEnd());
+            visibleUnionCache.put(obs, visibleUnion);
+        }
+        return visibleUnion;
+    }
 
-                if (!existsSlotForFirstUnexStepPlusSetup) {
+    // Timing windows
+    private Union<Interval> getTimingUnion(Obs obs) {
+        Union<Interval> timingUnion = timingUnionCache.get(obs);
+        if (timingUnion == null) {
+            timingUnion = ScheduleEvaluator.timingUnion(obs, owner.getStart(), owner.getEnd());
+            timingUnionCache.put(obs, timingUnion);
+        }
+        return timingUnion;
+    }
 
-                    // Once we unioned all the constraints together, there was
-                    // no open space. So although there is no one constraint that
-                    // prevents scheduling, there is nowhere on the schedule where
-                    // we won't violate at least one hard constraint. So we flag
-                    // the obs as unschedulable.
-                    flags.add(Flag.MULTI_CNS);
+    // BACKGROUND_CNS, ELEVATION_CNS, SETS_EARLY, TIMING_CNS
+    // These flags depend on the schedule's blocks.
+    private void addConstraintFlags(Obs obs, EnumSet<Flag> flags) {
 
-                } else {
+        if (getDarkUnion(obs).isEmpty())
+            flags.add(Flag.BACKGROUND_CNS);
 
-                    // Ok, clone this again in case we need it down below.
-                    Union<Interval> constrainedUnionWithoutSetup = new Union<Interval>(constrainedUnion);
+        final Union<Interval> visibleUnion = getVisibleUnion(obs);
+        if (visibleUnion.isEmpty()) {
+            flags.add(Flag.ELEVATION_CNS);
+        } else {
+            long set = visibleUnion.getIntervals().last().getEnd();
+            if (set - owner.getStart() < 3 * TimeUtils.MS_PER_HOUR)
+                flags.add(Flag.SETS_EARLY);
+        }
 
-                    // There is at least one slot in the schedule where we can
-                    // place at least one step without violating any hard constraints.
-                    // However all such slots may be covered by existing allocs at
-                    // this point, so we need to subtract them out and see if
-                    // there is enough space remaining.
-                    constrainedUnion.remove(getAllocIntervals());
+        if (getTimingUnion(obs).isEmpty())
+            flags.add(Flag.TIMING_CNS);
 
-                    // Find largest interval
-                    long maxInterval = -1;
-                    for (Interval i: constrainedUnion)
-                        maxInterval = Math.max(maxInterval, i.getLength());
+    }
 
-                    if (maxInterval < firstUnexStep) {
+    // SCHEDULED, MULTI_CNS, BLOCKED, SETUP_BLOCKED, PARTIALLY_BLOCKED
+    // These flags depend on the schedule's blocks and this variant's allocs. The constraint flags
+    // must be up to date. Returns false if the steps of the observation are inconsistent.
+    private boolean addSchedulingFlags(Obs obs, EnumSet<Flag> flags, Set<Obs> scheduled, SortedSet<Interval> allocIntervals) {
+
+        if (scheduled.contains(obs))
+            flags.add(Flag.SCHEDULED);
+
+        // We dont want to do the blocking calculation if the obs can't be
+        // scheduled even if the variant is totally empty.
+        if (containsAny(flags, NOT_SCHEDULABLE_FLAGS))
+            return true;
+
+        // UNSCHEDULABLE, BLOCKED
+        // The Obs is still theoretically schedulable, we now need to
+        // intersect all the availability unions and see if there's enough
+        // room to schedule at least one step.
+
+        // What's the minimum amount of time we need?
+        PlannedStepSummary steps = obs.getSteps();
+        final long firstUnexStep;
+        try {
+            firstUnexStep = steps.getStepTime(obs.getFirstUnexecutedStep());
+        } catch (ArrayIndexOutOfBoundsException aioobe) {
+            LOGGER.severe(obs + ": TOTAL STEPS == " + steps.size() + ", FIRST UNEX IS " + obs.getFirstUnexecutedStep());
+            return false;
+        }
+        // setupTime will depend on the setup type selected in the obs.
+        final long setupTime = steps.getSetupTime().toDuration().toMillis();
+        final long firstUnexStepPlusSetup = firstUnexStep + setupTime;
+
+
+        // First find the intersection of all constraint-based unions
+        // without regard to the state of the variant itself. This will tell
+        // us whether the Obs is in fact schedulable in theory.
+        Union<Interval> constrainedUnion = constrainedUnionCache.get(obs);
+        if (constrainedUnion == null) {
+            constrainedUnion = new Union<>(owner.getBlockIntervals());
+            constrainedUnion.intersect(getVisibleUnion(obs));
+            constrainedUnion.intersect(getDarkUnion(obs));
+            constrainedUnion.intersect(getTimingUnion(obs));
+            constrainedUnionCache.put(obs, new Union<Interval>(constrainedUnion)); // put a copy, since we change it after retrieving
+
+            // Now, also extend each interval back in time for a length
+            // equal to the setup time. This is the actual constrained
+            // union, since setup time is unconstrained.
+            for (Interval i: new ArrayList<Interval>(constrainedUnion.getIntervals())) {
+                constrainedUnion.add(new Interval(i.getStart() - setupTime, i.getStart()));
+            }
 
-                        // Nope, all the good spots on the schedule are already taken.
-                        // The obs can still be scheduled, but only if we move something.
-                        flags.add(Flag.BLOCKED);
+        } else {
+            constrainedUnion = new Union<Interval>(constrainedUnion); // copy
+        }
 
-                    } else {
+        // Look for a slot large enough to run the first unexecuted step
+        // plus setup.
+        boolean existsSlotForFirstUnexStepPlusSetup = false;
+        for (Interval i: constrainedUnion) {
+            if (i.getLength() >= firstUnexStepPlusSetup) {
+                existsSlotForFirstUnexStepPlusSetup = true;
+                break;
+            }
+        }
 
-                        if (maxInterval < firstUnexStepPlusSetup) {
+        if (!existsSlotForFirstUnexStepPlusSetup) {
 
-                            // At least enough time for step 1, but not enough time
-                            // for setup. We need to recalculate the union in this
-                            // corner case because non-setup time is more constrained.
+            // Once we unioned all the constraints together, there was
+            // no open space. So although there is no one constraint that
+            // prevents scheduling, there is nowhere on the schedule where
+            // we won't violate at least one hard constraint. So we flag
+            // the obs as unschedulable.
+            flags.add(Flag.MULTI_CNS);
 
-                            // Set up constrainedUnionWithoutSetup
-                            for (Interval i: new ArrayList<Interval>(constrainedUnionWithoutSetup.getIntervals()))
-                                constrainedUnionWithoutSetup.remove(new Interval(i.getStart(), i.getStart() + setupTime));
-                            constrainedUnionWithoutSetup.remove(getAllocIntervals());
+        } else {
 
-                            // And see if there is time for step 1
-                            for (Interval i: constrainedUnionWithoutSetup) {
-                                if (i.getLength() >= firstUnexStep) {
-                                    flags.add(Flag.SETUP_BLOCKED);
-                                    break;
-                                }
-                            }
+            // Ok, clone this again in case we need it down below.
+            Union<Interval> constrainedUnionWithoutSetup = new Union<Interval>(constrainedUnion);
 
-                            if (!flags.contains(Flag.SETUP_BLOCKED))
-                                flags.add(Flag.BLOCKED);
+            // There is at least one slot in the schedule where we can
+            // place at least one step without violating any hard constraints.
+            // However all such slots may be covered by existing allocs at
+            // this point, so we need to subtract them out and see if
+            // there is enough space remaining.
+            constrainedUnion.remove(allocIntervals);
 
-                        } else {
+            // Find largest interval
+            long maxInterval = -1;
+            for (Interval i: constrainedUnion)
+                maxInterval = Math.max(maxInterval, i.getLength());
 
-                            // At least enough time for step 1 plus setup (where
-                            // setup time depends on the setup type selected in
-                            // the observation).
+            if (maxInterval < firstUnexStep) {
 
-                            // Count up all the steps
-                            long totalSteps = steps.getSetupTime().toDuration().toMillis();
-                            for (int i = 0; i < steps.size(); i++)
-                                totalSteps += steps.getStepTime(i);
+                // Nope, all the good spots on the schedule are already taken.
+                // The obs can still be scheduled, but only if we move something.
+                flags.add(Flag.BLOCKED);
 
-                            // If the largest interval isn't big enough for the whole
-                            // obs sequence, we're partially blocked
-                            if (totalSteps > maxInterval)
-                                flags.add(Flag.PARTIALLY_BLOCKED);
+            } else {
 
-                        }
+                if (maxInterval < firstUnexStepPlusSetup) {
 
+                    // At least enough time for step 1, but not enough time
+                    // for setup. We need to recalculate the union in this
+                    // corner case because non-setup time is more constrained.
+
+                    // Set up constrainedUnionWithoutSetup
+                    for (Interval i: new ArrayList<Interval>(constrainedUnionWithoutSetup.getIntervals()))
+                        constrainedUnionWithoutSetup.remove(new Interval(i.getStart(), i.getStart() + setupTime));
+                    constrainedUnionWithoutSetup.remove(allocIntervals);
+
+                    // And see if there is time for step 1
+                    for (Interval i: constrainedUnionWithoutSetup) {
+                        if (i.getLength() >= firstUnexStep) {
+                            flags.add(Flag.SETUP_BLOCKED);
+                            break;
+                        }
                     }
 
+                    if (!flags.contains(Flag.SETUP_BLOCKED))
+                        flags.add(Flag.BLOCKED);
+
+                } else {
+
+                    // At least enough time for step 1 plus setup (where
+                    // setup time depends on the setup type selected in
+                    // the observation).
+
+                    // Count up all the steps
+                    long totalSteps = steps.getSetupTime().toDuration().toMillis();
+                    for (int i = 0; i < steps.size(); i++)
+                        totalSteps += steps.getStepTime(i);
+
+                    // If the largest interval isn't big enough for the whole
+                    // obs sequence, we're partially blocked
+                    if (totalSteps > maxInterval)
+                        flags.add(Flag.PARTIALLY_BLOCKED);
+
                 }
 
             }
 
         }
 
-        firePropertyChange(PROP_FLAGS, null, Collections.unmodifiableMap(obsFlags));
+        return true;
 
     }
 
@@ -958,6 +1157,18 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         return ret;
     }
 
+    int getFlagsVersion() {
+        return flagsVersion;
+    }
+
+    // A copy of the current flags that can be used by other threads.
+    Map<Obs, Set<Flag>> getFlagsSnapshot() {
+        final Map<Obs, Set<Flag>> ret = new HashMap<>();
+        for (Map.Entry<Obs, EnumSet<Flag>> e: obsFlags.entrySet())
+            ret.put(e.getKey(), EnumSet.copyOf(e.getValue()));
+        return ret;
+    }
+
     public Set<Flag> getFlags(Obs obs) {
         EnumSet<Flag> ret = obsFlags.get(obs);
         if (ret == null) {
@@ -985,8 +1196,29 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
     public static final int DEFAULT_WIND_CONSTRAINT_VARIANCE = 20;
 
     public double getScore(Obs obs) {
+        synchronized (scoreCache) {
+            final Double score = scoreCache.get(obs);
+            if (score != null) return score;
+        }
+        final double score = getScore(obs, obsFlags);
+        synchronized (scoreCache) {
+            scoreCache.put(obs, score);
+        }
+        return score;
+    }
+
+    // Stores the scores calculated in the background, unless the flags have changed in the meantime.
+    void putScores(int version, Map<Obs, Double> scores) {
+        if (version != flagsVersion) return;
+        synchronized (scoreCache) {
+            scoreCache.putAll(scores);
+        }
+    }
 
-        Set<Flag> flags = getFlags(obs);
+    // Calculates the score of the observation for the given flags of all observations.
+    static double getScore(Obs obs, Map<Obs, ? extends Set<Flag>> obsFlags) {
+
+        Set<Flag> flags = flagsOf(obs, obsFlags);
 
         // All kinds of flags automatically give you a zero.
         if (containsAny(flags, AUTOMATIC_DEATH_FLAGS))
@@ -1032,7 +1264,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         // non-TOO priorities in the same program (ignoring unobservable obs).
         boolean[] found = new boolean[Priority.values().length];
         for (Obs o: obs.getProg().getFullObsSet())
-            if (o != obs && !containsAny(getFlags(o), AUTOMATIC_DEATH_FLAGS))
+            if (o != obs && !containsAny(flagsOf(o, obsFlags), AUTOMATIC_DEATH_FLAGS))
                 found[o.getPriority().ordinal()] = true;
         Priority basePriority = obs.getPriority();
         int effectivePriorityOrdinal = basePriority.ordinal();
@@ -1055,7 +1287,12 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
     }
 
     @SuppressWarnings("unchecked")
-    private boolean containsAny(Collection<?> a, Collection<?> b) {
+    private static Set<Flag> flagsOf(Obs obs, Map<Obs, ? extends Set<Flag>> obsFlags) {
+        final Set<Flag> ret = obsFlags.get(obs);
+        return ret == null ? Collections.<Flag>emptySet() : ret;
+    }
+
+    private static boolean containsAny(Collection<?> a, Collection<?> b) {
         for (Object o: a)
             if (b.contains(o))
                 return true;
@@ -5,6 +5,7 @@ import java.util.function.Function;
 import java.util.logging.Logger;
 
 import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
 import edu.gemini.qpt.shared.sp.Obs;
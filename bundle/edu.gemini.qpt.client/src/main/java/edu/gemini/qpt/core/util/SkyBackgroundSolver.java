@@ -4,6 +4,7 @@ import java.util.Date;
 import java.util.function.Function;
 
 import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
 
@@ -6,6 +6,12 @@ public abstract class Solver {
 
     private final long stepSize, tolerance;
 
+    // The last evaluation of f, the searches for the start and the end of an interval start where the
+    // previous search ended, this saves evaluating f twice at these points.
+    private boolean evaluated;
+    private long lastT;
+    private boolean lastValue;
+
     public Solver(long stepSize, long tolerance) {
         this.stepSize = stepSize;
         this.tolerance = tolerance;
@@ -19,7 +25,7 @@ public abstract class Solver {
     public Interval solve(Interval bounds, long t) {
         try {
             long[] ret = new long[2];
-            if (f(t)) {
+            if (eval(t)) {
                 ret[0] = solve(bounds, t, -stepSize, true);
                 ret[1] = solve(bounds, t, stepSize, true);
             } else {
@@ -57,54 +63,64 @@ public abstract class Solver {
     }
     
     
+    /**
+     * Finds the point where f flips, starting at t and looking in the direction of the step. A coarse scan
+     * with the step size brackets the flip, which is then located by bisection down to the tolerance.
+     * Returns the last point where f is true if looking for a false condition, or the first point where f
+     * is true if looking for a true condition.
+     */
     private long solve(Interval bounds, long t, long stepSize, boolean findFalse) throws NoSolutionException {
-//        System.out.print("Starting at " + t + " and counting by " + stepSize + " until condition is " + !findFalse);
-        while (findFalse ? f(t) : !f(t)) {
+
+        // Coarse scan: step until the condition flips, prev is the last point before the flip.
+        long prev = t;
+        while (findFalse == eval(t)) {
             if (!bounds.contains(t)) {
-                
-                
+
                 if (findFalse) {
-                    
-//                     If we're looking for a false condition when we ran off
+
+                    // If we're looking for a false condition when we ran off
                     // the end, just clip it at t.
-                    
-                    Long ret;
                     if (t < bounds.getStart() && stepSize < 0) {
-                        ret = bounds.getStart();
+                        return bounds.getStart();
                     } else if (t > bounds.getEnd() && stepSize > 0) {
-                        ret = bounds.getEnd() - 1;
-                    } else {
-                        ret = null;
-                    }
-                    if (ret != null) {
-//                        System.out.println(" ... hit a boundary ... returning " + ret);
-                        return ret;
+                        return bounds.getEnd() - 1;
                     }
-                    
+
                 } else {
-                    
-                    if ((t < bounds.getStart() && stepSize < 0) || 
-                         (t > bounds.getEnd() && stepSize > 0)) {
 
-                        // Otherwise we're looking for a true condition that may
-                        // never appear.
-//                        System.out.println(" ... hit a boundary ... no solution.");
+                    // Otherwise we're looking for a true condition that may
+                    // never appear.
+                    if ((t < bounds.getStart() && stepSize < 0) ||
+                         (t > bounds.getEnd() && stepSize > 0)) {
                         throw new NoSolutionException();
                     }
 
-                    
-
                 }
-                
+
             }
-            t += stepSize;;
+            prev = t;
+            t += stepSize;
         }
-//        System.out.println(" ... condition is " + !findFalse + " at "  + t);
-        long ret = (Math.abs(stepSize) <= tolerance) ? (findFalse ? t - stepSize : t) : solve(bounds, t, -stepSize / 2, !findFalse);
-//        System.out.println("... returning " + ret);
-        return ret;
+
+        // Refinement: the condition flips between prev and t, bisect until they are within the tolerance.
+        // Note that the condition is boolean only, so there is nothing to gain from interpolating methods.
+        final long minGap = Math.max(tolerance, 1);
+        while (Math.abs(t - prev) > minGap) {
+            final long mid = prev + (t - prev) / 2;
+            if (findFalse == eval(mid)) prev = mid; else t = mid;
+        }
+        return findFalse ? prev : t;
     }
-    
+
+    private boolean eval(long t) {
+        if (!evaluated || t != lastT) {
+            lastValue = f(t);
+            lastT     = t;
+            evaluated = true;
+        }
+        return lastValue;
+    }
+
     protected abstract boolean f(long t);
     
 
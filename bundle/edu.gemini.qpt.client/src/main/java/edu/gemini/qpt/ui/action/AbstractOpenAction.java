@@ -84,6 +84,10 @@ public abstract class AbstractOpenAction extends AbstractAsyncAction {
                     }
                 }
 
+                if (pm.isCancelled()) return null;
+                pm.setMessage("Evaluating observations...");
+                sched.getEvaluator().awaitEvaluation(pm);
+
                 if (pm.isCancelled()) return null;
                 LttsServicesClient.getInstance().showStatus(shell.getPeer());
                 sched.setFile(file);
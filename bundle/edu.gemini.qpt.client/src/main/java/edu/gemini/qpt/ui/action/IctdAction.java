@@ -81,6 +81,9 @@ public final class IctdAction extends AbstractAsyncAction implements PropertyCha
 
                     shell.setModel(null);
                     shell.setModel(sched);
+
+                    pm.setMessage("Evaluating observations...");
+                    sched.getEvaluator().awaitEvaluation(pm);
                 }
             );
 
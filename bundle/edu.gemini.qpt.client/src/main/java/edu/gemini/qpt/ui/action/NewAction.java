@@ -161,6 +161,10 @@ public class NewAction extends AbstractAsyncAction {
                         LttsServicesClient.getInstance().showStatus(shell.getPeer());
                     }
 
+                    pm.setMessage("Evaluating observations...");
+                    sched.getEvaluator().awaitEvaluation(pm);
+
+                    if (pm.isCancelled()) return;
                     pm.setMessage("Opening model...");
                     shell.setModel(sched);
                 }
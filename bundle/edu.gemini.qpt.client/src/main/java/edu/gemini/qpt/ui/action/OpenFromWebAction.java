@@ -115,6 +115,10 @@ public class OpenFromWebAction extends AbstractAsyncAction {
                             }
                         }
 
+                        if (pm.isCancelled()) return;
+                        pm.setMessage("Evaluating observations...");
+                        sched.getEvaluator().awaitEvaluation(pm);
+
                         if (pm.isCancelled()) return;
                         LttsServicesClient.getInstance().showStatus(shell.getPeer());
                         shell.setModel(sched);
@@ -71,7 +71,7 @@ public class RefreshAction extends AbstractAsyncAction implements PropertyChange
             MiniModel miniModel = null;
             for (int i = 1; miniModel == null ; i++) {
                 try {
-                    miniModel = MiniModel.newInstance(authClient, peer, sched.getEnd(), sched.getExtraSemesters(), magTable);
+                    miniModel = MiniModel.refresh(authClient, peer, sched.getMiniModel(), sched.getEnd(), sched.getExtraSemesters(), magTable);
                 } catch (TimeoutException te) {
                     pm.setMessage("Retrying (" + i + ") ...");
                     if (pm.isCancelled())
@@ -106,6 +106,8 @@ public class RefreshAction extends AbstractAsyncAction implements PropertyChange
             }
             shell.setSelection(new GSelection<>(accum.toArray()));
 
+            pm.setMessage("Evaluating observations...");
+            sched.getEvaluator().awaitEvaluation(pm);
 
             pm.setMessage("Finishing up...");
 
@@ -6,7 +6,7 @@ import java.util.function.Function;
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
 import edu.gemini.qpt.core.util.AirmassLimit;
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.qpt.core.util.Interval;
 import edu.gemini.qpt.core.util.Solver;
 import edu.gemini.qpt.shared.util.TimeUtils;
@@ -1,6 +1,6 @@
 package edu.gemini.qpt.ui.util;
 
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.spModel.core.Site;
 
 import java.time.Instant;
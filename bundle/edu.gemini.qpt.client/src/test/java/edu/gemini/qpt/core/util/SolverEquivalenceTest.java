@@ -0,0 +1,123 @@
+package edu.gemini.qpt.core.util;
+
+import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalc;
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.sin;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the bisecting solver with the previous scanning solver.
+ */
+public class SolverEquivalenceTest {
+
+    private static final class CountingSolver extends Solver {
+        private final LongPredicate p;
+        long calls;
+        CountingSolver(long stepSize, long tolerance, LongPredicate p) { super(stepSize, tolerance); this.p = p; }
+        @Override protected boolean f(long t) { calls++; return p.test(t); }
+    }
+
+    private static final class CountingScanningSolver extends ScanningSolver {
+        private final LongPredicate p;
+        long calls;
+        CountingScanningSolver(long stepSize, long tolerance, LongPredicate p) { super(stepSize, tolerance); this.p = p; }
+        @Override protected boolean f(long t) { calls++; return p.test(t); }
+    }
+
+    // Intervals not longer than the tolerance at the ends of the search interval depend on where exactly the
+    // solvers evaluate f and are ignored.
+    private static List<Interval> significant(Union<Interval> u, long tolerance) {
+        final List<Interval> ret = new ArrayList<>();
+        for (Interval i : u.getIntervals()) if (i.getLength() > tolerance) ret.add(i);
+        return ret;
+    }
+
+    @Test public void matchesScanningSolver() {
+        long calls = 0, scanningCalls = 0;
+        for (long stepSize : new long[] { 50, 100, 250 }) {
+            for (long tolerance : new long[] { 1, 5, 20 }) {
+                for (double period : new double[] { 1000, 3000 }) {
+                    for (int p = 0; p < 20; p++) {
+                        for (double level : new double[] { -0.5, 0.0, 0.5 }) {
+                            final double phase = p * 137.0;
+                            final LongPredicate f = t -> sin((t + phase) * PI / period) > level;
+                            final CountingSolver s = new CountingSolver(stepSize, tolerance, f);
+                            final CountingScanningSolver r = new CountingScanningSolver(stepSize, tolerance, f);
+
+                            final List<Interval> actual   = significant(s.solve(0, 10000), tolerance);
+                            final List<Interval> expected = significant(r.solve(0, 10000), tolerance);
+                            assertEquals(expected.size(), actual.size());
+                            for (int i = 0; i < expected.size(); i++) {
+                                assertEquals(expected.get(i).getStart(), actual.get(i).getStart(), tolerance);
+                                assertEquals(expected.get(i).getEnd(),   actual.get(i).getEnd(),   tolerance);
+                            }
+                            calls         += s.calls;
+                            scanningCalls += r.calls;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(calls < scanningCalls);
+    }
+
+    @Test public void findsIntervalStartingAtBound() {
+        // true for the first millisecond and then again from 783 on
+        final LongPredicate f = t -> t == 188 || t >= 783;
+        final List<Interval> solutions = new ArrayList<>(new CountingSolver(33, 3, f).solve(188, 890).getIntervals());
+        assertEquals(2, solutions.size());
+        assertEquals(new Interval(188, 189), solutions.get(0));
+        assertEquals(783, solutions.get(1).getStart(), 3);
+        assertEquals(890, solutions.get(1).getEnd());
+    }
+
+    // === this is for performance trimming purposes, not an actual test case
+
+    @Ignore
+    @Test public void nightTimingTest() {
+        final Site site = Site.GS;
+        final Calendar cal = Calendar.getInstance(site.timezone());
+        cal.set(2015, Calendar.MARCH, 1, 20, 0, 0);
+        final long start = cal.getTimeInMillis();
+        final Interval night = new Interval(start, start + TimeUtils.MS_PER_HOUR * 10);
+        final ImprovedSkyCalc calc = new ImprovedSkyCalc(site);
+
+        long calls = 0, scanningCalls = 0, nanos = 0, scanningNanos = 0;
+        for (int i = 0; i < 500; i++) {
+            final WorldCoords coords = new WorldCoords(i * 0.72, -85 + i * 0.34);
+            final LongPredicate f = t -> {
+                calc.calculate(coords, new Date(t), false);
+                return calc.getAltitude() > 30;
+            };
+            final CountingSolver s = new CountingSolver(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE, f);
+            final CountingScanningSolver r = new CountingScanningSolver(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE, f);
+
+            final long t0 = System.nanoTime();
+            s.solve(night);
+            final long t1 = System.nanoTime();
+            r.solve(night);
+            final long t2 = System.nanoTime();
+
+            calls         += s.calls;
+            scanningCalls += r.calls;
+            nanos         += t1 - t0;
+            scanningNanos += t2 - t1;
+        }
+        System.out.println("bisecting: " + calls + " evaluations, " + nanos / 1000000 + "ms");
+        System.out.println("scanning:  " + scanningCalls + " evaluations, " + scanningNanos / 1000000 + "ms");
+    }
+
+}
@@ -0,0 +1,125 @@
+package edu.gemini.qpt.core
+
+import edu.gemini.qpt.core.util.{Interval, Union}
+import edu.gemini.qpt.shared.sp.{MiniModelBuilder, Obs, Prog}
+import edu.gemini.qpt.shared.util.ObsBuilder
+import edu.gemini.qpt.ui.util.ProgressModel
+import edu.gemini.shared.util.immutable.{None => JNone}
+import edu.gemini.skycalc.TwilightBoundedNight
+import edu.gemini.skycalc.TwilightBoundType.NAUTICAL
+import edu.gemini.spModel.core.{Site, SPProgramID}
+import edu.gemini.spModel.ictd.IctdSummary
+import edu.gemini.spModel.target.SPTarget
+import edu.gemini.spModel.target.env.TargetEnvironment
+
+import org.specs2.mutable._
+
+import java.beans.{PropertyChangeEvent, PropertyChangeListener}
+import java.time.ZonedDateTime
+import javax.swing.SwingUtilities
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks that the results of the background calculations are only published if they are still current.
+ */
+final class ScheduleEvaluatorSpec extends Specification {
+
+  val site: Site = Site.GS
+
+  val night: TwilightBoundedNight = {
+    val midnight = ZonedDateTime.of(2016, 3, 16, 0, 0, 0, 0, site.timezone.toZoneId).toInstant.toEpochMilli
+    TwilightBoundedNight.forTime(NAUTICAL, midnight, site)
+  }
+
+  def obs(prog: Prog, n: Int, raHours: Double): Obs =
+    ObsBuilder(
+      prog              = prog,
+      obsNumber         = n,
+      targetEnvironment = TargetEnvironment.create(new SPTarget(raHours * 15, -30))
+    ).apply
+
+  def schedule: Schedule = {
+    val p = new Prog(SPProgramID.toProgramID("GS-2016A-Q-1"))
+    new Schedule(MiniModelBuilder(site, List(obs(p, 1, 8), obs(p, 2, 10), obs(p, 3, 12))), JNone.instance[IctdSummary])
+  }
+
+  def onEdt(f: => Unit): Unit =
+    SwingUtilities.invokeAndWait(new Runnable { def run(): Unit = f })
+
+  // Waits for the union calculation and the results published on the event dispatch thread.
+  def settle(s: Schedule): Unit = {
+    s.getEvaluator.awaitEvaluation(new ProgressModel("Evaluating...", 0))
+    onEdt(())
+  }
+
+  def darkUnions(s: Schedule): java.util.Map[Obs, Union[Interval]] =
+    s.getCache(Variant.DARK_UNION_CACHE, Schedule.PROP_BLOCKS)
+
+  // Adds a block and counts the flag updates of a variant that follow.
+  def flagUpdates(s: Schedule)(edit: => Unit): Int = {
+    val v = s.addVariant("A", 100: Byte, 100: Byte, 100: Byte, null, true)
+    settle(s)
+    var updates = 0
+    v.addPropertyChangeListener(Variant.PROP_FLAGS, new PropertyChangeListener {
+      def propertyChange(evt: PropertyChangeEvent): Unit = updates += 1
+    })
+    onEdt(edit)
+    settle(s)
+    updates
+  }
+
+  "The schedule evaluator" should {
+
+    "publish the unions for new blocks" in {
+      val s = schedule
+      flagUpdates(s) {
+        s.addBlock(night.getStartTime, night.getEndTime)
+      } must be_>(0)
+      darkUnions(s).keySet.asScala must_== s.getMiniModel.getAllObservations.asScala.toSet
+    }
+
+    "not publish anything after it has been cancelled" in {
+      val s = schedule
+      flagUpdates(s) {
+        s.addBlock(night.getStartTime, night.getEndTime)
+        s.getEvaluator.cancel()
+      } must_== 0
+      darkUnions(s).isEmpty must beTrue
+    }
+
+    "leave the flags that depend on the unions to the pending calculation" in {
+      val s = schedule
+      val v = s.addVariant("A", 100: Byte, 100: Byte, 100: Byte, null, true)
+      onEdt(s.addBlock(night.getStartTime, night.getEndTime))
+      settle(s)
+      val flags = v.getFlagsSnapshot
+      var deferred = false
+      onEdt {
+        s.setIctdSummary(JNone.instance[IctdSummary])
+        deferred = s.getEvaluator.isPending && darkUnions(s).isEmpty
+      }
+      settle(s)
+      deferred must beTrue
+      v.getFlagsSnapshot must_== flags
+    }
+
+    "keep the scores of the current flags only" in {
+      val s = schedule
+      val v = s.addVariant("A", 100: Byte, 100: Byte, 100: Byte, null, true)
+      onEdt(s.addBlock(night.getStartTime, night.getEndTime))
+      settle(s)
+      val o = s.getMiniModel.getAllObservations.asScala.head
+      var scores = List.empty[Double]
+      onEdt {
+        v.putScores(v.getFlagsVersion - 1, Map(o -> Double.box(-1.0)).asJava)
+        scores ::= v.getScore(o)
+        v.putScores(v.getFlagsVersion, Map(o -> Double.box(-2.0)).asJava)
+        scores ::= v.getScore(o)
+      }
+      scores.reverse must_== List(Variant.getScore(o, v.getFlagsSnapshot), -2.0)
+    }
+
+  }
+
+}
@@ -0,0 +1,180 @@
+package edu.gemini.qpt.core
+
+import edu.gemini.pot.sp.SPComponentType
+import edu.gemini.qpt.core.Variant.Flag
+import edu.gemini.qpt.shared.sp.{Conds, Inst, MiniModelBuilder, Obs, Prog}
+import edu.gemini.qpt.shared.util.ObsBuilder
+import edu.gemini.shared.util.immutable.{None => JNone}
+import edu.gemini.skycalc.TwilightBoundedNight
+import edu.gemini.skycalc.TwilightBoundType.NAUTICAL
+import edu.gemini.spModel.core.{Site, SPProgramID}
+import edu.gemini.spModel.gemini.gmos.InstGmosSouth
+import edu.gemini.spModel.gemini.obscomp.SPSiteQuality
+import edu.gemini.spModel.ictd.IctdSummary
+import edu.gemini.spModel.obs.plannedtime.{PlannedStepSummary, SetupTime}
+import edu.gemini.spModel.target.SPTarget
+import edu.gemini.spModel.target.env.TargetEnvironment
+
+import org.specs2.mutable._
+
+import java.beans.{PropertyChangeEvent, PropertyChangeListener}
+import java.time.{Duration, ZonedDateTime}
+import javax.swing.SwingUtilities
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks that the flags the variants update incrementally are the ones a full recalculation yields.
+ */
+final class VariantFlagsSpec extends Specification {
+
+  val site: Site = Site.GS
+
+  val Hour: Long = 60 * 60 * 1000L
+
+  val night: TwilightBoundedNight = {
+    val midnight = ZonedDateTime.of(2016, 3, 16, 0, 0, 0, 0, site.timezone.toZoneId).toInstant.toEpochMilli
+    TwilightBoundedNight.forTime(NAUTICAL, midnight, site)
+  }
+
+  def steps(count: Int): PlannedStepSummary =
+    new PlannedStepSummary(
+      SetupTime.unsafeFromDuration(Duration.ofMinutes(15), Duration.ofMinutes(5), SetupTime.Type.FULL),
+      Array.fill(count)(Hour / 2),
+      Array.fill(count)(false),
+      Array.fill(count)("OBJECT")
+    )
+
+  def quality(cc: SPSiteQuality.CloudCover, iq: SPSiteQuality.ImageQuality): SPSiteQuality = {
+    val q = new SPSiteQuality()
+    q.setCloudCover(cc)
+    q.setImageQuality(iq)
+    q
+  }
+
+  def obs(prog: Prog, n: Int, raHours: Double, stepCount: Int = 2, q: SPSiteQuality = new SPSiteQuality(), lgs: Boolean = false): Obs =
+    ObsBuilder(
+      prog              = prog,
+      obsNumber         = n,
+      targetEnvironment = TargetEnvironment.create(new SPTarget(raHours * 15, -30)),
+      steps             = steps(stepCount),
+      quality           = q,
+      lgs               = lgs,
+      instrument        = Array[SPComponentType](InstGmosSouth.SP_TYPE)
+    ).apply
+
+  def schedule(os: Prog => List[Obs]): Schedule = {
+    val s = new Schedule(MiniModelBuilder(site, os(new Prog(SPProgramID.toProgramID("GS-2016A-Q-1")))), JNone.instance[IctdSummary])
+    addBlock(s, night.getStartTime, night.getEndTime)
+    s
+  }
+
+  // The unions for the new blocks are calculated in the background, the test leaves it to the variants.
+  // The evaluation is cancelled on the event dispatch thread so that nothing can be published in between.
+  def onEdt(f: => Unit): Unit =
+    SwingUtilities.invokeAndWait(new Runnable { def run(): Unit = f })
+
+  def addBlock(s: Schedule, start: Long, end: Long): Unit = onEdt {
+    s.addBlock(start, end)
+    s.getEvaluator.cancel()
+  }
+
+  def removeBlock(s: Schedule, start: Long, end: Long): Unit = onEdt {
+    s.removeBlock(start, end)
+    s.getEvaluator.cancel()
+  }
+
+  // The differences between the current flags and the result of a full recalculation.
+  def mismatches(step: String, v: Variant): List[String] = {
+    val incremental = v.getFlagsSnapshot
+    v.setFlagUpdatesEnabled(true) // recalculates all flags
+    val full = v.getFlagsSnapshot
+    (incremental.keySet.asScala ++ full.keySet.asScala).toList.collect {
+      case o if incremental.get(o) != full.get(o) =>
+        s"$step, ${v.getName}, $o: ${incremental.get(o)} != ${full.get(o)}"
+    }
+  }
+
+  "Variant flags" should {
+
+    "be equal to a full recalculation after every kind of change" in {
+
+      val s = schedule { p => List(
+        obs(p, 1, 8),
+        obs(p, 2, 10),
+        obs(p, 3, 12, q = quality(SPSiteQuality.CloudCover.ANY, SPSiteQuality.ImageQuality.PERCENT_20)),
+        obs(p, 4, 14, lgs = true),
+        obs(p, 5, 18),
+        obs(p, 6, 2),
+        obs(p, 7, 11, q = quality(SPSiteQuality.CloudCover.PERCENT_50, SPSiteQuality.ImageQuality.ANY))
+      )}
+      val o = s.getMiniModel.getAllObservations.asScala.toVector
+
+      val a = s.addVariant("A", 50: Byte, 70: Byte, 100: Byte, null, true)
+      val b = s.addVariant("B", 70: Byte, 85: Byte, 100: Byte, null, false)
+      def check(step: String): List[String] = mismatches(step, a) ++ mismatches(step, b)
+
+      val start = night.getStartTime
+      val middle = (night.getStartTime + night.getEndTime) / 2
+
+      val results = List.newBuilder[String]
+      results ++= check("initial")
+
+      val a1 = a.addAlloc(o(1), start + Hour, 0, 1, Alloc.SetupType.FULL, null)
+      results ++= check("add alloc")
+
+      val a2 = a1.move(start + 3 * Hour)
+      results ++= check("move alloc")
+
+      b.addAlloc(o(2), start + 2 * Hour, 0, 1, Alloc.SetupType.FULL, null)
+      results ++= check("add alloc to other variant")
+
+      a2.remove()
+      results ++= check("remove alloc")
+
+      a.setConditions(new Conds(0: Byte, 70: Byte, 85: Byte, 100: Byte))
+      results ++= check("conditions")
+
+      b.setLgsConstraint(true)
+      results ++= check("lgs")
+
+      s.removeFacility(Inst.GMOS_SOUTH)
+      results ++= check("remove facility")
+
+      s.addFacility(Inst.GMOS_SOUTH)
+      results ++= check("add facility")
+
+      // Only incremental updates after the block change, one variant after the other.
+      removeBlock(s, night.getStartTime, night.getEndTime)
+      addBlock(s, start, middle)
+      a.addAlloc(o(0), start + Hour, 0, 1, Alloc.SetupType.FULL, null)
+      results ++= mismatches("blocks", a)
+      b.addAlloc(o(6), start + 4 * Hour, 0, 1, Alloc.SetupType.FULL, null)
+      results ++= mismatches("blocks", b)
+
+      results.result must beEmpty
+
+    }
+
+    "be published if the steps of an observation are inconsistent" in {
+
+      val s = schedule { p => List(obs(p, 1, 10, stepCount = 0), obs(p, 2, 10)) }
+      val List(broken, ok) = s.getMiniModel.getAllObservations.asScala.toList
+
+      val v = s.addVariant("A", 100: Byte, 100: Byte, 100: Byte, null, true)
+      var published = 0
+      v.addPropertyChangeListener(Variant.PROP_FLAGS, new PropertyChangeListener {
+        def propertyChange(evt: PropertyChangeEvent): Unit = published += 1
+      })
+
+      v.addAlloc(ok, night.getStartTime + Hour, 0, 1, Alloc.SetupType.FULL, null)
+
+      published must be_>(0)
+      v.getFlags(ok).contains(Flag.SCHEDULED) must beTrue
+      v.getFlags(broken).contains(Flag.SCHEDULED) must beFalse
+
+    }
+
+  }
+
+}
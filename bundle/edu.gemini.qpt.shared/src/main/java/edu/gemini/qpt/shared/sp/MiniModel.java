@@ -11,10 +11,14 @@ import edu.gemini.util.security.auth.keychain.KeyChain;
 import edu.gemini.util.trpc.client.TrpcClient$;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.text.ParseException;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The mini model is a condensed snapshot of the ODB program and observation data and can be used
@@ -25,6 +29,8 @@ import java.util.concurrent.TimeoutException;
  */
 public class MiniModel {
 
+    private static final Logger LOGGER = Logger.getLogger(MiniModel.class.getName());
+
     /** Set of observation classes that are considered to be relevant by default (QPT). */
     private static final Set<ObsClass> RELEVANT_OBS_CLASSES = new HashSet<>();
     static {
@@ -49,19 +55,22 @@ public class MiniModel {
     private final long timestamp = System.currentTimeMillis();
     private final Map<SPProgramID, ProgramExclusion> programExclusions;
     private final Map<SPObservationID, ObsExclusion> obsExclusions;
+    private final Map<SPProgramID, Long> programVersions;
 
     private MiniModel(Site site,
                       SortedSet<Prog> programs,
                       SortedSet<String> misconfiguredObservations,
                       SortedSet<String> allSemesters,
                       Map<SPProgramID, ProgramExclusion> programExclusions,
-                      Map<SPObservationID, ObsExclusion> obsExclusions) {
+                      Map<SPObservationID, ObsExclusion> obsExclusions,
+                      Map<SPProgramID, Long> programVersions) {
         this.site = site;
         this.programs = Collections.unmodifiableSortedSet(new TreeSet<>(programs));
         this.misconfiguredObservations = Collections.unmodifiableSortedSet(new TreeSet<>(misconfiguredObservations));
         this.allSemesters = Collections.unmodifiableSortedSet(new TreeSet<>(allSemesters));
         this.programExclusions = Collections.unmodifiableMap(programExclusions);
         this.obsExclusions = Collections.unmodifiableMap(obsExclusions);
+        this.programVersions = Collections.unmodifiableMap(programVersions);
         SortedSet<Obs> accum = new TreeSet<>();
         for (Prog prog: programs) accum.addAll(prog.getFullObsSet());
         allObservations = Collections.unmodifiableSortedSet(accum);
@@ -75,6 +84,7 @@ public class MiniModel {
                 Collections.emptySortedSet(),
                 Collections.emptySortedSet(),
                 Collections.emptyMap(),
+                Collections.emptyMap(),
                 Collections.emptyMap()
         );
     }
@@ -154,6 +164,41 @@ public class MiniModel {
         return newInstance(kc, peer, new Date(date), semesters, ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
     }
 
+    /**
+     * Refreshes a mini model that was created by one of the QPT convenience methods above. Only the
+     * programs that have changed since the previous model was created are transferred; the unchanged
+     * programs, including their observations, are taken over from the previous model as they are.
+     * @param previous the model to refresh
+     * @param date the date on which the night ends / sunrise
+     * @param extraSemesters
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static MiniModel refresh(
+            KeyChain kc,
+            Peer peer,
+            MiniModel previous,
+            long date,
+            Set<String> extraSemesters,
+            AgsMagnitude.MagnitudeTable magTable) throws IOException, TimeoutException {
+
+        // a model for another site can not be patched
+        if (previous.site != peer.site)
+            return newInstance(kc, peer, date, extraSemesters, magTable);
+
+        Set<Semester> semesters = new HashSet<Semester>();
+        for (String s : extraSemesters) {
+            try {
+                semesters.add(Semester.parse(s));
+            } catch (ParseException e) {
+                throw new RuntimeException("can not parse semester: " + s);
+            }
+        }
+        ObsQueryFunctor func = new ObsQueryFunctor(peer.site, new Date(date), semesters, ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable, previous.programVersions);
+        return newInstance(kc, peer, func, previous);
+    }
+
     /**
      * Creates a mini model for a given peer, date and additional semesters containing all observations
      * that match the given observation classes and statuses.
@@ -180,7 +225,7 @@ public class MiniModel {
             AgsMagnitude.MagnitudeTable magTable) throws IOException, TimeoutException {
 
         ObsQueryFunctor func = new ObsQueryFunctor(peer.site, date, extraSemesters, progTypes, obsClasses, obsStatuses, magTable);
-        return newInstance(kc, peer, func);
+        return newInstance(kc, peer, func, empty(peer.site));
 
     }
 
@@ -191,16 +236,78 @@ public class MiniModel {
      * @return
      */
     public static MiniModel newInstanceFromExecuted(Peer peer, ObsQueryFunctor result) {
+        return newInstanceFromExecuted(peer.site, result);
+    }
+
+    /**
+     * Creates a mini model from the changed programs in the result and the programs in the previous
+     * model that the result reports as unchanged. Programs that are in neither have been removed or
+     * no longer pass the program filters.
+     * Package-private for testing.
+     */
+    static MiniModel patch(MiniModel previous, ObsQueryFunctor result) {
+        final Set<SPProgramID> unchanged = result.getUnchangedPrograms();
+        if (unchanged.isEmpty()) return newInstanceFromExecuted(previous.site, result);
+
+        final Set<String> unchangedIds = new HashSet<>();
+        final SortedSet<Prog> programs = new TreeSet<>(result.getProgramSet());
+        for (Prog prog: previous.programs) {
+            if (unchanged.contains(prog.getProgramId())) {
+                programs.add(prog);
+                unchangedIds.add(prog.getProgramId().stringValue());
+            }
+        }
+
+        // The observation results of unchanged programs are not calculated again.
+        final SortedSet<String> misconfigured = new TreeSet<>(result.getMisconfiguredObservations());
+        for (String obsId: previous.misconfiguredObservations) {
+            final int i = obsId.lastIndexOf('-');
+            if (i > 0 && unchangedIds.contains(obsId.substring(0, i)))
+                misconfigured.add(obsId);
+        }
+        final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>(result.getObsExclusions());
+        for (Map.Entry<SPObservationID, ObsExclusion> e: previous.obsExclusions.entrySet()) {
+            if (unchanged.contains(e.getKey().getProgramID()))
+                obsExclusions.put(e.getKey(), e.getValue());
+        }
+
         return new MiniModel(
-                peer.site,
+                previous.site,
+                programs,
+                misconfigured,
+                result.getAllSemesters(),
+                result.getProgramExclusions(),
+                obsExclusions,
+                result.getProgramVersions());
+    }
+
+    private static MiniModel newInstanceFromExecuted(Site site, ObsQueryFunctor result) {
+        return new MiniModel(
+                site,
                 result.getProgramSet(),
                 result.getMisconfiguredObservations(),
                 result.getAllSemesters(),
                 result.getProgramExclusions(),
-                result.getObsExclusions());
+                result.getObsExclusions(),
+                result.getProgramVersions());
+    }
+
+    // Size of the serialized result, this is roughly what went over the wire. This serializes the whole
+    // result once more, so it is only calculated for debugging.
+    private static long serializedSize(ObsQueryFunctor result) {
+        final long[] count = { 0 };
+        try (ObjectOutputStream oos = new ObjectOutputStream(new OutputStream() {
+            @Override public void write(int b) { count[0]++; }
+            @Override public void write(byte[] b, int off, int len) { count[0] += len; }
+        })) {
+            oos.writeObject(result);
+        } catch (IOException ioe) {
+            return -1;
+        }
+        return count[0];
     }
 
-    private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor) throws IOException, TimeoutException {
+    private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor, MiniModel previous) throws IOException, TimeoutException {
 
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
@@ -215,8 +322,14 @@ public class MiniModel {
             }
 
             final IDBQueryRunner qr = TrpcClient$.MODULE$.apply(peer.host, peer.port).withKeyChain(kc).proxy(IDBQueryRunner.class);
+            final long start = System.currentTimeMillis();
             final ObsQueryFunctor result = qr.queryPrograms(functor);
-            return newInstanceFromExecuted(peer, result);
+            final MiniModel model = patch(previous, result);
+            LOGGER.log(Level.INFO, String.format("Refreshed mini model in %d ms: %d programs transferred, %d unchanged.",
+                    System.currentTimeMillis() - start, result.getProgramSet().size(), result.getUnchangedPrograms().size()));
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine(String.format("Transferred programs: %d bytes.", serializedSize(result)));
+            return model;
 
         } catch (UndeclaredThrowableException ute) {
             try {
@@ -4,6 +4,8 @@ import edu.gemini.ags.api.*;
 import edu.gemini.pot.sp.*;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBSplittableQueryFunctor;
+import edu.gemini.pot.sp.version.JavaVersionMapOps;
 import edu.gemini.shared.util.TimeValue;
 import edu.gemini.shared.util.immutable.ApplyOp;
 import edu.gemini.shared.util.immutable.DefaultImList;
@@ -66,9 +68,10 @@ import java.util.logging.Logger;
 import scala.collection.JavaConversions;
 
 /**
- * Query functor that generates the sp mini-model snapshot.
+ * Query functor that generates the sp mini-model snapshot.  The programs are independent of each other,
+ * so the database may split the query and run it on several threads.
  */
-public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<Prog> {
+public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<Prog>, IDBSplittableQueryFunctor<ObsQueryFunctor> {
     /**
      * TODO: Temporary system property to indicate whether or not we should calculate the
      * TODO: AGS anaylsis
@@ -83,6 +86,8 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private final SortedSet<String> allSemesters = new TreeSet<>();
     private final Map<SPProgramID, ProgramExclusion> programExclusions = new TreeMap<>();
     private final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>();
+    private final Map<SPProgramID, Long> programVersions = new TreeMap<>();
+    private final SortedSet<SPProgramID> unchangedPrograms = new TreeSet<>();
 
     private final Site site;
     private final Calendar date;
@@ -96,6 +101,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private final Boolean skipInvalidObservations; // skips observations that have no conditions, instrument or target
     private final Boolean skipNoStepsObservations; // skips observations that have no remaining steps (QPT does not need those)
     private final AgsMagnitude.MagnitudeTable magTable;
+    private final Map<SPProgramID, Long> knownVersions; // versions of the programs the client already has
 
     /**
      * Constructs a functor that will retrieve candidate observations for the given input values.
@@ -124,6 +130,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         this.skipInvalidObservations = true;
         this.skipNoStepsObservations = false; // QV wants those, while QPT is not interested in them
         this.magTable = magTable;
+        this.knownVersions = Collections.emptyMap();
 
     }
 
@@ -141,6 +148,16 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
      * @param obsStatuses
      */
     public ObsQueryFunctor(Site site, Date date, final Set<Semester> extraSemesters, List<ProgramType> progTypes, Set<ObsClass> obsClasses, Set<ObservationStatus> obsStatuses, AgsMagnitude.MagnitudeTable magTable) {
+        this(site, date, extraSemesters, progTypes, obsClasses, obsStatuses, magTable, Collections.<SPProgramID, Long>emptyMap());
+    }
+
+    /**
+     * Constructs a QPT functor that only retrieves the programs that have changed since the client got them.
+     * Programs that pass the program filters and whose version checksum is the one given in knownVersions
+     * are not read again, instead they are reported as unchanged and the client keeps its copy.
+     * @param knownVersions the version checksums of the programs the client already has, see getProgramVersions()
+     */
+    public ObsQueryFunctor(Site site, Date date, final Set<Semester> extraSemesters, List<ProgramType> progTypes, Set<ObsClass> obsClasses, Set<ObservationStatus> obsStatuses, AgsMagnitude.MagnitudeTable magTable, Map<SPProgramID, Long> knownVersions) {
 
         this.site = site;
         this.date = Calendar.getInstance(site.timezone());
@@ -165,6 +182,42 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         this.skipInactivePrograms = false;
         this.skipNoStepsObservations = true;
         this.magTable = magTable;
+        this.knownVersions = new TreeMap<>(knownVersions);
+    }
+
+    /**
+     * Constructs an empty functor with the same input values as the given one, see newPart().
+     */
+    private ObsQueryFunctor(ObsQueryFunctor that) {
+        this.site = that.site;
+        this.date = (that.date == null) ? null : (Calendar) that.date.clone(); // calendars are not thread safe
+        this.progTypes = that.progTypes;
+        this.relevantObsClasses = that.relevantObsClasses;
+        this.relevantObsStatuses = that.relevantObsStatuses;
+        this.relevantSemesters = that.relevantSemesters;
+        this.rolloverSemesters = that.rolloverSemesters;
+        this.skipCompletedPrograms = that.skipCompletedPrograms;
+        this.skipInactivePrograms = that.skipInactivePrograms;
+        this.skipInvalidObservations = that.skipInvalidObservations;
+        this.skipNoStepsObservations = that.skipNoStepsObservations;
+        this.magTable = that.magTable;
+        this.knownVersions = that.knownVersions;
+    }
+
+    @Override
+    public ObsQueryFunctor newPart() {
+        return new ObsQueryFunctor(this);
+    }
+
+    @Override
+    public void merge(ObsQueryFunctor part) {
+        programSet.addAll(part.programSet);
+        misconfiguredObservations.addAll(part.misconfiguredObservations);
+        allSemesters.addAll(part.allSemesters);
+        programExclusions.putAll(part.programExclusions);
+        obsExclusions.putAll(part.obsExclusions);
+        programVersions.putAll(part.programVersions);
+        unchangedPrograms.addAll(part.unchangedPrograms);
     }
 
     @SuppressWarnings("unchecked")
@@ -232,6 +285,15 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 }
             }
 
+            // -- skip programs that have not changed since the client got them
+            final long version = JavaVersionMapOps.checksum(programShell.getVersions());
+            final Long knownVersion = knownVersions.get(id);
+            if (knownVersion != null && knownVersion == version) {
+                programVersions.put(id, version);
+                unchangedPrograms.add(id);
+                return;
+            }
+
             // -- Get the science band and times
             final int band;
             long plannedTime = 0;
@@ -350,6 +412,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
             // Finish constructing the program.
             prog.setChildren(obsList, groupList, noteList);
             programSet.add(prog);
+            programVersions.put(id, version);
 
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Trouble in functor.", e);
@@ -931,6 +994,20 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         return obsExclusions;
     }
 
+    /**
+     * Version checksums of the returned and the unchanged programs.
+     */
+    Map<SPProgramID, Long> getProgramVersions() {
+        return programVersions;
+    }
+
+    /**
+     * Programs that are not returned because the client already has them in their current version.
+     */
+    SortedSet<SPProgramID> getUnchangedPrograms() {
+        return unchangedPrograms;
+    }
+
 }
 
 
@@ -0,0 +1,30 @@
+package edu.gemini.qpt.shared.sp
+
+import edu.gemini.spModel.core.{ProgramType, Semester, Site}
+import edu.gemini.spModel.obs.ObservationStatus
+import edu.gemini.spModel.obsclass.ObsClass
+
+import scala.collection.JavaConverters._
+
+/**
+ * Creates mini models from observations built with the ObsBuilder, e.g. for testing.
+ * The programs are handed to the mini model as the result of a query functor that was never run.
+ * NOTE: The observations are made the children of their programs, which can only be done once per
+ * program. Observations are not added to their groups.
+ */
+object MiniModelBuilder {
+
+  def apply(site: Site, obs: List[Obs]): MiniModel = {
+    val progs = obs.groupBy(_.getProg)
+    progs.foreach { case (p, os) =>
+      p.setChildren(os.asJava, List.empty[Group].asJava, List.empty[Note].asJava)
+    }
+    val result = new ObsQueryFunctor(
+      site, Set.empty[Semester].asJava, ProgramType.AllAsJava,
+      Set.empty[ObsClass].asJava, Set.empty[ObservationStatus].asJava,
+      false, false, null)
+    result.getProgramSet.addAll(progs.keys.asJavaCollection)
+    MiniModel.patch(MiniModel.empty(site), result)
+  }
+
+}
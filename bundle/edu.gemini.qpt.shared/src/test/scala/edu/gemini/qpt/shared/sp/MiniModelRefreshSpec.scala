@@ -0,0 +1,104 @@
+package edu.gemini.qpt.shared.sp
+
+import edu.gemini.pot.sp.{Instrument, ISPProgram, SPNodeKey}
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.spModel.core.{ProgramType, Semester, Site, SPProgramID}
+import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.obs.{ObservationStatus, ObsPhase2Status, SPObservation}
+import edu.gemini.spModel.obsclass.ObsClass
+
+import org.specs2.mutable._
+
+import java.security.Principal
+import java.time.ZonedDateTime
+import java.util.Date
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks that a mini model refreshed with the versions of the programs the client already has is the
+ * same as a mini model created from scratch.
+ */
+final class MiniModelRefreshSpec extends Specification {
+
+  val site: Site = Site.GS
+
+  val date: Date = Date.from(ZonedDateTime.of(2016, 3, 16, 12, 0, 0, 0, site.timezone.toZoneId).toInstant)
+
+  def query(db: IDBDatabaseService, knownVersions: Map[SPProgramID, java.lang.Long]): ObsQueryFunctor = {
+    val f = new ObsQueryFunctor(
+      site, date, Set.empty[Semester].asJava, ProgramType.AllAsJava,
+      Set(ObsClass.SCIENCE, ObsClass.PROG_CAL, ObsClass.PARTNER_CAL, ObsClass.DAY_CAL).asJava,
+      Set(ObservationStatus.READY, ObservationStatus.ONGOING).asJava,
+      null, knownVersions.asJava)
+    db.getQueryRunner(Set.empty[Principal].asJava).queryPrograms(f)
+  }
+
+  def program(db: IDBDatabaseService, id: String, completed: Boolean = false): ISPProgram = {
+    val p = db.getFactory.createProgram(new SPNodeKey(), SPProgramID.toProgramID(id))
+    val d = p.getDataObject.asInstanceOf[SPProgram]
+    d.setQueueBand("1")
+    d.setCompleted(completed)
+    p.setDataObject(d)
+    db.put(p)
+    p
+  }
+
+  // Ready observations without steps are misconfigured, the others are excluded by their status.
+  def addObs(db: IDBDatabaseService, p: ISPProgram, ready: Boolean): Unit = {
+    val o = db.getFactory.createObservation(p, Instrument.GmosSouth.some, null)
+    if (ready) {
+      val d = o.getDataObject.asInstanceOf[SPObservation]
+      d.setPhase2Status(ObsPhase2Status.PHASE_2_COMPLETE)
+      o.setDataObject(d)
+    }
+    p.addObservation(o)
+  }
+
+  def setCompleted(p: ISPProgram, completed: Boolean): Unit = {
+    val d = p.getDataObject.asInstanceOf[SPProgram]
+    d.setCompleted(completed)
+    p.setDataObject(d)
+  }
+
+  def content(m: MiniModel) = (
+    m.getPrograms.asScala.toList.map(_.getProgramId),
+    m.getAllObservations.asScala.toList.map(_.getObsId),
+    m.getMisconfiguredObservations.asScala.toList,
+    m.getProgramExclusions.asScala.toMap,
+    m.getObsExclusions.asScala.toMap
+  )
+
+  "A refreshed mini model" should {
+
+    "be the same as a new mini model" in {
+      val db = DBLocalDatabase.createTransient()
+      try {
+        val p1 = program(db, "GS-2016A-Q-1")
+        val p2 = program(db, "GS-2016A-Q-2")
+        val p3 = program(db, "GS-2016A-Q-3", completed = true)
+        List(p1, p2, p3).foreach { p =>
+          addObs(db, p, ready = true)
+          addObs(db, p, ready = false)
+        }
+
+        val first    = query(db, Map.empty)
+        val previous = MiniModel.patch(MiniModel.empty(site), first)
+
+        addObs(db, p2, ready = true)
+        setCompleted(p3, completed = false)
+
+        val result    = query(db, first.getProgramVersions.asScala.toMap)
+        val refreshed = MiniModel.patch(previous, result)
+        val full      = MiniModel.patch(MiniModel.empty(site), query(db, Map.empty))
+
+        result.getUnchangedPrograms.asScala must_== Set(p1.getProgramID)
+        content(refreshed) must_== content(full)
+      } finally {
+        db.getDBAdmin.shutdown()
+      }
+    }
+
+  }
+
+}
@@ -127,25 +127,34 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
     }))
 
     // Note: The default execution context is pretty good at keeping the CPU usage at 80% if there are enough
-    // tasks around; throwing the semesters and for each semester the folded obs at it seems to work pretty well.
+    // tasks around; throwing the nights at it seems to work pretty well.
 
     // force calculation of lazily initialised moon calculator in all nights
     // (it will be needed later and slows UI interaction down too much when only initialised when needed)
     nights.map(_.moonCalculator)
 
-    // do calculations for each "folded" obs, i.e. for each position
+    // do calculations for all "folded" obs, i.e. for all positions, night by night; all positions share the
+    // sampling of a night, so the sun and moon positions are only calculated once per night and sampling time
     // this can be done in parallel!
-    foldedObs.par.foreach(obs => {                                   // work on observation groups in parallel!
+    val folded   = foldedObs.toVector
+    val targets  = folded.map(obs => (t: Long) => obs.getTargetEnvironment.getAsterism.basePosition(Some(Instant.ofEpochMilli(t))).getOrElse(Coordinates.zero))
+    val obsCount = folded.map(foldedMap(_).size).sum
+    val perNight = nights.par.map(night => {                         // work on nights in parallel!
 
-      val target = (t: Long) => obs.getTargetEnvironment.getAsterism.basePosition(Some(Instant.ofEpochMilli(t))).getOrElse(Coordinates.zero)
-      calculatePosSemester(nights, target, obs, foldedMap(obs))
+      // restrict all calculations to time between nautical twilights (science time)
+      val bounds = night.scienceTime
+      val tcs    = BatchTargetCalculator(night.site, targets, bounds, TimeUtils.minutes(10))
+      val cc     = folded.zip(tcs).map { case (obs, tc) => calculatePosNight(night, tc, obs) }
 
-      // update progress, we've calculated all constraints for obs.size observations for all nights in the semester
+      // update progress, we've calculated all constraints for all observations for this night
       Swing.onEDT({
-        constraints.foreach(c => publish(ConstraintCalculationProgress(c, foldedMap(obs).size * nights.size)))
+        constraints.foreach(c => publish(ConstraintCalculationProgress(c, obsCount)))
       })
+      cc
 
-    })
+    }).seq
+
+    folded.indices.foreach(i => calculatePosSemester(nights, perNight.map(_(i)), folded(i), foldedMap(folded(i))))
 
     onEDT(constraints.foreach(c => {
       publish(ConstraintCalculationEnd(c, 0))
@@ -154,10 +163,9 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
   }
 
 
-  private def calculatePosSemester(nights: Seq[Night], target: Long => Coordinates, foldedObs: Obs, obs: Set[Obs]): Unit = {
+  private def calculatePosSemester(nights: Seq[Night], cc: Seq[(Solution, Solution, Solution, Double, Double)], foldedObs: Obs, obs: Set[Obs]): Unit = {
 
-    // calculate all constraints on a per-night basis and then concatenate the results
-    val cc = nights.map(n => calculatePosNight(n, target, foldedObs))
+    // concatenate the constraints calculated on a per-night basis
     val ah = cc.map(_._1).reduce(_ add _)
     val sb = cc.map(_._2).reduce(_ add _)
     val el = cc.map(_._3).reduce(_ add _)
@@ -179,13 +187,12 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
   }
 
-  private def calculatePosNight(night: Night, target: Long => Coordinates, o: Obs): (Solution, Solution, Solution, Double, Double) = {
+  private def calculatePosNight(night: Night, tc: TargetCalculator, o: Obs): (Solution, Solution, Solution, Double, Double) = {
 
     import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.ElevationConstraintType._
 
-    // restrict all calculations to time between nautical twilights (science time)
+    // all calculations are restricted to time between nautical twilights (science time)
     val bounds = night.scienceTime
-    val tc = TargetCalculator(night.site, target, bounds, TimeUtils.minutes(10))
 
     // return a tuple with all values of interest
     (
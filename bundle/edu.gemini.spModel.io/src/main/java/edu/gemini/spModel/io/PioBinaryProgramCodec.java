@@ -0,0 +1,155 @@
+package edu.gemini.spModel.io;
+
+import edu.gemini.pot.sp.ISPNightlyRecord;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.sp.memImpl.MemFactory;
+import edu.gemini.pot.sp.version.LifespanId;
+import edu.gemini.pot.spdb.DBSerializationCodec;
+import edu.gemini.pot.spdb.IDBProgramCodec;
+import edu.gemini.spModel.data.Encrypted;
+import edu.gemini.spModel.data.ISPDataObject;
+import edu.gemini.spModel.io.impl.Encryption;
+import edu.gemini.spModel.io.impl.PioSpXmlParser;
+import edu.gemini.spModel.pio.*;
+import edu.gemini.spModel.pio.binary.PioBinary;
+import edu.gemini.spModel.pio.xml.PioXmlException;
+import edu.gemini.spModel.pio.xml.PioXmlFactory;
+import edu.gemini.spModel.pio.xml.PioXmlUtil;
+
+import java.io.*;
+import java.util.UUID;
+
+/**
+ * An <code>{@link IDBProgramCodec}</code> that stores programs as compact
+ * binary PIO documents.  The document is the same one used for XML export, so
+ * loading goes through the usual parser and its migrations instead of
+ * depending on the serialized form of the model classes.
+ *
+ * <p>The binary document is preceded by a small header recording whether the
+ * node is a program or a plan and its <code>{@link LifespanId}</code>, which
+ * is not part of the PIO representation.
+ *
+ * <p>Journaled data objects are written as binary PIO documents holding
+ * the param set of the data object, encrypted where the program file would
+ * encrypt it.
+ *
+ * <p>Files without the binary header are assumed to have been written with
+ * Java serialization and are handed to <code>{@link DBSerializationCodec}</code>,
+ * as are journaled data objects that are not binary PIO documents, so an
+ * existing database can be switched over without a conversion step.
+ * Each program is rewritten in the new format the next time it is stored.
+ */
+public enum PioBinaryProgramCodec implements IDBProgramCodec {
+    instance;
+
+    public static final String NAME = "pio-binary";
+
+    // "SPDB" followed by the header version.
+    private static final int MAGIC   = 0x53504442;
+    private static final int VERSION = 1;
+
+    private static final byte PROGRAM = 0;
+    private static final byte PLAN    = 1;
+
+    // Kind of the container wrapping a journaled data object.
+    private static final String DATA_OBJECT = "dataObject";
+
+    @Override public String getName() {
+        return NAME;
+    }
+
+    private static boolean hasMagic(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return (file.length() >= 4) && (dis.readInt() == MAGIC);
+        }
+    }
+
+    @Override public ISPRootNode load(File file, UUID databaseId) throws IOException {
+        if (file.length() == 0) return null;
+        if (!hasMagic(file)) return DBSerializationCodec.instance.load(file, databaseId);
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            dis.readInt();
+            final int version = dis.readInt();
+            if (version != VERSION) throw new IOException("Unsupported program file version " + version + ": " + file);
+
+            final byte       kind     = dis.readByte();
+            final LifespanId lifespan = LifespanId.fromString(dis.readUTF());
+            final Document   doc      = PioBinary.read(dis);
+
+            final ISPRootNode node;
+            try {
+                node = new PioSpXmlParser(new MemFactory(databaseId, lifespan)).parseDocument(doc);
+            } catch (IOException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Could not parse " + file, ex);
+            }
+
+            if ((kind == PROGRAM) != (node instanceof ISPProgram)) {
+                throw new IOException("Unexpected node type in " + file);
+            }
+            return node;
+        }
+    }
+
+    @Override public void store(ISPRootNode node, File file) throws IOException {
+        final byte kind;
+        if (node instanceof ISPProgram) {
+            kind = PROGRAM;
+        } else if (node instanceof ISPNightlyRecord) {
+            kind = PLAN;
+        } else {
+            throw new IOException("Unsupported node type: " + node.getClass().getName());
+        }
+
+        node.getProgramReadLock();
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeByte(kind);
+            dos.writeUTF(node.getLifespanId().toString());
+            PioBinary.write(PioDocumentBuilder.instance.toDocument(node), dos);
+        } finally {
+            node.returnProgramReadLock();
+        }
+    }
+
+    @Override public byte[] encodeDataObject(ISPNode node, ISPDataObject dataObject) throws IOException {
+        final PioFactory factory = new PioXmlFactory();
+        final Document   doc     = factory.createDocument();
+        final Container  c       = factory.createContainer(DATA_OBJECT, DATA_OBJECT, "1.0");
+        c.setKey(node.getNodeKey().toString());
+        c.addParamSet(PioDocumentBuilder.instance.toParamSet(factory, node, dataObject));
+        doc.addContainer(c);
+        return PioBinary.toBytes(doc);
+    }
+
+    @Override public ISPDataObject decodeDataObject(ISPNode node, byte[] bytes) throws IOException {
+        // Journaled before the database was switched over to this codec.
+        if (!PioBinary.isBinary(bytes)) return DBSerializationCodec.instance.decodeDataObject(node, bytes);
+
+        final Document doc = PioBinary.fromBytes(bytes);
+        if (doc.getContainers().size() != 1) throw new IOException("Unexpected data object record for " + node.getNodeKey());
+
+        final Container c = (Container) doc.getContainers().get(0);
+        if (!DATA_OBJECT.equals(c.getKind()) || c.getParamSets().size() != 1) {
+            throw new IOException("Unexpected data object record for " + node.getNodeKey());
+        }
+
+        final ISPDataObject dataObject = node.getDataObject();
+        ParamSet ps = (ParamSet) c.getParamSets().get(0);
+        final Param encrypted = ps.getParam(Encryption.ParamName());
+        if ((dataObject instanceof Encrypted) && (encrypted != null)) {
+            try {
+                ps = (ParamSet) PioXmlUtil.read(Encryption.decrypt(node.getNodeKey(), encrypted.getValue()));
+            } catch (PioXmlException ex) {
+                throw new IOException("Could not decrypt the data object of " + node.getNodeKey(), ex);
+            }
+        }
+        dataObject.setParamSet(ps);
+        return dataObject;
+    }
+}
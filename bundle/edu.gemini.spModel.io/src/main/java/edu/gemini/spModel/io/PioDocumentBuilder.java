@@ -67,6 +67,15 @@ public enum PioDocumentBuilder {
         }
     }
 
+    /**
+     * Creates the param set for the given data object of the node, encrypted
+     * if the data object requires it.
+     */
+    public ParamSet toParamSet(PioFactory factory, ISPNode node, ISPDataObject dataObject) {
+        final ParamSet paramSet = dataObject.getParamSet(factory);
+        return (dataObject instanceof Encrypted) ? encryptedParamSet(node.getNodeKey(), factory, paramSet) : paramSet;
+    }
+
     // Add a container element. The node should be the one corresponding to the data object.
     // The new element will be added under the given parent element.
     private void _addContainer(PioFactory factory, Document doc, ISPNode node, ContainerParent parent) {
@@ -77,12 +86,7 @@ public enum PioDocumentBuilder {
 
         // Add a paramset element for the node's data object
         final SPNodeKey key = node.getNodeKey();
-        final ParamSet paramSet = dataObject.getParamSet(factory);
-        if (dataObject instanceof Encrypted) {
-            container.addParamSet(encryptedParamSet(key, factory, paramSet));
-        } else {
-            container.addParamSet(paramSet);
-        }
+        container.addParamSet(toParamSet(factory, node, dataObject));
 
         // Add a paramset element for any conflicts associated with the node
         final Conflicts conflicts = node.getConflicts();
@@ -0,0 +1,127 @@
+package edu.gemini.spModel.io.app;
+
+import edu.gemini.pot.sp.ISPRootNode;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBSerializationCodec;
+import edu.gemini.pot.spdb.IDBProgramCodec;
+import edu.gemini.pot.spdb.ProgramJournal;
+import edu.gemini.spModel.io.PioBinaryProgramCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Command line application that rewrites every program and nightly plan file
+ * in a database directory with the given codec.  The database must not be
+ * running while the conversion takes place.
+ *
+ * <pre>
+ *   ConvertDbApp &lt;db root dir&gt; &lt;serialization | pio-binary&gt;
+ * </pre>
+ *
+ * Files are read with <code>{@link PioBinaryProgramCodec}</code>, which
+ * understands both formats, so the conversion works in either direction and
+ * may safely be repeated.  The journal of updates kept next to a file is
+ * replayed into the converted file and then deleted, since its entries are
+ * encoded with the old codec.
+ */
+public final class ConvertDbApp {
+    private static final Logger LOG = Logger.getLogger(ConvertDbApp.class.getName());
+
+    // Suffixes of the program and plan files written by the database.
+    private static final String PROGRAM_SUFFIX = ".sp";
+    private static final String PLAN_SUFFIX    = ".pl";
+
+    private final File _dbDir;
+    private final UUID _dbUuid;
+    private final IDBProgramCodec _target;
+
+    public ConvertDbApp(File dbRootDir, IDBProgramCodec target) {
+        _dbDir  = DBLocalDatabase.getVersionedDatabaseDir(dbRootDir);
+        _dbUuid = DBLocalDatabase.loadUuid(dbRootDir);
+        _target = target;
+    }
+
+    private static boolean isDatabaseFile(File f) {
+        final String name = f.getName();
+        return f.isFile() && (name.endsWith(PROGRAM_SUFFIX) || name.endsWith(PLAN_SUFFIX));
+    }
+
+    private void convert(File f) throws IOException {
+        final ISPRootNode node = PioBinaryProgramCodec.instance.load(f, _dbUuid);
+        if (node == null) return;
+
+        final File journal = ProgramJournal.journalFile(f);
+        final int applied  = ProgramJournal.replay(journal, node, PioBinaryProgramCodec.instance);
+        if (applied > 0) LOG.fine(String.format("Replayed %d journaled updates to %s", applied, f));
+
+        final File tmp = File.createTempFile("_spdb", null, _dbDir);
+        try {
+            _target.store(node, tmp);
+            Files.move(tmp.toPath(), f.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+
+        // The journal updates are in the converted file now.  Should the
+        // journal survive, it is harmless: none of its updates are newer than
+        // the file so none are decoded.
+        if (journal.exists() && !journal.delete()) LOG.warning("Could not delete " + journal);
+    }
+
+    /**
+     * Converts all the files, returning the number that could not be
+     * converted.  Files that fail are left untouched.
+     */
+    public int convertAll() throws IOException {
+        final File[] files = _dbDir.listFiles(ConvertDbApp::isDatabaseFile);
+        if (files == null) throw new IOException("Could not list " + _dbDir);
+
+        final long start = System.currentTimeMillis();
+        int failures = 0;
+        for (File f : files) {
+            try {
+                convert(f);
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Could not convert " + f, ex);
+                ++failures;
+            }
+        }
+
+        System.out.println(String.format("Converted %d of %d files to %s in %d ms.",
+                files.length - failures, files.length, _target.getName(), System.currentTimeMillis() - start));
+        return failures;
+    }
+
+    private static IDBProgramCodec lookupCodec(String name) {
+        if (DBSerializationCodec.NAME.equals(name))  return DBSerializationCodec.instance;
+        if (PioBinaryProgramCodec.NAME.equals(name)) return PioBinaryProgramCodec.instance;
+        return null;
+    }
+
+    private static void usage() {
+        System.err.println(String.format("usage: ConvertDbApp <db root dir> <%s | %s>",
+                DBSerializationCodec.NAME, PioBinaryProgramCodec.NAME));
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) usage();
+
+        final File dir = new File(args[0]);
+        if (!dir.isDirectory()) usage();
+
+        final IDBProgramCodec codec = lookupCodec(args[1]);
+        if (codec == null) usage();
+
+        final int failures = new ConvertDbApp(dir, codec).convertAll();
+        System.exit(failures == 0 ? 0 : 2);
+    }
+}
@@ -1,10 +1,11 @@
 package edu.gemini.spModel.io.osgi
 
-import edu.gemini.pot.spdb.IDBDatabaseService
+import edu.gemini.pot.spdb.{IDBDatabaseService, IDBProgramCodec}
+import edu.gemini.spModel.io.PioBinaryProgramCodec
 import edu.gemini.spModel.io.ocs3.Ocs3ExportServlet
 import edu.gemini.util.osgi.Tracker._
 
-import org.osgi.framework.{BundleContext, BundleActivator}
+import org.osgi.framework.{BundleContext, BundleActivator, ServiceRegistration}
 import org.osgi.service.http.HttpService
 import org.osgi.util.tracker.ServiceTracker
 
@@ -20,12 +21,17 @@ import Activator._
 final class Activator extends BundleActivator {
 
   private var st: Option[ServiceTracker[_,_]] = None
+  private var codecReg: Option[ServiceRegistration[IDBProgramCodec]] = None
 
   private val name = this.getClass.getPackage.getName
 
   override def start(ctx: BundleContext): Unit = {
     Log.info(s"Start $name")
 
+    val codecProps = new java.util.Hashtable[String, Object]()
+    codecProps.put("name", PioBinaryProgramCodec.NAME)
+    codecReg = Some(ctx.registerService(classOf[IDBProgramCodec], PioBinaryProgramCodec.instance, codecProps))
+
     st = Some(track[HttpService, IDBDatabaseService, HttpService](ctx) { (http, db) =>
       http.registerServlet(Context, new Ocs3ExportServlet(db), new java.util.Hashtable[String, Object](), null)
       http
@@ -38,6 +44,8 @@ final class Activator extends BundleActivator {
     Log.info(s"Stop $name")
     st.foreach(_.close())
     st = None
+    codecReg.foreach(_.unregister())
+    codecReg = None
   }
 }
 
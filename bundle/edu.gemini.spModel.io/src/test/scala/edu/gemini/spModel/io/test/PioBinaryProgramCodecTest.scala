@@ -0,0 +1,89 @@
+package edu.gemini.spModel.io.test
+
+import java.io.{File, StringWriter}
+
+import edu.gemini.pot.sp.{ISPProgram, ISPRootNode, Instrument, SPNodeKey}
+import edu.gemini.pot.spdb.{DBLocalDatabase, DBSerializationCodec, IDBDatabaseService, IDBProgramCodec}
+import edu.gemini.spModel.core.SPProgramID
+import edu.gemini.spModel.io.PioBinaryProgramCodec
+import edu.gemini.spModel.io.impl.PioSpXmlWriter
+import edu.gemini.spModel.obs.SPObservation
+import org.junit.Assert._
+import org.junit.Test
+
+/**
+ * Store / load round trips through the binary program codec.
+ */
+class PioBinaryProgramCodecTest {
+
+  private def withTestOdb[A](block: IDBDatabaseService => A): A = {
+    val odb = DBLocalDatabase.createTransient()
+    try block(odb) finally odb.getDBAdmin.shutdown()
+  }
+
+  private def withTestProgram[A](block: (IDBDatabaseService, ISPProgram) => A): A =
+    withTestOdb { odb =>
+      val p = odb.getFactory.createProgram(new SPNodeKey(), SPProgramID.toProgramID("GS-2016A-Q-1"))
+      odb.put(p)
+      (1 to 3).foreach { i =>
+        val o    = odb.getFactory.createObservation(p, Instrument.none, null)
+        val dobj = o.getDataObject.asInstanceOf[SPObservation]
+        dobj.setTitle(s"Observation $i")
+        o.setDataObject(dobj)
+        p.addObservation(o)
+      }
+      block(odb, p)
+    }
+
+  private def xml(n: ISPRootNode): String = {
+    val sw = new StringWriter()
+    new PioSpXmlWriter(sw).printDocument(n)
+    sw.toString
+  }
+
+  private def storeAndLoad(odb: IDBDatabaseService, p: ISPProgram, store: IDBProgramCodec): ISPRootNode = {
+    val f = File.createTempFile("prog", ".bin")
+    try {
+      store.store(p, f)
+      PioBinaryProgramCodec.instance.load(f, odb.getUuid)
+    } finally {
+      f.delete()
+    }
+  }
+
+  @Test
+  def roundTrip(): Unit =
+    withTestProgram { (odb, p0) =>
+      storeAndLoad(odb, p0, PioBinaryProgramCodec.instance) match {
+        case p1: ISPProgram =>
+          assertEquals(p0.getProgramID,  p1.getProgramID)
+          assertEquals(p0.getNodeKey,    p1.getNodeKey)
+          assertEquals(p0.getLifespanId, p1.getLifespanId)
+          assertEquals(3, p1.getObservations.size)
+          assertEquals(xml(p0), xml(p1))
+        case _              =>
+          fail("expecting a science program")
+      }
+    }
+
+  // Files written with Java serialization are still readable.
+  @Test
+  def loadsSerializedPrograms(): Unit =
+    withTestProgram { (odb, p0) =>
+      storeAndLoad(odb, p0, DBSerializationCodec.instance) match {
+        case p1: ISPProgram => assertEquals(xml(p0), xml(p1))
+        case _              => fail("expecting a science program")
+      }
+    }
+
+  @Test
+  def emptyFile(): Unit =
+    withTestOdb { odb =>
+      val f = File.createTempFile("prog", ".bin")
+      try {
+        assertNull(PioBinaryProgramCodec.instance.load(f, odb.getUuid))
+      } finally {
+        f.delete()
+      }
+    }
+}
@@ -0,0 +1,320 @@
+package edu.gemini.spModel.pio.binary;
+
+import edu.gemini.spModel.pio.*;
+import edu.gemini.spModel.pio.xml.PioXmlFactory;
+import edu.gemini.spModel.pio.xml.PioXmlUtil;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary representation of a PIO {@link Document}.  It carries
+ * exactly the same information as the XML format, but without the markup and
+ * with each distinct string (element names, kinds, component types, param
+ * names, repeated values) written only once.
+ *
+ * <p>The format is:
+ * <pre>
+ *   header   := MAGIC:int FORMAT_VERSION:varint
+ *   document := node* END
+ *   node     := CONTAINER name kind type version subtype key sequence node* END
+ *             | PARAM_SET name kind id ref flags sequence node* END
+ *             | PARAM name units count:varint value*
+ *   string   := 0 (null) | 1 length:varint utf8-bytes (new) | index+2 (seen)
+ * </pre>
+ * Strings are interned in the order in which they first appear, so reading
+ * and writing build the same table.
+ */
+public final class PioBinary {
+
+    /** Marks the start of a binary PIO document ("PIOB"). */
+    public static final int MAGIC = 0x50494F42;
+
+    /** The current version of the encoding. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int END        = 0;
+    private static final int CONTAINER  = 1;
+    private static final int PARAM_SET  = 2;
+    private static final int PARAM      = 3;
+
+    private static final int STR_NULL   = 0;
+    private static final int STR_NEW    = 1;
+    private static final int STR_OFFSET = 2;
+
+    private static final int FLAG_NOT_EDITABLE = 0x1;
+    private static final int FLAG_NOT_PUBLIC   = 0x2;
+
+    private static final String VERSION_ATTR = "version";
+
+    private PioBinary() {
+        // defeat instantiation
+    }
+
+    /**
+     * Writes the document to the output stream.  The stream is not closed.
+     */
+    public static void write(Document doc, OutputStream os) throws IOException {
+        final Writer w = new Writer(new DataOutputStream(os));
+        w.out.writeInt(MAGIC);
+        w.writeVarInt(FORMAT_VERSION);
+        for (Object o : doc.getContainers()) w.writeContainer((Container) o);
+        w.writeVarInt(END);
+        w.out.flush();
+    }
+
+    public static byte[] toBytes(Document doc) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(doc, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Reads a document from the input stream using a {@link PioXmlFactory}.
+     * The stream is not closed.
+     */
+    public static Document read(InputStream is) throws IOException {
+        return read(new PioXmlFactory(), is);
+    }
+
+    public static Document read(PioFactory factory, InputStream is) throws IOException {
+        final Reader r = new Reader(factory, new DataInputStream(is));
+        if (r.in.readInt() != MAGIC) throw new IOException("Not a binary PIO document");
+
+        final int version = r.readVarInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary PIO format version: " + version);
+        }
+
+        final Document doc = factory.createDocument();
+        for (int tag = r.readVarInt(); tag != END; tag = r.readVarInt()) {
+            if (tag != CONTAINER) throw new IOException("Expected a container but found tag " + tag);
+            doc.addContainer(r.readContainer());
+        }
+        return doc;
+    }
+
+    public static Document fromBytes(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Returns <code>true</code> if the given bytes start with the binary PIO
+     * header.
+     */
+    public static boolean isBinary(byte[] header) {
+        return (header.length >= 4) &&
+               ((((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) |
+                 ((header[2] & 0xff) <<  8) |  (header[3] & 0xff)) == MAGIC);
+    }
+
+    private static final class Writer {
+        final DataOutputStream out;
+        final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarInt(int i) throws IOException {
+            while ((i & ~0x7f) != 0) {
+                out.writeByte((i & 0x7f) | 0x80);
+                i >>>= 7;
+            }
+            out.writeByte(i);
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarInt(STR_NULL);
+                return;
+            }
+
+            final Integer index = strings.get(s);
+            if (index != null) {
+                writeVarInt(index + STR_OFFSET);
+            } else {
+                strings.put(s, strings.size());
+                final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(STR_NEW);
+                writeVarInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        // Sequence numbers are -1 when unset, so shift them up by one.
+        void writeSequence(int seq) throws IOException {
+            writeVarInt(seq + 1);
+        }
+
+        void writeChildren(PioNodeParent parent) throws IOException {
+            for (Object o : parent.getChildren()) {
+                if (o instanceof Container) {
+                    writeContainer((Container) o);
+                } else if (o instanceof ParamSet) {
+                    writeParamSet((ParamSet) o);
+                } else if (o instanceof Param) {
+                    writeParam((Param) o);
+                }
+            }
+            writeVarInt(END);
+        }
+
+        void writeContainer(Container c) throws IOException {
+            writeVarInt(CONTAINER);
+            writeString(c.getName());
+            writeString(c.getKind());
+            writeString(c.getType());
+            // Use the raw attribute in case it is not a well-formed Version.
+            writeString(PioXmlUtil.toElement(c).attributeValue(VERSION_ATTR));
+            writeString(c.getSubtype());
+            writeString(c.getKey());
+            writeSequence(c.getSequence());
+            writeChildren(c);
+        }
+
+        void writeParamSet(ParamSet ps) throws IOException {
+            writeVarInt(PARAM_SET);
+            writeString(ps.getName());
+            writeString(ps.getKind());
+            writeString(ps.getId());
+            writeString(ps.getReferenceId());
+
+            int flags = 0;
+            if (!ps.isEditable())     flags |= FLAG_NOT_EDITABLE;
+            if (!ps.isPublicAccess()) flags |= FLAG_NOT_PUBLIC;
+            writeVarInt(flags);
+            writeSequence(ps.getSequence());
+
+            // A reference has no children of its own; getChildren() would
+            // return those of the referent.
+            if (ps.getReferenceId() == null) {
+                writeChildren(ps);
+            } else {
+                writeVarInt(END);
+            }
+        }
+
+        void writeParam(Param p) throws IOException {
+            writeVarInt(PARAM);
+            writeString(p.getName());
+            writeString(p.getUnits());
+            final List<String> values = p.getValues();
+            writeVarInt(values.size());
+            for (String v : values) writeString(v);
+        }
+    }
+
+    private static final class Reader {
+        final PioFactory factory;
+        final DataInputStream in;
+        final List<String> strings = new ArrayList<>();
+
+        Reader(PioFactory factory, DataInputStream in) {
+            this.factory = factory;
+            this.in      = in;
+        }
+
+        int readVarInt() throws IOException {
+            int res   = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift > 28) throw new IOException("Malformed varint");
+                b = in.readUnsignedByte();
+                res |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return res;
+        }
+
+        String readString() throws IOException {
+            final int i = readVarInt();
+            switch (i) {
+                case STR_NULL:
+                    return null;
+                case STR_NEW:
+                    final byte[] bytes = new byte[readVarInt()];
+                    in.readFully(bytes);
+                    final String s = new String(bytes, StandardCharsets.UTF_8);
+                    strings.add(s);
+                    return s;
+                default:
+                    final int index = i - STR_OFFSET;
+                    if (index >= strings.size()) throw new IOException("Bad string reference: " + index);
+                    return strings.get(index);
+            }
+        }
+
+        int readSequence() throws IOException {
+            return readVarInt() - 1;
+        }
+
+        Container readContainer() throws IOException {
+            final String name    = readString();
+            final String kind    = readString();
+            final String type    = readString();
+            final String version = readString();
+            final String subtype = readString();
+            final String key     = readString();
+            final int    seq     = readSequence();
+            if (version == null) throw new IOException("Container missing version");
+
+            final Container c = factory.createContainer(kind, type, version);
+            if (name    != null) c.setName(name);
+            if (subtype != null) c.setSubtype(subtype);
+            if (key     != null) c.setKey(key);
+            if (seq     >= 0)    c.setSequence(seq);
+
+            for (int tag = readVarInt(); tag != END; tag = readVarInt()) {
+                switch (tag) {
+                    case CONTAINER: c.addContainer(readContainer()); break;
+                    case PARAM_SET: c.addParamSet(readParamSet());   break;
+                    default: throw new IOException("Unexpected tag in container: " + tag);
+                }
+            }
+            return c;
+        }
+
+        ParamSet readParamSet() throws IOException {
+            final String name  = readString();
+            final String kind  = readString();
+            final String id    = readString();
+            final String ref   = readString();
+            final int    flags = readVarInt();
+            final int    seq   = readSequence();
+
+            final ParamSet ps = factory.createParamSet(name);
+            if (kind != null) ps.setKind(kind);
+            if (id   != null) ps.setId(id);
+            if ((flags & FLAG_NOT_EDITABLE) != 0) ps.setEditable(false);
+            if ((flags & FLAG_NOT_PUBLIC)   != 0) ps.setPublicAccess(false);
+            if (seq >= 0) ps.setSequence(seq);
+
+            for (int tag = readVarInt(); tag != END; tag = readVarInt()) {
+                switch (tag) {
+                    case PARAM_SET: ps.addParamSet(readParamSet()); break;
+                    case PARAM:     ps.addParam(readParam());       break;
+                    default: throw new IOException("Unexpected tag in param set: " + tag);
+                }
+            }
+
+            // Set the reference last since it would redirect the additions.
+            if (ref != null) ps.setReferenceId(ref);
+            return ps;
+        }
+
+        Param readParam() throws IOException {
+            final Param p = factory.createParam(readString());
+            final String units = readString();
+            final int count = readVarInt();
+            for (int i = 0; i < count; ++i) p.addValue(readString());
+            if (units != null) p.setUnits(units);
+            return p;
+        }
+    }
+}
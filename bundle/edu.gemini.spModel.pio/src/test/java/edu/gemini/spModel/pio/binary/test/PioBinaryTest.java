@@ -0,0 +1,86 @@
+package edu.gemini.spModel.pio.binary.test;
+
+import edu.gemini.spModel.pio.*;
+import edu.gemini.spModel.pio.binary.PioBinary;
+import edu.gemini.spModel.pio.xml.PioXmlFactory;
+import edu.gemini.spModel.pio.xml.PioXmlUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip tests for the binary PIO document encoding.
+ */
+public final class PioBinaryTest {
+    private final PioFactory fact = new PioXmlFactory();
+
+    private Document sampleDocument() {
+        final Document doc = fact.createDocument();
+
+        final Container prog = fact.createContainer("program", "Program", "2009A-1");
+        prog.setName("GS-2016A-Q-1");
+        prog.setKey("3c9d6f1e-1a0b-4a0e-9b8e-9d1f1e2a3b4c");
+        doc.addContainer(prog);
+
+        final ParamSet ps = fact.createParamSet("Program");
+        ps.setKind("dataObj");
+        Pio.addParam(fact, ps, "title", "Some \u00e9l\u00e8ve title");
+        Pio.addParam(fact, ps, "exposureTime", "30.0", "seconds");
+        final Param multi = fact.createParam("values");
+        multi.setValues(Arrays.asList("a", "b", "a", ""));
+        ps.addParam(multi);
+
+        final ParamSet target = fact.createParamSet("target");
+        target.setId("t1");
+        target.setEditable(false);
+        target.setPublicAccess(false);
+        target.setSequence(3);
+        Pio.addParam(fact, target, "name", "M31");
+        ps.addParamSet(target);
+
+        final ParamSet ref = fact.createParamSet("base");
+        ref.setReferenceId("t1");
+        ps.addParamSet(ref);
+        prog.addParamSet(ps);
+
+        final Container obs = fact.createContainer("observation", "Observation", "2014A-1");
+        obs.setSubtype("basic");
+        obs.setSequence(0);
+        final ParamSet ops = fact.createParamSet("Observation");
+        Pio.addParam(fact, ops, "title", "Some title");
+        obs.addParamSet(ops);
+        prog.addContainer(obs);
+
+        return doc;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Document doc = sampleDocument();
+        final Document cpy = PioBinary.fromBytes(PioBinary.toBytes(doc));
+        assertEquals(PioXmlUtil.toXmlString(doc), PioXmlUtil.toXmlString(cpy));
+
+        final ParamSet ref = (ParamSet) cpy.lookupNode(new PioPath("GS-2016A-Q-1/Program/base"));
+        assertEquals("M31", Pio.getValue(ref, "name"));
+    }
+
+    @Test
+    public void testSmallerThanXml() throws Exception {
+        final Document doc = sampleDocument();
+        assertTrue(PioBinary.toBytes(doc).length < PioXmlUtil.toXmlString(doc).length());
+    }
+
+    @Test
+    public void testIsBinary() throws Exception {
+        assertTrue(PioBinary.isBinary(PioBinary.toBytes(sampleDocument())));
+        assertFalse(PioBinary.isBinary("<?xml".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadMagic() throws Exception {
+        PioBinary.fromBytes(new byte[] { 1, 2, 3, 4, 1, 0 });
+    }
+}
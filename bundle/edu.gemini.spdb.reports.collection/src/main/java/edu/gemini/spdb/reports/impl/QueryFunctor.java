@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBSplittableQueryFunctor;
 import edu.gemini.spdb.reports.IColumn;
 import edu.gemini.spdb.reports.IFilter;
 import edu.gemini.spdb.reports.IQuery;
@@ -17,10 +18,12 @@ import edu.gemini.spdb.reports.ITable;
 
 /**
  * SPDB functor that can execute IQuery definitions and return results.
- * Internal to the implementation.
+ * Internal to the implementation. The database may run the query in parts
+ * on several threads; the parts only collect the raw rows, which are grouped
+ * and sorted once they have been merged.
  * @author rnorris
  */
-class QueryFunctor extends DBAbstractQueryFunctor {
+class QueryFunctor extends DBAbstractQueryFunctor implements IDBSplittableQueryFunctor<QueryFunctor> {
 
 	static final Logger LOGGER = Logger.getLogger(QueryFunctor.class.getName());
 	private static final long serialVersionUID = 1L;
@@ -41,12 +44,31 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	 */
 	private final List<IRow> results = new ArrayList<IRow>();
 
+	/** True for the parts created by newPart(), which don't collate. */
+	private final boolean part;
+
 	/**
 	 * Construct a functor for the specified query, which is final.
 	 * @param query
 	 */
 	QueryFunctor(IQuery query) {
+		this(query, false);
+	}
+
+	private QueryFunctor(IQuery query, boolean part) {
 		this.query = query;
+		this.part = part;
+	}
+
+	public QueryFunctor newPart() {
+		return new QueryFunctor(query, true);
+	}
+
+	/**
+	 * Collects the raw rows of a part, in the order of the programs.
+	 */
+	public void merge(QueryFunctor part) {
+		rows.addAll(part.rows);
 	}
 
     /**
@@ -87,6 +109,7 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	@SuppressWarnings("unchecked")
 	@Override
 	public void finished() {
+		if (part) return; // collated after the merge
 		try {
 
 			// Group and sort the rows.
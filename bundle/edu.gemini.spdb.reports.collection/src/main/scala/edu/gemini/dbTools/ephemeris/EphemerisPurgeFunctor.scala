@@ -2,6 +2,7 @@ package edu.gemini.dbTools.ephemeris
 
 import edu.gemini.pot.sp.{ISPObservation, ISPNode}
 import edu.gemini.pot.spdb.{IDBDatabaseService, DBAbstractQueryFunctor}
+import edu.gemini.spModel.obs.{ObsIndexer, ObservationStatus}
 import edu.gemini.spModel.rich.pot.sp.obsWrapper
 import edu.gemini.spModel.target.EphemerisPurge
 
@@ -10,13 +11,14 @@ import java.util.logging.{Level, Logger}
 import java.util.{Set => JSet}
 
 /** An ODB observation query functor that finds all executed non-sidereal
-  * observations and purges ephemeris data.
+  * observations and purges ephemeris data.  Only the observations that the
+  * status index lists as observed are visited.
   */
 object EphemerisPurgeFunctor {
   private final val Log = Logger.getLogger(EphemerisPurgeFunctor.getClass.getName)
 
   def query(db: IDBDatabaseService, users: JSet[Principal]): Unit =
-    db.getQueryRunner(users).queryObservations(new EphemerisPurgeFunctor)
+    db.getQueryRunner(users).queryObservations(new EphemerisPurgeFunctor, ObsIndexer.STATUS.query(ObservationStatus.OBSERVED))
 }
 
 private class EphemerisPurgeFunctor extends DBAbstractQueryFunctor {
@@ -0,0 +1,230 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Semester;
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Precalculated twilight times and moon values for a site and semester which are stored on disk and memory
+ * mapped when they are needed. Tools that open a semester calculate the twilight bounds of all its nights and
+ * the moon values for all its nights over and over again, with the almanac they are calculated once per site
+ * and semester and then read from the almanac file.
+ *
+ * <p>An almanac file holds the start and end times for all {@link TwilightBoundType}s of the nights starting
+ * from one day before to one day after the semester, these are exactly the values calculated by
+ * {@link TwilightBoundedNight}. It also holds the moon elevation, phase angle, illuminated fraction and
+ * sky brightness on a fixed grid with a sampling rate of {@link #RATE} covering the same nights, moon values
+ * for other times are linearly interpolated.</p>
+ *
+ * <p>The almanac is only used if the directory for the almanac files is defined with the system property
+ * {@value #DIR_PROPERTY}, otherwise all values are calculated as before. Missing or outdated almanac files
+ * are generated on first use.</p>
+ */
+public final class Almanac {
+    private static final Logger LOG = Logger.getLogger(Almanac.class.getName());
+
+    /** The system property with the directory for the almanac files. */
+    public static final String DIR_PROPERTY = "edu.gemini.skycalc.almanac.dir";
+
+    /** Sampling rate of the moon values. */
+    public static final long RATE = TimeUtils.minutes(5);
+
+    /** Number of moon values, in the order of the fields of the moon calculator. */
+    public static final int MOON_FIELDS = 4;
+
+    private static final int MAGIC   = 0x414c4d31; // "ALM1"
+    private static final int VERSION = 1;
+    private static final int HEADER  = 32;
+    private static final int TYPES   = TwilightBoundType.values().length;
+
+    private static final ConcurrentHashMap<String, Optional<Almanac>> ALMANACS = new ConcurrentHashMap<>();
+
+    private final ByteBuffer buffer;
+    private final int nights;
+    private final int samples;
+    private final long moonStart;
+
+    private Almanac(ByteBuffer buffer) {
+        this.buffer    = buffer;
+        this.nights    = buffer.getInt(8);
+        this.samples   = buffer.getInt(12);
+        this.moonStart = buffer.getLong(16);
+    }
+
+    // == Lookups
+
+    /**
+     * Gets the start and end times of the night starting on the day that starts at the given local midnight,
+     * or null if the almanac is not used or does not hold the night.
+     */
+    static long[] twilightBounds(TwilightBoundType type, Site site, long dayStart) {
+        final Almanac a = forTime(site, dayStart);
+        if (a == null) return null;
+        final int ix = a.nightIndex(dayStart);
+        if (ix < 0) return null;
+        final int pos = a.nightPosition(ix) + 8 + 16 * type.ordinal();
+        return new long[] { a.buffer.getLong(pos), a.buffer.getLong(pos + 8) };
+    }
+
+    /**
+     * Gets the moon values for the given times in increasing order, one array of values per field, or null
+     * if the almanac is not used or does not cover all of the given times.
+     */
+    public static double[][] moonValues(Site site, long[] times) {
+        if (times.length == 0) return null;
+        final Almanac a = forTime(site, times[0]);
+        if (a == null) return null;
+        final long end = a.moonStart + (a.samples - 1) * RATE;
+        if (times[0] < a.moonStart || times[times.length - 1] > end) return null;
+
+        final double[][] values = new double[MOON_FIELDS][times.length];
+        for (int ix = 0; ix < times.length; ++ix) {
+            final long   dt   = times[ix] - a.moonStart;
+            final int    s    = (int) Math.min(dt / RATE, a.samples - 2);
+            final double frac = (double) (dt - s * RATE) / RATE;
+            for (int f = 0; f < MOON_FIELDS; ++f) {
+                final double v0 = a.moonValue(f, s);
+                final double v1 = a.moonValue(f, s + 1);
+                values[f][ix] = v0 + frac * (v1 - v0);
+            }
+        }
+        return values;
+    }
+
+    private int nightPosition(int ix) {
+        return HEADER + ix * (8 + 16 * TYPES);
+    }
+
+    private int nightIndex(long dayStart) {
+        int lo = 0;
+        int hi = nights - 1;
+        while (lo <= hi) {
+            final int  mid = (lo + hi) >>> 1;
+            final long t   = buffer.getLong(nightPosition(mid));
+            if      (t < dayStart) lo = mid + 1;
+            else if (t > dayStart) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private double moonValue(int field, int sample) {
+        return buffer.getDouble(nightPosition(nights) + 8 * (field * samples + sample));
+    }
+
+    // == Loading and generation
+
+    private static Almanac forTime(Site site, long time) {
+        final String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null || (site != Site.GN && site != Site.GS)) return null;
+        final Semester semester = new Semester(site, time);
+        final Path     file     = Paths.get(dir, "almanac-" + site.name() + "-" + semester + ".bin");
+        return ALMANACS.computeIfAbsent(file.toString(), k -> load(site, semester, file)).orElse(null);
+    }
+
+    private static Optional<Almanac> load(Site site, Semester semester, Path file) {
+        try {
+            if (Files.exists(file)) {
+                final Almanac a = map(file);
+                if (a != null) return Optional.of(a);
+            }
+            LOG.info("Generating almanac " + file);
+            Files.createDirectories(file.getParent());
+            final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, generate(site, semester).array());
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return Optional.ofNullable(map(file));
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not load almanac " + file + ", values will be calculated", e);
+            return Optional.empty();
+        }
+    }
+
+    // Maps the given file, returns null if it is not a valid almanac file.
+    private static Almanac map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) return null;
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(24) != TYPES) return null;
+            final Almanac a = new Almanac(buffer);
+            if (channel.size() != size(a.nights, a.samples)) return null;
+            return a;
+        }
+    }
+
+    private static long size(int nights, int samples) {
+        return HEADER + (long) nights * (8 + 16 * TYPES) + 8L * MOON_FIELDS * samples;
+    }
+
+    private static ByteBuffer generate(Site site, Semester semester) {
+        // the nights from one day before to one day after the semester
+        final Calendar c = Calendar.getInstance(site.timezone());
+        c.setTime(semester.getStartDate(site));
+        c.add(Calendar.DAY_OF_YEAR, -1);
+        final long first = TwilightBoundedNight.dayStart(c.getTimeInMillis(), site);
+        c.setTime(semester.getEndDate(site));
+        c.add(Calendar.DAY_OF_YEAR, 1);
+        final long last  = TwilightBoundedNight.dayStart(c.getTimeInMillis(), site);
+
+        int nights = 0;
+        c.setTimeInMillis(first);
+        while (c.getTimeInMillis() <= last) {
+            ++nights;
+            c.add(Calendar.DAY_OF_YEAR, 1);
+        }
+
+        // the moon values from the start of the first day to the end of the last night
+        final long moonEnd = last + TimeUtils.days(2);
+        final int  samples = (int) ((moonEnd - first + RATE - 1) / RATE) + 1;
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size(nights, samples));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nights).putInt(samples).putLong(first).putInt(TYPES).putInt(0);
+
+        c.setTimeInMillis(first);
+        for (int ix = 0; ix < nights; ++ix) {
+            final long dayStart = c.getTimeInMillis();
+            buffer.putLong(dayStart);
+            for (TwilightBoundType type : TwilightBoundType.values()) {
+                final long[] bounds = TwilightBoundedNight.calculateBounds(type, dayStart, site);
+                buffer.putLong(bounds[0]).putLong(bounds[1]);
+            }
+            c.add(Calendar.DAY_OF_YEAR, 1);
+        }
+
+        // IMPORTANT: the order of the fields must reflect the id values of the moon calculator fields
+        final int moonPos = buffer.position();
+        final ImprovedSkyCalc skycalc = new ImprovedSkyCalc(site);
+        final WorldCoords dummy = new WorldCoords(0, 0);
+        for (int s = 0; s < samples; ++s) {
+            skycalc.calculate(dummy, new Date(first + s * RATE), true);
+            final Double sb = skycalc.getLunarSkyBrightness();
+            buffer.putDouble(moonPos + 8 * s,                 skycalc.getLunarElevation());
+            buffer.putDouble(moonPos + 8 * (samples + s),     skycalc.getLunarPhaseAngle());
+            buffer.putDouble(moonPos + 8 * (2 * samples + s), skycalc.getLunarIlluminatedFraction());
+            buffer.putDouble(moonPos + 8 * (3 * samples + s), sb == null ? 0.0 : sb);
+        }
+        return buffer;
+    }
+
+}
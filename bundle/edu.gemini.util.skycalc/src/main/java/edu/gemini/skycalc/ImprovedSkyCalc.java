@@ -33,11 +33,33 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     private double sunAltitude;
     private double lunarElevation;
 
+    // time dependent values, shared by all targets calculated for the same time
+    private double jdut;
+    private double sid;
+    private double curepoch;
+    private double toporasun;
+    private double topodecsun;
+    private double ramoon;
+    private double decmoon;
+    private double distmoon;
+    private final double[] precession = new double[9];
+
+    // reused for the per target calculations, these are done without any allocations
+    private final DoubleRef az = new DoubleRef();
+    private final DoubleRef par = new DoubleRef();
+    private final DoubleRef curra = new DoubleRef();
+    private final DoubleRef curdec = new DoubleRef();
+
     // caching for calculate()
     private WorldCoords cachedCoordinates;
     private Date cachedDate;
     private boolean cachedCalculateMoon;
 
+    // caching of the time dependent values, these are only recalculated if the time changes; this
+    // makes calculating many targets for one time before moving on to the next time considerably faster
+    private Date cachedTime;
+    private boolean cachedTimeMoon;
+
     public ImprovedSkyCalc(final Site site) {
         hoursLongitude = -site.longitude/15.;
         degreesLatitude = site.latitude;
@@ -60,45 +82,67 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     	cachedDate = date;
     	cachedCalculateMoon = calculateMoon;
 
-        final DateTime dateTime = new DateTime(date);
-        final DoubleRef jdut = new DoubleRef();
-        final DoubleRef sid = new DoubleRef();
-        final DoubleRef curepoch = new DoubleRef();
-
-        setup_time_place(dateTime, hoursLongitude, jdut, sid, curepoch);
+        // The time dependent values can be reused if the time is the same and the moon has been calculated
+        // if it is needed now.
+        if (!date.equals(cachedTime) || (calculateMoon && !cachedTimeMoon)) {
+            setTime(date, calculateMoon);
+            cachedTime = date;
+            cachedTimeMoon = calculateMoon;
+        }
 
         final double objra = obj.getRaDeg()/15;
         final double objdec = obj.getDecDeg();
-        final double objepoch = 2000.;
 
-        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude, jdut, calculateMoon);
+        getCircumstances(objra, objdec, degreesLatitude, calculateMoon);
     }
 
-    private void getCircumstances(double objra, double objdec, double objepoch,
-                                  double curep, double sid, double lat, DoubleRef jdut, boolean calculateMoon) {
+    /**
+     * Calculates the altitude, azimuth, airmass and parallactic angle for many targets at one time. The
+     * coordinates are given in degrees (J2000), the results are stored in the given arrays at the index of the
+     * target; any of the result arrays can be null if the value is not needed. This is the same as calling
+     * {@link #calculate(WorldCoords, Date, boolean)} without the moon for every target but the time dependent
+     * values are calculated only once and nothing is allocated per target. The results of the last single
+     * target calculation are not changed.
+     */
+    public void calculate(final double[] raDeg, final double[] decDeg, final Date date,
+                          final double[] altitude, final double[] azimuth, final double[] airmass, final double[] parallacticAngle) {
+
+        if (!date.equals(cachedTime)) {
+            setTime(date, false);
+            cachedTime = date;
+            cachedTimeMoon = false;
+        }
+
+        for (int i = 0; i < raDeg.length; i++) {
+            precess(precession, raDeg[i]/15, decDeg[i], curra, curdec);
+            final double ha = adj_time(sid - curra.d);
+            final double alt = altit(curdec.d, ha, degreesLatitude, az, par);
+            if (altitude != null) altitude[i] = alt;
+            if (azimuth != null) azimuth[i] = az.d;
+            if (airmass != null) airmass[i] = getAirmass(alt);
+            if (parallacticAngle != null) parallacticAngle[i] = par.d;
+        }
+    }
 
-        final double ha, alt;
-        final DoubleRef az = new DoubleRef();
-        final DoubleRef par = new DoubleRef();
-        final DoubleRef curra = new DoubleRef();
-        final DoubleRef curdec = new DoubleRef();
+    private void setTime(final Date date, final boolean calculateMoon) {
 
-        cooxform(objra, objdec, objepoch, curep, curra, curdec, XFORM_JUSTPRE, XFORM_FROMSTD);
+        final DateTime dateTime = new DateTime(date);
+        final DoubleRef jdutRef = new DoubleRef();
+        final DoubleRef sidRef = new DoubleRef();
+        final DoubleRef curepochRef = new DoubleRef();
 
-        ha = adj_time(sid - curra.d);
-        alt = altit(curdec.d, ha, lat, az, par);
+        setup_time_place(dateTime, hoursLongitude, jdutRef, sidRef, curepochRef);
 
-        airmass = getAirmass(alt);
-        altitude = alt;
-        azimuth = az.d;
-        parallacticAngle = par.d;
-        hourAngle = ha;
+        jdut = jdutRef.d;
+        sid = sidRef.d;
+        curepoch = curepochRef.d;
+        precession_matrix(2000., curepoch, precession);
 
 		if (calculateMoon) {
 
-			final DoubleRef ramoon = new DoubleRef();
-			final DoubleRef decmoon= new DoubleRef();
-			final DoubleRef distmoon = new DoubleRef();
+			final DoubleRef ramoonRef = new DoubleRef();
+			final DoubleRef decmoonRef = new DoubleRef();
+			final DoubleRef distmoonRef = new DoubleRef();
 			final DoubleRef georamoon = new DoubleRef();
 			final DoubleRef geodecmoon = new DoubleRef();
 			final DoubleRef geodistmoon = new DoubleRef();
@@ -108,29 +152,57 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
 			final DoubleRef x = new DoubleRef();
 			final DoubleRef y = new DoubleRef();
 			final DoubleRef z = new DoubleRef();
-			final DoubleRef toporasun = new DoubleRef();
-			final DoubleRef topodecsun = new DoubleRef();
+			final DoubleRef toporasunRef = new DoubleRef();
+			final DoubleRef topodecsunRef = new DoubleRef();
+			final DoubleRef az = new DoubleRef();
 			final double elevsea = siteAltitude;
 
-			accusun(jdut.d,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
-			sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
+			accusun(jdut,sid,degreesLatitude,rasun,decsun,distsun, toporasunRef,topodecsunRef,x,y,z);
+			toporasun = toporasunRef.d;
+			topodecsun = topodecsunRef.d;
+			sunAltitude=altit(topodecsun,(sid-toporasun),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
+
+			accumoon(jdut,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoonRef,decmoonRef,distmoonRef);
+			ramoon = ramoonRef.d;
+			decmoon = decmoonRef.d;
+			distmoon = distmoonRef.d;
+			lunarElevation=altit(decmoon,(sid-ramoon),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
+
+			lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon,decmoon,toporasun,topodecsun);
+			lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon,decmoon,rasun.d,decsun.d))));
 
-			accumoon(jdut.d,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
-			lunarElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
+		}
+    }
+
+    private void getCircumstances(double objra, double objdec, double lat, boolean calculateMoon) {
+
+        final double ha, alt;
+
+        // same as cooxform(objra, objdec, 2000., curepoch, curra, curdec, XFORM_JUSTPRE, XFORM_FROMSTD)
+        precess(precession, objra, objdec, curra, curdec);
+
+        ha = adj_time(sid - curra.d);
+        alt = altit(curdec.d, ha, lat, az, par);
+
+        airmass = getAirmass(alt);
+        altitude = alt;
+        azimuth = az.d;
+        parallacticAngle = par.d;
+        hourAngle = ha;
+
+		if (calculateMoon) {
 
 			// Sky brightness
 			lunarSkyBrightness = null;
-			lunarDistance = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,objra,objdec);
-			lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
+			lunarDistance = DEG_IN_RADIAN * subtend(ramoon,decmoon,objra,objdec);
 			if(lunarElevation > -2.) {
 				if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
 				  lunarSkyBrightness =
 				     lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
-						altitude,distmoon.d);
+						altitude,distmoon);
 				}
 			}
 			totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude);
-			lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
 
 		}
     }
@@ -308,6 +308,71 @@ public class ImprovedSkyCalcMethods {
 	    xyz_cel(fin[1], fin[2], fin[3], rout, dout);
 	}
 
+	/**
+	 * computes the precession matrix from std_epoch to date_epoch, stored row by row
+	 * in p[0..8]; this is the matrix used by cooxform for XFORM_JUSTPRE and XFORM_FROMSTD.
+	 * It only depends on the epochs and can be reused for all coordinates precessed to the
+	 * same epoch with precess().
+	 */
+	protected static void precession_matrix(double std_epoch, double date_epoch, double[] p) {
+
+	    double ti, tf, zeta, z, theta;
+	    double cosz, coszeta, costheta, sinz, sinzeta, sintheta;
+
+	    ti = (std_epoch - 2000.) / 100.;
+	    tf = (date_epoch - 2000. - 100. * ti) / 100.;
+
+	    zeta = (2306.2181 + 1.39656 * ti + 0.000139 * ti * ti) * tf +
+	            (0.30188 - 0.000344 * ti) * tf * tf + 0.017998 * tf * tf * tf;
+	    z = zeta + (0.79280 + 0.000410 * ti) * tf * tf + 0.000205 * tf * tf * tf;
+	    theta = (2004.3109 - 0.8533 * ti - 0.000217 * ti * ti) * tf
+	            - (0.42665 + 0.000217 * ti) * tf * tf - 0.041833 * tf * tf * tf;
+
+	    zeta = zeta / ARCSEC_IN_RADIAN;
+	    z = z / ARCSEC_IN_RADIAN;
+	    theta = theta / ARCSEC_IN_RADIAN;
+
+	    cosz = Math.cos(z);
+	    coszeta = Math.cos(zeta);
+	    costheta = Math.cos(theta);
+	    sinz = Math.sin(z);
+	    sinzeta = Math.sin(zeta);
+	    sintheta = Math.sin(theta);
+
+	    p[0] = coszeta * cosz * costheta - sinzeta * sinz;
+	    p[1] = -1. * sinzeta * cosz * costheta - coszeta * sinz;
+	    p[2] = -1. * cosz * sintheta;
+
+	    p[3] = coszeta * sinz * costheta + sinzeta * cosz;
+	    p[4] = -1. * sinzeta * sinz * costheta + coszeta * cosz;
+	    p[5] = -1. * sinz * sintheta;
+
+	    p[6] = coszeta * sintheta;
+	    p[7] = -1. * sinzeta * sintheta;
+	    p[8] = costheta;
+	}
+
+	/**
+	 * precesses rin (hours) and din (degrees) with a matrix computed by precession_matrix();
+	 * gives the same results as cooxform with XFORM_JUSTPRE and XFORM_FROMSTD but does not
+	 * allocate anything.
+	 */
+	protected static void precess(double[] p, double rin, double din, DoubleRef rout, DoubleRef dout) {
+
+	    final double radian_ra = rin / HRS_IN_RADIAN;
+	    final double radian_dec = din / DEG_IN_RADIAN;
+
+	    final double o1 = Math.cos(radian_dec) * Math.cos(radian_ra);
+	    final double o2 = Math.cos(radian_dec) * Math.sin(radian_ra);
+	    final double o3 = Math.sin(radian_dec);
+
+	    final double f1 = 0. + p[0] * o1 + p[1] * o2 + p[2] * o3;
+	    final double f2 = 0. + p[3] * o1 + p[4] * o2 + p[5] * o3;
+	    final double f3 = 0. + p[6] * o1 + p[7] * o2 + p[8] * o3;
+
+	    xyz_cel(f1, f2, f3, rout, dout);
+	}
+
 	/**
 	 * computes the nutation parameters delta psi and
 	 * delta epsilon at julian epoch (in years) using approximate
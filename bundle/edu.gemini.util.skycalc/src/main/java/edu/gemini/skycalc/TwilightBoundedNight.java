@@ -136,6 +136,15 @@ public final class TwilightBoundedNight implements Night {
         _type = type;
         _site = site;
 
+        final long day = dayStart(time, site);
+        long[] bounds  = Almanac.twilightBounds(type, site, day);
+        if (bounds == null) bounds = calculateBounds(type, day, site);
+        _start = bounds[0];
+        _end   = bounds[1];
+    }
+
+    /** Gets the local midnight at the start of the day of the given time. */
+    static long dayStart(long time, Site site) {
         Calendar c = Calendar.getInstance(site.timezone());
         c.setTimeInMillis(time);
 
@@ -144,6 +153,16 @@ public final class TwilightBoundedNight implements Night {
         c.set(Calendar.MINUTE, 0);
         c.set(Calendar.SECOND, 0);
         c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Calculates the start and end times of the night starting on the day that starts at the given
+     * local midnight, without looking them up in the {@link Almanac}.
+     */
+    static long[] calculateBounds(TwilightBoundType type, long dayStart, Site site) {
+        Calendar c = Calendar.getInstance(site.timezone());
+        c.setTimeInMillis(dayStart);
         c.add(Calendar.DAY_OF_YEAR, 1);
 
         // Get sunset.
@@ -164,10 +183,13 @@ public final class TwilightBoundedNight implements Night {
                         ImprovedSkyCalcMethods.DEG_IN_RADIAN; break;
             default: angle = type.getHorizonAngle(); break;
         }
-        _calcTimes(angle, jdmid, site);
+        return _calcTimes(angle, jdmid, site);
     }
 
-    private void _calcTimes(double angle, JulianDate jdmid, Site desc) {
+    // Calculates the start and end times, both are 0 if the sun does not set or rise.
+    private static long[] _calcTimes(double angle, JulianDate jdmid, Site desc) {
+        final long[] bounds = new long[2];
+
         Coordinates sun = ImprovedSkyCalcMethods.lpsun(jdmid);
         double rasun  = sun.getRaDeg();
         double decsun = sun.getDecDeg();
@@ -179,12 +201,12 @@ public final class TwilightBoundedNight implements Night {
 
         if (hasunset > 900.) {  // flag for never sets
             LOG.log(Level.WARNING, "Sun up all night on: " + jdmid.toDate());
-            return;
+            return bounds;
         }
 
         if (hasunset < -900.) {
             LOG.log(Level.WARNING, "Sun down all day on: " + jdmid.toDate());
-            return;
+            return bounds;
         }
 
         double stmid = ImprovedSkyCalcMethods.lst(jdmid, longit);
@@ -197,10 +219,10 @@ public final class TwilightBoundedNight implements Night {
         jdset = ImprovedSkyCalcMethods.jd_sun_alt(-angle, jdset, lat, longit);
         if (jdset == null) {
             LOG.log(Level.WARNING, "Sun doesn't set on: " + jdmid.toDate());
-            return;
+            return bounds;
         }
 
-        _start = jdset.toTimestamp();
+        bounds[0] = jdset.toTimestamp();
 
         // initial guess
         tmp = jdmid.toDouble() + ImprovedSkyCalcMethods.adj_time(rasun - hasunset-stmid)/24.;
@@ -210,10 +232,11 @@ public final class TwilightBoundedNight implements Night {
         jdrise = ImprovedSkyCalcMethods.jd_sun_alt(-angle, jdrise, lat, longit);
         if (jdrise == null) {
             LOG.log(Level.WARNING, "Sun doesn't rise on: " + jdmid.toDate());
-            return;
+            return bounds;
         }
 
-        _end = jdrise.toTimestamp();
+        bounds[1] = jdrise.toTimestamp();
+        return bounds;
     }
 
     public TwilightBoundType getType() {
@@ -0,0 +1,65 @@
+package edu.gemini.util.skycalc.calc
+
+import java.util.Date
+
+import edu.gemini.skycalc.{ImprovedSkyCalc, TimeUtils}
+import edu.gemini.spModel.core.{Coordinates, Site}
+import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
+
+/**
+ * Calculates target calculators for many targets over one shared sampling. The values are calculated time by
+ * time for all targets, this way the values that only depend on the site and the time (sidereal time, sun
+ * and moon positions) are calculated once per sampling time instead of once per sampling time and target,
+ * see {@see edu.gemini.skycalc.ImprovedSkyCalc}. Optionally the sampling is split in chunks which are calculated
+ * in parallel, each one with its own skycalc instance.
+ * The resulting calculators are in the same order as the target locations and behave exactly like the ones
+ * created by the {@link TargetCalculator} factory methods for the same sampling.
+ */
+object BatchTargetCalculator {
+
+  def apply(site: Site, targetLocations: IndexedSeq[Long => Coordinates], defined: Interval, rate: Long = TimeUtils.seconds(30), parallel: Boolean = false): Vector[TargetCalculator] = {
+    val values = calculate(site, targetLocations, FixedRateCalculator.sampling(defined, rate), parallel)
+    targetLocations.indices.map(j => BatchIntervalTargetCalculator(site, targetLocations(j), defined, rate, values(j))).toVector
+  }
+
+  def apply(site: Site, targetLocations: IndexedSeq[Long => Coordinates], times: Vector[Long], parallel: Boolean): Vector[TargetCalculator] = {
+    val values = calculate(site, targetLocations, times.toArray, parallel)
+    targetLocations.indices.map(j => BatchSampleTargetCalculator(site, targetLocations(j), times, values(j))).toVector
+  }
+
+  /** Calculates the values for all targets, the result has one values matrix per target. */
+  private def calculate(site: Site, targetLocations: IndexedSeq[Long => Coordinates], times: Array[Long], parallel: Boolean): Array[Array[Array[Double]]] = {
+    val values = Array.fill(targetLocations.size)(Array.ofDim[Double](Fields.maxId, times.length))
+
+    // calculates the values for the times [from, until), the chunks write to disjoint parts of the values only
+    def calculateChunk(from: Int, until: Int): Unit = {
+      val skycalc = new ImprovedSkyCalc(site)
+      for (ix <- from until until) {
+        val t    = times(ix)
+        val date = new Date(t)
+        for (j <- targetLocations.indices) {
+          skycalc.calculate(targetLocations(j)(t), date, true)
+          TargetCalculator.store(skycalc, values(j), ix)
+        }
+      }
+    }
+
+    if (parallel && times.length > 1) {
+      val chunks = Math.min(Runtime.getRuntime.availableProcessors, times.length)
+      val size   = (times.length + chunks - 1) / chunks
+      (0 until chunks).par.foreach(c => calculateChunk(c * size, Math.min(times.length, (c + 1) * size)))
+    } else {
+      calculateChunk(0, times.length)
+    }
+    values
+  }
+
+}
+
+case class BatchIntervalTargetCalculator(site: Site, targetLocation: Long => Coordinates, defined: Interval, rate: Long, precalculated: Array[Array[Double]]) extends FixedRateCalculator with LinearInterpolatingCalculator with TargetCalculator {
+  override protected def calculate() = precalculated
+}
+
+case class BatchSampleTargetCalculator(site: Site, targetLocation: Long => Coordinates, sampling: Vector[Long], precalculated: Array[Array[Double]]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with TargetCalculator {
+  override protected def calculate() = precalculated
+}
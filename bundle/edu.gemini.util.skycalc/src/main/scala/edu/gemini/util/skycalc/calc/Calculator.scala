@@ -3,27 +3,49 @@ package edu.gemini.util.skycalc.calc
 /**
  * Base trait for all calculators.
  * A calculator basically holds a matrix of values which are sampled at defined points in time over a given interval.
- * For each sampling point in time a vector with an arbitrary number of values can be stored.
+ * For each sampling point in time an arbitrary number of values can be stored. Calculators can cover whole
+ * semesters at a high sampling rate, therefore times and values are kept in primitive arrays, with one array
+ * (column) of values per field. The arrays must not be changed after they have been calculated.
  */
 trait Calculator {
 
-  val times: Vector[Long]
+  val times: Array[Long]
   def toIndex(t: Long): Int
-  val values: Vector[Vector[Double]]
+  val values: Array[Array[Double]]
 
-  lazy val start = times.head
-  lazy val end = times.last
-  lazy val samples = times.size
+  lazy val start = times(0)
+  lazy val end = times(times.length - 1)
+  lazy val samples = times.length
 
   /** True if the values for the given time are covered by this target. */
   def isDefinedAt(t: Long) = t >= start && t <= end
   def value(field: Int, ix: Int) = values(field)(ix)
   def valueAt(field: Int, t: Long) = values(field)(toIndex(t))
-  def timedValues(field: Int) = times.zip(values(field))
+  def timedValues(field: Int): Vector[(Long, Double)] = times.zip(values(field)).toVector
+
+  def min(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    var i = 1
+    while (i < vs.length) { if (vs(i) < m) m = vs(i); i += 1 }
+    m
+  }
 
-  def min(field: Int): Double = values(field).min
-  def max(field: Int): Double = values(field).max
-  def mean(field: Int): Double = values(field).sum / samples
+  def max(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    var i = 1
+    while (i < vs.length) { if (vs(i) > m) m = vs(i); i += 1 }
+    m
+  }
+
+  def mean(field: Int): Double = {
+    val vs = values(field)
+    var sum = 0.0
+    var i = 0
+    while (i < vs.length) { sum += vs(i); i += 1 }
+    sum / samples
+  }
 
 }
 
@@ -33,7 +55,7 @@ trait Calculator {
  */
 trait SingleValueCalculator extends Calculator {
   val time: Long
-  val times = Vector(time)
+  val times = Array(time)
   def toIndex(t: Long) = 0
 }
 
@@ -52,17 +74,8 @@ trait FixedRateCalculator extends Calculator {
   // the precise rate in milliseconds that corresponds to the expected rate
   private val preciseRate: Double = defined.duration.toDouble / cnt
 
-  /** Calculates a vector with times that cover the given interval. */
-  val times: Vector[Long] = {
-    val ts = for {
-      i <- 0 to cnt
-    } yield {
-      Math.ceil(defined.start + i*preciseRate).toLong     // always round up
-    }
-    require(ts.head == defined.start)
-    require(ts.last >= defined.end)
-    Vector(ts:_*)
-  }
+  /** Calculates the times that cover the given interval. */
+  val times: Array[Long] = FixedRateCalculator.sampling(defined, rate)
 
   /** Gets the index to the left of the given value t. */
   def toIndex(t: Long) = {
@@ -76,25 +89,51 @@ trait FixedRateCalculator extends Calculator {
 
 }
 
+object FixedRateCalculator {
+
+  /** Calculates the times that cover the given interval with a sampling rate >= than the given rate. */
+  def sampling(defined: Interval, rate: Long): Array[Long] = {
+    // the number of samples we need to have a sampling rate >= than expected
+    val cnt: Int = Math.ceil(defined.duration.toDouble/rate).toInt
+    // the precise rate in milliseconds that corresponds to the expected rate
+    val preciseRate: Double = defined.duration.toDouble / cnt
+    val ts = Array.tabulate(cnt + 1) { i =>
+      Math.ceil(defined.start + i*preciseRate).toLong     // always round up
+    }
+    require(ts(0) == defined.start)
+    require(ts(cnt) >= defined.end)
+    ts
+  }
+
+}
+
 /**
  * Sampling at irregular intervals e.g middle dark time etc.
- * Define a vector with sampling times to make this work.
+ * Define a vector with sampling times in increasing order to make this work.
  */
 trait IrregularIntervalCalculator extends Calculator {
-  require(times.size > 0)
 
   /** Irregular interval calculators need to define a vector of times at which to sample the data. */
-  val times: Vector[Long]
+  val sampling: Vector[Long]
+
+  val times: Array[Long] = sampling.toArray
+  require(times.length > 0)
 
   /** Gets the index to the left of the given value t. */
   def toIndex(t: Long) = {
     require(t >= start)
     require(t <= end)
-    val ix = times.zipWithIndex.reverse.dropWhile(_._1 > t).head._2
+    // binary search for the last sample with a time <= t; times(lo) <= t holds throughout
+    var lo = 0
+    var hi = samples - 1
+    while (lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if (times(mid) <= t) lo = mid else hi = mid - 1
+    }
     // postconditions: useful for debugging / documentation
-    // require(ix >= 0 && ix < samples)
-    // require(times(ix) <= t && (ix == samples-1 || times(ix+1) > t))
-    ix
+    // require(lo >= 0 && lo < samples)
+    // require(times(lo) <= t && (lo == samples-1 || times(lo+1) > t))
+    lo
   }
 }
 
@@ -1,6 +1,6 @@
 package edu.gemini.util.skycalc.calc
 
-import edu.gemini.skycalc.{MoonCalc, TimeUtils, ImprovedSkyCalc}
+import edu.gemini.skycalc.{Almanac, MoonCalc, TimeUtils, ImprovedSkyCalc}
 import java.util.Date
 import edu.gemini.spModel.core.Site
 import jsky.coords.WorldCoords
@@ -11,13 +11,15 @@ import java.awt.{Color, Graphics2D, Component, Graphics}
 
 /**
  * Support for a variety of calculations regarding the moon.
+ * If the almanac is in use the values are interpolated from the precalculated values in the almanac instead of
+ * being calculated, see {@see edu.gemini.skycalc.Almanac}.
  */
 trait MoonCalculator extends Calculator {
   require(site == Site.GN || site == Site.GS)
 
   val site: Site
 
-  val values: Vector[Vector[Double]] = calculate()
+  val values: Array[Array[Double]] = Option(Almanac.moonValues(site, times)).getOrElse(calculate())
 
   import Fields._
 
@@ -45,22 +47,13 @@ trait MoonCalculator extends Calculator {
   lazy val fullMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.FULL)
   lazy val lastQuarterMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.LAST_QUARTER)
 
-  protected def calculate() = {
+  protected def calculate(): Array[Array[Double]] = {
     val skycalc = new ImprovedSkyCalc(site)
     val dummy = new WorldCoords(0, 0)
 
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
-    for (ix <- 0 to samples-1) {
+    // one array of values per field, in the order of the id values of the field enums
+    val values = Array.ofDim[Double](Fields.maxId, samples)
+    for (ix <- 0 until samples) {
       val t = times(ix)
       skycalc.calculate(dummy, new Date(t), true)
       values(Elevation.id)(ix) = skycalc.getLunarElevation
@@ -68,21 +61,13 @@ trait MoonCalculator extends Calculator {
       values(IlluminatedFraction.id)(ix) = skycalc.getLunarIlluminatedFraction
       values(SkyBrightness.id)(ix) = if (skycalc.getLunarSkyBrightness == null) 0.0 else skycalc.getLunarSkyBrightness.toDouble
     }
-
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(PhaseAngle.id):_*),
-      Vector(values(IlluminatedFraction.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
+    values
   }
 }
 
 case class IntervalMoonCalculator(site: Site, defined: Interval, rate: Long) extends FixedRateCalculator with LinearInterpolatingCalculator with MoonCalculator
 
-case class SampleMoonCalculator(site: Site, times: Vector[Long]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with MoonCalculator
+case class SampleMoonCalculator(site: Site, sampling: Vector[Long]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with MoonCalculator
 
 case class SingleValueMoonCalculator(site: Site, time: Long) extends SingleValueCalculator with MoonCalculator
 
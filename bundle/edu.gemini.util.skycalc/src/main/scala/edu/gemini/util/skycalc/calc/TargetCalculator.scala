@@ -23,7 +23,7 @@ trait TargetCalculator extends Calculator {
   val site: Site
   val targetLocation: Long => Coordinates
 
-  val values: Vector[Vector[Double]] = calculate()
+  val values: Array[Array[Double]] = calculate()
 
   import Fields._
 
@@ -69,30 +69,35 @@ trait TargetCalculator extends Calculator {
   // If the target is visible during the scheduled time, return the weighted mean parallactic angle as Some(angle in degrees).
   // Otherwise, the target is not visible, so return None.
   lazy val weightedMeanParallacticAngle: Option[Double] = {
-    val (weightedAngles, weights) = values(ParallacticAngle.id).zip(times).zip(values(Airmass.id)).map {
-      case ((angle, t), airmass) =>
-        // Wrap negative angles as per Andy's comment in OCSADV-16.
-        val normalizedAngle = {
-          if (angle < 0) {
-            val normalizingFactor = {
-              val dec = targetLocation(t).dec.toDegrees
-              if (dec - site.latitude < -10) 0
-              else if (dec - site.latitude < 10) 180
-              else 360
-            }
-            angle + normalizingFactor
+    val angles   = values(ParallacticAngle.id)
+    val airmasss = values(Airmass.id)
+    var weightedAngleSum = 0.0
+    var weightedSum      = 0.0
+    for (ix <- 0 until samples) {
+      val angle   = angles(ix)
+      val airmass = airmasss(ix)
+      // Wrap negative angles as per Andy's comment in OCSADV-16.
+      val normalizedAngle = {
+        if (angle < 0) {
+          val normalizingFactor = {
+            val dec = targetLocation(times(ix)).dec.toDegrees
+            if (dec - site.latitude < -10) 0
+            else if (dec - site.latitude < 10) 180
+            else 360
           }
-          else angle
+          angle + normalizingFactor
         }
+        else angle
+      }
 
-        //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
-        val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
-        (normalizedAngle * weight, weight)
-    }.unzip
+      //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
+      val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
+      weightedAngleSum += normalizedAngle * weight
+      weightedSum      += weight
+    }
 
-    val weightedSum = weights.sum
     if (weightedSum == 0) None
-    else Some(weightedAngles.sum / weightedSum)
+    else Some(weightedAngleSum / weightedSum)
   }
 
   def hourAngleAt(t: Long): Double = valueAt(HourAngle.id, t)
@@ -107,52 +112,24 @@ trait TargetCalculator extends Calculator {
 
   /**
    * Calculates all values for the given times.
-   * @return
+   * @return one array of values per field, in the order of the id values of the field enums
    */
-  protected def calculate() = {
+  protected def calculate(): Array[Array[Double]] = {
     val skycalc = new ImprovedSkyCalc(site)
 
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
-    for (ix <- 0 to samples-1) {
+    val values = Array.ofDim[Double](Fields.maxId, samples)
+    for (ix <- 0 until samples) {
       val t = times(ix)
       skycalc.calculate(targetLocation(t), new Date(t), true)
-      values(Elevation.id)(ix) = skycalc.getAltitude
-      values(Azimuth.id)(ix) = skycalc.getAzimuth
-      values(Airmass.id)(ix) = skycalc.getAirmass
-      values(LunarDistance.id)(ix) = skycalc.getLunarDistance
-      values(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
-      values(HourAngle.id)(ix) = skycalc.getHourAngle
-      values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+      TargetCalculator.store(skycalc, values, ix)
     }
-
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(Azimuth.id):_*),
-      Vector(values(Airmass.id):_*),
-      Vector(values(LunarDistance.id):_*),
-      Vector(values(ParallacticAngle.id):_*),
-      Vector(values(HourAngle.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
-
+    values
   }
 }
 
 case class IntervalTargetCalculator(site: Site, targetLocation: Long => Coordinates, defined: Interval, rate: Long) extends FixedRateCalculator with LinearInterpolatingCalculator with TargetCalculator
 
-case class SampleTargetCalculator(site: Site, targetLocation: Long => Coordinates, times: Vector[Long]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with TargetCalculator
+case class SampleTargetCalculator(site: Site, targetLocation: Long => Coordinates, sampling: Vector[Long]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator with TargetCalculator
 
 case class SingleValueTargetCalculator(site: Site, targetLocation: Long => Coordinates, time: Long) extends SingleValueCalculator with TargetCalculator
 
@@ -164,6 +141,18 @@ object TargetCalculator {
     val Elevation, Azimuth, Airmass, LunarDistance, ParallacticAngle, HourAngle, SkyBrightness = Value
   }
 
+  /** Stores the values of the last calculation of the given skycalc at the given index. */
+  private[calc] def store(skycalc: ImprovedSkyCalc, values: Array[Array[Double]], ix: Int): Unit = {
+    import Fields._
+    values(Elevation.id)(ix) = skycalc.getAltitude
+    values(Azimuth.id)(ix) = skycalc.getAzimuth
+    values(Airmass.id)(ix) = skycalc.getAirmass
+    values(LunarDistance.id)(ix) = skycalc.getLunarDistance
+    values(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
+    values(HourAngle.id)(ix) = skycalc.getHourAngle
+    values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+  }
+
   def apply(site: Site, targetLocation: Long => Coordinates, defined: Interval, rate: Long = TimeUtils.seconds(30)) = {
     new IntervalTargetCalculator(site, targetLocation, defined, rate)
   }
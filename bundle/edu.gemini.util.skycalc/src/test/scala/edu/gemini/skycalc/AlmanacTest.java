@@ -0,0 +1,72 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the values looked up in the almanac are the same as the calculated ones.
+ */
+public class AlmanacTest {
+
+    private static final long START = TimeUtils.time(2015, 3, 1, 12, 0, Site.GS.timezone());
+
+    private static void withAlmanac(Path dir, Runnable test) {
+        System.setProperty(Almanac.DIR_PROPERTY, dir.toString());
+        try {
+            test.run();
+        } finally {
+            System.clearProperty(Almanac.DIR_PROPERTY);
+        }
+    }
+
+    @Test
+    public void storesTwilightBounds() throws Exception {
+        final Path dir = Files.createTempDirectory("almanac");
+        withAlmanac(dir, () -> {
+            for (int d = 0; d < 40; ++d) {
+                final long time = START + TimeUtils.days(d);
+                for (TwilightBoundType type : TwilightBoundType.values()) {
+                    final long[] expected = TwilightBoundedNight.calculateBounds(type, TwilightBoundedNight.dayStart(time, Site.GS), Site.GS);
+                    final TwilightBoundedNight actual = new TwilightBoundedNight(type, time, Site.GS);
+                    assertEquals(expected[0], actual.getStartTime());
+                    assertEquals(expected[1], actual.getEndTime());
+                }
+            }
+        });
+        final File[] files = dir.toFile().listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+    }
+
+    @Test
+    public void interpolatesMoonValues() throws Exception {
+        withAlmanac(Files.createTempDirectory("almanac"), () -> {
+            final long[] times = new long[100];
+            for (int i = 0; i < times.length; ++i) times[i] = START + i * TimeUtils.minutes(7);
+            final double[][] values = Almanac.moonValues(Site.GS, times);
+            assertNotNull(values);
+
+            final ImprovedSkyCalc skycalc = new ImprovedSkyCalc(Site.GS);
+            for (int i = 0; i < times.length; ++i) {
+                skycalc.calculate(new WorldCoords(0, 0), new Date(times[i]), true);
+                assertEquals(skycalc.getLunarElevation(),           values[0][i], 0.01);
+                assertEquals(skycalc.getLunarPhaseAngle(),          values[1][i], 0.01);
+                assertEquals(skycalc.getLunarIlluminatedFraction(), values[2][i], 0.0001);
+            }
+        });
+    }
+
+    @Test
+    public void isNotUsedWithoutDirectory() {
+        assertNull(Almanac.moonValues(Site.GS, new long[] { START }));
+    }
+
+}
@@ -0,0 +1,106 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the cached precession and the batch calculation against the single target calculations.
+ */
+public class ImprovedSkyCalcTest {
+
+    private static final long START = TimeUtils.time(2015, 3, 1, 20, 0, Site.GS.timezone());
+
+    private static double[] ras(int n)  { final double[] a = new double[n]; for (int i = 0; i < n; i++) a[i] = i * 359.0 / n;        return a; }
+    private static double[] decs(int n) { final double[] a = new double[n]; for (int i = 0; i < n; i++) a[i] = -89.5 + i * 179.0 / n; return a; }
+
+    @Test
+    public void precessesLikeCooxform() {
+        final double[] p = new double[9];
+        final ImprovedSkyCalcMethods.DoubleRef ra0  = new ImprovedSkyCalcMethods.DoubleRef();
+        final ImprovedSkyCalcMethods.DoubleRef dec0 = new ImprovedSkyCalcMethods.DoubleRef();
+        final ImprovedSkyCalcMethods.DoubleRef ra1  = new ImprovedSkyCalcMethods.DoubleRef();
+        final ImprovedSkyCalcMethods.DoubleRef dec1 = new ImprovedSkyCalcMethods.DoubleRef();
+        for (double epoch : new double[] { 1990.3, 2000.0, 2015.17, 2030.9 }) {
+            ImprovedSkyCalcMethods.precession_matrix(2000., epoch, p);
+            for (int i = 0; i < 200; i++) {
+                final double ra  = i * 0.12;
+                final double dec = -89.9 + i * 0.899;
+                ImprovedSkyCalcMethods.cooxform(ra, dec, 2000., epoch, ra0, dec0, ImprovedSkyCalcMethods.XFORM_JUSTPRE, ImprovedSkyCalcMethods.XFORM_FROMSTD);
+                ImprovedSkyCalcMethods.precess(p, ra, dec, ra1, dec1);
+                assertEquals(ra0.d,  ra1.d,  0.0);
+                assertEquals(dec0.d, dec1.d, 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleTargets() {
+        final int n = 100;
+        final double[] ra  = ras(n);
+        final double[] dec = decs(n);
+        final double[] alt = new double[n], az = new double[n], airmass = new double[n], pa = new double[n];
+
+        final ImprovedSkyCalc batch  = new ImprovedSkyCalc(Site.GS);
+        final ImprovedSkyCalc single = new ImprovedSkyCalc(Site.GS);
+        for (int t = 0; t < 10; t++) {
+            final Date date = new Date(START + TimeUtils.minutes(37 * t));
+            batch.calculate(ra, dec, date, alt, az, airmass, pa);
+            for (int i = 0; i < n; i++) {
+                single.calculate(new WorldCoords(ra[i], dec[i]), date, t % 2 == 0);
+                assertEquals(single.getAltitude(),         alt[i],     0.0);
+                assertEquals(single.getAzimuth(),          az[i],      0.0);
+                assertEquals(single.getAirmass(),          airmass[i], 0.0);
+                assertEquals(single.getParallacticAngle(), pa[i],      0.0);
+            }
+        }
+    }
+
+    @Test
+    public void batchKeepsSingleTargetResults() {
+        final ImprovedSkyCalc calc = new ImprovedSkyCalc(Site.GS);
+        final Date date = new Date(START);
+        calc.calculate(new WorldCoords(150, -30), date, true);
+        final double alt  = calc.getAltitude();
+        final double moon = calc.getLunarElevation();
+
+        calc.calculate(ras(10), decs(10), new Date(START + TimeUtils.hours(2)), new double[10], null, null, null);
+        calc.calculate(new WorldCoords(150, -30), date, true);
+        assertEquals(alt,  calc.getAltitude(),       0.0);
+        assertEquals(moon, calc.getLunarElevation(), 0.0);
+    }
+
+    // === this is for performance trimming purposes, not an actual test case
+
+    @Ignore
+    @Test
+    public void timingTest() {
+        final int n = 1000;
+        final double[] ra  = ras(n);
+        final double[] dec = decs(n);
+        final double[] alt = new double[n];
+        final ImprovedSkyCalc calc = new ImprovedSkyCalc(Site.GS);
+
+        long s = System.currentTimeMillis();
+        for (int t = 0; t < 1000; t++) {
+            final Date date = new Date(START + TimeUtils.minutes(t));
+            for (int i = 0; i < n; i++) {
+                calc.calculate(new WorldCoords(ra[i], dec[i]), date, false);
+                alt[i] = calc.getAltitude();
+            }
+        }
+        System.out.println("single: " + (System.currentTimeMillis() - s) + "ms");
+
+        s = System.currentTimeMillis();
+        for (int t = 0; t < 1000; t++) {
+            calc.calculate(ra, dec, new Date(START + TimeUtils.minutes(t)), alt, null, null, null);
+        }
+        System.out.println("batch:  " + (System.currentTimeMillis() - s) + "ms");
+    }
+
+}
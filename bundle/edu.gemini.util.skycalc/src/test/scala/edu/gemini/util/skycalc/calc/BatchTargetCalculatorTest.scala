@@ -0,0 +1,69 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Site}
+import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
+import org.junit.Assert._
+import org.junit.{Ignore, Test}
+
+/**
+ * Checks that batch calculations for many targets give exactly the same values as individual calculations.
+ */
+class BatchTargetCalculatorTest {
+
+  private val start = TimeUtils.time(2014, 3, 1, 20, 0, Site.GS.timezone)
+  private val interval = Interval(start, start + TimeUtils.hours(10))
+  private val targets = Vector(
+    (_: Long) => Coordinates.fromDegrees(150, 20).get,
+    (_: Long) => Coordinates.fromDegrees(150, 20).get,   // same coordinates twice
+    (_: Long) => Coordinates.fromDegrees(10, -60).get,
+    (t: Long) => Coordinates.fromDegrees(((t - start) / TimeUtils.minutes(1) % 360).toDouble, -30).get
+  )
+
+  private def assertSameValues(expected: TargetCalculator, actual: TargetCalculator): Unit = {
+    assertArrayEquals(expected.times, actual.times)
+    Fields.values.foreach { f =>
+      assertArrayEquals(expected.values(f.id), actual.values(f.id), 0.0)
+    }
+    assertEquals(expected.valueAt(Fields.Elevation, start + 12345), actual.valueAt(Fields.Elevation, start + 12345), 0.0)
+  }
+
+  @Test def calculatesIntervals(): Unit = {
+    for (parallel <- List(false, true)) {
+      val batch = BatchTargetCalculator(Site.GS, targets, interval, TimeUtils.minutes(10), parallel)
+      assertEquals(targets.size, batch.size)
+      targets.zip(batch).foreach { case (target, tc) =>
+        assertSameValues(TargetCalculator(Site.GS, target, interval, TimeUtils.minutes(10)), tc)
+      }
+    }
+  }
+
+  @Test def calculatesSamples(): Unit = {
+    val times = Vector(start, start + TimeUtils.minutes(7), start + TimeUtils.hours(3), start + TimeUtils.hours(4))
+    for (parallel <- List(false, true)) {
+      val batch = BatchTargetCalculator(Site.GS, targets, times, parallel)
+      targets.zip(batch).foreach { case (target, tc) =>
+        assertSameValues(TargetCalculator(Site.GS, target, times), tc)
+      }
+    }
+  }
+
+  // === this is for performance trimming purposes, not an actual test case
+
+  @Ignore
+  @Test def timingTest(): Unit = {
+    val many = (0 until 500).map(i => (_: Long) => Coordinates.fromDegrees(i * 0.7, -80 + i * 0.3).get)
+
+    val t0 = System.currentTimeMillis()
+    many.foreach(target => TargetCalculator(Site.GS, target, interval))
+    println(s"single: ${System.currentTimeMillis() - t0}ms" )
+
+    val t1 = System.currentTimeMillis()
+    BatchTargetCalculator(Site.GS, many, interval)
+    println(s"batch: ${System.currentTimeMillis() - t1}ms" )
+
+    val t2 = System.currentTimeMillis()
+    BatchTargetCalculator(Site.GS, many, interval, parallel = true)
+    println(s"batch parallel: ${System.currentTimeMillis() - t2}ms" )
+  }
+}
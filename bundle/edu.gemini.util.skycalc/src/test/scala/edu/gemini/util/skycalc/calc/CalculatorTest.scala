@@ -0,0 +1,78 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Site}
+import org.junit.{Ignore, Test}
+import org.junit.Assert._
+
+import scala.util.Random
+
+/**
+ * Tests the index lookup and value access of the calculator base traits.
+ */
+class CalculatorTest {
+
+  // a calculator with irregular sampling times and the sample index as its only value
+  case class TestCalculator(sampling: Vector[Long]) extends IrregularIntervalCalculator with LinearInterpolatingCalculator {
+    val values: Array[Array[Double]] = Array(Array.tabulate(sampling.size)(_.toDouble))
+  }
+
+  // the index to the left of t the way it was looked up before, by a linear search
+  private def linearIndex(times: Vector[Long], t: Long): Int = times.lastIndexWhere(_ <= t)
+
+  @Test def findsIrregularIndices(): Unit = {
+    val r = new Random(42)
+    for (n <- List(1, 2, 3, 10, 1000)) {
+      val times = Vector.fill(n)(r.nextInt(10000).toLong).sorted
+      val calc  = TestCalculator(times)
+      for (t <- times.head to times.last by 7) {
+        assertEquals(linearIndex(times, t), calc.toIndex(t))
+      }
+      times.foreach(t => assertEquals(linearIndex(times, t), calc.toIndex(t)))
+      assertEquals(n - 1, calc.toIndex(times.last))
+    }
+  }
+
+  @Test def findsIndicesOfDuplicateTimes(): Unit = {
+    val times = Vector(10L, 20L, 20L, 20L, 30L, 40L, 40L)
+    val calc  = TestCalculator(times)
+    assertEquals(0, calc.toIndex(10))
+    assertEquals(0, calc.toIndex(19))
+    assertEquals(3, calc.toIndex(20))
+    assertEquals(3, calc.toIndex(29))
+    assertEquals(4, calc.toIndex(30))
+    assertEquals(6, calc.toIndex(40))
+  }
+
+  @Test def interpolatesIrregularValues(): Unit = {
+    val calc = TestCalculator(Vector(0L, 10L, 30L))
+    assertEquals(0.0, calc.valueAt(0, 0), 0.0)
+    assertEquals(0.5, calc.valueAt(0, 5), 0.0)
+    assertEquals(1.5, calc.valueAt(0, 20), 0.0)
+    assertEquals(2.0, calc.valueAt(0, 30), 0.0)
+    assertEquals(0.0, calc.min(0), 0.0)
+    assertEquals(2.0, calc.max(0), 0.0)
+    assertEquals(1.0, calc.mean(0), 0.0)
+  }
+
+  // === this is for performance trimming purposes, not an actual test case
+
+  @Ignore
+  @Test def semesterTimingTest(): Unit = {
+
+    val pos = (_: Long) => Coordinates.fromDegrees(150, 20).get
+    val t0 = TimeUtils.time(2014, 2, 1, 14, 0, Site.GN.timezone)
+    val t1 = TimeUtils.time(2014, 8, 1, 14, 0, Site.GN.timezone)
+    val times = (t0 to t1 by TimeUtils.seconds(30)).toVector    // ~520000 samples
+
+    val t = System.currentTimeMillis()
+    val tc = TargetCalculator(Site.GN, pos, times)
+    println(s"calculation: ${System.currentTimeMillis() - t}ms" )
+
+    val r = new Random(42)
+    val s = System.currentTimeMillis()
+    var sum = 0.0
+    for (_ <- 1 to 1000000) sum += tc.elevationAt(t0 + (r.nextDouble() * (t1 - t0)).toLong)
+    println(s"1000000 lookups: ${System.currentTimeMillis() - s}ms ($sum)" )
+  }
+}
@@ -93,16 +93,30 @@ public class ElevationPlotUtil {
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
 
+        // all targets are calculated at once for each time
+        final int n = _targets.length;
+        final boolean[] defined = new boolean[n];
+        final double[] ra = new double[n];
+        final double[] dec = new double[n];
+        final double[] alt = new double[n];
+        final double[] airmass = new double[n];
+        final double[] pa = new double[n];
+
         for (int j = 0; j < numSteps; j++) {
-            for (int i = 0; i < _targets.length; i++) {
-                Date utTime = cal.getTime();
+            Date utTime = cal.getTime();
+            for (int i = 0; i < n; i++) {
                 Option<WorldCoords> pos = _targets[i].getCoordinates(new Some<>(utTime.getTime()));
                 _xData[i][j] = utTime;
-                if (pos.isDefined()) {
-                    _skyCalc.calculate(pos.getValue(), utTime, false);
-                    _yData[i][j] = _skyCalc.getAltitude();
-                    _yDataAirmass[i][j] = _skyCalc.getAirmass();
-                    _yDataPa[i][j] = _skyCalc.getParallacticAngle();
+                defined[i] = pos.isDefined();
+                ra[i] = defined[i] ? pos.getValue().getRaDeg() : 0.0;
+                dec[i] = defined[i] ? pos.getValue().getDecDeg() : 0.0;
+            }
+            _skyCalc.calculate(ra, dec, utTime, alt, null, airmass, pa);
+            for (int i = 0; i < n; i++) {
+                if (defined[i]) {
+                    _yData[i][j] = alt[i];
+                    _yDataAirmass[i][j] = airmass[i];
+                    _yDataPa[i][j] = pa[i];
                 } // otherwise zero
             }
             cal.add(Calendar.MINUTE, _stepIncrement);